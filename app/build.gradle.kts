@@ -42,6 +42,9 @@ android {
 
 dependencies {
 
+    // Песочница SQL и проверка ответов (модуль без зависимостей от Android)
+    implementation(project(":engine"))
+
     // Стандартные зависимости AndroidX
     implementation("androidx.core:core-ktx:1.12.0")
     implementation("androidx.appcompat:appcompat:1.6.1")
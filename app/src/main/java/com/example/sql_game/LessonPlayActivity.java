@@ -2,9 +2,12 @@ package com.example.sql_game;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
 import android.os.Bundle;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.LinearLayout;
@@ -22,9 +25,22 @@ import com.example.sql_game.data.model.TaskModel.TaskType;
 import com.example.sql_game.data.repository.LessonRepository;
 import com.example.sql_game.ui.adapter.TableDataAdapter;
 import com.example.sql_game.ui.adapter.TaskPromptAdapter;
-import com.example.sql_game.util.SqlExecutor;
+import com.example.sql_game.data.repository.Callback;
+import com.example.sql_game.util.AndroidSqlEngine;
+import com.example.sql_game.util.ColumnarResultTable;
+import com.example.sql_game.util.DmlDelta;
+import com.example.sql_game.util.PagedTableSource;
+import com.example.sql_game.util.QueryCheck;
+import com.example.sql_game.util.ResultDiff;
+import com.example.sql_game.util.ResultTable;
+import com.example.sql_game.util.SandboxExecutor;
+import com.example.sql_game.util.SandboxMetrics;
 import com.example.sql_game.util.SqlExecutor.ExecutionResult;
+import com.example.sql_game.util.VariantGrader;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -126,6 +142,11 @@ public class LessonPlayActivity extends AppCompatActivity implements TaskPromptA
     private static final int CRYSTAL_BONUS_FOR_LESSON = 50;
     private static final int XP_BONUS_FOR_LESSON = 100;
 
+    // Исходная таблица длиннее MAX_WRAPPED_SOURCE_ROWS прокручивается в окне фиксированной высоты:
+    // RecyclerView с высотой wrap_content внутри NestedScrollView создал бы представления всех строк
+    private static final int MAX_WRAPPED_SOURCE_ROWS = 20;
+    private static final int SOURCE_TABLE_MAX_HEIGHT_DP = 320;
+
     // --- Общие элементы UI ---
     private TextView lessonTitle;
     private Button checkButton;
@@ -133,6 +154,8 @@ public class LessonPlayActivity extends AppCompatActivity implements TaskPromptA
     private TextView statusMessage;
     private TextView resultTitle;
     private RecyclerView resultTable;
+    // Отладочная панель метрик песочницы
+    private TextView debugMetricsOverlay;
 
     // --- Контейнеры для переключения режимов ---
     private LinearLayout theoryContainer;
@@ -146,14 +169,21 @@ public class LessonPlayActivity extends AppCompatActivity implements TaskPromptA
     private RecyclerView recyclerViewTasks;
     private TextView sourceTableTitle;
     private RecyclerView recyclerViewSourceTable;
+    // Показанная постраничная исходная таблица (null - таблица загружена целиком или не показана)
+    private PagedTableSource sourceTable;
     private EditText sqlInput;
     private Button buttonExecuteQuery;
     private Button buttonHint;
+    private Button buttonUndoStatement;
+    private Button buttonResetTask;
 
     // Ресурсы данных
     private LessonModel currentLesson;
     private final LessonRepository repository = LessonRepository.getInstance();
-    private final SqlExecutor sqlExecutor = new SqlExecutor();
+    // Песочница SQL, все обращения к базе выполняются в ее собственном потоке
+    private final SandboxExecutor sandbox = new SandboxExecutor();
+    // Проверка верных на исходных данных ответов на случайных вариантах данных задания (свои песочницы и потоки)
+    private final VariantGrader variantGrader = new VariantGrader(AndroidSqlEngine.FACTORY);
     private TaskPromptAdapter taskAdapter;
     private TaskModel currentTask;
 
@@ -169,6 +199,14 @@ public class LessonPlayActivity extends AppCompatActivity implements TaskPromptA
         // Инициализация GameProgressManager с контекстом
         progressManager = new GameProgressManager(getApplicationContext());
 
+        // Строки больших результатов и файлы шаблонов хранятся в кэше приложения
+        final File spillDirectory = getCacheDir();
+        sandbox.submit(executor -> {
+            executor.setSpillDirectory(spillDirectory);
+            executor.setTemplateDirectory(spillDirectory);
+            return null;
+        }, null);
+
         initViews();
         setupTasksRecyclerView();
         updateToolbarStats(); // Обновляем статистику при старте
@@ -206,6 +244,7 @@ public class LessonPlayActivity extends AppCompatActivity implements TaskPromptA
         resultTitle = findViewById(R.id.text_result_title);
         resultTable = findViewById(R.id.result_table);
         checkButton = findViewById(R.id.check_button);
+        debugMetricsOverlay = findViewById(R.id.debug_metrics_overlay);
 
         // Контейнеры
         theoryContainer = findViewById(R.id.theory_container);
@@ -222,13 +261,44 @@ public class LessonPlayActivity extends AppCompatActivity implements TaskPromptA
         sqlInput = findViewById(R.id.sql_input);
         buttonExecuteQuery = findViewById(R.id.button_execute_query);
         buttonHint = findViewById(R.id.button_hint);
+        buttonUndoStatement = findViewById(R.id.button_undo_statement);
+        buttonResetTask = findViewById(R.id.button_reset_task);
 
         // Обработчики кликов
         buttonExecuteQuery.setOnClickListener(v -> executeUserQuery());
         buttonHint.setOnClickListener(v -> showHint());
+        buttonUndoStatement.setOnClickListener(v -> restoreTaskData(false));
+        buttonResetTask.setOnClickListener(v -> restoreTaskData(true));
 
         // Кнопка Назад из Тулбара
         findViewById(R.id.button_back).setOnClickListener(v -> finish());
+
+        // Панель метрик доступна только в отладочных сборках
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            lessonTitle.setOnLongClickListener(v -> {
+                toggleMetricsOverlay();
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Показывает или скрывает отладочную панель метрик песочницы (SandboxMetrics).
+     */
+    private void toggleMetricsOverlay() {
+        boolean show = debugMetricsOverlay.getVisibility() != View.VISIBLE;
+        debugMetricsOverlay.setVisibility(show ? View.VISIBLE : View.GONE);
+        refreshMetricsOverlay();
+    }
+
+    /**
+     * Обновляет текст панели метрик, если она открыта. Снимок читается без блокировок,
+     * поэтому его можно брать в главном потоке, пока песочница выполняет запросы.
+     */
+    private void refreshMetricsOverlay() {
+        if (debugMetricsOverlay.getVisibility() == View.VISIBLE) {
+            debugMetricsOverlay.setText(SandboxMetrics.global().dump());
+        }
     }
 
     /**
@@ -289,7 +359,9 @@ public class LessonPlayActivity extends AppCompatActivity implements TaskPromptA
                 ", Тип: " + currentTask.getType().name());
 
 
-        // 1. Настройка базы данных для текущего задания
+        // 1. Настройка базы данных для текущего задания.
+        // Результаты запросов предыдущего задания больше не нужны.
+        sandbox.cancelStale();
         String setupSql = currentTask.getDatabaseSetupSql();
         setupDatabase(setupSql);
 
@@ -378,16 +450,52 @@ public class LessonPlayActivity extends AppCompatActivity implements TaskPromptA
     }
 
     /**
-     * Настраивает in-memory базу данных с помощью скрипта задания.
+     * Настраивает in-memory базу данных с помощью скрипта задания (в потоке песочницы).
      */
     private void setupDatabase(String setupSql) {
         if (setupSql == null) return;
-        ExecutionResult setupResult = sqlExecutor.executeSetup(setupSql);
-        if (!setupResult.isSuccess) {
-            Log.e(TAG, "Настройка БД не удалась: " + setupResult.errorMessage);
-        } else {
-            Log.d(TAG, "Настройка БД прошла успешно.");
-        }
+        sandbox.submit(executor -> executor.executeSetup(setupSql), new Callback<ExecutionResult>() {
+            @Override
+            public void onSuccess(ExecutionResult setupResult) {
+                if (!setupResult.isSuccess) {
+                    Log.e(TAG, "Настройка БД не удалась: " + setupResult.errorMessage);
+                } else {
+                    Log.d(TAG, "Настройка БД прошла успешно.");
+                }
+                refreshMetricsOverlay();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.e(TAG, "Настройка БД не удалась", e);
+            }
+        });
+    }
+
+    /**
+     * Отменяет изменения данных задания без повторной настройки базы:
+     * последнюю изменяющую команду или все команды сразу (сброс задания).
+     * После отмены в исходной таблице обновляются отмененные строки.
+     * @param resetAll true - вернуть данные к состоянию после настройки, false - отменить последнюю команду.
+     */
+    private void restoreTaskData(boolean resetAll) {
+        final TaskModel task = currentTask;
+        if (task == null || task.getType() != TaskType.PRACTICE) return;
+        sandbox.submit(executor -> resetAll ? executor.resetSandbox() : executor.undoLastStatement(),
+                new Callback<ExecutionResult>() {
+                    @Override
+                    public void onSuccess(ExecutionResult result) {
+                        displayExecutionResult(result);
+                        if (result.isSuccess) {
+                            refreshSourceTable(task.getDatabaseSetupSql());
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        displayExecutionResult(new ExecutionResult(e.getMessage() != null ? e.getMessage() : e.toString()));
+                    }
+                });
     }
 
     /**
@@ -408,24 +516,71 @@ public class LessonPlayActivity extends AppCompatActivity implements TaskPromptA
 
         if (tableName == null) {
             Log.e(TAG, "Не удалось извлечь имя таблицы из setup SQL. Отображаю пустую таблицу.");
-            displaySourceTable(java.util.Collections.emptyList(), java.util.Collections.emptyList());
+            displaySourceTable(null);
             return;
         }
 
-        // 3. Выполняем SELECT * на всю таблицу
-        String initialQuery = "SELECT * FROM " + tableName.trim() + ";";
-        ExecutionResult result = sqlExecutor.executeQuery(initialQuery);
+        // 3. Открываем таблицу постранично: число строк и первая страница читаются сразу, остальные - при прокрутке.
+        // Задача встает в очередь песочницы после настройки базы.
+        String trimmedTableName = tableName.trim();
+        PagedTableSource.open(sandbox, trimmedTableName, new Callback<PagedTableSource>() {
+            @Override
+            public void onSuccess(PagedTableSource source) {
+                if (source.getColumnCount() > 0 && source.getRowCount() > 0) {
+                    displaySourceTable(source, setupSql);
+                } else {
+                    Log.e(TAG, "Исходная таблица " + trimmedTableName + " пуста.");
+                    displaySourceTable(null);
+                }
+            }
 
-        if (result.isSuccess && !result.resultData.isEmpty()) {
-            displaySourceTable(result.resultColumns, result.resultData);
+            @Override
+            public void onFailure(Exception e) {
+                // Таблица без rowid (WITHOUT ROWID) не читается по ключу - загружаем ее целиком
+                Log.w(TAG, "Постраничная загрузка таблицы " + trimmedTableName + " недоступна.", e);
+                loadWholeSourceTable(trimmedTableName);
+            }
+        });
+    }
+
+    /**
+     * Показывает в исходной таблице изменения данных задания: постраничная таблица обновляет только
+     * измененные строки (PagedTableSource.refresh()), а таблица, загруженная целиком, перечитывается.
+     */
+    private void refreshSourceTable(String setupSql) {
+        if (sourceTable != null) {
+            sourceTable.refresh();
         } else {
-            // Если SELECT не сработал или таблица пуста, выводим ошибку и пустую таблицу
-            Log.e(TAG, "Ошибка загрузки исходной таблицы. Запрос: " + initialQuery +
-                    ", Ошибка: " + (result.errorMessage != null ? result.errorMessage : "Нет данных"));
-            displaySourceTable(java.util.Collections.emptyList(), java.util.Collections.emptyList());
+            loadInitialTableData(setupSql);
         }
     }
 
+    /**
+     * Загружает исходную таблицу целиком (SELECT *). Пока база не изменялась, результат берется из кэша шаблона.
+     */
+    private void loadWholeSourceTable(String tableName) {
+        String initialQuery = "SELECT * FROM " + tableName + ";";
+        sandbox.submit(executor -> executor.queryInitialTable(tableName), new Callback<ExecutionResult>() {
+            @Override
+            public void onSuccess(ExecutionResult result) {
+                if (result.isSuccess && result.resultTable.getRowCount() > 0) {
+                    displaySourceTable(result.resultTable);
+                } else {
+                    // Если SELECT не сработал или таблица пуста, выводим ошибку и пустую таблицу
+                    Log.e(TAG, "Ошибка загрузки исходной таблицы. Запрос: " + initialQuery +
+                            ", Ошибка: " + (result.errorMessage != null ? result.errorMessage : "Нет данных"));
+                    displaySourceTable(null);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.e(TAG, "Ошибка загрузки исходной таблицы. Запрос: " + initialQuery, e);
+                displaySourceTable(null);
+            }
+        });
+    }
+
     /**
      * Попытка извлечь первое имя таблицы после CREATE TABLE из скрипта.
      */
@@ -488,16 +643,45 @@ public class LessonPlayActivity extends AppCompatActivity implements TaskPromptA
             return;
         }
 
-        // Выполняем запрос
-        ExecutionResult result = sqlExecutor.executeQuery(userQuery);
-        displayExecutionResult(result);
+        // Запрос, эталонный запрос и сравнение выполняются в потоке песочницы.
+        // Повторная отправка отменяет предыдущий, еще не завершенный запрос.
+        final TaskModel task = currentTask;
+        sandbox.submitLatest(executor -> {
+            // Выполняем запрос с ограничением по времени и числу строк,
+            // чтобы случайное декартово произведение не подвесило приложение
+            ExecutionResult result = executor.executeLimitedQuery(userQuery);
+
+            // Если запрос был успешен и подлежит проверке, сверяем его с эталоном
+            // (задание на изменение данных проверяет изменяющие команды, остальные - запросы с результатом)
+            if (!QueryCheck.shouldGrade(task, result)) {
+                return QueryCheck.notChecked(result);
+            }
 
-        // Если запрос был успешен и это SELECT, переходим к проверке
-        if (result.isSuccess && userQuery.toUpperCase().startsWith("SELECT")) {
-            checkUserQuery(userQuery, result.resultColumns, result.resultData);
-        }
+            // Отпечаток эталона, полное сравнение с учетом режима задания и разница для подсветки ошибок
+            QueryCheck check = QueryCheck.grade(executor, task, result, true);
+            // Ответ, верный на исходных данных, проверяется и на вариантах (не дольше бюджета VariantGrader)
+            return check.isCorrect ? check.withVariants(variantGrader.check(task, userQuery)) : check;
+        }, new Callback<QueryCheck>() {
+            @Override
+            public void onSuccess(QueryCheck check) {
+                displayExecutionResult(check.userResult);
+                if (check.userResult.isSuccess && check.userResult.resultColumns.isEmpty()) {
+                    // Изменяющая команда: обновляем затронутые строки исходной таблицы
+                    refreshSourceTable(task.getDatabaseSetupSql());
+                }
+                if (QueryCheck.shouldGrade(task, check.userResult)) {
+                    checkUserQuery(task, check);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                displayExecutionResult(new ExecutionResult(e.getMessage() != null ? e.getMessage() : e.toString()));
+            }
+        });
     }
 
+
     /**
      * Отображает результат выполнения запроса (успех/ошибка и данные).
      */
@@ -514,30 +698,93 @@ public class LessonPlayActivity extends AppCompatActivity implements TaskPromptA
         if (result.isSuccess) {
             if (result.resultColumns != null && !result.resultColumns.isEmpty()) {
                 // Успешный SELECT запрос
-                statusMessage.setText(getString(R.string.query_result_success_rows, result.resultData.size()));
+                statusMessage.setText(getString(R.string.query_result_success_rows, result.resultTable.getRowCount()));
                 statusLayout.setBackgroundColor(colorSuccess);
-                updateTableDisplay(resultTable, result.resultColumns, result.resultData);
+                updateTableDisplay(resultTable, result.resultTable);
                 resultTitle.setVisibility(View.VISIBLE); // Показываем заголовок "Результат"
             } else {
                 // Успешная DML/DDL команда
-                statusMessage.setText(result.errorMessage != null ? result.errorMessage : "Запрос успешно выполнен.");
+                String message = result.errorMessage != null ? result.errorMessage : "Запрос успешно выполнен.";
                 statusLayout.setBackgroundColor(colorInfo);
+                if (result.dmlDelta != null) {
+                    showDmlDelta(message, result.dmlDelta);
+                } else {
+                    statusMessage.setText(message);
+                }
             }
+        } else if (result.isCancelled) {
+            // Запрос прерван по времени или по числу строк
+            statusMessage.setText(getString(R.string.query_result_cancelled, result.errorMessage));
+            statusLayout.setBackgroundColor(colorError);
         } else {
             // Ошибка выполнения
             statusMessage.setText(getString(R.string.query_result_error, result.errorMessage));
             statusLayout.setBackgroundColor(colorError);
         }
+        refreshMetricsOverlay();
+    }
+
+    /**
+     * Показывает, что изменила команда: сводку по первой измененной таблице и ее строки в таблице результатов
+     * ("+" - вставленная, "-" - удаленная, "~" - измененная, измененные ячейки в виде "старое → новое").
+     */
+    private void showDmlDelta(String message, DmlDelta delta) {
+        if (delta.isEmpty()) {
+            statusMessage.setText(getString(R.string.dml_delta_no_changes, message));
+            return;
+        }
+        DmlDelta.TableDelta table = delta.tables.get(0);
+        String summary = getString(R.string.dml_delta_summary, message, table.tableName,
+                table.insertedCount, table.deletedCount, table.updatedCount, table.changedCellCount);
+        if (table.isTruncated()) {
+            summary += " " + getString(R.string.dml_delta_truncated, DmlDelta.MAX_ROWS);
+        }
+        statusMessage.setText(summary);
+        updateTableDisplay(resultTable, buildDeltaTable(table));
+        resultTitle.setVisibility(View.VISIBLE);
+    }
+
+    private static ResultTable buildDeltaTable(DmlDelta.TableDelta delta) {
+        List<String> columns = new ArrayList<>();
+        columns.add("");
+        columns.addAll(delta.columnNames);
+        ColumnarResultTable.Builder builder = new ColumnarResultTable.Builder(columns,
+                delta.insertedRows.getRowCount() + delta.deletedRows.getRowCount() + delta.newRows.getRowCount());
+        appendDeltaRows(builder, "+", delta.insertedRows);
+        appendDeltaRows(builder, "-", delta.deletedRows);
+        for (int row = 0; row < delta.newRows.getRowCount(); row++) {
+            builder.appendString(0, "~");
+            List<String> newValues = delta.newRows.getRow(row);
+            for (int column = 0; column < newValues.size(); column++) {
+                boolean isChanged = Arrays.binarySearch(delta.changedColumns[row], column) >= 0;
+                builder.appendString(column + 1, isChanged
+                        ? delta.oldRows.getRow(row).get(column) + " → " + newValues.get(column)
+                        : newValues.get(column));
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    private static void appendDeltaRows(ColumnarResultTable.Builder builder, String mark, ResultTable rows) {
+        for (int row = 0; row < rows.getRowCount(); row++) {
+            builder.appendString(0, mark);
+            List<String> values = rows.getRow(row);
+            for (int column = 0; column < values.size(); column++) {
+                builder.appendString(column + 1, values.get(column));
+            }
+            builder.endRow();
+        }
     }
 
     /**
      * Универсальный метод для отображения данных в RecyclerView.
      */
-    private void updateTableDisplay(RecyclerView targetRecyclerView, List<String> columns, List<List<String>> data) {
+    private void updateTableDisplay(RecyclerView targetRecyclerView, ResultTable table) {
         TableDataAdapter dataAdapter = new TableDataAdapter();
         targetRecyclerView.setLayoutManager(new LinearLayoutManager(this, LinearLayoutManager.VERTICAL, false));
 
-        dataAdapter.updateData(columns, data);
+        dataAdapter.updateData(table);
 
         targetRecyclerView.setAdapter(dataAdapter);
         targetRecyclerView.setVisibility(View.VISIBLE);
@@ -546,55 +793,96 @@ public class LessonPlayActivity extends AppCompatActivity implements TaskPromptA
     /**
      * Отображает данные в recyclerViewSourceTable для исходных данных.
      */
-    private void displaySourceTable(List<String> columns, List<List<String>> data) {
-        if (columns == null || columns.isEmpty() || data.isEmpty()) {
+    private void displaySourceTable(ResultTable table) {
+        sourceTable = null;
+        if (table == null || table.getColumnCount() == 0 || table.getRowCount() == 0) {
             recyclerViewSourceTable.setVisibility(View.GONE);
             return;
         }
 
-        updateTableDisplay(recyclerViewSourceTable, columns, data);
+        setSourceTableHeightLimited(table.getRowCount() > MAX_WRAPPED_SOURCE_ROWS);
+        updateTableDisplay(recyclerViewSourceTable, table);
         recyclerViewSourceTable.setVisibility(View.VISIBLE);
     }
 
+    /**
+     * Отображает исходную таблицу, строки которой загружаются страницами при прокрутке.
+     * Изменения данных применяются к показанным строкам (refreshSourceTable()); если их нельзя
+     * применить, таблица будет открыта заново.
+     */
+    private void displaySourceTable(PagedTableSource source, String setupSql) {
+        sourceTable = source;
+        TableDataAdapter dataAdapter = new TableDataAdapter();
+        recyclerViewSourceTable.setLayoutManager(new LinearLayoutManager(this, LinearLayoutManager.VERTICAL, false));
+        dataAdapter.updateData(source, () -> loadInitialTableData(setupSql));
+
+        setSourceTableHeightLimited(source.getRowCount() > MAX_WRAPPED_SOURCE_ROWS);
+        recyclerViewSourceTable.setAdapter(dataAdapter);
+        recyclerViewSourceTable.setVisibility(View.VISIBLE);
+    }
+
+    private void setSourceTableHeightLimited(boolean limited) {
+        ViewGroup.LayoutParams params = recyclerViewSourceTable.getLayoutParams();
+        params.height = limited
+                ? Math.round(SOURCE_TABLE_MAX_HEIGHT_DP * getResources().getDisplayMetrics().density)
+                : ViewGroup.LayoutParams.WRAP_CONTENT;
+        recyclerViewSourceTable.setLayoutParams(params);
+    }
+
+    /**
+     * Подсвечивает в таблице результатов отличия от эталона: лишние строки, измененные ячейки
+     * и недостающие строки (добавляются в конец таблицы).
+     */
+    private void showResultDiff(ResultDiff diff) {
+        if (resultTable.getAdapter() instanceof TableDataAdapter) {
+            ((TableDataAdapter) resultTable.getAdapter()).setDiff(diff);
+        }
+    }
+
     /**
      * Очищает таблицу результатов.
      */
     private void clearResultsTable() {
         if (resultTable.getAdapter() instanceof TableDataAdapter) {
-            ((TableDataAdapter) resultTable.getAdapter()).updateData(null, null);
+            ((TableDataAdapter) resultTable.getAdapter()).clearData();
         }
         resultTable.setVisibility(View.GONE);
     }
 
 
-    private void checkUserQuery(String userQuery, List<String> userColumns, List<List<String>> userData) {
-        String expectedQuery = currentTask.getExpectedResult();
-        int crystalReward = currentTask.getCrystalReward();
+    /**
+     * Показывает результат проверки запроса (сравнение уже выполнено в потоке песочницы).
+     */
+    private void checkUserQuery(TaskModel task, QueryCheck check) {
+        ExecutionResult userResult = check.userResult;
+        ExecutionResult expectedResult = check.expectedResult;
+        int crystalReward = task.getCrystalReward();
 
-        if (expectedQuery == null || expectedQuery.isEmpty()) {
+        if (!check.isChecked) {
             Log.w(TAG, "У задания нет ожидаемого результата. Проверка пропущена.");
             return;
         }
 
-        ExecutionResult expectedResult = sqlExecutor.executeQuery(expectedQuery);
-
-        if (!expectedResult.isSuccess) {
+        if (expectedResult != null && !expectedResult.isSuccess) {
             Log.e(TAG, "Ожидаемый запрос не удалось выполнить: " + expectedResult.errorMessage);
             return;
         }
 
-        boolean isCorrect = compareResults(userColumns, userData, expectedResult.resultColumns, expectedResult.resultData);
+        boolean isCorrect = check.isCorrect;
 
         int colorSuccess = ContextCompat.getColor(this, R.color.color_success);
         int colorError = ContextCompat.getColor(this, R.color.colorError);
 
         if (isCorrect) {
             // Задание выполнено!
+            if (check.variantResult != null && check.variantResult.isInconclusive()) {
+                Log.w(TAG, "Ответ засчитан по исходным данным, варианты не проверены: " + check.variantResult);
+            }
             int actualCrystalReward = crystalReward > 0 ? crystalReward : CRYSTAL_REWARD_PER_TASK;
             int actualXpReward = XP_REWARD_PER_TASK;
 
             // 1. Обновление статуса и начисление награды
-            handleTaskCompletion(currentTask, actualCrystalReward, actualXpReward);
+            handleTaskCompletion(task, actualCrystalReward, actualXpReward);
 
             // 2. Обновление статуса UI: Правильный ответ
             statusMessage.setText(String.format("Задание выполнено верно! Награда: %d кристаллов, %d XP.",
@@ -602,44 +890,41 @@ public class LessonPlayActivity extends AppCompatActivity implements TaskPromptA
             statusLayout.setBackgroundColor(colorSuccess);
 
             // 3. Настройка кнопки навигации
-            setupNavigationButtonAfterCompletion(currentTask);
+            setupNavigationButtonAfterCompletion(task);
 
 
         } else {
-            // Задание не выполнено
-            statusMessage.setText(getString(R.string.query_result_incorrect));
-            statusLayout.setBackgroundColor(colorError);
-            Log.d(TAG, "Запрос неверный. Пользовательских строк: " + userData.size() +
-                    ", Ожидаемых строк: " + expectedResult.resultData.size());
-        }
-    }
-
-    private boolean compareResults(List<String> userColumns, List<List<String>> userData,
-                                   List<String> expectedColumns, List<List<String>> expectedData) {
-        // Проверка заголовков
-        if (!userColumns.equals(expectedColumns)) {
-            Log.d(TAG, "Заголовки столбцов не совпадают.");
-            return false;
-        }
-
-        // Проверка количества строк
-        if (userData.size() != expectedData.size()) {
-            Log.d(TAG, "Количество строк не совпадает.");
-            return false;
-        }
-
-        // Проверка содержимого строк
-        for (int i = 0; i < userData.size(); i++) {
-            if (!userData.get(i).equals(expectedData.get(i))) {
-                Log.d(TAG, "Содержимое строки не совпадает в индексе " + i);
-                return false;
+            // Задание не выполнено: показываем, чем результат отличается от ожидаемого
+            if (check.variantResult != null && !check.variantResult.isPassed()) {
+                // Совпало только на исходных данных: вероятно, условие привязано к конкретным значениям
+                statusMessage.setText(getString(R.string.query_variant_incorrect, check.variantResult.failedVariant));
+            } else if (check.stateComparison != null) {
+                // Данные после команды: названия расходящихся таблиц и разница первой из них
+                String tables = TextUtils.join(", ", check.stateComparison.mismatchedTables);
+                statusMessage.setText(check.diff != null
+                        ? getString(R.string.query_state_incorrect_diff, tables, check.diff.getSummary())
+                        : getString(R.string.query_state_incorrect, tables));
+                if (check.diff != null) {
+                    resultTable.setVisibility(View.VISIBLE);
+                    showResultDiff(check.diff);
+                }
+            } else if (check.diff != null) {
+                statusMessage.setText(getString(R.string.query_result_incorrect_diff, check.diff.getSummary()));
+                showResultDiff(check.diff);
+            } else {
+                statusMessage.setText(getString(R.string.query_result_incorrect));
             }
+            statusLayout.setBackgroundColor(colorError);
+            Log.d(TAG, "Запрос неверный. Пользовательских строк: " + userResult.resultTable.getRowCount() +
+                    ", Ожидаемых строк: " + (expectedResult != null
+                    ? expectedResult.resultTable.getRowCount()
+                    : "см. отпечаток") +
+                    (check.comparison != null ? ", первое расхождение: " + check.comparison : "") +
+                    (check.stateComparison != null ? ", данные: " + check.stateComparison : "") +
+                    (check.variantResult != null ? ", варианты: " + check.variantResult : ""));
         }
-
-        return true;
     }
 
-
     /**
      * Обрабатывает завершение задания (обновляет статус, начисляет награду и XP).
      */
@@ -757,6 +1042,8 @@ public class LessonPlayActivity extends AppCompatActivity implements TaskPromptA
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        sqlExecutor.closeDatabase();
+        // Отменяем незавершенные запросы и закрываем базу в потоке песочницы
+        sandbox.shutdown();
+        variantGrader.shutdown();
     }
 }
\ No newline at end of file
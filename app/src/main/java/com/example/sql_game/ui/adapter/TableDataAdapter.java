@@ -10,18 +10,37 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.sql_game.R;
+import com.example.sql_game.util.PagedTableSource;
+import com.example.sql_game.util.ResultDiff;
+import com.example.sql_game.util.ResultRow;
+import com.example.sql_game.util.ResultTable;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Адаптер для отображения результатов SQL-запроса (заголовки и строки)
  * в горизонтальном RecyclerView.
+ * Если задана разница с эталоном (setDiff()), лишние строки и измененные ячейки подсвечиваются,
+ * а недостающие строки эталона выводятся после строк результата.
+ * Большие таблицы песочницы показываются постранично (updateData(PagedTableSource)): строки
+ * еще не загруженной страницы выводятся пустыми и заполняются после ее загрузки.
+ * Изменения такой таблицы (PagedTableSource.refresh()) применяются к отдельным строкам: измененная строка
+ * перепривязывается с payload PAYLOAD_CELLS, и ее ячейки обновляются на месте, без создания новых View.
  */
 public class TableDataAdapter extends RecyclerView.Adapter<TableDataAdapter.ViewHolder> {
 
-    private List<String> columns = new ArrayList<>();
-    private List<List<String>> data = new ArrayList<>();
+    // Payload notifyItemChanged(): изменились только значения или подсветка ячеек строки
+    private static final Object PAYLOAD_CELLS = new Object();
+
+    // Результат запроса. Адаптер читает строки прямо из таблицы, без копирования:
+    // строки SpilledResultTable декодируются постранично только при прокрутке до них.
+    private ResultTable table;
+    // Разница с эталонным результатом для подсветки (null - без подсветки)
+    private ResultDiff diff;
+    // Постраничный источник строк (null - строки берутся из table)
+    private PagedTableSource pagedSource;
 
     public TableDataAdapter() {
         // Пустой конструктор для инициализации
@@ -30,18 +49,67 @@ public class TableDataAdapter extends RecyclerView.Adapter<TableDataAdapter.View
     /**
      * Обновляет данные адаптера.
      *
-     * @param newColumns Заголовки столбцов.
-     * @param newData Данные строк.
+     * @param newTable Результат запроса (заголовки и строки) или null.
      */
-    public void updateData(List<String> newColumns, List<List<String>> newData) {
-        this.columns.clear();
-        this.data.clear();
-        if (newColumns != null) {
-            this.columns.addAll(newColumns);
-        }
-        if (newData != null) {
-            this.data.addAll(newData);
+    public void updateData(ResultTable newTable) {
+        detachPagedSource();
+        this.table = newTable;
+        this.diff = null;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Показывает таблицу, строки которой загружаются страницами при прокрутке.
+     *
+     * @param source Открытый источник строк.
+     * @param onInvalidated Вызывается, если таблица изменилась и ее нужно открыть заново.
+     */
+    public void updateData(PagedTableSource source, Runnable onInvalidated) {
+        detachPagedSource();
+        this.table = null;
+        this.diff = null;
+        this.pagedSource = source;
+        source.setListener(new PagedTableSource.Listener() {
+            @Override
+            public void onRowsLoaded(int firstRow, int rowCount) {
+                // Позиция 0 - заголовки
+                notifyItemRangeChanged(firstRow + 1, rowCount);
+            }
+
+            @Override
+            public void onRowsInserted(int firstRow, int rowCount) {
+                notifyItemRangeInserted(firstRow + 1, rowCount);
+            }
+
+            @Override
+            public void onRowsRemoved(int firstRow, int rowCount) {
+                notifyItemRangeRemoved(firstRow + 1, rowCount);
+            }
+
+            @Override
+            public void onRowChanged(int row) {
+                notifyItemChanged(row + 1, PAYLOAD_CELLS);
+            }
+
+            @Override
+            public void onInvalidated() {
+                onInvalidated.run();
+            }
+        });
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Показывает отличия результата от эталона.
+     *
+     * @param newDiff Разница, вычисленная для текущей таблицы, или null, чтобы убрать подсветку.
+     */
+    public void setDiff(ResultDiff newDiff) {
+        if (newDiff != null) {
+            detachPagedSource();
+            this.table = newDiff.userTable;
         }
+        this.diff = newDiff;
         notifyDataSetChanged();
     }
 
@@ -49,8 +117,9 @@ public class TableDataAdapter extends RecyclerView.Adapter<TableDataAdapter.View
      * Очищает данные адаптера.
      */
     public void clearData() {
-        this.columns.clear();
-        this.data.clear();
+        detachPagedSource();
+        this.table = null;
+        this.diff = null;
         notifyDataSetChanged();
     }
 
@@ -64,21 +133,74 @@ public class TableDataAdapter extends RecyclerView.Adapter<TableDataAdapter.View
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         // Первая строка (position 0) - это заголовки
-        if (position == 0) {
-            holder.bind(columns);
+        if (pagedSource != null) {
+            bindPaged(holder, position);
+        } else if (position == 0) {
+            holder.bind(table.getColumnNames());
             holder.itemView.setBackgroundResource(R.drawable.table_row_background_header);
+        } else if (position <= table.getRowCount()) {
+            // Остальные строки - данные (представление строки таблицы)
+            int row = position - 1;
+            if (diff != null && diff.isExtraRow(row)) {
+                holder.bind(table.getRow(row), R.drawable.table_cell_background_extra, null);
+            } else {
+                holder.bind(table.getRow(row), R.drawable.table_cell_background,
+                        diff != null ? diff.getChangedColumns(row) : null);
+            }
+            holder.itemView.setBackgroundResource(R.drawable.table_row_background);
         } else {
-            // Остальные строки - данные
-            List<String> rowData = data.get(position - 1);
-            holder.bind(rowData);
+            // Недостающие строки эталона - после строк результата
+            int expectedRow = diff.missingRows[position - 1 - table.getRowCount()];
+            holder.bind(diff.expectedTable.getRow(expectedRow), R.drawable.table_cell_background_missing, null);
             holder.itemView.setBackgroundResource(R.drawable.table_row_background);
         }
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (pagedSource != null && position > 0 && payloads.contains(PAYLOAD_CELLS)) {
+            ResultRow row = pagedSource.getRow(position - 1);
+            if (row != null && holder.updateCells(row, pagedSource.getChangedColumns(position - 1))) {
+                return;
+            }
+        }
+        onBindViewHolder(holder, position);
+    }
+
+    private void bindPaged(ViewHolder holder, int position) {
+        if (position == 0) {
+            holder.bind(pagedSource.getColumnNames());
+            holder.itemView.setBackgroundResource(R.drawable.table_row_background_header);
+            return;
+        }
+        ResultRow row = pagedSource.getRow(position - 1);
+        if (row != null) {
+            holder.bind(row, R.drawable.table_cell_background, pagedSource.getChangedColumns(position - 1));
+        } else {
+            // Страница загружается: пустые ячейки до уведомления onRowsLoaded()
+            holder.bind(Collections.nCopies(pagedSource.getColumnCount(), ""));
+        }
+        holder.itemView.setBackgroundResource(R.drawable.table_row_background);
+    }
+
+    private void detachPagedSource() {
+        if (pagedSource != null) {
+            pagedSource.setListener(null);
+            pagedSource = null;
+        }
+    }
+
     // Общее количество элементов = 1 (заголовок) + количество строк данных
     @Override
     public int getItemCount() {
-        return data.size() + (columns.isEmpty() ? 0 : 1);
+        if (pagedSource != null) {
+            return pagedSource.getColumnCount() == 0 ? 0 : pagedSource.getRowCount() + 1;
+        }
+        if (table == null || table.getColumnCount() == 0) {
+            return 0;
+        }
+        int missingRowCount = diff != null && diff.columnsMatch ? diff.missingRows.length : 0;
+        return table.getRowCount() + missingRowCount + 1;
     }
 
     /**
@@ -95,15 +217,25 @@ public class TableDataAdapter extends RecyclerView.Adapter<TableDataAdapter.View
         }
 
         public void bind(List<String> rowData) {
+            bind(rowData, R.drawable.table_cell_background, null);
+        }
+
+        /**
+         * @param cellBackground     Фон ячеек строки.
+         * @param changedColumns     Столбцы (по возрастанию), ячейки которых подсвечиваются как измененные, или null.
+         */
+        public void bind(List<String> rowData, int cellBackground, int[] changedColumns) {
             rowContainer.removeAllViews(); // Очищаем старые ячейки
 
-            for (String cellValue : rowData) {
+            for (int column = 0; column < rowData.size(); column++) {
                 // Создаем TextView для каждой ячейки
                 TextView cellView = new TextView(rowContainer.getContext());
-                cellView.setText(cellValue);
+                cellView.setText(rowData.get(column));
                 cellView.setPadding(16, 16, 16, 16);
                 cellView.setSingleLine(true);
-                cellView.setBackgroundResource(R.drawable.table_cell_background); // Фон для ячейки
+                // Фон для ячейки
+                boolean isChanged = changedColumns != null && Arrays.binarySearch(changedColumns, column) >= 0;
+                cellView.setBackgroundResource(isChanged ? R.drawable.table_cell_background_changed : cellBackground);
 
                 // Настраиваем параметры макета
                 LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
@@ -116,5 +248,24 @@ public class TableDataAdapter extends RecyclerView.Adapter<TableDataAdapter.View
                 rowContainer.addView(cellView);
             }
         }
+
+        /**
+         * Обновляет значения и подсветку уже созданных ячеек строки.
+         *
+         * @return false, если число ячеек не совпадает и строку нужно привязать заново.
+         */
+        public boolean updateCells(List<String> rowData, int[] changedColumns) {
+            if (rowContainer.getChildCount() != rowData.size()) {
+                return false;
+            }
+            for (int column = 0; column < rowData.size(); column++) {
+                TextView cellView = (TextView) rowContainer.getChildAt(column);
+                cellView.setText(rowData.get(column));
+                boolean isChanged = changedColumns != null && Arrays.binarySearch(changedColumns, column) >= 0;
+                cellView.setBackgroundResource(isChanged ? R.drawable.table_cell_background_changed
+                        : R.drawable.table_cell_background);
+            }
+            return true;
+        }
     }
 }
\ No newline at end of file
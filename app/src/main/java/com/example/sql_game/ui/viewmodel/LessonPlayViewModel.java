@@ -6,12 +6,15 @@ import androidx.lifecycle.ViewModel;
 
 import com.example.sql_game.data.model.LessonModel;
 import com.example.sql_game.data.model.TaskModel;
+import com.example.sql_game.data.repository.Callback;
 import com.example.sql_game.data.repository.LessonRepository;
 import com.example.sql_game.data.repository.UserRepository;
-import com.example.sql_game.util.SqlExecutor;
+import com.example.sql_game.util.AndroidSqlEngine;
+import com.example.sql_game.util.PagedTableSource;
+import com.example.sql_game.util.QueryCheck;
+import com.example.sql_game.util.SandboxExecutor;
 import com.example.sql_game.util.SqlExecutor.ExecutionResult;
-
-import java.util.List;
+import com.example.sql_game.util.VariantGrader;
 
 /**
  * ViewModel для управления логикой выполнения урока и заданий.
@@ -33,7 +36,10 @@ public class LessonPlayViewModel extends ViewModel {
 
     private final LessonRepository lessonRepository = LessonRepository.getInstance();
     private final UserRepository userRepository = UserRepository.getInstance();
-    private final SqlExecutor sqlExecutor;
+    // Песочница SQL: все обращения к базе выполняются в ее собственном потоке
+    private final SandboxExecutor sandbox;
+    // Проверка верных на исходных данных ответов на случайных вариантах данных задания
+    private final VariantGrader variantGrader = new VariantGrader(AndroidSqlEngine.FACTORY);
 
     // --- LiveData для UI и данных ---
     private final MutableLiveData<TaskModel> currentTask = new MutableLiveData<>();
@@ -41,8 +47,8 @@ public class LessonPlayViewModel extends ViewModel {
     private final MutableLiveData<ExecutionResult> executionResultLiveData = new MutableLiveData<>();
     private final MutableLiveData<UIMode> uiMode = new MutableLiveData<>();
 
-    // LiveData для исходной таблицы
-    private final MutableLiveData<ExecutionResult> initialTableData = new MutableLiveData<>();
+    // LiveData для исходной таблицы (строки читаются страницами при прокрутке)
+    private final MutableLiveData<PagedTableSource> initialTableData = new MutableLiveData<>();
 
     // --- Локальное состояние урока ---
     private LessonModel currentLesson;
@@ -51,7 +57,7 @@ public class LessonPlayViewModel extends ViewModel {
     private String currentLessonId = null; // Добавлено для отслеживания текущего ID
 
     public LessonPlayViewModel() {
-        sqlExecutor = new SqlExecutor();
+        sandbox = new SandboxExecutor();
     }
 
     /**
@@ -74,7 +80,11 @@ public class LessonPlayViewModel extends ViewModel {
         currentLessonId = lessonId; // Устанавливаем новый ID
 
         // 2. Очищаем ресурсы БД, так как начинается новый урок
-        sqlExecutor.closeDatabase();
+        sandbox.cancelStale();
+        sandbox.submit(executor -> {
+            executor.closeDatabase();
+            return null;
+        }, null);
 
         // 3. Загрузка новых данных урока
         currentLesson = lessonRepository.getLessonById(lessonId);
@@ -133,14 +143,25 @@ public class LessonPlayViewModel extends ViewModel {
         executionMessage.setValue(null);
         initialTableData.setValue(null); // Сбрасываем старую таблицу
 
-        // 3. Настраиваем базу данных для этого задания
+        // 3. Настраиваем базу данных для этого задания (в потоке песочницы).
+        // Результаты запросов предыдущего задания больше не нужны.
+        sandbox.cancelStale();
         String setupSql = task.getDatabaseSetupSql();
         if (setupSql != null && !setupSql.isEmpty()) {
             // Выполняем скрипт настройки (CREATE TABLE, INSERT INTO)
-            ExecutionResult setupResult = sqlExecutor.executeSetup(setupSql);
-            if (!setupResult.isSuccess) {
-                executionMessage.setValue("Ошибка настройки БД: " + setupResult.errorMessage);
-            }
+            sandbox.submit(executor -> executor.executeSetup(setupSql), new Callback<ExecutionResult>() {
+                @Override
+                public void onSuccess(ExecutionResult setupResult) {
+                    if (!setupResult.isSuccess) {
+                        executionMessage.setValue("Ошибка настройки БД: " + setupResult.errorMessage);
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    executionMessage.setValue("Ошибка настройки БД: " + e.getMessage());
+                }
+            });
         }
 
         // 4. ЗАГРУЖАЕМ ИСХОДНЫЕ ДАННЫЕ ТАБЛИЦЫ
@@ -155,9 +176,19 @@ public class LessonPlayViewModel extends ViewModel {
         if (task.getType() == TaskModel.TaskType.PRACTICE) {
             String tableName = task.getTargetTableName(); // Предполагаем, что TaskModel имеет геттер для имени таблицы
             if (tableName != null && !tableName.isEmpty()) {
-                // Выполняем простой SELECT * для отображения исходных данных
-                ExecutionResult initialData = sqlExecutor.executeQuery("SELECT * FROM " + tableName + ";");
-                initialTableData.setValue(initialData);
+                // Открываем таблицу постранично: сразу читаются только число строк и первая страница.
+                // Задача встает в очередь песочницы после настройки базы.
+                PagedTableSource.open(sandbox, tableName, new Callback<PagedTableSource>() {
+                    @Override
+                    public void onSuccess(PagedTableSource source) {
+                        initialTableData.setValue(source);
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        executionMessage.setValue("Ошибка загрузки исходной таблицы: " + e.getMessage());
+                    }
+                });
             } else {
                 executionMessage.setValue("Предупреждение: Не указано имя целевой таблицы для задания.");
             }
@@ -203,51 +234,78 @@ public class LessonPlayViewModel extends ViewModel {
 
     /**
      * Проверяет SQL-запрос пользователя.
+     * Запрос, эталонный запрос и сравнение выполняются в потоке песочницы; результат публикуется
+     * в executionResultLiveData и executionMessage. Повторный вызов отменяет предыдущую проверку.
      * @param userQuery SQL-запрос, введенный пользователем.
-     * @return ExecutionResult с результатами или ошибкой.
      */
-    public ExecutionResult checkQuery(String userQuery) {
+    public void checkQuery(String userQuery) {
         TaskModel task = currentTask.getValue();
         if (task == null) {
             ExecutionResult result = new ExecutionResult("Нет активного задания.");
             executionMessage.setValue(result.errorMessage);
-            return result;
+            return;
         }
 
         if (task.getType() == TaskModel.TaskType.THEORY) {
             ExecutionResult result = new ExecutionResult("Это теоретическое задание. Нажмите 'Далее'.");
             executionMessage.setValue(result.errorMessage);
-            return result;
+            return;
         }
 
-        // Если задание уже выполнено, просто возвращаем старый результат и сообщение
-        if (task.isCompleted()) {
+        // Если задание уже выполнено, только показываем результат запроса
+        final boolean isAlreadyCompleted = task.isCompleted();
+        if (isAlreadyCompleted) {
             executionMessage.setValue("Задание уже выполнено. Нажмите 'Далее' или попробуйте другой запрос.");
-            // Выполняем запрос пользователя, чтобы показать результат
-            ExecutionResult userResult = sqlExecutor.executeQuery(userQuery);
-            executionResultLiveData.setValue(userResult);
-            return userResult;
         }
 
-        // 1. Выполняем запрос пользователя
-        ExecutionResult userResult = sqlExecutor.executeQuery(userQuery);
+        sandbox.submitLatest(executor -> {
+            // 1. Выполняем запрос пользователя (с ограничением по времени и числу строк)
+            ExecutionResult userResult = executor.executeLimitedQuery(userQuery);
+            if (isAlreadyCompleted || !QueryCheck.shouldGrade(task, userResult)) {
+                return QueryCheck.notChecked(userResult);
+            }
+
+            // 2. Сверяем с эталоном (отпечаток, затем полное сравнение) и вычисляем разницу для неверного ответа
+            QueryCheck check = QueryCheck.grade(executor, task, userResult, true);
+            // 3. Верный ответ проверяем и на случайных вариантах данных задания
+            return check.isCorrect ? check.withVariants(variantGrader.check(task, userQuery)) : check;
+        }, new Callback<QueryCheck>() {
+            @Override
+            public void onSuccess(QueryCheck check) {
+                applyQueryCheck(task, check);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                executionMessage.setValue("Ошибка выполнения SQL: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Публикует результат проверки запроса и начисляет награду (в главном потоке).
+     */
+    private void applyQueryCheck(TaskModel task, QueryCheck check) {
+        ExecutionResult userResult = check.userResult;
         executionResultLiveData.setValue(userResult);
 
         if (!userResult.isSuccess) {
             executionMessage.setValue(userResult.errorMessage);
-            return userResult;
+            return;
         }
 
-        // 2. Выполняем ожидаемый запрос для сравнения
-        ExecutionResult expectedResult = sqlExecutor.executeQuery(task.getExpectedResult());
+        ExecutionResult expectedResult = check.expectedResult;
+        if (!check.isChecked) {
+            // Задание уже выполнено или запрос не подлежит проверке (QueryCheck.shouldGrade())
+            return;
+        }
 
-        if (!expectedResult.isSuccess) {
+        if (expectedResult != null && !expectedResult.isSuccess) {
             executionMessage.setValue("Внутренняя ошибка: Не удалось выполнить ожидаемый запрос.");
-            return expectedResult;
+            return;
         }
 
-        // 3. Сравниваем результаты
-        if (compareResults(userResult, expectedResult)) {
+        if (check.isCorrect) {
             // Успех
             boolean wasNewlyCompleted = false;
 
@@ -268,37 +326,24 @@ public class LessonPlayViewModel extends ViewModel {
 
         } else {
             // Неправильный результат
-            executionMessage.setValue("Неправильный результат! Ваш запрос вернул не те данные, которые ожидались.");
-        }
-
-        return userResult;
-    }
-
-    /**
-     * Вспомогательный метод для сравнения результатов.
-     */
-    private boolean compareResults(ExecutionResult userResult, ExecutionResult expectedResult) {
-        // Сравнение заголовков (имен столбцов)
-        if (!userResult.resultColumns.equals(expectedResult.resultColumns)) {
-            return false;
-        }
-
-        // Сравнение данных
-        List<List<String>> userData = userResult.resultData;
-        List<List<String>> expectedData = expectedResult.resultData;
-
-        if (userData.size() != expectedData.size()) {
-            return false;
+            String message = check.variantResult != null && !check.variantResult.isPassed()
+                    ? "Неправильный результат! Запрос верен только на исходных данных, а на варианте "
+                            + check.variantResult.failedVariant + " с другими данными результат отличается от ожидаемого."
+                    : check.stateComparison != null
+                    ? "Неправильный результат! Данные таблиц " + check.stateComparison.mismatchedTables
+                            + " после команды не совпадают с ожидаемыми."
+                    : "Неправильный результат! Ваш запрос вернул не те данные, которые ожидались.";
+            if (check.diff != null) {
+                message += " " + check.diff.getSummary();
+            }
+            executionMessage.setValue(message);
         }
-
-        // Сравнение порядка и содержимого строк
-        return userData.equals(expectedData);
     }
 
     // --- ГЕТТЕРЫ ДЛЯ LIVE DATA И СОСТОЯНИЯ ---
 
     // Геттер для LiveData исходных данных
-    public LiveData<ExecutionResult> getInitialTableData() {
+    public LiveData<PagedTableSource> getInitialTableData() {
         return initialTableData;
     }
 
@@ -327,16 +372,17 @@ public class LessonPlayViewModel extends ViewModel {
     }
 
     /**
-     * Геттер для SqlExecutor, необходимый Activity для отображения исходной таблицы.
+     * Геттер для песочницы SQL. Обращаться к базе можно только через ее задачи (SandboxExecutor.submit()).
      */
-    public SqlExecutor getSqlExecutor() {
-        return sqlExecutor;
+    public SandboxExecutor getSandbox() {
+        return sandbox;
     }
 
     @Override
     protected void onCleared() {
         super.onCleared();
-        // Освобождаем ресурсы, связанные с базой данных
-        sqlExecutor.closeDatabase();
+        // Освобождаем ресурсы, связанные с базой данных, и останавливаем поток песочницы
+        sandbox.shutdown();
+        variantGrader.shutdown();
     }
 }
\ No newline at end of file
@@ -0,0 +1,234 @@
+package com.example.sql_game.util;
+
+import android.database.AbstractWindowedCursor;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+/**
+ * SqlEngine на android.database.sqlite: In-Memory база SQLiteDatabase.
+ * Прерываемые выражения получают собственный CancellationSignal, который отменяется в cancel().
+ */
+public final class AndroidSqlEngine implements SqlEngine {
+
+    public static final SqlEngine.Factory FACTORY = AndroidSqlEngine::openInMemory;
+
+    private final SQLiteDatabase db;
+    // Сигнал отмены последнего прерываемого выражения
+    private volatile CancellationSignal activeSignal;
+
+    private AndroidSqlEngine(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    /**
+     * Открывает новую пустую базу в памяти.
+     */
+    public static AndroidSqlEngine openInMemory() {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(":memory:", null);
+        db.setMaxSqlCacheSize(StatementCache.MAX_SIZE);
+        return new AndroidSqlEngine(db);
+    }
+
+    @Override
+    public boolean cachesQueryStatements() {
+        return true;
+    }
+
+    @Override
+    public void execSQL(String sql, boolean cancellable) {
+        if (!cancellable) {
+            db.execSQL(sql);
+            return;
+        }
+        // SQLiteStatement не принимает CancellationSignal, поэтому прерываемое выражение выполняется
+        // через курсор: выражение выполняется при заполнении окна в getCount()
+        try {
+            Cursor cursor = db.rawQuery(sql, null, newSignal());
+            try {
+                cursor.getCount();
+            } finally {
+                cursor.close();
+            }
+        } catch (OperationCanceledException e) {
+            throw new QueryCancelledException(e);
+        }
+    }
+
+    @Override
+    public SqlCursor rawQuery(String sql, boolean cancellable) {
+        try {
+            return new AndroidCursor(db.rawQuery(sql, null, cancellable ? newSignal() : null));
+        } catch (OperationCanceledException e) {
+            throw new QueryCancelledException(e);
+        }
+    }
+
+    @Override
+    public long longForQuery(String sql) {
+        return DatabaseUtils.longForQuery(db, sql, null);
+    }
+
+    @Override
+    public SqlStatement compileStatement(String sql) {
+        return new AndroidStatement(db.compileStatement(sql));
+    }
+
+    @Override
+    public void beginTransaction() {
+        db.beginTransaction();
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        db.setTransactionSuccessful();
+    }
+
+    @Override
+    public void endTransaction() {
+        db.endTransaction();
+    }
+
+    @Override
+    public void cancel() {
+        CancellationSignal signal = activeSignal;
+        if (signal != null) {
+            signal.cancel();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (db.isOpen()) {
+            db.close();
+        }
+    }
+
+    private CancellationSignal newSignal() {
+        CancellationSignal signal = new CancellationSignal();
+        activeSignal = signal;
+        return signal;
+    }
+
+    /**
+     * Курсор SQLiteCursor: строки читаются окнами (CursorWindow) по мере движения,
+     * а отмена при заполнении окна приводится к QueryCancelledException.
+     */
+    private static final class AndroidCursor implements SqlCursor {
+        private final Cursor cursor;
+
+        AndroidCursor(Cursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return cursor.getColumnNames();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return cursor.getColumnCount();
+        }
+
+        @Override
+        public boolean moveToNext() {
+            try {
+                return cursor.moveToNext();
+            } catch (OperationCanceledException e) {
+                throw new QueryCancelledException(e);
+            }
+        }
+
+        @Override
+        public int getType(int column) {
+            // Коды типов ResultTable совпадают с Cursor.FIELD_TYPE_*
+            return cursor.getType(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            return cursor.getLong(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return cursor.getDouble(column);
+        }
+
+        @Override
+        public String getString(int column) {
+            return cursor.getString(column);
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            return cursor.getBlob(column);
+        }
+
+        @Override
+        public ResultTable readRows(int maxRows) {
+            // Окна SQLiteCursor становятся таблицей результата без копирования значений
+            if (cursor instanceof AbstractWindowedCursor) {
+                return CursorWindowResultTable.readRows((AbstractWindowedCursor) cursor, maxRows);
+            }
+            return SqlCursor.super.readRows(maxRows);
+        }
+
+        @Override
+        public void close() {
+            cursor.close();
+        }
+    }
+
+    private static final class AndroidStatement implements SqlStatement {
+        private final SQLiteStatement statement;
+
+        AndroidStatement(SQLiteStatement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public void bindNull(int index) {
+            statement.bindNull(index);
+        }
+
+        @Override
+        public void bindLong(int index, long value) {
+            statement.bindLong(index, value);
+        }
+
+        @Override
+        public void bindDouble(int index, double value) {
+            statement.bindDouble(index, value);
+        }
+
+        @Override
+        public void bindString(int index, String value) {
+            statement.bindString(index, value);
+        }
+
+        @Override
+        public void bindBlob(int index, byte[] value) {
+            statement.bindBlob(index, value);
+        }
+
+        @Override
+        public void clearBindings() {
+            statement.clearBindings();
+        }
+
+        @Override
+        public int execute() {
+            return statement.executeUpdateDelete();
+        }
+
+        @Override
+        public void close() {
+            statement.close();
+        }
+    }
+}
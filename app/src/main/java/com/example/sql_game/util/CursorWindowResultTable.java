@@ -0,0 +1,172 @@
+package com.example.sql_game.util;
+
+import android.database.AbstractWindowedCursor;
+import android.database.CursorWindow;
+import android.os.OperationCanceledException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Результат запроса, читающий значения прямо из окон курсора (CursorWindow), которые SQLiteCursor
+ * заполнил при выполнении запроса: строки не копируются ни в кучу Java, ни в адаптер.
+ *
+ * Окна отсоединяются от курсора (курсор для следующих строк создает новое окно), поэтому закрытие курсора
+ * их не освобождает. Единственный владелец окон - эта таблица, а значит, ExecutionResult, в котором она
+ * возвращена: память окон освобождается вместе с результатом, когда на него не остается ссылок.
+ */
+final class CursorWindowResultTable extends ResultTable {
+
+    private final List<String> columnNames;
+    private final CursorWindow[] windows;
+    // Первая строка, которая берется из окна (окна SQLiteCursor могут перекрываться)
+    private final int[] firstRows;
+    private final int rowCount;
+    // Позиция курсора, соответствующая строке 0 таблицы
+    private final int positionOffset;
+
+    private CursorWindowResultTable(List<String> columnNames, CursorWindow[] windows, int[] firstRows, int rowCount,
+                                    int positionOffset) {
+        this.columnNames = Collections.unmodifiableList(columnNames);
+        this.windows = windows;
+        this.firstRows = firstRows;
+        this.rowCount = rowCount;
+        this.positionOffset = positionOffset;
+    }
+
+    /**
+     * Забирает у курсора окна с до maxRows строк, следующими за текущей (см. SqlCursor.readRows()).
+     * @param maxRows Максимальное число строк или 0 без ограничения.
+     */
+    static CursorWindowResultTable readRows(AbstractWindowedCursor cursor, int maxRows) {
+        List<CursorWindow> windows = new ArrayList<>();
+        try {
+            // Первое заполнение окна SQLiteCursor выполняет запрос целиком, подсчитывая строки
+            int count = cursor.getCount();
+            int firstRow = cursor.getPosition() + 1;
+            int endRow = maxRows > 0 ? (int) Math.min(count, (long) firstRow + maxRows) : count;
+            int[] firstRows = new int[4];
+            int row = firstRow;
+            while (row < endRow) {
+                // Курсор заполняет окно, начиная с нескольких строк до row
+                cursor.moveToPosition(row);
+                CursorWindow window = cursor.getWindow();
+                window.acquireReference();
+                // Курсор освобождает свою ссылку и для следующих строк создаст новое окно
+                cursor.setWindow(null);
+                if (windows.size() == firstRows.length) {
+                    firstRows = Arrays.copyOf(firstRows, firstRows.length * 2);
+                }
+                firstRows[windows.size()] = row;
+                windows.add(window);
+                row = window.getStartPosition() + window.getNumRows();
+            }
+            // Курсор встает на последнюю прочитанную строку (после конца, если строк больше нет),
+            // чтобы moveToNext() продолжил со следующей
+            cursor.moveToPosition(endRow < count ? endRow - 1 : count);
+
+            // Номера строк таблицы отсчитываются от firstRow
+            for (int i = 0; i < windows.size(); i++) {
+                firstRows[i] -= firstRow;
+            }
+            return new CursorWindowResultTable(Arrays.asList(cursor.getColumnNames()),
+                    windows.toArray(new CursorWindow[0]), Arrays.copyOf(firstRows, windows.size()),
+                    endRow - firstRow, firstRow);
+        } catch (OperationCanceledException e) {
+            releaseAll(windows);
+            throw new QueryCancelledException(e);
+        } catch (RuntimeException e) {
+            releaseAll(windows);
+            throw e;
+        }
+    }
+
+    private static void releaseAll(List<CursorWindow> windows) {
+        for (CursorWindow window : windows) {
+            window.releaseReference();
+        }
+    }
+
+    @Override
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getType(int row, int column) {
+        // Коды типов ResultTable совпадают с Cursor.FIELD_TYPE_*
+        return window(row).getType(position(row), column);
+    }
+
+    @Override
+    public long getLong(int row, int column) {
+        return window(row).getLong(position(row), column);
+    }
+
+    @Override
+    public double getDouble(int row, int column) {
+        return window(row).getDouble(position(row), column);
+    }
+
+    @Override
+    public String getString(int row, int column) {
+        CursorWindow window = window(row);
+        int position = position(row);
+        switch (window.getType(position, column)) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_FLOAT:
+                // CursorWindow форматирует REAL через "%g", а не так, как SQLite
+                return SqlValues.formatReal(window.getDouble(position, column));
+            case TYPE_BLOB:
+                return SqlValues.formatBlob(window.getBlob(position, column));
+            default:
+                return window.getString(position, column);
+        }
+    }
+
+    @Override
+    public byte[] getBlob(int row, int column) {
+        CursorWindow window = window(row);
+        int position = position(row);
+        switch (window.getType(position, column)) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_BLOB:
+                return window.getBlob(position, column);
+            default:
+                return getString(row, column).getBytes(java.nio.charset.Charset.forName("UTF-8"));
+        }
+    }
+
+    /**
+     * Объем строк в окнах (память окон выделяется вне кучи, но ограничивает кэши так же).
+     */
+    @Override
+    public long getEstimatedBytes() {
+        return 64 + 48L * windows.length + 16L * rowCount * columnNames.size();
+    }
+
+    private CursorWindow window(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + ", row count " + rowCount);
+        }
+        if (windows.length == 1) {
+            return windows[0];
+        }
+        int index = Arrays.binarySearch(firstRows, row);
+        return windows[index >= 0 ? index : -index - 2];
+    }
+
+    // Позиция строки в окне: окна нумеруют строки от начала результата курсора
+    private int position(int row) {
+        return row + positionOffset;
+    }
+}
@@ -0,0 +1,369 @@
+package com.example.sql_game.util;
+
+import android.util.Log;
+
+import com.example.sql_game.data.repository.Callback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Постраничный просмотр таблицы песочницы: строки читаются страницами по PAGE_SIZE в порядке rowid
+ * по мере прокрутки (см. SqlExecutor.queryTablePage()), поэтому таблица со 100 тыс. строк открывается
+ * так же быстро, как с десятью.
+ *
+ * В памяти хранится не больше MAX_LOADED_PAGES страниц; вытесненная страница читается заново по ключу,
+ * запомненному при первом чтении. Страницы, до которых прокрутка дошла без чтения предыдущих
+ * (быстрый скролл), читаются по номеру строки.
+ *
+ * После изменяющей команды refresh() читает из журнала изменений песочницы (SqlExecutor.readTableChanges())
+ * только затронутые строки: слушатель получает вставки, удаления и изменения отдельных строк,
+ * а измененные ячейки подсвечиваются до следующего обновления. Таблица открывается заново, только если
+ * изменения неизвестны (изменение схемы, повторная настройка) или их больше MAX_PATCHED_ROWS.
+ *
+ * Все методы вызываются из главного потока; чтение страниц выполняется в потоке песочницы.
+ */
+public final class PagedTableSource {
+
+    private static final String TAG = "PagedTableSource";
+
+    static final int PAGE_SIZE = 100;
+    // Страница загружается заранее, если до ее начала или конца осталось меньше PREFETCH_DISTANCE строк
+    static final int PREFETCH_DISTANCE = 40;
+    private static final int MAX_LOADED_PAGES = 6;
+    // При большем числе измененных строк таблица перечитывается целиком
+    static final int MAX_PATCHED_ROWS = 200;
+
+    /**
+     * Получатель уведомлений об изменении данных (адаптер таблицы).
+     */
+    public interface Listener {
+        /**
+         * Строки [firstRow, firstRow + rowCount) загружены и могут быть показаны.
+         */
+        void onRowsLoaded(int firstRow, int rowCount);
+
+        /**
+         * Строки [firstRow, firstRow + rowCount) вставлены (номера последующих строк сдвинулись).
+         */
+        void onRowsInserted(int firstRow, int rowCount);
+
+        /**
+         * Строки [firstRow, firstRow + rowCount) удалены.
+         */
+        void onRowsRemoved(int firstRow, int rowCount);
+
+        /**
+         * Значения или подсветка ячеек строки изменились, строка осталась на месте.
+         */
+        void onRowChanged(int row);
+
+        /**
+         * Изменения таблицы после открытия нельзя применить к показанным строкам:
+         * источник больше не возвращает строки, таблицу нужно открыть заново.
+         */
+        void onInvalidated();
+    }
+
+    private final SandboxExecutor sandbox;
+    private final String tableName;
+    private final List<String> columnNames;
+    private int rowCount;
+    private long sandboxVersion;
+    // Позиция журнала изменений песочницы, до которой применены изменения
+    private long changePosition;
+    // Загруженные страницы в порядке обращения
+    private final Map<Integer, ResultTable> pages = new LinkedHashMap<Integer, ResultTable>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, ResultTable> eldest) {
+            return size() > MAX_LOADED_PAGES;
+        }
+    };
+    // rowid последней строки страницы (ключ следующей страницы); хранится и для вытесненных страниц
+    private final Map<Integer, Long> lastRowids = new HashMap<>();
+    private final Set<Integer> loadingPages = new HashSet<>();
+    // Измененные последним обновлением столбцы по номеру строки
+    private final Map<Integer, int[]> changedColumns = new HashMap<>();
+    // Страницы, прочитанные уже после изменения, пока обновление не применено (читаются заново после него)
+    private final Set<Integer> stalePages = new HashSet<>();
+    private Listener listener;
+    private boolean isInvalidated = false;
+    private boolean isRefreshing = false;
+    private boolean isRefreshRequested = false;
+
+    private PagedTableSource(SandboxExecutor sandbox, String tableName, int rowCount, TablePage firstPage,
+                             long changePosition) {
+        this.sandbox = sandbox;
+        this.tableName = tableName;
+        this.columnNames = firstPage.rows.getColumnNames();
+        this.rowCount = rowCount;
+        this.sandboxVersion = firstPage.sandboxVersion;
+        this.changePosition = changePosition;
+        putPage(0, firstPage);
+    }
+
+    /**
+     * Открывает таблицу: число строк и первая страница читаются одной задачей песочницы.
+     * Задача встает в очередь после ранее отправленных (например, после настройки базы).
+     */
+    public static void open(SandboxExecutor sandbox, String tableName, Callback<PagedTableSource> callback) {
+        sandbox.submit(executor -> {
+            long changePosition = executor.getChangePosition();
+            int rowCount = (int) Math.min(Integer.MAX_VALUE, executor.countTableRows(tableName));
+            TablePage firstPage = executor.queryTablePageAt(tableName, 0, PAGE_SIZE);
+            return new PagedTableSource(sandbox, tableName, rowCount, firstPage, changePosition);
+        }, callback);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    public int getColumnCount() {
+        return columnNames.size();
+    }
+
+    /**
+     * Число строк таблицы (с учетом примененных обновлений).
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Строка таблицы или null, если ее страница еще не загружена (загрузка запускается этим вызовом).
+     * Заодно загружаются соседние страницы, если строка ближе PREFETCH_DISTANCE к границе страницы.
+     */
+    public ResultRow getRow(int row) {
+        int page = row / PAGE_SIZE;
+        int pageRow = row % PAGE_SIZE;
+        if (pageRow < PREFETCH_DISTANCE && page > 0) {
+            requestPage(page - 1);
+        } else if (pageRow >= PAGE_SIZE - PREFETCH_DISTANCE && (page + 1) * PAGE_SIZE < rowCount) {
+            requestPage(page + 1);
+        }
+        ResultTable rows = pages.get(page);
+        if (rows == null || pageRow >= rows.getRowCount()) {
+            requestPage(page);
+            return null;
+        }
+        return rows.getRow(pageRow);
+    }
+
+    /**
+     * Столбцы строки (по возрастанию), измененные последним обновлением, или null.
+     */
+    public int[] getChangedColumns(int row) {
+        return changedColumns.get(row);
+    }
+
+    /**
+     * Применяет к показанным строкам изменения таблицы после последнего обновления (вызывается после
+     * изменяющей команды, отмены или сброса). Изменения и заново прочитанные загруженные страницы
+     * читаются одной задачей песочницы.
+     */
+    public void refresh() {
+        if (isInvalidated) {
+            return;
+        }
+        if (isRefreshing) {
+            // Изменения, сделанные после начала текущего обновления, читаются следующим
+            isRefreshRequested = true;
+            return;
+        }
+        isRefreshing = true;
+        final long fromPosition = changePosition;
+        final List<Integer> loadedPages = new ArrayList<>(pages.keySet());
+        sandbox.submit(executor -> {
+            TableChanges changes = executor.readTableChanges(tableName, fromPosition, MAX_PATCHED_ROWS);
+            Map<Integer, TablePage> newPages = new HashMap<>();
+            if (changes.isComplete) {
+                for (int page : loadedPages) {
+                    if (page * PAGE_SIZE < changes.rowCount) {
+                        newPages.put(page, executor.queryTablePageAt(tableName, page * PAGE_SIZE, PAGE_SIZE));
+                    }
+                }
+            }
+            return new Refresh(changes, newPages);
+        }, new Callback<Refresh>() {
+            @Override
+            public void onSuccess(Refresh result) {
+                isRefreshing = false;
+                if (isInvalidated) {
+                    return;
+                }
+                if (!result.changes.isComplete) {
+                    invalidate();
+                    return;
+                }
+                applyRefresh(result);
+                if (isRefreshRequested) {
+                    isRefreshRequested = false;
+                    refresh();
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                isRefreshing = false;
+                // Например, таблица удалена командой пользователя
+                Log.w(TAG, "Ошибка обновления таблицы " + tableName, e);
+                invalidate();
+            }
+        });
+    }
+
+    // Изменения и страницы, прочитанные в одной задаче песочницы
+    private static final class Refresh {
+        final TableChanges changes;
+        final Map<Integer, TablePage> pages;
+
+        Refresh(TableChanges changes, Map<Integer, TablePage> pages) {
+            this.changes = changes;
+            this.pages = pages;
+        }
+    }
+
+    private void applyRefresh(Refresh refresh) {
+        TableChanges changes = refresh.changes;
+        Map<Integer, ResultTable> oldPages = new HashMap<>(pages);
+        List<Integer> oldChangedRows = new ArrayList<>(changedColumns.keySet());
+        int oldRowCount = rowCount;
+
+        // Состояние источника заменяется целиком до уведомлений: слушатель читает уже новые строки
+        pages.clear();
+        lastRowids.clear();
+        changedColumns.clear();
+        rowCount = changes.rowCount;
+        sandboxVersion = changes.sandboxVersion;
+        changePosition = changes.changePosition;
+        for (Map.Entry<Integer, TablePage> page : refresh.pages.entrySet()) {
+            if (page.getValue().sandboxVersion == sandboxVersion) {
+                putPage(page.getKey(), page.getValue());
+            }
+        }
+        int[] columnsChanged = new int[columnNames.size()];
+        int[] allColumns = new int[columnNames.size()];
+        for (int column = 0; column < allColumns.length; column++) {
+            allColumns[column] = column;
+        }
+        // Номер строки до изменений = номер после применения предыдущих изменений - вставки + удаления
+        int shift = 0;
+        for (int i = 0; i < changes.size(); i++) {
+            int row = changes.positions[i];
+            if (changes.kinds[i] == TableChanges.ROW_INSERTED) {
+                changedColumns.put(row, allColumns);
+                shift++;
+            } else if (changes.kinds[i] == TableChanges.ROW_DELETED) {
+                shift--;
+            } else {
+                ResultRow oldRow = findRow(oldPages, row - shift);
+                ResultRow newRow = changes.getRow(i);
+                int count = 0;
+                for (int column = 0; column < columnsChanged.length; column++) {
+                    if (oldRow == null || oldRow.getType(column) != newRow.getType(column)
+                            || !String.valueOf(oldRow.get(column)).equals(String.valueOf(newRow.get(column)))) {
+                        columnsChanged[count++] = column;
+                    }
+                }
+                if (count > 0) {
+                    changedColumns.put(row, Arrays.copyOf(columnsChanged, count));
+                }
+            }
+        }
+        if (listener == null) {
+            return;
+        }
+
+        // Снимаем прежнюю подсветку (номера строк до изменений), затем применяем изменения по порядку
+        for (int row : oldChangedRows) {
+            if (row < oldRowCount) {
+                listener.onRowChanged(row);
+            }
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            int row = changes.positions[i];
+            if (changes.kinds[i] == TableChanges.ROW_INSERTED) {
+                listener.onRowsInserted(row, 1);
+            } else if (changes.kinds[i] == TableChanges.ROW_DELETED) {
+                listener.onRowsRemoved(row, 1);
+            } else {
+                listener.onRowChanged(row);
+            }
+        }
+        for (int page : stalePages) {
+            if (page * PAGE_SIZE < rowCount) {
+                requestPage(page);
+            }
+        }
+        stalePages.clear();
+    }
+
+    private static ResultRow findRow(Map<Integer, ResultTable> pages, int row) {
+        ResultTable rows = pages.get(row / PAGE_SIZE);
+        return rows != null && row % PAGE_SIZE < rows.getRowCount() ? rows.getRow(row % PAGE_SIZE) : null;
+    }
+
+    private void requestPage(int page) {
+        if (isInvalidated || pages.containsKey(page) || !loadingPages.add(page)) {
+            return;
+        }
+        final Long afterRowid = lastRowids.get(page - 1);
+        sandbox.submit(executor -> afterRowid != null
+                ? executor.queryTablePage(tableName, afterRowid, PAGE_SIZE)
+                : executor.queryTablePageAt(tableName, page * PAGE_SIZE, PAGE_SIZE), new Callback<TablePage>() {
+            @Override
+            public void onSuccess(TablePage result) {
+                loadingPages.remove(page);
+                if (isInvalidated) {
+                    return;
+                }
+                if (result.sandboxVersion != sandboxVersion) {
+                    if (isRefreshing) {
+                        // Страница прочитана после изменения: она будет прочитана заново после обновления
+                        stalePages.add(page);
+                        return;
+                    }
+                    // Строки новой версии не согласуются с уже показанными
+                    invalidate();
+                    return;
+                }
+                putPage(page, result);
+                if (listener != null) {
+                    listener.onRowsLoaded(page * PAGE_SIZE, result.rows.getRowCount());
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                loadingPages.remove(page);
+                Log.e(TAG, "Ошибка загрузки страницы " + page + " таблицы " + tableName, e);
+            }
+        });
+    }
+
+    private void putPage(int page, TablePage result) {
+        pages.put(page, result.rows);
+        if (result.rows.getRowCount() > 0) {
+            lastRowids.put(page, result.lastRowid);
+        }
+    }
+
+    private void invalidate() {
+        isInvalidated = true;
+        pages.clear();
+        if (listener != null) {
+            listener.onInvalidated();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.sql_game.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.sql_game.data.repository.Callback;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Однопоточный исполнитель для SqlExecutor.
+ * Песочница (SQLiteDatabase) принадлежит одному фоновому потоку: все обращения к ней
+ * выполняются через submit()/submitLatest(), а результаты доставляются в главный поток через Callback.
+ * Устаревшие запросы (пользователь сменил задание или отправил новый запрос) отменяются,
+ * и их результаты не доставляются.
+ */
+public final class SandboxExecutor {
+
+    private static final String TAG = "SandboxExecutor";
+
+    /**
+     * Работа с песочницей, выполняемая в ее потоке.
+     */
+    public interface SandboxTask<T> {
+        T run(SqlExecutor executor) throws Exception;
+    }
+
+    private final SqlExecutor sqlExecutor;
+    private final ExecutorService thread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread sandboxThread = new Thread(runnable, "SqlSandbox");
+        sandboxThread.setDaemon(true);
+        return sandboxThread;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Увеличивается при cancelStale(): результаты всех ранее отправленных задач устаревают
+    private final AtomicInteger staleGeneration = new AtomicInteger();
+    // Увеличивается при submitLatest(): устаревает результат предыдущего запроса
+    private final AtomicInteger latestGeneration = new AtomicInteger();
+    // Последняя задача, отправленная через submitLatest()
+    private volatile Future<?> latestFuture;
+
+    public SandboxExecutor() {
+        this(new SqlExecutor(AndroidSqlEngine.FACTORY));
+    }
+
+    /**
+     * @param sqlExecutor Песочница. После передачи ее нельзя использовать напрямую из других потоков.
+     */
+    public SandboxExecutor(SqlExecutor sqlExecutor) {
+        this.sqlExecutor = sqlExecutor;
+    }
+
+    /**
+     * Ставит задачу в очередь песочницы. Задачи выполняются строго по порядку и не отменяются;
+     * результат не доставляется, если после отправки был вызван cancelStale().
+     * @param callback Получатель результата в главном потоке (может быть null).
+     */
+    public <T> Future<T> submit(SandboxTask<T> task, Callback<T> callback) {
+        return enqueue(task, callback, staleGeneration.get(), -1);
+    }
+
+    /**
+     * Ставит в очередь запрос, заменяющий предыдущий запрос, отправленный этим методом:
+     * предыдущий снимается с очереди или прерывается (см. SqlExecutor.cancelCurrentQuery()),
+     * а его результат не доставляется.
+     */
+    public <T> Future<T> submitLatest(SandboxTask<T> task, Callback<T> callback) {
+        cancelLatest();
+        Future<T> future = enqueue(task, callback, staleGeneration.get(), latestGeneration.get());
+        latestFuture = future;
+        return future;
+    }
+
+    /**
+     * Отменяет все ранее отправленные задачи с точки зрения UI: их результаты не будут доставлены,
+     * а выполняющийся запрос пользователя прерывается. Вызывается при смене задания.
+     */
+    public void cancelStale() {
+        staleGeneration.incrementAndGet();
+        cancelLatest();
+    }
+
+    /**
+     * Отменяет ожидающие задачи, закрывает базу в потоке песочницы и останавливает поток.
+     */
+    public void shutdown() {
+        cancelStale();
+        thread.execute(sqlExecutor::closeDatabase);
+        thread.shutdown();
+    }
+
+    private void cancelLatest() {
+        latestGeneration.incrementAndGet();
+        Future<?> previous = latestFuture;
+        if (previous != null && !previous.isDone()) {
+            // Не начатая задача просто снимается с очереди, начатую прерываем через CancellationSignal
+            previous.cancel(false);
+            sqlExecutor.cancelCurrentQuery();
+        }
+    }
+
+    /**
+     * @param latestTicket Поколение submitLatest() или -1, если задача не заменяемая.
+     */
+    private <T> Future<T> enqueue(SandboxTask<T> task, Callback<T> callback, int staleTicket, int latestTicket) {
+        FutureTask<T> future = new FutureTask<>(() -> {
+            T result;
+            try {
+                result = task.run(sqlExecutor);
+            } catch (Exception e) {
+                Log.e(TAG, "Sandbox task failed", e);
+                deliver(callback, null, e, staleTicket, latestTicket);
+                throw e;
+            }
+            deliver(callback, result, null, staleTicket, latestTicket);
+            return result;
+        });
+        thread.execute(future);
+        return future;
+    }
+
+    private <T> void deliver(Callback<T> callback, T result, Exception error, int staleTicket, int latestTicket) {
+        if (callback == null) {
+            return;
+        }
+        mainHandler.post(() -> {
+            // Проверяем актуальность уже в главном потоке, чтобы не показать результат после смены задания
+            if (staleTicket != staleGeneration.get() || (latestTicket >= 0 && latestTicket != latestGeneration.get())) {
+                Log.d(TAG, "Stale sandbox result dropped.");
+                return;
+            }
+            if (error != null) {
+                callback.onFailure(error);
+            } else {
+                callback.onSuccess(result);
+            }
+        });
+    }
+}
@@ -0,0 +1,25 @@
+// Файл модуля 'benchmarks': JMH-замеры проверки ответов (модуль 'engine') на обычной JVM.
+// Запуск: ./gradlew :benchmarks:jmh, результаты - build/results/jmh/results.json
+plugins {
+    java
+    id("me.champeau.jmh")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    jmh(project(":engine"))
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // Две таблицы по 1 млн строк со строковым столбцом
+    jvmArgs.set(listOf("-Xmx2g"))
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,124 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.data.model.TaskModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время проверки одного ответа каждой стратегией GradingStrategies на сгенерированных результатах
+ * (id INTEGER, name TEXT, score REAL) от 10 до 1 млн строк.
+ *
+ * - equal: ответ совпадает с эталоном (полный проход, типичный верный ответ);
+ * - last-row-differs: отличается последняя строка ответа (худший случай для раннего выхода).
+ * Для стратегий без учета порядка строки ответа перемешаны. Стратегия выбирается GradingStrategies.forTask()
+ * при каждой проверке, как в QueryCheck и VariantGrader. Эталон один на замер (как эталон из кэша песочницы
+ * при повторных проверках задания), поэтому стратегия по отпечаткам хэширует его один раз.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GradingStrategyBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"exact-ordered", "exact-unordered", "fingerprint-ordered", "fingerprint-unordered",
+            "tolerant-ordered", "tolerant-unordered"})
+    public String strategy;
+
+    @Param({"equal", "last-row-differs"})
+    public String outcome;
+
+    private TaskModel task;
+    private ResultTable expected;
+    private ResultTable user;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        task = taskFor(strategy);
+        Random random = new Random(42);
+        long[] ids = new long[rows];
+        String[] names = new String[rows];
+        double[] scores = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            ids[i] = i + 1;
+            // Повторяющиеся имена: в результатах без уникального ключа строки часто похожи
+            names[i] = "name-" + random.nextInt(Math.max(1, rows / 4));
+            scores[i] = random.nextInt(100_000) / 100.0;
+        }
+
+        int[] order = identity(rows);
+        if (!GradingStrategies.forTask(task).isOrdered()) {
+            for (int i = rows - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+        }
+
+        expected = table(ids, names, scores, identity(rows), false);
+        user = table(ids, names, scores, order, outcome.equals("last-row-differs"));
+    }
+
+    @Benchmark
+    public ResultComparator.Comparison compare() {
+        return GradingStrategies.forTask(task).compare(user, expected);
+    }
+
+    // Задание с нужной стратегией сравнения: "<стратегия>-ordered" - эталон с ORDER BY, иначе без
+    private static TaskModel taskFor(String name) {
+        TaskModel task = new TaskModel();
+        int separator = name.lastIndexOf('-');
+        switch (name.substring(0, separator)) {
+            case "exact":
+                task.setComparisonStrategy(TaskModel.ComparisonStrategy.EXACT);
+                break;
+            case "fingerprint":
+                task.setComparisonStrategy(TaskModel.ComparisonStrategy.FINGERPRINT);
+                break;
+            case "tolerant":
+                task.setComparisonStrategy(TaskModel.ComparisonStrategy.NUMERIC_TOLERANT);
+                task.setNumericTolerance(GradingStrategies.DEFAULT_TOLERANCE);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " + name);
+        }
+        task.setGradingMode(name.endsWith("-ordered") ? TaskModel.GradingMode.ORDERED : TaskModel.GradingMode.UNORDERED);
+        return task;
+    }
+
+    private static int[] identity(int size) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    // Таблица из строк order[0], order[1], ...; changeLast - последняя строка получает другое значение score
+    private static ResultTable table(long[] ids, String[] names, double[] scores, int[] order, boolean changeLast) {
+        ColumnarResultTable.Builder builder =
+                new ColumnarResultTable.Builder(Arrays.asList("id", "name", "score"), order.length);
+        for (int i = 0; i < order.length; i++) {
+            int row = order[i];
+            builder.appendLong(0, ids[row]);
+            builder.appendString(1, names[row]);
+            builder.appendDouble(2, changeLast && i == order.length - 1 ? scores[row] + 1 : scores[row]);
+            builder.endRow();
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,30 @@
+// Файл модуля 'engine': песочница SQL, проверка ответов и содержимое уроков без зависимостей от Android.
+// На устройстве модуль работает через AndroidSqlEngine (модуль 'app'), на обычной JVM - через JdbcSqlEngine.
+plugins {
+    `java-library`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+// Драйвер SQLite для генератора отпечатков на JVM; в зависимости модуля не входит
+val fingerprintGenerator by configurations.creating
+
+dependencies {
+    // JdbcSqlEngine использует только java.sql: драйвер SQLite подключают JVM-модули, которым он нужен,
+    // чтобы он не попадал в APK
+    testImplementation("junit:junit:4.13.2")
+    testRuntimeOnly("org.xerial:sqlite-jdbc:3.45.1.0")
+    fingerprintGenerator("org.xerial:sqlite-jdbc:3.45.1.0")
+}
+
+// После изменения установочных скриптов или эталонных запросов уроков: ./gradlew :engine:generateLessonFingerprints
+tasks.register<JavaExec>("generateLessonFingerprints") {
+    group = "build"
+    description = "Regenerates LessonFingerprints.java from the lessons in LessonRepository."
+    classpath = sourceSets["main"].runtimeClasspath + fingerprintGenerator
+    mainClass.set("com.example.sql_game.util.FingerprintGenerator")
+    args(file("src/main/java/com/example/sql_game/data/repository/LessonFingerprints.java").path)
+}
@@ -1,5 +1,9 @@
 package com.example.sql_game.data.model;
 
+import com.example.sql_game.util.SqlScriptTokenizer;
+
+import java.util.List;
+
 /**
  * Модель данных для одного задания/шага внутри урока.
  * Содержит всю необходимую информацию для отображения задания и его проверки.
@@ -14,6 +18,58 @@ public class TaskModel {
         PRACTICE
     }
 
+    /**
+     * Режим проверки результата практического задания.
+     */
+    public enum GradingMode {
+        ORDERED,   // Порядок строк должен совпадать с эталоном
+        UNORDERED, // Строки сравниваются как мультимножество (SQLite не гарантирует порядок без ORDER BY)
+        STATE;     // Эталон - изменяющая команда: сравниваются данные таблиц после команд пользователя и эталона
+
+        /**
+         * Режим по умолчанию для эталонного запроса: STATE для INSERT/UPDATE/DELETE/REPLACE;
+         * ORDERED, если запрос сортирует результат (ORDER BY вне скобок, то есть не в подзапросе
+         * и не в оконной функции), иначе UNORDERED.
+         */
+        public static GradingMode forExpectedQuery(String expectedSql) {
+            if (isDataChange(expectedSql)) {
+                return STATE;
+            }
+            return hasTopLevelOrderBy(expectedSql) ? ORDERED : UNORDERED;
+        }
+
+        private static boolean isDataChange(String sql) {
+            if (sql == null) {
+                return false;
+            }
+            String upperCaseSql = sql.trim().toUpperCase();
+            return upperCaseSql.startsWith("INSERT") || upperCaseSql.startsWith("UPDATE")
+                    || upperCaseSql.startsWith("DELETE") || upperCaseSql.startsWith("REPLACE");
+        }
+
+        private static boolean hasTopLevelOrderBy(String sql) {
+            if (sql == null) {
+                return false;
+            }
+            List<String> words = SqlScriptTokenizer.topLevelWords(sql);
+            for (int i = 0; i + 1 < words.size(); i++) {
+                if (words.get(i).equals("ORDER") && words.get(i + 1).equals("BY")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Способ сравнения результата SELECT с эталоном (порядок строк задает GradingMode).
+     */
+    public enum ComparisonStrategy {
+        EXACT,           // Значения совпадают точно (как в SQLite: 5 = 5.0)
+        FINGERPRINT,     // Сравниваются только отпечатки результатов (ResultFingerprint)
+        NUMERIC_TOLERANT // Вещественные числа могут отличаться на погрешность (ошибки округления в AVG и т.п.)
+    }
+
     private int taskId;              // Глобальный ID задания (из БД)
     private int lessonTaskId;        // Уникальный ID задания в контексте урока
     private TaskType type;           // Тип задания
@@ -30,6 +86,10 @@ public class TaskModel {
     private int crystalReward;       // Награда за успешное выполнение
     private boolean isCompleted;     // Статус выполнения задания
     private String initialCode;      // Начальный SQL код для предзаполнения редактора
+    private String expectedFingerprint; // Предвычисленный отпечаток результата эталонного запроса (см. ResultFingerprint)
+    private GradingMode gradingMode; // Режим проверки; null - определяется по эталонному запросу
+    private ComparisonStrategy comparisonStrategy; // Способ сравнения; null - EXACT
+    private double numericTolerance; // Погрешность для NUMERIC_TOLERANT; 0 - погрешность по умолчанию
 
     /**
      * Обязательный публичный конструктор без аргументов.
@@ -232,6 +292,52 @@ public class TaskModel {
         this.initialCode = initialCode;
     }
 
+    /**
+     * Возвращает предвычисленный отпечаток эталонного результата (ResultFingerprint.encode()) или null.
+     */
+    public String getExpectedFingerprint() {
+        return expectedFingerprint;
+    }
+
+    public void setExpectedFingerprint(String expectedFingerprint) {
+        this.expectedFingerprint = expectedFingerprint;
+    }
+
+    /**
+     * Возвращает режим проверки: заданный явно или определенный по эталонному запросу
+     * (см. GradingMode.forExpectedQuery()).
+     */
+    public GradingMode getGradingMode() {
+        return gradingMode != null ? gradingMode : GradingMode.forExpectedQuery(expectedResult);
+    }
+
+    /**
+     * Задает режим проверки явно (null - определять по эталонному запросу).
+     */
+    public void setGradingMode(GradingMode gradingMode) {
+        this.gradingMode = gradingMode;
+    }
+
+    public ComparisonStrategy getComparisonStrategy() {
+        return comparisonStrategy != null ? comparisonStrategy : ComparisonStrategy.EXACT;
+    }
+
+    public void setComparisonStrategy(ComparisonStrategy comparisonStrategy) {
+        this.comparisonStrategy = comparisonStrategy;
+    }
+
+    /**
+     * Возвращает погрешность сравнения чисел для ComparisonStrategy.NUMERIC_TOLERANT
+     * (0 - используется GradingStrategies.DEFAULT_TOLERANCE).
+     */
+    public double getNumericTolerance() {
+        return numericTolerance;
+    }
+
+    public void setNumericTolerance(double numericTolerance) {
+        this.numericTolerance = numericTolerance;
+    }
+
     @Override
     public String toString() {
         return "TaskModel{" +
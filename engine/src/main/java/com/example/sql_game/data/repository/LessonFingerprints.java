@@ -0,0 +1,45 @@
+package com.example.sql_game.data.repository;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Предвычисленные отпечатки эталонных результатов заданий (см. ResultFingerprint).
+ * Файл сгенерирован FingerprintGenerator, не редактируйте его вручную.
+ */
+final class LessonFingerprints {
+
+    private static final Map<Integer, String> FINGERPRINTS = new HashMap<>();
+
+    static {
+        FINGERPRINTS.put(2, "1|6c256aa3ea440e2e|2|d456b5a258bec4aa|656f05a69f3e9b1c|id\037имя\037город");
+        FINGERPRINTS.put(3, "1|3932b505a3413a01|2|5b6c9f8a2ade2444|d67969fed61f462d|имя");
+        FINGERPRINTS.put(5, "1|df192ff22218355c|2|2e4d00de83df0ab0|7cd4faa0384bdaab|Название\037Цена");
+        FINGERPRINTS.put(6, "1|a568612aa56ed1ca|2|d638a8c5e7f79818|ae5ecb39a32faccc|ID\037Название\037Категория\037Цена\037КоличествоНаСкладе");
+        FINGERPRINTS.put(8, "1|8b05f928d8a0ceca|2|1a333767060713b5|385c22904c3d3a5b|ID\037Название\037Категория\037Цена\037КоличествоНаСкладе");
+        FINGERPRINTS.put(9, "1|bf9446a1dc3e755b|2|cf558e742efc4b71|b0db5cde2fbe77e3|ID\037Название\037Категория\037Цена\037КоличествоНаСкладе");
+        FINGERPRINTS.put(11, "1|1df6edc18babcfcb|4|880eb50d3fb7028c|9c34a12f0cafad7e|Имя\037Отдел\037Стаж");
+        FINGERPRINTS.put(12, "1|284e86050aeba468|3|86b9381d8e77d024|bcd9e7629e7d93fe|Id\037Имя\037Отдел\037Зарплата\037Стаж\037Email");
+        FINGERPRINTS.put(14, "1|0b9c2abac752473a|2|c2ad0f3a7ca88358|f7de87aa39c62952|Имя");
+        FINGERPRINTS.put(16, "1|3e77cd4b3e7a6c69|1|29cf0eafeedf7f01|92f8a0affabda772|Имя\037Email");
+        FINGERPRINTS.put(18, "1|ac3da05d7f983a80|1|93c85486549f6558|96d15c859dc6281f|COUNT(Id)");
+        FINGERPRINTS.put(19, "1|463e8f80da908793|1|748b8dc8733bba56|e2921235c1abcf74|AVG(Зарплата)\037MAX(Зарплата)");
+        FINGERPRINTS.put(21, "1|b2708e4e86053f59|3|4e296feb176186a1|17f1debc8e125b78|Отдел\037COUNT(Id)");
+        FINGERPRINTS.put(22, "1|106e59e4f921ff40|3|800b52c57e0583b3|d6b5bb7899234ee4|Отдел\037AVG(Зарплата)");
+        FINGERPRINTS.put(24, "1|9b936d4f0a24a24e|1|2999e7521aeda94d|e4097a05e8eab32b|Отдел\037AVG(Стаж)");
+        FINGERPRINTS.put(26, "1|f802f24ba9a46e6f|8|385488d830a5d69c|e2f7eba5d9f8ce56|Имя\037Зарплата");
+        FINGERPRINTS.put(27, "1|4a44cbb0d562f098|8|3a8104ca55728909|25d22f8c3ed9df24|Имя\037Стаж");
+        FINGERPRINTS.put(29, "1|283b7bf18a8f3828|8|1d57510e34b4189a|c35c10fbde23adf3|Отдел\037Имя\037Зарплата");
+        FINGERPRINTS.put(31, "1|14647f9a4b7b8646|3|ed2c0ee560cb2bcb|38399cd95295a399|Имя\037Зарплата");
+    }
+
+    private LessonFingerprints() {
+    }
+
+    /**
+     * @return Отпечаток эталонного результата задания или null, если он не сгенерирован.
+     */
+    static String get(int taskId) {
+        return FINGERPRINTS.get(taskId);
+    }
+}
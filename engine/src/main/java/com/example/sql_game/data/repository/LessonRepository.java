@@ -179,6 +179,10 @@ public class LessonRepository {
         // Заполнение lessonMap для быстрого доступа
         for (LessonModel lesson : hardcodedLessons) {
             lessonMap.put(lesson.getId(), lesson);
+            // Предвычисленные отпечатки эталонных результатов (генерируются FingerprintGenerator)
+            for (TaskModel task : lesson.getTasks()) {
+                task.setExpectedFingerprint(LessonFingerprints.get(task.getTaskId()));
+            }
         }
     }
 
@@ -0,0 +1,327 @@
+package com.example.sql_game.util;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * INSERT ... VALUES (...), (...) из установочного скрипта, разобранный на шаблон с параметрами и строки значений.
+ * Шаблон (INSERT INTO t (a, b) VALUES (?, ?)) компилируется один раз и выполняется для каждой строки,
+ * поэтому SQLite не разбирает заново тысячи литералов, а одинаковые INSERT-ы скрипта используют одно выражение.
+ * Разбираются только литералы (числа, строки, NULL, X'...'); выражения с функциями или подзапросами
+ * выполняются как есть через execSQL().
+ */
+final class BatchInsert {
+
+    // Текст выражения, в котором список значений заменен параметрами: VALUES (?, ?, ...)
+    final String compiledSql;
+    final List<Object[]> rows;
+
+    private BatchInsert(String compiledSql, List<Object[]> rows) {
+        this.compiledSql = compiledSql;
+        this.rows = rows;
+    }
+
+    /**
+     * Привязывает значения каждой строки к скомпилированному шаблону и выполняет вставку.
+     */
+    void execute(SqlStatement statement) {
+        for (Object[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                Object value = row[i];
+                if (value == null) {
+                    statement.bindNull(i + 1);
+                } else if (value instanceof Long) {
+                    statement.bindLong(i + 1, (Long) value);
+                } else if (value instanceof Double) {
+                    statement.bindDouble(i + 1, (Double) value);
+                } else if (value instanceof byte[]) {
+                    statement.bindBlob(i + 1, (byte[]) value);
+                } else {
+                    statement.bindString(i + 1, (String) value);
+                }
+            }
+            statement.execute();
+        }
+        statement.clearBindings();
+    }
+
+    /**
+     * Разбирает выражение вида INSERT/REPLACE [OR ...] INTO имя [(столбцы)] VALUES (литералы), ...
+     * @return Разобранная вставка или null, если выражение нужно выполнить как есть.
+     */
+    static BatchInsert parse(String statement) {
+        String upper = statement.length() > 7 ? statement.substring(0, 7).toUpperCase() : "";
+        if (!upper.startsWith("INSERT") && !upper.startsWith("REPLACE")) {
+            return null;
+        }
+        int valuesStart = findValuesKeyword(statement);
+        if (valuesStart < 0) {
+            return null;
+        }
+
+        Parser parser = new Parser(statement, valuesStart + "VALUES".length());
+        List<Object[]> rows = new ArrayList<>();
+        List<Object> row = new ArrayList<>();
+        int columnCount = -1;
+        do {
+            if (!parser.consume('(')) {
+                return null;
+            }
+            row.clear();
+            do {
+                if (!parser.readLiteral(row)) {
+                    return null;
+                }
+            } while (parser.consume(','));
+            if (!parser.consume(')')) {
+                return null;
+            }
+            // Разное число значений в строках - ошибка, текст которой пусть сформирует сам SQLite
+            if (columnCount >= 0 && row.size() != columnCount) {
+                return null;
+            }
+            columnCount = row.size();
+            rows.add(row.toArray());
+        } while (parser.consume(','));
+
+        // После списка значений ничего не должно быть (ON CONFLICT, RETURNING и т.п. выполняем как есть)
+        if (!parser.atEnd()) {
+            return null;
+        }
+
+        StringBuilder compiled = new StringBuilder(valuesStart + 8 + columnCount * 3);
+        compiled.append(statement, 0, valuesStart).append("VALUES (");
+        for (int i = 0; i < columnCount; i++) {
+            compiled.append(i == 0 ? "?" : ", ?");
+        }
+        compiled.append(')');
+        return new BatchInsert(compiled.toString(), rows);
+    }
+
+    /**
+     * Ищет ключевое слово VALUES вне литералов и идентификаторов в кавычках.
+     */
+    private static int findValuesKeyword(String statement) {
+        int length = statement.length();
+        int i = 0;
+        while (i < length) {
+            char c = statement.charAt(i);
+            if (c == '\'' || c == '"' || c == '`' || c == '[') {
+                char closing = c == '[' ? ']' : c;
+                i = statement.indexOf(closing, i + 1);
+                if (i < 0) {
+                    return -1;
+                }
+                i++;
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(statement.charAt(i)) || statement.charAt(i) == '_')) {
+                    i++;
+                }
+                if (i - start == 6 && statement.regionMatches(true, start, "VALUES", 0, 6)) {
+                    return start;
+                }
+                // SELECT или DEFAULT VALUES - не наш случай
+                if (i - start == 6 && statement.regionMatches(true, start, "SELECT", 0, 6)) {
+                    return -1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Минимальный разборщик литералов SQLite.
+     */
+    private static final class Parser {
+        private final String text;
+        private final int length;
+        private int position;
+
+        Parser(String text, int position) {
+            this.text = text;
+            this.length = text.length();
+            this.position = position;
+        }
+
+        boolean atEnd() {
+            skipWhitespace();
+            return position >= length;
+        }
+
+        boolean consume(char expected) {
+            skipWhitespace();
+            if (position < length && text.charAt(position) == expected) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Читает литерал и добавляет его значение в row (Long, Double, String, byte[] или null).
+         * @return false, если на этом месте не литерал.
+         */
+        boolean readLiteral(List<Object> row) {
+            skipWhitespace();
+            if (position >= length) {
+                return false;
+            }
+            char c = text.charAt(position);
+
+            if (c == '\'') {
+                String value = readString();
+                if (value == null) {
+                    return false;
+                }
+                row.add(value);
+                return true;
+            }
+
+            if ((c == 'X' || c == 'x') && position + 1 < length && text.charAt(position + 1) == '\'') {
+                position++;
+                String hex = readString();
+                byte[] blob = hex != null ? parseHex(hex) : null;
+                if (blob == null) {
+                    return false;
+                }
+                row.add(blob);
+                return true;
+            }
+
+            if (text.regionMatches(true, position, "NULL", 0, 4)
+                    && (position + 4 >= length || !Character.isLetterOrDigit(text.charAt(position + 4)))) {
+                position += 4;
+                row.add(null);
+                return true;
+            }
+
+            Object number = readNumber();
+            if (number == null) {
+                return false;
+            }
+            row.add(number);
+            return true;
+        }
+
+        private String readString() {
+            StringBuilder value = new StringBuilder();
+            position++; // открывающая кавычка
+            while (position < length) {
+                char c = text.charAt(position++);
+                if (c == '\'') {
+                    if (position < length && text.charAt(position) == '\'') {
+                        value.append('\'');
+                        position++;
+                        continue;
+                    }
+                    return value.toString();
+                }
+                value.append(c);
+            }
+            return null;
+        }
+
+        private Object readNumber() {
+            boolean negative = false;
+            if (text.charAt(position) == '+' || text.charAt(position) == '-') {
+                negative = text.charAt(position) == '-';
+                position++;
+                skipWhitespace();
+            }
+
+            int start = position;
+            if (text.regionMatches(true, position, "0x", 0, 2)) {
+                position += 2;
+                while (position < length && Character.digit(text.charAt(position), 16) >= 0) {
+                    position++;
+                }
+                int digits = position - start - 2;
+                if (digits == 0 || digits > 16 || !isTokenEnd()) {
+                    return null;
+                }
+                // Как в SQLite: шестнадцатеричный литерал - 64-битное число в дополнительном коде
+                long value = new BigInteger(text.substring(start + 2, position), 16).longValue();
+                return negative ? -value : value;
+            }
+
+            boolean isReal = false;
+            while (position < length && Character.isDigit(text.charAt(position))) {
+                position++;
+            }
+            if (position < length && text.charAt(position) == '.') {
+                isReal = true;
+                position++;
+                while (position < length && Character.isDigit(text.charAt(position))) {
+                    position++;
+                }
+            }
+            if (position == start || (position == start + 1 && isReal)) {
+                return null;
+            }
+            if (position < length && (text.charAt(position) == 'e' || text.charAt(position) == 'E')) {
+                isReal = true;
+                position++;
+                if (position < length && (text.charAt(position) == '+' || text.charAt(position) == '-')) {
+                    position++;
+                }
+                int exponentStart = position;
+                while (position < length && Character.isDigit(text.charAt(position))) {
+                    position++;
+                }
+                if (position == exponentStart) {
+                    return null;
+                }
+            }
+            if (!isTokenEnd()) {
+                return null;
+            }
+
+            String literal = text.substring(start, position);
+            if (!isReal) {
+                try {
+                    long value = Long.parseLong(literal);
+                    return negative ? -value : value;
+                } catch (NumberFormatException e) {
+                    // Целое, не помещающееся в 64 бита, SQLite хранит как REAL
+                }
+            }
+            double value = Double.parseDouble(literal);
+            return negative ? -value : value;
+        }
+
+        // После литерала может идти только пробел, запятая или закрывающая скобка
+        private boolean isTokenEnd() {
+            if (position >= length) {
+                return true;
+            }
+            char c = text.charAt(position);
+            return Character.isWhitespace(c) || c == ',' || c == ')';
+        }
+
+        private void skipWhitespace() {
+            while (position < length && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private static byte[] parseHex(String hex) {
+            if (hex.length() % 2 != 0) {
+                return null;
+            }
+            byte[] blob = new byte[hex.length() / 2];
+            for (int i = 0; i < blob.length; i++) {
+                int high = Character.digit(hex.charAt(2 * i), 16);
+                int low = Character.digit(hex.charAt(2 * i + 1), 16);
+                if (high < 0 || low < 0) {
+                    return null;
+                }
+                blob[i] = (byte) ((high << 4) | low);
+            }
+            return blob;
+        }
+    }
+}
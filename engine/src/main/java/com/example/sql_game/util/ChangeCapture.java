@@ -0,0 +1,474 @@
+package com.example.sql_game.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Журнал измененных строк песочницы для обновления показанных таблиц без перечитывания.
+ * На каждую rowid-таблицу main ставятся временные (TEMP) триггеры AFTER INSERT/UPDATE/DELETE, которые
+ * записывают в temp.sandbox_change_log имя таблицы и rowid измененной строки. В отличие от UndoJournal,
+ * триггеры срабатывают и при отмене команд по журналу отмены, и в схемах с пользовательскими триггерами.
+ * Прежние значения строк, измененных UPDATE и DELETE, копируются в теневую таблицу
+ * temp.sandbox_change_old_<таблица> (по номеру записи журнала): из них readDelta() строит DmlDelta команды,
+ * а foldStateHashes() обновляет хэши содержимого таблиц (см. StateHashes).
+ *
+ * Позиция журнала (position()) монотонно растет, пока журнал установлен. После переустановки (настройка,
+ * изменение схемы) или очистки переполненного журнала изменения до прежних позиций неизвестны:
+ * covers() возвращает false, и таблицу нужно перечитать целиком.
+ */
+final class ChangeCapture {
+
+    private static final Logger LOG = Logger.getLogger(ChangeCapture.class.getName());
+
+    private static final String LOG_TABLE = "sandbox_change_log";
+    private static final String TRIGGER_PREFIX = "sandbox_change_";
+    private static final String OLD_TABLE_PREFIX = "sandbox_change_old_";
+    // Журнал очищается, когда в нем накапливается больше записей (массовые изменения все равно
+    // показываются перечитыванием таблицы)
+    private static final long MAX_LOG_ROWS = 20000;
+
+    // Вид изменения строки в журнале
+    static final int OP_INSERT = 0;
+    static final int OP_UPDATE = 1;
+    static final int OP_DELETE = 2;
+
+    private boolean isAvailable = false;
+    // Триггеры стоят на всех таблицах main (нет таблиц WITHOUT ROWID и виртуальных)
+    private boolean coversAllTables = false;
+    // Позиция, соответствующая пустому журналу (записи нумеруются с offset + 1)
+    private long offset = 0;
+    // Наибольшая выданная позиция: после переустановки журнал начинается за ней
+    private long lastPosition = 0;
+    // Столбцы таблиц с триггерами (столбцы теневых таблиц c0, c1, ... идут в том же порядке)
+    private final Map<String, List<String>> tableColumns = new HashMap<>();
+
+    /**
+     * Ставит триггеры на текущую схему main. Изменения до вызова журнал не покрывает.
+     */
+    void install(SqlEngine db) {
+        uninstall(db);
+        try {
+            createLog(db);
+            isAvailable = true;
+        } catch (RuntimeException e) {
+            // Без журнала показанные таблицы перечитываются целиком
+            LOG.log(Level.WARNING, "Could not install change capture", e);
+            uninstall(db);
+        }
+    }
+
+    private void createLog(SqlEngine db) {
+        List<String> tables = new ArrayList<>();
+        int tableCount = 0;
+        SqlCursor cursor = db.rawQuery("SELECT name, sql FROM main.sqlite_master" +
+                " WHERE type = 'table' AND name NOT LIKE 'sqlite_%'");
+        try {
+            while (cursor.moveToNext()) {
+                String sql = cursor.getString(1);
+                tableCount++;
+                // У таблиц WITHOUT ROWID и виртуальных таблиц нет rowid, их изменения не фиксируются
+                if (sql != null && !sql.toUpperCase().contains("WITHOUT ROWID")
+                        && !sql.toUpperCase().startsWith("CREATE VIRTUAL")) {
+                    tables.add(cursor.getString(0));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        coversAllTables = tables.size() == tableCount;
+
+        db.beginTransaction();
+        try {
+            db.execSQL("CREATE TEMP TABLE " + LOG_TABLE + " (seq INTEGER PRIMARY KEY, tbl TEXT NOT NULL," +
+                    " row INTEGER NOT NULL, op INTEGER NOT NULL)");
+            for (String table : tables) {
+                List<String> columns = columnsOf(db, table);
+                createTriggers(db, table, columns);
+                tableColumns.put(table, columns);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Снимает триггеры и удаляет журнал. Позиция сохраняется, чтобы прежние позиции не повторялись.
+     */
+    void uninstall(SqlEngine db) {
+        if (isAvailable) {
+            position(db);
+        }
+        detach();
+        List<String[]> objects = new ArrayList<>();
+        SqlCursor cursor = db.rawQuery("SELECT type, name FROM sqlite_temp_master WHERE (type = 'trigger' AND name LIKE '"
+                + TRIGGER_PREFIX + "%') OR (type = 'table' AND name LIKE '" + OLD_TABLE_PREFIX + "%')");
+        try {
+            while (cursor.moveToNext()) {
+                objects.add(new String[]{cursor.getString(0), cursor.getString(1)});
+            }
+        } finally {
+            cursor.close();
+        }
+        // Сначала триггеры: они ссылаются на теневые таблицы
+        for (String[] object : objects) {
+            if ("trigger".equals(object[0])) {
+                db.execSQL("DROP TRIGGER IF EXISTS temp." + quoteIdentifier(object[1]));
+            }
+        }
+        for (String[] object : objects) {
+            if ("table".equals(object[0])) {
+                db.execSQL("DROP TABLE IF EXISTS temp." + quoteIdentifier(object[1]));
+            }
+        }
+        db.execSQL("DROP TABLE IF EXISTS temp." + LOG_TABLE);
+    }
+
+    /**
+     * Забывает позицию при закрытии базы (временные таблицы исчезают вместе с соединением).
+     */
+    void detach() {
+        isAvailable = false;
+        coversAllTables = false;
+        tableColumns.clear();
+        // Следующая установка начнет журнал после последней выданной позиции
+        offset = Math.max(offset, lastPosition) + 1;
+        lastPosition = offset;
+    }
+
+    /**
+     * Текущая позиция журнала: изменения после нее вернет changesSince().
+     */
+    long position(SqlEngine db) {
+        if (!isAvailable) {
+            return offset;
+        }
+        long position = offset + db.longForQuery("SELECT IFNULL(MAX(seq), 0) FROM temp." + LOG_TABLE);
+        lastPosition = Math.max(lastPosition, position);
+        return position;
+    }
+
+    /**
+     * Журнал содержит все изменения после позиции position.
+     */
+    boolean covers(long position) {
+        return isAvailable && position >= offset;
+    }
+
+    /**
+     * Журнал фиксирует изменения всех таблиц main.
+     */
+    boolean coversAllTables() {
+        return isAvailable && coversAllTables;
+    }
+
+    /**
+     * Журнал переполнен, и следующий trim() его очистит.
+     */
+    boolean needsTrim(SqlEngine db) {
+        return isAvailable && position(db) - offset > MAX_LOG_ROWS;
+    }
+
+    /**
+     * Очищает журнал, если он переполнен. Вызывается после изменяющей команды.
+     */
+    void trim(SqlEngine db) {
+        if (needsTrim(db)) {
+            offset = position(db);
+            db.execSQL("DELETE FROM temp." + LOG_TABLE);
+            for (String table : tableColumns.keySet()) {
+                db.execSQL("DELETE FROM temp." + quoteIdentifier(OLD_TABLE_PREFIX + table));
+            }
+            LOG.fine("Change log trimmed at position " + offset);
+        }
+    }
+
+    /**
+     * Строки таблицы, измененные после позиции position (должно выполняться covers(position)).
+     * @return rowid по возрастанию -> существовала ли строка на момент position, или null,
+     *         если изменено больше maxRows строк.
+     */
+    TreeMap<Long, Boolean> changesSince(SqlEngine db, String table, long position, int maxRows) {
+        TreeMap<Long, Boolean> rows = new TreeMap<>();
+        SqlCursor cursor = db.rawQuery("SELECT row, op FROM temp." + LOG_TABLE + " WHERE seq > " + (position - offset)
+                + " AND tbl = " + sqlLiteral(table) + " ORDER BY seq");
+        try {
+            while (cursor.moveToNext()) {
+                long row = cursor.getLong(0);
+                if (!rows.containsKey(row)) {
+                    if (rows.size() == maxRows) {
+                        return null;
+                    }
+                    // Наличие строки до изменений определяет первая запись о ней
+                    rows.put(row, cursor.getLong(1) != OP_INSERT);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Изменения данных после позиции position (обычно - позиции перед изменяющей командой) или null,
+     * если журнал ее не покрывает. Вызывается в транзакции команды, до очистки журнала (trim()).
+     */
+    DmlDelta readDelta(SqlEngine db, long position) {
+        if (!covers(position)) {
+            return null;
+        }
+        long start = position - offset;
+        List<DmlDelta.TableDelta> deltas = new ArrayList<>();
+        for (String table : changedTables(db, start)) {
+            DmlDelta.TableDelta delta = readTableDelta(db, table, tableColumns.get(table), start);
+            if (delta.insertedCount + delta.deletedCount + delta.updatedCount > 0) {
+                deltas.add(delta);
+            }
+        }
+        return deltas.isEmpty() ? DmlDelta.EMPTY : new DmlDelta(deltas);
+    }
+
+    /**
+     * Прибавляет к хэшам содержимого таблиц изменения после позиции position (должно выполняться covers(position)):
+     * для каждой измененной строки вычитается вклад ее значений на момент position и прибавляется вклад
+     * текущих значений (см. ResultFingerprint.multisetTerm()). Объем работы пропорционален числу измененных строк.
+     * @param hashes Имя таблицы -> хэш мультимножества ее строк (отсутствующая таблица - 0).
+     */
+    void foldStateHashes(SqlEngine db, long position, Map<String, Long> hashes) {
+        long start = position - offset;
+        for (String table : changedTables(db, start)) {
+            List<String> columns = tableColumns.get(table);
+            int columnCount = columns.size();
+            StringBuilder sql = new StringBuilder(firstChanges(table, start))
+                    .append("SELECT o.seq IS NOT NULL, t.rowid IS NOT NULL");
+            for (int column = 0; column < columnCount; column++) {
+                sql.append(", o.c").append(column);
+            }
+            for (String column : columns) {
+                sql.append(", t.").append(quoteIdentifier(column));
+            }
+            sql.append(" FROM f LEFT JOIN temp.").append(quoteIdentifier(OLD_TABLE_PREFIX + table))
+                    .append(" o ON o.seq = f.seq LEFT JOIN main.").append(quoteIdentifier(table))
+                    .append(" t ON t.rowid = f.row");
+
+            Long previous = hashes.get(table);
+            long hash = previous != null ? previous : 0;
+            SqlCursor cursor = db.rawQuery(sql.toString());
+            try {
+                while (cursor.moveToNext()) {
+                    // Прежние значения записаны, только если строка существовала на момент position
+                    if (cursor.getLong(0) != 0) {
+                        hash -= rowTerm(cursor, 2, columnCount);
+                    }
+                    if (cursor.getLong(1) != 0) {
+                        hash += rowTerm(cursor, 2 + columnCount, columnCount);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+            hashes.put(table, hash);
+        }
+    }
+
+    private static long rowTerm(SqlCursor cursor, int firstColumn, int columnCount) {
+        long rowHash = 0;
+        for (int column = firstColumn; column < firstColumn + columnCount; column++) {
+            rowHash = ResultFingerprint.combineCell(rowHash, ResultFingerprint.cellHash(cursor, column));
+        }
+        return ResultFingerprint.multisetTerm(ResultFingerprint.finishRow(rowHash));
+    }
+
+    // Таблицы с записями журнала после start; первой идет таблица, измененная первой
+    // (обычно - цель команды, а не ее триггеров)
+    private static List<String> changedTables(SqlEngine db, long start) {
+        List<String> tables = new ArrayList<>();
+        SqlCursor cursor = db.rawQuery("SELECT tbl FROM temp." + LOG_TABLE + " WHERE seq > " + start
+                + " GROUP BY tbl ORDER BY MIN(seq)");
+        try {
+            while (cursor.moveToNext()) {
+                tables.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return tables;
+    }
+
+    // Первая запись журнала после start о каждой измененной строке таблицы: f(row, seq)
+    private static String firstChanges(String table, long start) {
+        return "WITH f(row, seq) AS (SELECT row, MIN(seq) FROM temp." + LOG_TABLE + " WHERE seq > " + start
+                + " AND tbl = " + sqlLiteral(table) + " GROUP BY row) ";
+    }
+
+    // Все выборки соединяют первую запись журнала о строке (f) с ее прежними значениями (o)
+    // и текущей строкой таблицы (t): строка вставлена, если первая запись - INSERT, а строка существует;
+    // удалена, если ее больше нет, а прежние значения записаны; изменена, если есть и то, и другое
+    private static DmlDelta.TableDelta readTableDelta(SqlEngine db, String table, List<String> columns, long start) {
+        String firsts = firstChanges(table, start);
+        String target = "main." + quoteIdentifier(table);
+        String old = "temp." + quoteIdentifier(OLD_TABLE_PREFIX + table);
+        String inserted = " FROM f JOIN temp." + LOG_TABLE + " l ON l.seq = f.seq JOIN " + target
+                + " t ON t.rowid = f.row WHERE l.op = " + OP_INSERT;
+        String deleted = " FROM f JOIN " + old + " o ON o.seq = f.seq LEFT JOIN " + target
+                + " t ON t.rowid = f.row WHERE t.rowid IS NULL";
+        String updated = " FROM f JOIN " + old + " o ON o.seq = f.seq JOIN " + target + " t ON t.rowid = f.row";
+        StringBuilder oldValues = new StringBuilder();
+        StringBuilder changedFlags = new StringBuilder();
+        StringBuilder changedCells = new StringBuilder();
+        for (int column = 0; column < columns.size(); column++) {
+            String flag = "(o.c" + column + " IS NOT t." + quoteIdentifier(columns.get(column)) + ")";
+            oldValues.append(column > 0 ? ", " : "").append("o.c").append(column);
+            changedFlags.append(column > 0 ? ", " : "").append(flag);
+            changedCells.append(column > 0 ? " + " : "").append(flag);
+        }
+
+        // Все счетчики - одним проходом по затронутым строкам
+        long[] counts = new long[4];
+        SqlCursor cursor = db.rawQuery(firsts + "SELECT TOTAL(op = " + OP_INSERT + " AND row_now IS NOT NULL)," +
+                " TOTAL(old_seq IS NOT NULL AND row_now IS NULL), TOTAL(n > 0), TOTAL(n)" +
+                " FROM (SELECT l.op AS op, o.seq AS old_seq, t.rowid AS row_now," +
+                " CASE WHEN o.seq IS NOT NULL AND t.rowid IS NOT NULL THEN (" + changedCells + ") ELSE 0 END AS n" +
+                " FROM f JOIN temp." + LOG_TABLE + " l ON l.seq = f.seq LEFT JOIN " + old + " o ON o.seq = f.seq" +
+                " LEFT JOIN " + target + " t ON t.rowid = f.row)");
+        try {
+            if (cursor.moveToNext()) {
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] = cursor.getLong(i);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        String limit = " ORDER BY f.row LIMIT " + DmlDelta.MAX_ROWS;
+        // Строки читаются только для видов изменений, которые есть
+        ResultTable insertedRows = counts[0] > 0
+                ? readRows(db, firsts + "SELECT t.*" + inserted + limit, columns) : emptyRows(columns);
+        ResultTable deletedRows = counts[1] > 0
+                ? readRows(db, firsts + "SELECT " + oldValues + deleted + limit, columns) : emptyRows(columns);
+        if (counts[2] == 0) {
+            return new DmlDelta.TableDelta(table, columns, (int) counts[0], (int) counts[1], 0, 0,
+                    insertedRows, deletedRows, emptyRows(columns), emptyRows(columns), new int[0][]);
+        }
+
+        // Измененные строки: прежние значения, новые значения и признаки изменения столбцов
+        int columnCount = columns.size();
+        ColumnarResultTable.Builder oldRows = new ColumnarResultTable.Builder(columns, DmlDelta.MAX_ROWS);
+        ColumnarResultTable.Builder newRows = new ColumnarResultTable.Builder(columns, DmlDelta.MAX_ROWS);
+        List<int[]> changedColumns = new ArrayList<>();
+        cursor = db.rawQuery(firsts + "SELECT " + oldValues + ", t.*, " + changedFlags + updated
+                + " AND (" + changedCells + ") > 0" + limit);
+        try {
+            int[] changed = new int[columnCount];
+            while (cursor.moveToNext()) {
+                int count = 0;
+                for (int column = 0; column < columnCount; column++) {
+                    oldRows.appendFromCursor(cursor, column, column);
+                    newRows.appendFromCursor(cursor, columnCount + column, column);
+                    if (cursor.getLong(2 * columnCount + column) != 0) {
+                        changed[count++] = column;
+                    }
+                }
+                oldRows.endRow();
+                newRows.endRow();
+                changedColumns.add(Arrays.copyOf(changed, count));
+            }
+        } finally {
+            cursor.close();
+        }
+        return new DmlDelta.TableDelta(table, columns, (int) counts[0], (int) counts[1], (int) counts[2],
+                (int) counts[3], insertedRows, deletedRows, oldRows.build(), newRows.build(),
+                changedColumns.toArray(new int[0][]));
+    }
+
+    private static ResultTable emptyRows(List<String> columns) {
+        return new ColumnarResultTable.Builder(columns, 0).build();
+    }
+
+    private static ResultTable readRows(SqlEngine db, String sql, List<String> columns) {
+        ColumnarResultTable.Builder builder = new ColumnarResultTable.Builder(columns, DmlDelta.MAX_ROWS);
+        SqlCursor cursor = db.rawQuery(sql);
+        try {
+            while (cursor.moveToNext()) {
+                for (int column = 0; column < columns.size(); column++) {
+                    builder.appendFromCursor(cursor, column, column);
+                }
+                builder.endRow();
+            }
+        } finally {
+            cursor.close();
+        }
+        return builder.build();
+    }
+
+    private static List<String> columnsOf(SqlEngine db, String table) {
+        List<String> columns = new ArrayList<>();
+        SqlCursor cursor = db.rawQuery("PRAGMA main.table_info(" + quoteIdentifier(table) + ")");
+        try {
+            // Столбцы table_info: cid, name, type, notnull, dflt_value, pk
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return columns;
+    }
+
+    private static void createTriggers(SqlEngine db, String table, List<String> columns) {
+        String target = quoteIdentifier(table);
+        // Внутри триггера имя таблицы в INSERT нельзя уточнять схемой; TEMP-триггер находит temp-таблицу первой
+        String logInsert = "INSERT INTO " + LOG_TABLE + " (tbl, row, op) VALUES (" + sqlLiteral(table) + ", ";
+
+        // Теневая таблица прежних значений: столбцы без типа, чтобы значения сохранялись как есть
+        String oldTable = quoteIdentifier(OLD_TABLE_PREFIX + table);
+        StringBuilder oldColumns = new StringBuilder("seq INTEGER PRIMARY KEY");
+        StringBuilder oldValues = new StringBuilder("last_insert_rowid()");
+        for (int column = 0; column < columns.size(); column++) {
+            oldColumns.append(", c").append(column);
+            oldValues.append(", old.").append(quoteIdentifier(columns.get(column)));
+        }
+        db.execSQL("CREATE TEMP TABLE " + oldTable + " (" + oldColumns + ")");
+        // last_insert_rowid() внутри триггера - номер только что добавленной записи журнала
+        String oldInsert = "INSERT INTO " + oldTable + " VALUES (" + oldValues + "); ";
+
+        // REPLACE удаляет строку с тем же rowid без триггеров DELETE (recursive_triggers выключены):
+        // такая строка записывается как удаленная до вставки новой
+        StringBuilder replacedValues = new StringBuilder("last_insert_rowid()");
+        for (String column : columns) {
+            replacedValues.append(", ").append(quoteIdentifier(column));
+        }
+        db.execSQL("CREATE TEMP TRIGGER " + quoteIdentifier(TRIGGER_PREFIX + table + "_replace") +
+                " BEFORE INSERT ON main." + target + " WHEN EXISTS (SELECT 1 FROM main." + target +
+                " WHERE rowid = new.rowid) BEGIN " + logInsert + "new.rowid, " + OP_DELETE + "); " +
+                "INSERT INTO " + oldTable + " SELECT " + replacedValues + " FROM main." + target +
+                " WHERE rowid = new.rowid; END");
+        db.execSQL("CREATE TEMP TRIGGER " + quoteIdentifier(TRIGGER_PREFIX + table + "_insert") +
+                " AFTER INSERT ON main." + target + " BEGIN " + logInsert + "new.rowid, " + OP_INSERT + "); END");
+        // UPDATE, меняющий rowid, для показанной таблицы - удаление строки и вставка новой
+        db.execSQL("CREATE TEMP TRIGGER " + quoteIdentifier(TRIGGER_PREFIX + table + "_update") +
+                " AFTER UPDATE ON main." + target + " BEGIN " +
+                logInsert + "old.rowid, CASE WHEN old.rowid = new.rowid THEN " + OP_UPDATE + " ELSE " + OP_DELETE + " END); " +
+                oldInsert +
+                "INSERT INTO " + LOG_TABLE + " (tbl, row, op) SELECT " + sqlLiteral(table) + ", new.rowid, " + OP_INSERT +
+                " WHERE old.rowid <> new.rowid; END");
+        db.execSQL("CREATE TEMP TRIGGER " + quoteIdentifier(TRIGGER_PREFIX + table + "_delete") +
+                " AFTER DELETE ON main." + target + " BEGIN " + logInsert + "old.rowid, " + OP_DELETE + "); " +
+                oldInsert + "END");
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String sqlLiteral(String text) {
+        return "'" + text.replace("'", "''") + "'";
+    }
+}
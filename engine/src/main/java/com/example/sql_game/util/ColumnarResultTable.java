@@ -0,0 +1,472 @@
+package com.example.sql_game.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Колоночное представление результата запроса.
+ * - числовые столбцы хранятся в примитивных массивах long[] / double[];
+ * - строковые столбцы кодируются словарем (повторяющиеся значения, например "IT" в столбце Отдел, хранятся один раз);
+ * - NULL отмечается битовой маской, а не строкой "NULL";
+ * - столбцы, в которых встречаются значения разных классов (SQLite это допускает), хранятся как Object[].
+ */
+public final class ColumnarResultTable extends ResultTable {
+
+    public static final ColumnarResultTable EMPTY =
+            new ColumnarResultTable(Collections.<String>emptyList(), new Column[0], 0);
+
+    private static final int INITIAL_ROW_CAPACITY = 16;
+
+    private final List<String> columnNames;
+    private final Column[] columns;
+    private final int rowCount;
+
+    private ColumnarResultTable(List<String> columnNames, Column[] columns, int rowCount) {
+        this.columnNames = Collections.unmodifiableList(columnNames);
+        this.columns = columns;
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Читает все строки курсора за один проход, используя SqlCursor.getType() для каждой ячейки.
+     */
+    public static ColumnarResultTable fromCursor(SqlCursor cursor) {
+        return fromCursor(cursor, 0);
+    }
+
+    /**
+     * То же, что fromCursor(cursor), с ограничением числа строк: чтение останавливается
+     * на строке maxRows + 1, не дочитывая результат.
+     * @param maxRows Максимальное число строк или 0 без ограничения.
+     * @return Результат или null, если строк больше maxRows.
+     */
+    public static ColumnarResultTable fromCursor(SqlCursor cursor, int maxRows) {
+        ColumnarResultTable table = readRows(cursor, maxRows);
+        return maxRows > 0 && cursor.moveToNext() ? null : table;
+    }
+
+    /**
+     * Копирует до maxRows строк курсора (реализация SqlCursor.readRows() по умолчанию):
+     * курсор остается на последней прочитанной строке.
+     * @param maxRows Максимальное число строк или 0 без ограничения.
+     */
+    static ColumnarResultTable readRows(SqlCursor cursor, int maxRows) {
+        int columnCount = cursor.getColumnCount();
+        // Число строк курсора заранее неизвестно, массивы столбцов растут по мере чтения
+        Builder builder = new Builder(Arrays.asList(cursor.getColumnNames()), INITIAL_ROW_CAPACITY);
+
+        while ((maxRows == 0 || builder.getRowCount() < maxRows) && cursor.moveToNext()) {
+            for (int column = 0; column < columnCount; column++) {
+                builder.appendFromCursor(cursor, column, column);
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    @Override
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getType(int row, int column) {
+        return columns[column].getType(checkRow(row));
+    }
+
+    @Override
+    public boolean isNull(int row, int column) {
+        return columns[column].isNull(checkRow(row));
+    }
+
+    @Override
+    public long getLong(int row, int column) {
+        return columns[column].getLong(checkRow(row));
+    }
+
+    @Override
+    public double getDouble(int row, int column) {
+        return columns[column].getDouble(checkRow(row));
+    }
+
+    @Override
+    public String getString(int row, int column) {
+        return columns[column].getString(checkRow(row));
+    }
+
+    @Override
+    public byte[] getBlob(int row, int column) {
+        return columns[column].getBlob(checkRow(row));
+    }
+
+    @Override
+    public long getEstimatedBytes() {
+        long bytes = 64;
+        for (int i = 0; i < columns.length; i++) {
+            bytes += 40 + 2L * columnNames.get(i).length() + columns[i].estimateBytes();
+        }
+        return bytes;
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + ", row count " + rowCount);
+        }
+        return row;
+    }
+
+    /**
+     * Построитель таблицы: значения добавляются по ячейкам, строка завершается вызовом endRow().
+     */
+    public static final class Builder {
+        private final List<String> columnNames;
+        private final Column[] columns;
+        private int rowCount = 0;
+
+        /**
+         * @param expectedRows Ожидаемое число строк (используется как начальная емкость массивов).
+         */
+        public Builder(List<String> columnNames, int expectedRows) {
+            this.columnNames = new ArrayList<>(columnNames);
+            this.columns = new Column[columnNames.size()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = new Column(Math.max(expectedRows, 1));
+            }
+        }
+
+        public void appendNull(int column) {
+            columns[column].setNull(rowCount);
+        }
+
+        public void appendLong(int column, long value) {
+            columns[column].setLong(rowCount, value);
+        }
+
+        public void appendDouble(int column, double value) {
+            columns[column].setDouble(rowCount, value);
+        }
+
+        public void appendString(int column, String value) {
+            if (value == null) {
+                appendNull(column);
+            } else {
+                columns[column].setString(rowCount, value);
+            }
+        }
+
+        public void appendBlob(int column, byte[] value) {
+            if (value == null) {
+                appendNull(column);
+            } else {
+                columns[column].setObject(rowCount, value);
+            }
+        }
+
+        /**
+         * Добавляет значение столбца cursorColumn текущей строки курсора с сохранением типа SQLite.
+         */
+        public void appendFromCursor(SqlCursor cursor, int cursorColumn, int column) {
+            switch (cursor.getType(cursorColumn)) {
+                case TYPE_NULL:
+                    appendNull(column);
+                    break;
+                case TYPE_INTEGER:
+                    appendLong(column, cursor.getLong(cursorColumn));
+                    break;
+                case TYPE_FLOAT:
+                    appendDouble(column, cursor.getDouble(cursorColumn));
+                    break;
+                case TYPE_BLOB:
+                    appendBlob(column, cursor.getBlob(cursorColumn));
+                    break;
+                default:
+                    appendString(column, cursor.getString(cursorColumn));
+                    break;
+            }
+        }
+
+        public void endRow() {
+            rowCount++;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public ColumnarResultTable build() {
+            return new ColumnarResultTable(columnNames, columns, rowCount);
+        }
+    }
+
+    /**
+     * Хранилище одного столбца. Вид хранения определяется первым ненулевым значением.
+     */
+    private static final class Column {
+        private static final int KIND_EMPTY = 0;   // пока только NULL
+        private static final int KIND_LONG = 1;
+        private static final int KIND_DOUBLE = 2;
+        private static final int KIND_STRING = 3;
+        private static final int KIND_MIXED = 4;
+
+        private int kind = KIND_EMPTY;
+        private int capacity;
+
+        private long[] longs;
+        private double[] doubles;
+        private int[] codes;
+        private Object[] values;
+
+        // Словарь строкового столбца
+        private List<String> dictionary;
+        private Map<String, Integer> dictionaryIndex;
+
+        // Битовая маска NULL (создается при первом NULL)
+        private long[] nulls;
+
+        Column(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void setNull(int row) {
+            ensureCapacity(row);
+            if (nulls == null) {
+                nulls = new long[(capacity + 63) >>> 6];
+            }
+            nulls[row >>> 6] |= 1L << row;
+        }
+
+        void setLong(int row, long value) {
+            ensureCapacity(row);
+            if (kind == KIND_EMPTY) {
+                kind = KIND_LONG;
+                longs = new long[capacity];
+            }
+            if (kind == KIND_LONG) {
+                longs[row] = value;
+            } else {
+                setObject(row, value);
+            }
+        }
+
+        void setDouble(int row, double value) {
+            ensureCapacity(row);
+            if (kind == KIND_EMPTY) {
+                kind = KIND_DOUBLE;
+                doubles = new double[capacity];
+            }
+            if (kind == KIND_DOUBLE) {
+                doubles[row] = value;
+            } else {
+                setObject(row, value);
+            }
+        }
+
+        void setString(int row, String value) {
+            ensureCapacity(row);
+            if (kind == KIND_EMPTY) {
+                kind = KIND_STRING;
+                codes = new int[capacity];
+                dictionary = new ArrayList<>();
+                dictionaryIndex = new HashMap<>();
+            }
+            if (kind == KIND_STRING) {
+                Integer code = dictionaryIndex.get(value);
+                if (code == null) {
+                    code = dictionary.size();
+                    dictionary.add(value);
+                    dictionaryIndex.put(value, code);
+                }
+                codes[row] = code;
+            } else {
+                setObject(row, value);
+            }
+        }
+
+        /**
+         * Записывает значение в смешанный столбец, переводя столбец в этот вид при необходимости.
+         */
+        void setObject(int row, Object value) {
+            ensureCapacity(row);
+            if (kind != KIND_MIXED) {
+                Object[] converted = new Object[capacity];
+                for (int i = 0; i < row; i++) {
+                    converted[i] = isNull(i) ? null : getObject(i);
+                }
+                kind = KIND_MIXED;
+                values = converted;
+                longs = null;
+                doubles = null;
+                codes = null;
+                dictionary = null;
+                dictionaryIndex = null;
+            }
+            values[row] = value;
+        }
+
+        boolean isNull(int row) {
+            return kind == KIND_EMPTY || (nulls != null && (nulls[row >>> 6] & (1L << row)) != 0);
+        }
+
+        int getType(int row) {
+            if (isNull(row)) {
+                return TYPE_NULL;
+            }
+            switch (kind) {
+                case KIND_LONG:
+                    return TYPE_INTEGER;
+                case KIND_DOUBLE:
+                    return TYPE_FLOAT;
+                case KIND_STRING:
+                    return TYPE_STRING;
+                default:
+                    Object value = values[row];
+                    if (value instanceof Long) return TYPE_INTEGER;
+                    if (value instanceof Double) return TYPE_FLOAT;
+                    if (value instanceof byte[]) return TYPE_BLOB;
+                    return TYPE_STRING;
+            }
+        }
+
+        long getLong(int row) {
+            if (isNull(row)) {
+                return 0;
+            }
+            switch (kind) {
+                case KIND_LONG:
+                    return longs[row];
+                case KIND_DOUBLE:
+                    return (long) doubles[row];
+                default:
+                    Object value = getObject(row);
+                    if (value instanceof Number) {
+                        return ((Number) value).longValue();
+                    }
+                    return (long) parseNumber(value);
+            }
+        }
+
+        double getDouble(int row) {
+            if (isNull(row)) {
+                return 0;
+            }
+            switch (kind) {
+                case KIND_LONG:
+                    return longs[row];
+                case KIND_DOUBLE:
+                    return doubles[row];
+                default:
+                    Object value = getObject(row);
+                    if (value instanceof Number) {
+                        return ((Number) value).doubleValue();
+                    }
+                    return parseNumber(value);
+            }
+        }
+
+        String getString(int row) {
+            if (isNull(row)) {
+                return null;
+            }
+            switch (kind) {
+                case KIND_LONG:
+                    return Long.toString(longs[row]);
+                case KIND_DOUBLE:
+                    return SqlValues.formatReal(doubles[row]);
+                case KIND_STRING:
+                    return dictionary.get(codes[row]);
+                default:
+                    Object value = values[row];
+                    if (value instanceof Double) return SqlValues.formatReal((Double) value);
+                    if (value instanceof byte[]) return SqlValues.formatBlob((byte[]) value);
+                    return value.toString();
+            }
+        }
+
+        byte[] getBlob(int row) {
+            if (isNull(row)) {
+                return null;
+            }
+            Object value = getObject(row);
+            if (value instanceof byte[]) {
+                return (byte[]) value;
+            }
+            return getString(row).getBytes(java.nio.charset.Charset.forName("UTF-8"));
+        }
+
+        private Object getObject(int row) {
+            switch (kind) {
+                case KIND_LONG:
+                    return longs[row];
+                case KIND_DOUBLE:
+                    return doubles[row];
+                case KIND_STRING:
+                    return dictionary.get(codes[row]);
+                case KIND_MIXED:
+                    return values[row];
+                default:
+                    return null;
+            }
+        }
+
+        // Текст, приводимый к числу, как это делает курсор SQLite (нечисловой текст дает 0)
+        private static double parseNumber(Object value) {
+            if (!(value instanceof String)) {
+                return 0;
+            }
+            try {
+                return Double.parseDouble(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        private void ensureCapacity(int row) {
+            if (row < capacity) {
+                return;
+            }
+            int newCapacity = Math.max(capacity * 2, row + 1);
+            if (longs != null) longs = Arrays.copyOf(longs, newCapacity);
+            if (doubles != null) doubles = Arrays.copyOf(doubles, newCapacity);
+            if (codes != null) codes = Arrays.copyOf(codes, newCapacity);
+            if (values != null) values = Arrays.copyOf(values, newCapacity);
+            if (nulls != null) nulls = Arrays.copyOf(nulls, (newCapacity + 63) >>> 6);
+            capacity = newCapacity;
+        }
+
+        long estimateBytes() {
+            long bytes = 48;
+            if (nulls != null) bytes += 8L * nulls.length;
+            if (longs != null) bytes += 8L * longs.length;
+            if (doubles != null) bytes += 8L * doubles.length;
+            if (codes != null) {
+                bytes += 4L * codes.length;
+                for (String value : dictionary) {
+                    bytes += 72 + 2L * value.length();
+                }
+            }
+            if (values != null) {
+                bytes += 8L * values.length;
+                for (Object value : values) {
+                    if (value instanceof String) bytes += 40 + 2L * ((String) value).length();
+                    else if (value instanceof byte[]) bytes += 16 + ((byte[]) value).length;
+                    else if (value != null) bytes += 16;
+                }
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.example.sql_game.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Случайные варианты данных задания для VariantGrader: установочный скрипт задания, к которому дописаны
+ * команды, перемешивающие и изменяющие его данные. Вариант - обычный установочный скрипт, поэтому песочница
+ * кэширует его как шаблон (SetupTemplateCache), и повторные проверки того же задания не генерируют данные заново.
+ *
+ * В каждой rowid-таблице (не больше MAX_TABLE_ROWS строк):
+ * 1. значения столбцов, не входящих в ключи (PRIMARY KEY, UNIQUE, внешние ключи и столбцы, на которые они
+ *    ссылаются), перемешиваются между строками, а часть чисел изменяется на величину до ±30%;
+ * 2. если на таблицу не ссылаются другие таблицы, часть строк удаляется, а часть - дублируется
+ *    (дубли только в таблицах без UNIQUE-ограничений, кроме rowid).
+ * Ключи не меняются, поэтому связи между таблицами сохраняются. Каждая команда проверяется на копии данных,
+ * и команды, нарушающие ограничения схемы (CHECK, NOT NULL), в вариант не попадают.
+ * Варианты детерминированы: зависят только от скрипта и номера варианта.
+ */
+final class DataVariants {
+
+    private static final Logger LOG = Logger.getLogger(DataVariants.class.getName());
+
+    // Таблицы больше этого размера остаются как есть (варианты должны настраиваться быстро)
+    static final int MAX_TABLE_ROWS = 2000;
+    // Доля удаляемых и дублируемых строк (1/ROW_CHANGE_DIVISOR) и доля изменяемых чисел (1/NUMBER_CHANGE_DIVISOR)
+    private static final int ROW_CHANGE_DIVISOR = 5;
+    private static final int NUMBER_CHANGE_DIVISOR = 3;
+
+    private DataVariants() {
+    }
+
+    private static final class Table {
+        final String name;
+        final List<String> columns = new ArrayList<>();
+        // Столбец INTEGER PRIMARY KEY (псевдоним rowid) или -1
+        int rowidColumn = -1;
+        // Столбцы, значения которых не меняются
+        final Set<String> keyColumns = new HashSet<>();
+        boolean hasUniqueConstraints = false;
+        boolean isReferenced = false;
+
+        Table(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Строит count вариантов скрипта setupSql.
+     * @throws RuntimeException если сам установочный скрипт не выполняется.
+     */
+    static List<String> generate(SqlEngine.Factory engineFactory, String setupSql, int count) {
+        List<String> variants = new ArrayList<>(count);
+        for (int variant = 0; variant < count; variant++) {
+            // Вариант строится на чистой копии данных: команды предыдущего варианта на него не влияют
+            SqlEngine db = engineFactory.openInMemory();
+            try {
+                runScript(db, setupSql);
+                long seed = SetupTemplateCache.hashOf(setupSql).hashCode() * 31L + variant;
+                variants.add(setupSql + "\n;\n" + mutate(db, new Random(seed)));
+            } finally {
+                db.close();
+            }
+        }
+        return variants;
+    }
+
+    private static void runScript(SqlEngine db, String script) {
+        db.beginTransaction();
+        try {
+            for (String statement : SqlScriptTokenizer.split(script)) {
+                db.execSQL(statement);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Применяет к данным случайные изменения и возвращает выполненные команды в виде скрипта.
+     */
+    private static String mutate(SqlEngine db, Random random) {
+        List<Table> tables = readSchema(db);
+        StringBuilder script = new StringBuilder();
+        for (Table table : tables) {
+            if (db.longForQuery("SELECT COUNT(*) FROM main." + quoteIdentifier(table.name)) > MAX_TABLE_ROWS) {
+                continue;
+            }
+            List<Long> rowids = new ArrayList<>();
+            List<Object[]> rows = new ArrayList<>();
+            readRows(db, table, rowids, rows);
+            if (rows.size() < 2) {
+                continue;
+            }
+            shuffleValues(db, table, rowids, rows, random, script);
+            if (!table.isReferenced) {
+                changeRows(db, table, rowids, random, script);
+            }
+        }
+        return script.toString();
+    }
+
+    private static void shuffleValues(SqlEngine db, Table table, List<Long> rowids, List<Object[]> rows,
+                                      Random random, StringBuilder script) {
+        List<Integer> freeColumns = new ArrayList<>();
+        for (int column = 0; column < table.columns.size(); column++) {
+            if (!table.keyColumns.contains(table.columns.get(column))) {
+                freeColumns.add(column);
+            }
+        }
+        if (freeColumns.isEmpty()) {
+            return;
+        }
+        // Каждый столбец перемешивается независимо: строки получают сочетания значений, которых не было
+        Object[][] shuffled = new Object[rows.size()][];
+        for (int row = 0; row < rows.size(); row++) {
+            shuffled[row] = rows.get(row).clone();
+        }
+        for (int column : freeColumns) {
+            List<Object> values = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                values.add(row[column]);
+            }
+            Collections.shuffle(values, random);
+            for (int row = 0; row < rows.size(); row++) {
+                shuffled[row][column] = perturb(values.get(row), random);
+            }
+        }
+        for (int row = 0; row < rows.size(); row++) {
+            StringBuilder assignments = new StringBuilder();
+            for (int column : freeColumns) {
+                assignments.append(assignments.length() > 0 ? ", " : "")
+                        .append(quoteIdentifier(table.columns.get(column))).append(" = ")
+                        .append(literal(shuffled[row][column]));
+            }
+            apply(db, "UPDATE main." + quoteIdentifier(table.name) + " SET " + assignments
+                    + " WHERE rowid = " + rowids.get(row), script);
+        }
+    }
+
+    private static void changeRows(SqlEngine db, Table table, List<Long> rowids, Random random, StringBuilder script) {
+        int changeCount = Math.max(1, rowids.size() / ROW_CHANGE_DIVISOR);
+        List<Long> order = new ArrayList<>(rowids);
+        Collections.shuffle(order, random);
+
+        StringBuilder deleted = new StringBuilder();
+        for (int i = 0; i < changeCount; i++) {
+            deleted.append(i > 0 ? ", " : "").append(order.get(i));
+        }
+        apply(db, "DELETE FROM main." + quoteIdentifier(table.name) + " WHERE rowid IN (" + deleted + ")", script);
+
+        if (table.hasUniqueConstraints) {
+            return;
+        }
+        // Дубли получают новый rowid; остальные столбцы копируются из оставшихся строк
+        StringBuilder columns = new StringBuilder();
+        for (int column = 0; column < table.columns.size(); column++) {
+            if (column != table.rowidColumn) {
+                columns.append(columns.length() > 0 ? ", " : "").append(quoteIdentifier(table.columns.get(column)));
+            }
+        }
+        if (columns.length() == 0) {
+            return;
+        }
+        StringBuilder copied = new StringBuilder();
+        for (int i = changeCount; i < Math.min(order.size(), 2 * changeCount); i++) {
+            copied.append(copied.length() > 0 ? ", " : "").append(order.get(i));
+        }
+        if (copied.length() > 0) {
+            apply(db, "INSERT INTO main." + quoteIdentifier(table.name) + " (" + columns + ") SELECT " + columns
+                    + " FROM main." + quoteIdentifier(table.name) + " WHERE rowid IN (" + copied + ")", script);
+        }
+    }
+
+    // Команда попадает в вариант, только если выполнилась на копии данных
+    private static void apply(SqlEngine db, String sql, StringBuilder script) {
+        try {
+            db.execSQL(sql);
+            script.append(sql).append(";\n");
+        } catch (RuntimeException e) {
+            LOG.log(Level.FINE, "Variant statement skipped: " + sql, e);
+        }
+    }
+
+    private static Object perturb(Object value, Random random) {
+        if (random.nextInt(NUMBER_CHANGE_DIVISOR) != 0) {
+            return value;
+        }
+        double factor = random.nextDouble() * 0.6 - 0.3;
+        if (value instanceof Long) {
+            long number = (Long) value;
+            long changed = number + Math.round(number * factor);
+            return changed != number ? changed : number + (random.nextBoolean() ? 1 : -1);
+        }
+        if (value instanceof Double) {
+            // Два знака после запятой: данные заданий обычно денежные суммы и оценки
+            return Math.round((Double) value * (1 + factor) * 100) / 100.0;
+        }
+        return value;
+    }
+
+    private static List<Table> readSchema(SqlEngine db) {
+        Map<String, Table> tables = new HashMap<>();
+        List<Table> ordered = new ArrayList<>();
+        SqlCursor cursor = db.rawQuery("SELECT name, sql FROM main.sqlite_master" +
+                " WHERE type = 'table' AND name NOT LIKE 'sqlite_%' ORDER BY name");
+        try {
+            while (cursor.moveToNext()) {
+                String sql = cursor.getString(1);
+                // Таблицы без rowid (WITHOUT ROWID, виртуальные) не изменяются
+                if (sql != null && !sql.toUpperCase().contains("WITHOUT ROWID")
+                        && !sql.toUpperCase().startsWith("CREATE VIRTUAL")) {
+                    Table table = new Table(cursor.getString(0));
+                    tables.put(table.name, table);
+                    ordered.add(table);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (Table table : ordered) {
+            readColumns(db, table);
+            readUniqueIndexes(db, table);
+        }
+        // Внешние ключи: столбцы с обеих сторон связи - ключевые, а таблица, на которую ссылаются, не теряет строк
+        for (Table table : ordered) {
+            cursor = db.rawQuery("PRAGMA main.foreign_key_list(" + quoteIdentifier(table.name) + ")");
+            try {
+                // Столбцы foreign_key_list: id, seq, table, from, to, on_update, on_delete, match
+                while (cursor.moveToNext()) {
+                    table.keyColumns.add(cursor.getString(3));
+                    Table referenced = tables.get(cursor.getString(2));
+                    if (referenced != null) {
+                        referenced.isReferenced = true;
+                        if (cursor.getString(4) != null) {
+                            referenced.keyColumns.add(cursor.getString(4));
+                        }
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return ordered;
+    }
+
+    private static void readColumns(SqlEngine db, Table table) {
+        List<String> primaryKey = new ArrayList<>();
+        String primaryKeyType = null;
+        SqlCursor cursor = db.rawQuery("PRAGMA main.table_info(" + quoteIdentifier(table.name) + ")");
+        try {
+            // Столбцы table_info: cid, name, type, notnull, dflt_value, pk
+            while (cursor.moveToNext()) {
+                String column = cursor.getString(1);
+                table.columns.add(column);
+                if (cursor.getLong(5) > 0) {
+                    primaryKey.add(column);
+                    primaryKeyType = cursor.getString(2);
+                    table.keyColumns.add(column);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        if (primaryKey.size() == 1 && "INTEGER".equalsIgnoreCase(primaryKeyType)) {
+            table.rowidColumn = table.columns.indexOf(primaryKey.get(0));
+        } else if (!primaryKey.isEmpty()) {
+            table.hasUniqueConstraints = true;
+        }
+    }
+
+    private static void readUniqueIndexes(SqlEngine db, Table table) {
+        List<String> uniqueIndexes = new ArrayList<>();
+        SqlCursor cursor = db.rawQuery("PRAGMA main.index_list(" + quoteIdentifier(table.name) + ")");
+        try {
+            // Столбцы index_list: seq, name, unique (дальше - origin, partial в новых версиях SQLite)
+            while (cursor.moveToNext()) {
+                if (cursor.getLong(2) != 0) {
+                    uniqueIndexes.add(cursor.getString(1));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        for (String index : uniqueIndexes) {
+            table.hasUniqueConstraints = true;
+            cursor = db.rawQuery("PRAGMA main.index_info(" + quoteIdentifier(index) + ")");
+            try {
+                // Столбцы index_info: seqno, cid, name (NULL для выражений)
+                while (cursor.moveToNext()) {
+                    if (cursor.getString(2) != null) {
+                        table.keyColumns.add(cursor.getString(2));
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    private static void readRows(SqlEngine db, Table table, List<Long> rowids, List<Object[]> rows) {
+        int columnCount = table.columns.size();
+        StringBuilder select = new StringBuilder("SELECT rowid");
+        for (String column : table.columns) {
+            select.append(", ").append(quoteIdentifier(column));
+        }
+        select.append(" FROM main.").append(quoteIdentifier(table.name)).append(" ORDER BY rowid");
+        SqlCursor cursor = db.rawQuery(select.toString());
+        try {
+            while (cursor.moveToNext()) {
+                rowids.add(cursor.getLong(0));
+                Object[] row = new Object[columnCount];
+                for (int column = 0; column < columnCount; column++) {
+                    row[column] = valueOf(cursor, column + 1);
+                }
+                rows.add(row);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Object valueOf(SqlCursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case ResultTable.TYPE_NULL:
+                return null;
+            case ResultTable.TYPE_INTEGER:
+                return cursor.getLong(column);
+            case ResultTable.TYPE_FLOAT:
+                return cursor.getDouble(column);
+            case ResultTable.TYPE_BLOB:
+                return cursor.getBlob(column);
+            default:
+                return cursor.getString(column);
+        }
+    }
+
+    private static String literal(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        if (value instanceof Long) {
+            return value.toString();
+        }
+        if (value instanceof Double) {
+            double number = (Double) value;
+            // Double.toString() восстанавливается без потерь; SQLite понимает запись 1.0E10
+            return Double.isInfinite(number) ? (number > 0 ? "9e999" : "-9e999") : Double.toString(number);
+        }
+        if (value instanceof byte[]) {
+            return SqlValues.formatBlob((byte[]) value);
+        }
+        return "'" + value.toString().replace("'", "''") + "'";
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.sql_game.util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Что сделала изменяющая команда (INSERT/UPDATE/DELETE): по каждой затронутой таблице - число вставленных,
+ * удаленных и измененных строк и сами строки (не больше MAX_ROWS каждого вида): новые значения вставленных,
+ * прежние значения удаленных и старые/новые значения измененных с номерами измененных столбцов.
+ *
+ * Строится журналом изменений песочницы (ChangeCapture) в той же транзакции, что и команда, запросами
+ * к журналу: объем работы при чтении не зависит от размера таблиц, а строки сверх MAX_ROWS только считаются.
+ * Строка, которую команда изменила, не поменяв значений (UPDATE t SET a = a), изменением не считается.
+ */
+public final class DmlDelta {
+
+    public static final int MAX_ROWS = 50;
+
+    public static final DmlDelta EMPTY = new DmlDelta(Collections.<TableDelta>emptyList());
+
+    /**
+     * Изменения одной таблицы. Таблицы строк содержат столбцы таблицы без rowid, в порядке rowid.
+     */
+    public static final class TableDelta {
+        public final String tableName;
+        public final List<String> columnNames;
+        public final int insertedCount;
+        public final int deletedCount;
+        public final int updatedCount;
+        // Число ячеек, значения которых изменились, по всем измененным строкам
+        public final int changedCellCount;
+        public final ResultTable insertedRows;
+        public final ResultTable deletedRows;
+        // Измененные строки: значения до и после команды (строки с одинаковым номером соответствуют друг другу)
+        public final ResultTable oldRows;
+        public final ResultTable newRows;
+        // Номера измененных столбцов (по возрастанию) для каждой строки oldRows/newRows
+        public final int[][] changedColumns;
+
+        TableDelta(String tableName, List<String> columnNames, int insertedCount, int deletedCount, int updatedCount,
+                   int changedCellCount, ResultTable insertedRows, ResultTable deletedRows, ResultTable oldRows,
+                   ResultTable newRows, int[][] changedColumns) {
+            this.tableName = tableName;
+            this.columnNames = Collections.unmodifiableList(columnNames);
+            this.insertedCount = insertedCount;
+            this.deletedCount = deletedCount;
+            this.updatedCount = updatedCount;
+            this.changedCellCount = changedCellCount;
+            this.insertedRows = insertedRows;
+            this.deletedRows = deletedRows;
+            this.oldRows = oldRows;
+            this.newRows = newRows;
+            this.changedColumns = changedColumns;
+        }
+
+        /**
+         * Показаны не все строки (каких-то изменений больше MAX_ROWS).
+         */
+        public boolean isTruncated() {
+            return insertedRows.getRowCount() < insertedCount || deletedRows.getRowCount() < deletedCount
+                    || newRows.getRowCount() < updatedCount;
+        }
+    }
+
+    // Таблицы, в которых команда (включая срабатывание триггеров) изменила данные, в порядке первого изменения
+    public final List<TableDelta> tables;
+
+    DmlDelta(List<TableDelta> tables) {
+        this.tables = Collections.unmodifiableList(tables);
+    }
+
+    public boolean isEmpty() {
+        return tables.isEmpty();
+    }
+
+    public int getInsertedCount() {
+        int count = 0;
+        for (TableDelta table : tables) {
+            count += table.insertedCount;
+        }
+        return count;
+    }
+
+    public int getDeletedCount() {
+        int count = 0;
+        for (TableDelta table : tables) {
+            count += table.deletedCount;
+        }
+        return count;
+    }
+
+    public int getUpdatedCount() {
+        int count = 0;
+        for (TableDelta table : tables) {
+            count += table.updatedCount;
+        }
+        return count;
+    }
+}
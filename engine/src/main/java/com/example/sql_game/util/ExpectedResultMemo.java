@@ -0,0 +1,95 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.util.SqlExecutor.ExecutionResult;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кэш результатов эталонных запросов заданий для SqlExecutor.
+ * Ключ - (ID задания, хэш установочного скрипта, версия песочницы). Версия меняется при каждой
+ * изменяющей команде пользователя, поэтому после DML старые записи просто перестают находиться,
+ * а пока песочница не менялась, эталон выполняется один раз на задание.
+ */
+final class ExpectedResultMemo {
+
+    static final int MAX_ENTRIES = 32;
+
+    private static final class Key {
+        final int taskId;
+        final String setupKey;
+        final long sandboxVersion;
+
+        Key(int taskId, String setupKey, long sandboxVersion) {
+            this.taskId = taskId;
+            this.setupKey = setupKey;
+            this.sandboxVersion = sandboxVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return taskId == other.taskId && sandboxVersion == other.sandboxVersion && setupKey.equals(other.setupKey);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = taskId;
+            result = 31 * result + setupKey.hashCode();
+            result = 31 * result + (int) (sandboxVersion ^ (sandboxVersion >>> 32));
+            return result;
+        }
+    }
+
+    private static final class Memo {
+        // Текст эталонного запроса: защищает от совпадения ID у разных заданий
+        final String expectedSql;
+        final ExecutionResult result;
+
+        Memo(String expectedSql, ExecutionResult result) {
+            this.expectedSql = expectedSql;
+            this.result = result;
+        }
+    }
+
+    private final LinkedHashMap<Key, Memo> entries = new LinkedHashMap<Key, Memo>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Memo> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * @return Сохраненный результат или null, если эталон нужно выполнить.
+     */
+    ExecutionResult get(int taskId, String setupKey, long sandboxVersion, String expectedSql) {
+        Memo entry = entries.get(new Key(taskId, setupKey, sandboxVersion));
+        if (entry != null && entry.expectedSql.equals(expectedSql)) {
+            hitCount++;
+            return entry.result;
+        }
+        missCount++;
+        return null;
+    }
+
+    void put(int taskId, String setupKey, long sandboxVersion, String expectedSql, ExecutionResult result) {
+        entries.put(new Key(taskId, setupKey, sandboxVersion), new Memo(expectedSql, result));
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    long getHitCount() {
+        return hitCount;
+    }
+
+    long getMissCount() {
+        return missCount;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.data.model.LessonModel;
+import com.example.sql_game.data.model.TaskModel;
+import com.example.sql_game.data.repository.LessonRepository;
+import com.example.sql_game.util.SqlExecutor.ExecutionResult;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Генератор отпечатков эталонных результатов (ResultFingerprint) для заданий уроков.
+ * Для каждого практического задания выполняет установочный скрипт и эталонный запрос
+ * в отдельной песочнице и формирует исходный код класса LessonFingerprints,
+ * который поставляется вместе с содержимым уроков (data/repository/LessonFingerprints.java).
+ * На JVM генератор запускается с JdbcSqlEngine.FACTORY: ./gradlew :engine:generateLessonFingerprints
+ *
+ * После изменения установочного скрипта или эталонного запроса задания отпечаток нужно сгенерировать
+ * заново; до этого устаревший отпечаток не используется (см. ResultFingerprint.decodeFor()).
+ */
+public final class FingerprintGenerator {
+
+    private static final Logger LOG = Logger.getLogger(FingerprintGenerator.class.getName());
+
+    private FingerprintGenerator() {
+    }
+
+    /**
+     * Вычисляет отпечатки эталонных результатов всех практических заданий.
+     * @param engineFactory Драйвер SQLite для песочницы генератора.
+     * @return ID задания -> ResultFingerprint.encode(), в порядке возрастания ID.
+     */
+    public static Map<Integer, String> generate(List<LessonModel> lessons, SqlEngine.Factory engineFactory) {
+        Map<Integer, String> fingerprints = new TreeMap<>();
+        SqlExecutor executor = new SqlExecutor(engineFactory);
+        try {
+            for (LessonModel lesson : lessons) {
+                for (TaskModel task : lesson.getTasks()) {
+                    String setupSql = task.getDatabaseSetupSql();
+                    String expectedSql = task.getExpectedResult();
+                    if (task.getType() != TaskModel.TaskType.PRACTICE || setupSql == null || expectedSql == null) {
+                        continue;
+                    }
+                    // Задания на изменение данных проверяются по состоянию базы, отпечаток результата им не нужен
+                    if (task.getGradingMode() == TaskModel.GradingMode.STATE) {
+                        continue;
+                    }
+
+                    ExecutionResult setupResult = executor.executeSetup(setupSql);
+                    if (!setupResult.isSuccess) {
+                        LOG.warning("Task " + task.getTaskId() + " skipped: " + setupResult.errorMessage);
+                        continue;
+                    }
+                    try {
+                        ResultFingerprint fingerprint = executor.fingerprintQuery(expectedSql,
+                                ResultFingerprint.sourceHashOf(setupSql, expectedSql));
+                        fingerprints.put(task.getTaskId(), fingerprint.encode());
+                    } catch (RuntimeException e) {
+                        LOG.log(Level.WARNING, "Task " + task.getTaskId() + " skipped: expected query failed", e);
+                    }
+                }
+            }
+        } finally {
+            executor.closeDatabase();
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Формирует исходный код класса LessonFingerprints.
+     */
+    public static String generateSource(List<LessonModel> lessons, SqlEngine.Factory engineFactory) {
+        StringBuilder source = new StringBuilder();
+        source.append("package com.example.sql_game.data.repository;\n\n")
+                .append("import java.util.HashMap;\n")
+                .append("import java.util.Map;\n\n")
+                .append("/**\n")
+                .append(" * Предвычисленные отпечатки эталонных результатов заданий (см. ResultFingerprint).\n")
+                .append(" * Файл сгенерирован FingerprintGenerator, не редактируйте его вручную.\n")
+                .append(" */\n")
+                .append("final class LessonFingerprints {\n\n")
+                .append("    private static final Map<Integer, String> FINGERPRINTS = new HashMap<>();\n\n")
+                .append("    static {\n");
+        for (Map.Entry<Integer, String> entry : generate(lessons, engineFactory).entrySet()) {
+            source.append("        FINGERPRINTS.put(").append(entry.getKey()).append(", \"")
+                    .append(escapeJava(entry.getValue())).append("\");\n");
+        }
+        source.append("    }\n\n")
+                .append("    private LessonFingerprints() {\n")
+                .append("    }\n\n")
+                .append("    /**\n")
+                .append("     * @return Отпечаток эталонного результата задания или null, если он не сгенерирован.\n")
+                .append("     */\n")
+                .append("    static String get(int taskId) {\n")
+                .append("        return FINGERPRINTS.get(taskId);\n")
+                .append("    }\n")
+                .append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * FingerprintGenerator [LessonFingerprints.java]
+     * Формирует LessonFingerprints для уроков LessonRepository и записывает его в файл,
+     * без аргумента - в стандартный вывод. Драйвер sqlite-jdbc должен быть в classpath.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 1) {
+            System.err.println("Usage: FingerprintGenerator [LessonFingerprints.java]");
+            System.exit(2);
+            return;
+        }
+        String source = generateSource(LessonRepository.getInstance().getAllLessons(), JdbcSqlEngine.FACTORY);
+        if (args.length == 1) {
+            Files.write(Paths.get(args[0]), source.getBytes(StandardCharsets.UTF_8));
+        } else {
+            Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            out.write(source);
+            out.flush();
+        }
+    }
+
+    private static String escapeJava(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\%03o", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.data.model.TaskModel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Стандартные стратегии сравнения результатов и выбор стратегии для задания.
+ *
+ * - точное сравнение с учетом порядка строк: O(k) для расхождения в строке k;
+ * - точное сравнение мультимножеств строк: O(n) с хэш-таблицей строк эталона;
+ * - сравнение отпечатков: O(n) без хранения строк, отпечаток эталона вычисляется один раз;
+ * - сравнение чисел с погрешностью: O(n), без учета порядка O(n log n) из-за сортировки строк.
+ * Замеры на результатах от 10 до 1 млн строк - модуль benchmarks (GradingStrategyBenchmark).
+ */
+public final class GradingStrategies {
+
+    // Погрешность NUMERIC_TOLERANT по умолчанию: ошибки округления double, но не округление до знаков
+    public static final double DEFAULT_TOLERANCE = 1e-9;
+
+    // Сколько последних эталонов помнит стратегия по отпечаткам (по числу песочниц, проверяющих одновременно)
+    private static final int MAX_EXPECTED_FINGERPRINTS = 4;
+
+    public static final GradingStrategy EXACT_ORDERED = new Exact(true);
+    public static final GradingStrategy EXACT_UNORDERED = new Exact(false);
+    public static final GradingStrategy FINGERPRINT_ORDERED = new Fingerprint(true);
+    public static final GradingStrategy FINGERPRINT_UNORDERED = new Fingerprint(false);
+
+    private GradingStrategies() {
+    }
+
+    /**
+     * Стратегия задания: TaskModel.getComparisonStrategy() с порядком строк по TaskModel.getGradingMode().
+     * Для заданий в режиме STATE результат не сравнивается (см. SqlExecutor.compareState()),
+     * для них возвращается точное сравнение без учета порядка - так сравниваются таблицы состояния.
+     */
+    public static GradingStrategy forTask(TaskModel task) {
+        boolean ordered = task.getGradingMode() == TaskModel.GradingMode.ORDERED;
+        switch (task.getComparisonStrategy()) {
+            case FINGERPRINT:
+                return fingerprint(ordered);
+            case NUMERIC_TOLERANT:
+                return numericTolerant(ordered,
+                        task.getNumericTolerance() > 0 ? task.getNumericTolerance() : DEFAULT_TOLERANCE);
+            default:
+                return exact(ordered);
+        }
+    }
+
+    public static GradingStrategy exact(boolean ordered) {
+        return ordered ? EXACT_ORDERED : EXACT_UNORDERED;
+    }
+
+    /**
+     * Сравнение по отпечаткам (ResultComparator.compareFingerprints()). Стратегия общая для всех заданий
+     * и запоминает отпечатки нескольких последних эталонов: эталон берется из кэша песочницы
+     * (тот же объект ResultTable), поэтому повторные проверки задания хэшируют только ответ.
+     */
+    public static GradingStrategy fingerprint(boolean ordered) {
+        return ordered ? FINGERPRINT_ORDERED : FINGERPRINT_UNORDERED;
+    }
+
+    public static GradingStrategy numericTolerant(boolean ordered, double tolerance) {
+        if (!(tolerance >= 0)) {
+            throw new IllegalArgumentException("tolerance must be non-negative: " + tolerance);
+        }
+        return new NumericTolerant(ordered, tolerance);
+    }
+
+    private static final class Exact implements GradingStrategy {
+        private final boolean ordered;
+
+        Exact(boolean ordered) {
+            this.ordered = ordered;
+        }
+
+        @Override
+        public ResultComparator.Comparison compare(ResultTable user, ResultTable expected) {
+            return ResultComparator.compare(user, expected, ordered);
+        }
+
+        @Override
+        public boolean isOrdered() {
+            return ordered;
+        }
+
+        @Override
+        public boolean allowsFingerprintRejection() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return ordered ? "exact-ordered" : "exact-unordered";
+        }
+    }
+
+    private static final class Fingerprint implements GradingStrategy {
+        private final boolean ordered;
+        // Отпечатки последних эталонов в порядке обращения. ResultTable не переопределяет equals(),
+        // поэтому ключ - сам объект эталона: новый результат эталонного запроса хэшируется заново
+        private final LinkedHashMap<ResultTable, ResultFingerprint> expectedFingerprints =
+                new LinkedHashMap<ResultTable, ResultFingerprint>(8, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<ResultTable, ResultFingerprint> eldest) {
+                        return size() > MAX_EXPECTED_FINGERPRINTS;
+                    }
+                };
+
+        Fingerprint(boolean ordered) {
+            this.ordered = ordered;
+        }
+
+        @Override
+        public ResultComparator.Comparison compare(ResultTable user, ResultTable expected) {
+            return ResultComparator.compareFingerprints(user, fingerprintOf(expected), ordered);
+        }
+
+        private ResultFingerprint fingerprintOf(ResultTable expected) {
+            ResultFingerprint fingerprint;
+            synchronized (expectedFingerprints) {
+                fingerprint = expectedFingerprints.get(expected);
+            }
+            if (fingerprint == null) {
+                // Хэшируем вне блокировки: проверки других заданий не ждут
+                fingerprint = ResultFingerprint.of(expected);
+                synchronized (expectedFingerprints) {
+                    expectedFingerprints.put(expected, fingerprint);
+                }
+            }
+            return fingerprint;
+        }
+
+        @Override
+        public boolean isOrdered() {
+            return ordered;
+        }
+
+        @Override
+        public boolean allowsFingerprintRejection() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return ordered ? "fingerprint-ordered" : "fingerprint-unordered";
+        }
+    }
+
+    private static final class NumericTolerant implements GradingStrategy {
+        private final boolean ordered;
+        private final double tolerance;
+
+        NumericTolerant(boolean ordered, double tolerance) {
+            this.ordered = ordered;
+            this.tolerance = tolerance;
+        }
+
+        @Override
+        public ResultComparator.Comparison compare(ResultTable user, ResultTable expected) {
+            return ResultComparator.compareWithTolerance(user, expected, ordered, tolerance);
+        }
+
+        @Override
+        public boolean isOrdered() {
+            return ordered;
+        }
+
+        @Override
+        public boolean allowsFingerprintRejection() {
+            // Близкие, но не равные числа дают разные отпечатки
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return (ordered ? "tolerant-ordered(" : "tolerant-unordered(") + tolerance + ")";
+        }
+    }
+}
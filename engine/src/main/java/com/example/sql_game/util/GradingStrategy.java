@@ -0,0 +1,26 @@
+package com.example.sql_game.util;
+
+/**
+ * Способ сравнения результата запроса пользователя с эталонным результатом.
+ * Стратегия для задания выбирается GradingStrategies.forTask(); QueryCheck и VariantGrader проверяют ответы
+ * только через нее, поэтому новый способ сравнения достаточно реализовать здесь.
+ * Реализации не хранят изменяемого состояния проверки и могут использоваться из нескольких потоков.
+ */
+public interface GradingStrategy {
+
+    /**
+     * Сравнивает результаты до первого расхождения.
+     */
+    ResultComparator.Comparison compare(ResultTable user, ResultTable expected);
+
+    /**
+     * Учитывается ли порядок строк (от этого зависит и построчная разница ResultDiff).
+     */
+    boolean isOrdered();
+
+    /**
+     * Можно ли до выполнения эталона отклонить ответ по предвычисленному отпечатку эталона:
+     * только если равные по этой стратегии результаты всегда имеют равные отпечатки.
+     */
+    boolean allowsFingerprintRejection();
+}
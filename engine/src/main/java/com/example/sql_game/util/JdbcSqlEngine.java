@@ -0,0 +1,436 @@
+package com.example.sql_game.util;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SqlEngine для обычной JVM: встроенный SQLite через JDBC (jdbc:sqlite::memory:).
+ * Используются только интерфейсы java.sql, драйвер (org.xerial:sqlite-jdbc) должен быть в classpath
+ * модуля, который запускает песочницу.
+ *
+ * Поведение повторяет AndroidSqlEngine, чтобы SqlExecutor возвращал те же ExecutionResult:
+ * - типы значений берутся из классов хранения SQLite, а не из объявленных типов столбцов;
+ * - сообщения об ошибках приводятся к виду Android: "no such table: t (code 1 SQLITE_ERROR)";
+ * - вложенные транзакции работают как SQLiteDatabase.beginTransaction();
+ * - cancel() прерывает выражение через sqlite3_interrupt(), что соответствует CancellationSignal.
+ */
+public final class JdbcSqlEngine implements SqlEngine {
+
+    public static final SqlEngine.Factory FACTORY = JdbcSqlEngine::openInMemory;
+
+    private static final int SQLITE_INTERRUPT = 9;
+
+    // "[SQLITE_ERROR] SQL error or missing database (no such table: t)" -> код и сообщение SQLite
+    private static final Pattern DRIVER_MESSAGE_PATTERN = Pattern.compile("^\\[(\\w+)\\][^(]*\\((.*)\\)$", Pattern.DOTALL);
+
+    /**
+     * Ошибка SQLite, полученная от драйвера JDBC.
+     */
+    public static final class SqliteException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public final int errorCode;
+
+        SqliteException(String message, int errorCode, Throwable cause) {
+            super(message, cause);
+            this.errorCode = errorCode;
+        }
+    }
+
+    private final Connection connection;
+    private final Object cancelLock = new Object();
+    // Выполняющееся прерываемое выражение (или выражение открытого прерываемого курсора)
+    private Statement activeStatement;
+    // Отметки setTransactionSuccessful() для каждого уровня открытых транзакций
+    private final List<Boolean> transactionLevels = new ArrayList<>();
+    // Вложенная транзакция завершилась без отметки - внешняя будет откачена
+    private boolean childTransactionFailed = false;
+
+    private JdbcSqlEngine(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Открывает новую пустую базу в памяти.
+     */
+    public static JdbcSqlEngine openInMemory() {
+        try {
+            return new JdbcSqlEngine(DriverManager.getConnection("jdbc:sqlite::memory:"));
+        } catch (SQLException e) {
+            throw translate(e);
+        }
+    }
+
+    @Override
+    public void execSQL(String sql, boolean cancellable) {
+        Statement statement = null;
+        try {
+            statement = connection.createStatement();
+            if (cancellable) {
+                setActiveStatement(statement);
+            }
+            statement.execute(sql);
+        } catch (SQLException e) {
+            throw translate(e);
+        } finally {
+            if (cancellable) {
+                setActiveStatement(null);
+            }
+            closeQuietly(statement);
+        }
+    }
+
+    @Override
+    public SqlCursor rawQuery(String sql, boolean cancellable) {
+        Statement statement = null;
+        try {
+            statement = connection.createStatement();
+            if (cancellable) {
+                setActiveStatement(statement);
+            }
+            return new JdbcCursor(statement, statement.executeQuery(sql), cancellable);
+        } catch (SQLException e) {
+            if (cancellable) {
+                setActiveStatement(null);
+            }
+            closeQuietly(statement);
+            throw translate(e);
+        }
+    }
+
+    @Override
+    public long longForQuery(String sql) {
+        SqlCursor cursor = rawQuery(sql);
+        try {
+            if (!cursor.moveToNext()) {
+                throw new SqliteException("query returned no rows", 0, null);
+            }
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public SqlStatement compileStatement(String sql) {
+        try {
+            return new JdbcStatement(connection.prepareStatement(sql));
+        } catch (SQLException e) {
+            throw translate(e);
+        }
+    }
+
+    @Override
+    public void beginTransaction() {
+        if (transactionLevels.isEmpty()) {
+            execSQL("BEGIN");
+            childTransactionFailed = false;
+        }
+        transactionLevels.add(Boolean.FALSE);
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        if (transactionLevels.isEmpty()) {
+            throw new IllegalStateException("No transaction is active");
+        }
+        transactionLevels.set(transactionLevels.size() - 1, Boolean.TRUE);
+    }
+
+    @Override
+    public void endTransaction() {
+        if (transactionLevels.isEmpty()) {
+            throw new IllegalStateException("No transaction is active");
+        }
+        boolean successful = transactionLevels.remove(transactionLevels.size() - 1);
+        if (!transactionLevels.isEmpty()) {
+            childTransactionFailed |= !successful;
+            return;
+        }
+        if (successful && !childTransactionFailed) {
+            execSQL("COMMIT");
+            return;
+        }
+        try {
+            execSQL("ROLLBACK");
+        } catch (SqliteException e) {
+            // Прерванное выражение SQLite откатывает вместе с транзакцией, и откатывать уже нечего
+            if (e.getMessage() == null || !e.getMessage().contains("no transaction is active")) {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (cancelLock) {
+            if (activeStatement != null) {
+                try {
+                    activeStatement.cancel();
+                } catch (SQLException ignored) {
+                    // Выражение уже завершилось
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw translate(e);
+        }
+    }
+
+    // Снятие выражения ждет завершения cancel(), поэтому прерывание не достанется следующему выражению
+    private void setActiveStatement(Statement statement) {
+        synchronized (cancelLock) {
+            activeStatement = statement;
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        if (statement != null) {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+                // Закрытие не влияет на результат выражения
+            }
+        }
+    }
+
+    private static RuntimeException translate(SQLException e) {
+        int code = e.getErrorCode() & 0xff;
+        if (code == SQLITE_INTERRUPT) {
+            return new QueryCancelledException(e);
+        }
+        String message = e.getMessage();
+        Matcher matcher = message != null ? DRIVER_MESSAGE_PATTERN.matcher(message) : null;
+        if (matcher != null && matcher.find()) {
+            message = matcher.group(2) + " (code " + e.getErrorCode() + " " + matcher.group(1) + ")";
+        }
+        return new SqliteException(message, e.getErrorCode(), e);
+    }
+
+    /**
+     * Курсор по ResultSet. Значения текущей строки читаются один раз через getObject(), который
+     * возвращает значение по классу хранения SQLite (Integer/Long, Double, String, byte[] или null).
+     */
+    private final class JdbcCursor implements SqlCursor {
+        private final Statement statement;
+        private final ResultSet resultSet;
+        private final boolean cancellable;
+        private final String[] columnNames;
+        private final Object[] row;
+        private boolean closed = false;
+
+        JdbcCursor(Statement statement, ResultSet resultSet, boolean cancellable) throws SQLException {
+            this.statement = statement;
+            this.resultSet = resultSet;
+            this.cancellable = cancellable;
+            int columnCount = resultSet.getMetaData().getColumnCount();
+            this.columnNames = new String[columnCount];
+            for (int column = 0; column < columnCount; column++) {
+                columnNames[column] = resultSet.getMetaData().getColumnName(column + 1);
+            }
+            this.row = new Object[columnCount];
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return columnNames.clone();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columnNames.length;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            try {
+                if (!resultSet.next()) {
+                    return false;
+                }
+                for (int column = 0; column < row.length; column++) {
+                    row[column] = resultSet.getObject(column + 1);
+                }
+                return true;
+            } catch (SQLException e) {
+                throw translate(e);
+            }
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = row[column];
+            if (value == null) {
+                return ResultTable.TYPE_NULL;
+            } else if (value instanceof Double || value instanceof Float) {
+                return ResultTable.TYPE_FLOAT;
+            } else if (value instanceof Number) {
+                return ResultTable.TYPE_INTEGER;
+            } else if (value instanceof byte[]) {
+                return ResultTable.TYPE_BLOB;
+            }
+            return ResultTable.TYPE_STRING;
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = row[column];
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            try {
+                // Текст и BLOB SQLite приводит к числу сам (sqlite3_column_int64)
+                return resultSet.getLong(column + 1);
+            } catch (SQLException e) {
+                throw translate(e);
+            }
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = row[column];
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            try {
+                return resultSet.getDouble(column + 1);
+            } catch (SQLException e) {
+                throw translate(e);
+            }
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = row[column];
+            if (value == null || value instanceof String) {
+                return (String) value;
+            }
+            try {
+                // Число в текст форматирует SQLite (sqlite3_column_text), как и курсор Android
+                return resultSet.getString(column + 1);
+            } catch (SQLException e) {
+                throw translate(e);
+            }
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            Object value = row[column];
+            if (value == null || value instanceof byte[]) {
+                return (byte[]) value;
+            }
+            try {
+                return resultSet.getBytes(column + 1);
+            } catch (SQLException e) {
+                throw translate(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (cancellable) {
+                setActiveStatement(null);
+            }
+            try {
+                resultSet.close();
+            } catch (SQLException ignored) {
+                // Выражение закрывается ниже вместе с результатом
+            }
+            closeQuietly(statement);
+        }
+    }
+
+    private static final class JdbcStatement implements SqlStatement {
+        private final PreparedStatement statement;
+
+        JdbcStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public void bindNull(int index) {
+            try {
+                statement.setNull(index, Types.NULL);
+            } catch (SQLException e) {
+                throw translate(e);
+            }
+        }
+
+        @Override
+        public void bindLong(int index, long value) {
+            try {
+                statement.setLong(index, value);
+            } catch (SQLException e) {
+                throw translate(e);
+            }
+        }
+
+        @Override
+        public void bindDouble(int index, double value) {
+            try {
+                statement.setDouble(index, value);
+            } catch (SQLException e) {
+                throw translate(e);
+            }
+        }
+
+        @Override
+        public void bindString(int index, String value) {
+            try {
+                statement.setString(index, value);
+            } catch (SQLException e) {
+                throw translate(e);
+            }
+        }
+
+        @Override
+        public void bindBlob(int index, byte[] value) {
+            try {
+                statement.setBytes(index, value);
+            } catch (SQLException e) {
+                throw translate(e);
+            }
+        }
+
+        @Override
+        public void clearBindings() {
+            try {
+                statement.clearParameters();
+            } catch (SQLException e) {
+                throw translate(e);
+            }
+        }
+
+        @Override
+        public int execute() {
+            try {
+                return statement.executeUpdate();
+            } catch (SQLException e) {
+                throw translate(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(statement);
+        }
+    }
+}
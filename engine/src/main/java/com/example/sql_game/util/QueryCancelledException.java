@@ -0,0 +1,14 @@
+package com.example.sql_game.util;
+
+/**
+ * Выражение прервано вызовом SqlEngine.cancel(). Изменения прерванного выражения уже откачены SQLite,
+ * и соединение остается рабочим.
+ */
+public class QueryCancelledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public QueryCancelledException(Throwable cause) {
+        super("Выполнение прервано.", cause);
+    }
+}
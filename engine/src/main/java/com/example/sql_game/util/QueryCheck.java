@@ -0,0 +1,179 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.data.model.TaskModel;
+import com.example.sql_game.util.SqlExecutor.ExecutionResult;
+
+/**
+ * Результат выполнения и проверки запроса пользователя, полученный в потоке песочницы.
+ */
+public final class QueryCheck {
+    public final ExecutionResult userResult;
+    // Результат эталонного запроса или null, если эталон не выполнялся
+    public final ExecutionResult expectedResult;
+    // false, если проверка не выполнялась (ошибка запроса, не SELECT, нет эталона)
+    public final boolean isChecked;
+    public final boolean isCorrect;
+    // Первое расхождение с эталоном или null, если полное сравнение не выполнялось
+    public final ResultComparator.Comparison comparison;
+    // Построчная разница для неверного ответа или null, если она не вычислялась.
+    // При проверке по состоянию - разница содержимого первой расходящейся таблицы с эталонным
+    public final ResultDiff diff;
+    // Итог сравнения данных с эталоном для заданий на изменение данных (TaskModel.GradingMode.STATE), иначе null
+    public final StateComparison stateComparison;
+    // Итог проверки на случайных вариантах данных (VariantGrader) или null, если она не выполнялась
+    public final VariantGrader.Result variantResult;
+
+    /**
+     * Проверка полным сравнением с результатом эталонного запроса.
+     * @param comparison Итог сравнения или null, если эталонный запрос завершился ошибкой.
+     */
+    public QueryCheck(ExecutionResult userResult, ExecutionResult expectedResult, ResultComparator.Comparison comparison) {
+        this(userResult, expectedResult, true, comparison != null && comparison.isEqual(), comparison, null, null,
+                null);
+    }
+
+    private QueryCheck(ExecutionResult userResult, ExecutionResult expectedResult, boolean isChecked, boolean isCorrect,
+                       ResultComparator.Comparison comparison, ResultDiff diff, StateComparison stateComparison,
+                       VariantGrader.Result variantResult) {
+        this.userResult = userResult;
+        this.expectedResult = expectedResult;
+        this.isChecked = isChecked;
+        this.isCorrect = isCorrect;
+        this.comparison = comparison;
+        this.diff = diff;
+        this.stateComparison = stateComparison;
+        this.variantResult = variantResult;
+    }
+
+    /**
+     * Запрос выполнен, но не проверялся.
+     */
+    public static QueryCheck notChecked(ExecutionResult userResult) {
+        return new QueryCheck(userResult, null, false, false, null, null, null, null);
+    }
+
+    /**
+     * Запрос отклонен по предвычисленному отпечатку, эталонный запрос не выполнялся.
+     */
+    public static QueryCheck rejectedByFingerprint(ExecutionResult userResult) {
+        return new QueryCheck(userResult, null, true, false, null, null, null, null);
+    }
+
+    /**
+     * Та же проверка с учетом проверки на случайных вариантах данных: ответ, верный на исходных данных,
+     * но расходящийся с эталоном на каком-то варианте, считается неверным. Если ни один вариант не проверен
+     * (VariantGrader.Result.isInconclusive()), вердикт не меняется, а итог вариантов сохраняется в variantResult.
+     */
+    public QueryCheck withVariants(VariantGrader.Result variants) {
+        return new QueryCheck(userResult, expectedResult, isChecked, isCorrect && variants.isPassed(), comparison, diff,
+                stateComparison, variants);
+    }
+
+    /**
+     * Нужно ли сверять результат запроса пользователя с эталоном задания. Единое правило для приложения,
+     * пакетной проверки и сервера: проверяются только успешные запросы заданий с эталоном; в режиме STATE -
+     * изменяющие команды (результат без столбцов), в остальных режимах - запросы, возвращающие строки.
+     */
+    public static boolean shouldGrade(TaskModel task, ExecutionResult userResult) {
+        String expectedQuery = task.getExpectedResult();
+        if (!userResult.isSuccess || expectedQuery == null || expectedQuery.isEmpty()) {
+            return false;
+        }
+        boolean returnsRows = !userResult.resultColumns.isEmpty();
+        return task.getGradingMode() == TaskModel.GradingMode.STATE ? !returnsRows : returnsRows;
+    }
+
+    /**
+     * Проверяет успешный SELECT-результат пользователя по эталону задания (вызывается в потоке песочницы):
+     * 1. пока песочница не изменялась, сверяет результат с предвычисленным отпечатком эталона;
+     * 2. при совпадении отпечатков (или без них) сравнивает с эталоном полностью, до первого расхождения;
+     * 3. для неверного ответа вычисляет построчную разницу с эталоном.
+     * Результаты сравниваются стратегией задания (GradingStrategies.forTask()); отказ по отпечатку
+     * выполняется, только если стратегия его допускает.
+     * В режиме STATE проверяется не результат, а данные песочницы после изменяющей команды (см. gradeState()).
+     * Результат, который не нужно проверять (shouldGrade()), возвращается как notChecked().
+     * Длительность проверки записывается в метрики песочницы (SandboxMetrics.Operation.GRADING).
+     * @param withDiff true - вычислить ResultDiff для неверного ответа. Для этого эталон выполняется
+     *                 (или берется из кэша) и после отказа по отпечатку.
+     */
+    public static QueryCheck grade(SqlExecutor executor, TaskModel task, ExecutionResult userResult, boolean withDiff) {
+        if (!shouldGrade(task, userResult)) {
+            return notChecked(userResult);
+        }
+        SandboxMetrics metrics = executor.getMetrics();
+        long start = metrics.start();
+        QueryCheck check = runGrading(executor, task, userResult, withDiff);
+        // Строки и объем - эталонный результат, с которым сравнивался ответ
+        ExecutionResult expected = check.expectedResult;
+        metrics.record(SandboxMetrics.Operation.GRADING, start, expected == null || expected.isSuccess,
+                expected != null ? expected.resultTable.getRowCount() : 0,
+                expected != null ? expected.resultTable.getEstimatedBytes() : 0);
+        return check;
+    }
+
+    private static QueryCheck runGrading(SqlExecutor executor, TaskModel task, ExecutionResult userResult, boolean withDiff) {
+        if (task.getGradingMode() == TaskModel.GradingMode.STATE) {
+            return gradeState(executor, task, userResult, withDiff);
+        }
+        String expectedQuery = task.getExpectedResult();
+        GradingStrategy strategy = GradingStrategies.forTask(task);
+
+        ResultFingerprint expectedFingerprint = strategy.allowsFingerprintRejection()
+                ? ResultFingerprint.decodeFor(task.getExpectedFingerprint(), task.getDatabaseSetupSql(), expectedQuery)
+                : null;
+        boolean rejected = false;
+        if (expectedFingerprint != null && executor.isPristineFor(task.getDatabaseSetupSql())) {
+            rejected = !expectedFingerprint.matches(ResultFingerprint.of(userResult.resultTable),
+                    strategy.isOrdered());
+            executor.getMetrics().increment(rejected
+                    ? SandboxMetrics.Counter.FINGERPRINT_REJECTED
+                    : SandboxMetrics.Counter.FINGERPRINT_MATCHED);
+        }
+        if (rejected && !withDiff) {
+            return rejectedByFingerprint(userResult);
+        }
+
+        // Эталон берется из кэша, пока песочница не изменялась
+        ExecutionResult expectedResult = executor.executeExpectedQuery(task.getTaskId(), expectedQuery);
+        if (!expectedResult.isSuccess) {
+            return rejected ? rejectedByFingerprint(userResult) : new QueryCheck(userResult, expectedResult, null);
+        }
+
+        // После отказа по отпечатку полное сравнение не нужно: ответ заведомо неверный
+        ResultComparator.Comparison comparison = rejected
+                ? null
+                : strategy.compare(userResult.resultTable, expectedResult.resultTable);
+        boolean isCorrect = comparison != null && comparison.isEqual();
+        ResultDiff diff = !isCorrect && withDiff
+                ? ResultDiff.compute(userResult, expectedResult, strategy.isOrdered())
+                : null;
+        return new QueryCheck(userResult, expectedResult, true, isCorrect, comparison, diff, null, null);
+    }
+
+    /**
+     * Проверка задания на изменение данных: после успешной изменяющей команды пользователя данные песочницы
+     * должны совпасть с данными после эталонной команды (SqlExecutor.compareState()). Для неверного ответа разница вычисляется по первой расходящейся таблице:
+     * expectedResult - ее эталонное содержимое.
+     */
+    private static QueryCheck gradeState(SqlExecutor executor, TaskModel task, ExecutionResult userResult,
+                                         boolean withDiff) {
+        StateComparison state = executor.compareState(task.getExpectedResult());
+        if (!state.isSuccess()) {
+            return new QueryCheck(userResult, new ExecutionResult(state.errorMessage), true, false, null, null, state,
+                    null);
+        }
+        if (state.isEqual() || !withDiff) {
+            return new QueryCheck(userResult, null, true, state.isEqual(), null, null, state, null);
+        }
+
+        String select = "SELECT * FROM \"" + state.mismatchedTables.get(0).replace("\"", "\"\"") + "\"";
+        ExecutionResult expectedRows = executor.queryExpectedState(task.getExpectedResult(), select);
+        ExecutionResult userRows = executor.executeQuery(select);
+        // Таблицы может не быть в одной из песочниц (пользователь изменил схему): тогда без разницы
+        ResultDiff diff = expectedRows.isSuccess && userRows.isSuccess
+                ? ResultDiff.compute(userRows, expectedRows, false)
+                : null;
+        return new QueryCheck(userResult, expectedRows.isSuccess ? expectedRows : null, true, false, null, diff,
+                state, null);
+    }
+}
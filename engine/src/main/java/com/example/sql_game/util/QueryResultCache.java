@@ -0,0 +1,148 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.util.SqlExecutor.ExecutionResult;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Кэш результатов запросов пользователя для SqlExecutor: повторное нажатие "Выполнить" с тем же запросом
+ * возвращает сохраненный результат без выполнения.
+ *
+ * Ключ - текст запроса без лишних пробелов и комментариев, с ключевыми словами и именами в верхнем регистре
+ * (строковые литералы и имена в кавычках не меняются). Записи действительны, пока у песочницы не изменились
+ * total_changes() и schema_version: любая изменяющая команда, отмена или сброс сбрасывают кэш целиком.
+ * Запросы с недетерминированными функциями (random(), datetime('now') и т.п.) не кэшируются.
+ */
+final class QueryResultCache {
+
+    static final int MAX_ENTRIES = 8;
+    static final long MAX_BYTES = 4 * 1024 * 1024;
+
+    private static final Pattern VOLATILE_PATTERN = Pattern.compile(
+            "\\b(?:RANDOM|RANDOMBLOB|CHANGES|TOTAL_CHANGES|LAST_INSERT_ROWID|DATE|TIME|DATETIME|JULIANDAY|STRFTIME"
+                    + "|UNIXEPOCH)\\s*\\(|\\bCURRENT_(?:DATE|TIME|TIMESTAMP)\\b");
+
+    private static final class Entry {
+        // Исходный текст (StatementCache.normalize()): от него зависят имена столбцов результата
+        final String sql;
+        final ExecutionResult result;
+        final long bytes;
+
+        Entry(String sql, ExecutionResult result, long bytes) {
+            this.sql = sql;
+            this.result = result;
+            this.bytes = bytes;
+        }
+    }
+
+    // Записи в порядке обращения: первой вытесняется давно не использованная
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    // Отметка состояния песочницы (total_changes и schema_version), для которой действительны записи
+    private long totalChanges = -1;
+    private long schemaVersion = -1;
+
+    /**
+     * Ключ кэша для запроса или null, если результат запроса кэшировать нельзя.
+     */
+    static String keyOf(String sql) {
+        StringBuilder key = new StringBuilder(sql.length());
+        int length = sql.length();
+        int i = 0;
+        boolean pendingSpace = false;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                i++;
+                continue;
+            }
+            if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? length : end;
+                pendingSpace = true;
+                continue;
+            }
+            if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace && key.length() > 0) {
+                key.append(' ');
+            }
+            pendingSpace = false;
+            char close = c == '\'' || c == '"' || c == '`' ? c : c == '[' ? ']' : 0;
+            if (close != 0) {
+                // Литерал или имя в кавычках копируется как есть (удвоенная кавычка - два литерала подряд)
+                int end = sql.indexOf(close, i + 1);
+                end = end < 0 ? length : end + 1;
+                key.append(sql, i, end);
+                i = end;
+                continue;
+            }
+            // SQLite сравнивает имена без учета регистра только для латиницы
+            key.append(c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c);
+            i++;
+        }
+        while (key.length() > 0 && key.charAt(key.length() - 1) == ';') {
+            key.setLength(key.length() - 1);
+        }
+        String normalized = key.toString().trim();
+        return VOLATILE_PATTERN.matcher(normalized).find() ? null : normalized;
+    }
+
+    /**
+     * Сбрасывает кэш, если отметка песочницы изменилась с момента сохранения записей.
+     */
+    void validate(long totalChanges, long schemaVersion) {
+        if (totalChanges != this.totalChanges || schemaVersion != this.schemaVersion) {
+            clear();
+            this.totalChanges = totalChanges;
+            this.schemaVersion = schemaVersion;
+        }
+    }
+
+    /**
+     * @return Сохраненный результат или null.
+     */
+    ExecutionResult get(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.result : null;
+    }
+
+    /**
+     * Исходный текст запроса, результат которого сохранен под ключом.
+     */
+    String getSql(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.sql : null;
+    }
+
+    void put(String key, String sql, ExecutionResult result) {
+        long bytes = result.resultTable.getEstimatedBytes();
+        if (bytes > MAX_BYTES / 2) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(sql, result, bytes));
+        if (previous != null) {
+            totalBytes -= previous.bytes;
+        }
+        totalBytes += bytes;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while ((entries.size() > MAX_ENTRIES || totalBytes > MAX_BYTES) && iterator.hasNext()) {
+            totalBytes -= iterator.next().bytes;
+            iterator.remove();
+        }
+    }
+
+    void clear() {
+        entries.clear();
+        totalBytes = 0;
+        totalChanges = -1;
+        schemaVersion = -1;
+    }
+}
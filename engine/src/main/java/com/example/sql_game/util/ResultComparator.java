@@ -0,0 +1,508 @@
+package com.example.sql_game.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Потоковое сравнение результатов запросов с ранним выходом.
+ * Сначала сравниваются заголовки столбцов, затем строки читаются из обоих источников одновременно
+ * и сравнение останавливается на первой несовпавшей строке. Неверный ответ, расходящийся с эталоном
+ * в строке k, стоит O(k) прочитанных строк, а источники-курсоры при этом не копируются в память.
+ *
+ * Значения сравниваются с учетом типов так же, как SqlValues.cellEquals().
+ * По умолчанию порядок строк имеет значение; compareUnordered() сравнивает результаты как мультимножества
+ * строк за ожидаемое время O(n): строки эталона раскладываются по хэшам (см. ResultFingerprint),
+ * и каждая строка пользователя ищет себе пару только среди строк с тем же хэшем.
+ * compareFingerprints() и compareWithTolerance() - менее строгие способы сравнения для GradingStrategy.
+ */
+public final class ResultComparator {
+
+    /**
+     * Вид расхождения результатов.
+     */
+    public enum MismatchKind {
+        NONE,
+        COLUMNS,
+        ROW_COUNT,
+        ROW_VALUES,
+        // Строке пользователя нет пары в эталоне (сравнение без учета порядка)
+        UNEXPECTED_ROW,
+        // Отпечатки результатов различаются (compareFingerprints()): позиция расхождения неизвестна
+        FINGERPRINT
+    }
+
+    /**
+     * Итог сравнения: вид и позиция первого расхождения.
+     */
+    public static final class Comparison {
+        public static final Comparison EQUAL = new Comparison(MismatchKind.NONE, -1, -1);
+
+        public final MismatchKind kind;
+        // Индекс первой несовпавшей строки (для ROW_COUNT - число строк более короткого результата), иначе -1
+        public final int rowIndex;
+        // Индекс первого несовпавшего столбца в строке rowIndex (для ROW_VALUES), иначе -1
+        public final int columnIndex;
+
+        private Comparison(MismatchKind kind, int rowIndex, int columnIndex) {
+            this.kind = kind;
+            this.rowIndex = rowIndex;
+            this.columnIndex = columnIndex;
+        }
+
+        public boolean isEqual() {
+            return kind == MismatchKind.NONE;
+        }
+
+        @Override
+        public String toString() {
+            switch (kind) {
+                case NONE:
+                    return "равны";
+                case COLUMNS:
+                    return "заголовки столбцов не совпадают";
+                case ROW_COUNT:
+                    return "количество строк не совпадает (в более коротком результате " + rowIndex + ")";
+                case UNEXPECTED_ROW:
+                    return "строка " + rowIndex + " отсутствует в эталоне";
+                case FINGERPRINT:
+                    return "отпечатки результатов не совпадают";
+                default:
+                    return "строка " + rowIndex + ", столбец " + columnIndex;
+            }
+        }
+    }
+
+    private ResultComparator() {
+    }
+
+    /**
+     * Сравнивает два курсора, читая их синхронно. Курсоры должны стоять перед первой строкой;
+     * после сравнения их позиция не определена.
+     */
+    public static Comparison compare(SqlCursor user, SqlCursor expected) {
+        return compare(new CursorRows(user), new CursorRows(expected));
+    }
+
+    /**
+     * Сравнивает уже полученный результат с курсором, не копируя строки курсора.
+     */
+    public static Comparison compare(ResultTable user, SqlCursor expected) {
+        return compare(new TableRows(user), new CursorRows(expected));
+    }
+
+    /**
+     * Сравнивает два уже полученных результата.
+     */
+    public static Comparison compare(ResultTable user, ResultTable expected) {
+        if (!user.getColumnNames().equals(expected.getColumnNames())) {
+            return new Comparison(MismatchKind.COLUMNS, -1, -1);
+        }
+        // Для таблиц число строк известно заранее, поэтому разную длину видно без обхода
+        if (user.getRowCount() != expected.getRowCount()) {
+            return new Comparison(MismatchKind.ROW_COUNT,
+                    Math.min(user.getRowCount(), expected.getRowCount()), -1);
+        }
+        return compare(new TableRows(user), new TableRows(expected));
+    }
+
+    /**
+     * Сравнивает результаты с учетом или без учета порядка строк.
+     */
+    public static Comparison compare(ResultTable user, ResultTable expected, boolean ordered) {
+        return ordered ? compare(user, expected) : compareUnordered(user, expected);
+    }
+
+    /**
+     * Сравнивает результаты как мультимножества строк: одинаковые строки в любом порядке
+     * (и с теми же кратностями) считаются равными.
+     */
+    public static Comparison compareUnordered(ResultTable user, ResultTable expected) {
+        if (!user.getColumnNames().equals(expected.getColumnNames())) {
+            return new Comparison(MismatchKind.COLUMNS, -1, -1);
+        }
+        if (user.getRowCount() != expected.getRowCount()) {
+            return new Comparison(MismatchKind.ROW_COUNT,
+                    Math.min(user.getRowCount(), expected.getRowCount()), -1);
+        }
+        return compareUnordered(new TableRows(user), expected);
+    }
+
+    /**
+     * Сравнивает курсор с уже полученным эталоном без учета порядка строк.
+     * Строки курсора не копируются: каждая сразу ищет пару среди строк эталона.
+     */
+    public static Comparison compareUnordered(SqlCursor user, ResultTable expected) {
+        return compareUnordered(new CursorRows(user), expected);
+    }
+
+    /**
+     * Сравнивает результаты только по отпечаткам (ResultFingerprint): заголовки и число строк сравниваются точно,
+     * строки - по 64-битному хэшу, поэтому различные результаты с вероятностью около 2^-64 считаются равными.
+     * Позиция расхождения строк не определяется.
+     * @param expected Отпечаток эталона; его можно вычислить один раз для всех проверок.
+     */
+    public static Comparison compareFingerprints(ResultTable user, ResultFingerprint expected, boolean ordered) {
+        if (!user.getColumnNames().equals(expected.getColumnNames())) {
+            return new Comparison(MismatchKind.COLUMNS, -1, -1);
+        }
+        if (user.getRowCount() != expected.getRowCount()) {
+            return new Comparison(MismatchKind.ROW_COUNT, Math.min(user.getRowCount(), expected.getRowCount()), -1);
+        }
+        return ResultFingerprint.of(user).matches(expected, ordered)
+                ? Comparison.EQUAL
+                : new Comparison(MismatchKind.FINGERPRINT, -1, -1);
+    }
+
+    /**
+     * Сравнивает результаты, считая равными вещественные числа, отличающиеся не больше чем на
+     * tolerance * max(1, |a|, |b|): для малых значений погрешность абсолютная, для больших - относительная.
+     * Если оба числа целые, они сравниваются точно; остальные значения - как в compare().
+     *
+     * Без учета порядка строки обоих результатов сортируются и сравниваются попарно (O(n log n)),
+     * так как равенство с погрешностью нельзя проверить по хэшам. Пары находятся верно, пока погрешность
+     * меньше разницы между различными значениями столбца, что для ошибок округления выполняется.
+     */
+    public static Comparison compareWithTolerance(ResultTable user, ResultTable expected, boolean ordered,
+                                                  double tolerance) {
+        if (!user.getColumnNames().equals(expected.getColumnNames())) {
+            return new Comparison(MismatchKind.COLUMNS, -1, -1);
+        }
+        int rowCount = user.getRowCount();
+        if (rowCount != expected.getRowCount()) {
+            return new Comparison(MismatchKind.ROW_COUNT, Math.min(rowCount, expected.getRowCount()), -1);
+        }
+        int columnCount = user.getColumnNames().size();
+        Integer[] userRows = ordered ? null : sortedRows(user);
+        Integer[] expectedRows = ordered ? null : sortedRows(expected);
+        for (int row = 0; row < rowCount; row++) {
+            int userRow = ordered ? row : userRows[row];
+            int expectedRow = ordered ? row : expectedRows[row];
+            for (int column = 0; column < columnCount; column++) {
+                if (!cellEqualsWithin(user, userRow, expected, expectedRow, column, tolerance)) {
+                    return ordered
+                            ? new Comparison(MismatchKind.ROW_VALUES, row, column)
+                            : new Comparison(MismatchKind.UNEXPECTED_ROW, userRow, -1);
+                }
+            }
+        }
+        return Comparison.EQUAL;
+    }
+
+    private static boolean cellEqualsWithin(ResultTable a, int rowA, ResultTable b, int rowB, int column,
+                                            double tolerance) {
+        int typeA = a.getType(rowA, column);
+        int typeB = b.getType(rowB, column);
+        if ((typeA == ResultTable.TYPE_FLOAT || typeB == ResultTable.TYPE_FLOAT)
+                && SqlValues.isNumeric(typeA) && SqlValues.isNumeric(typeB)) {
+            double x = a.getDouble(rowA, column);
+            double y = b.getDouble(rowB, column);
+            return x == y || Math.abs(x - y) <= tolerance * Math.max(1.0, Math.max(Math.abs(x), Math.abs(y)));
+        }
+        return SqlValues.cellEquals(a, rowA, column, b, rowB, column);
+    }
+
+    // Номера строк таблицы, упорядоченные по значениям: NULL, числа по значению, строки, BLOB
+    private static Integer[] sortedRows(final ResultTable table) {
+        final int columnCount = table.getColumnNames().size();
+        Integer[] rows = new Integer[table.getRowCount()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        Arrays.sort(rows, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                for (int column = 0; column < columnCount; column++) {
+                    int result = compareCells(table, a, b, column);
+                    if (result != 0) {
+                        return result;
+                    }
+                }
+                return 0;
+            }
+        });
+        return rows;
+    }
+
+    private static int compareCells(ResultTable table, int rowA, int rowB, int column) {
+        int typeA = table.getType(rowA, column);
+        int typeB = table.getType(rowB, column);
+        int rankA = typeRank(typeA);
+        int rankB = typeRank(typeB);
+        if (rankA != rankB) {
+            return rankA < rankB ? -1 : 1;
+        }
+        switch (typeA) {
+            case ResultTable.TYPE_NULL:
+                return 0;
+            case ResultTable.TYPE_INTEGER:
+            case ResultTable.TYPE_FLOAT:
+                if (typeA == ResultTable.TYPE_INTEGER && typeB == ResultTable.TYPE_INTEGER) {
+                    long x = table.getLong(rowA, column);
+                    long y = table.getLong(rowB, column);
+                    return x < y ? -1 : (x == y ? 0 : 1);
+                }
+                return Double.compare(table.getDouble(rowA, column), table.getDouble(rowB, column));
+            case ResultTable.TYPE_BLOB:
+                byte[] x = table.getBlob(rowA, column);
+                byte[] y = table.getBlob(rowB, column);
+                for (int i = 0; i < Math.min(x.length, y.length); i++) {
+                    if (x[i] != y[i]) {
+                        return x[i] < y[i] ? -1 : 1;
+                    }
+                }
+                return x.length - y.length;
+            default:
+                return table.getString(rowA, column).compareTo(table.getString(rowB, column));
+        }
+    }
+
+    private static int typeRank(int type) {
+        return type == ResultTable.TYPE_FLOAT ? ResultTable.TYPE_INTEGER : type;
+    }
+
+    private static Comparison compareUnordered(Rows user, ResultTable expected) {
+        if (!user.columnNames().equals(expected.getColumnNames())) {
+            return new Comparison(MismatchKind.COLUMNS, -1, -1);
+        }
+
+        // Хэш строки -> индексы еще не сопоставленных строк эталона с этим хэшем
+        int expectedRowCount = expected.getRowCount();
+        Map<Long, List<Integer>> unmatched = new HashMap<>(expectedRowCount * 2);
+        TableRows expectedRows = new TableRows(expected);
+        while (expectedRows.next()) {
+            long hash = rowHash(expectedRows);
+            List<Integer> bucket = unmatched.get(hash);
+            if (bucket == null) {
+                bucket = new ArrayList<>(1);
+                unmatched.put(hash, bucket);
+            }
+            bucket.add(expectedRows.row);
+        }
+
+        int row = 0;
+        while (user.next()) {
+            if (row >= expectedRowCount) {
+                return new Comparison(MismatchKind.ROW_COUNT, expectedRowCount, -1);
+            }
+            List<Integer> bucket = unmatched.get(rowHash(user));
+            if (!removeMatch(bucket, user, expectedRows)) {
+                return new Comparison(MismatchKind.UNEXPECTED_ROW, row, -1);
+            }
+            row++;
+        }
+        return row == expectedRowCount ? Comparison.EQUAL : new Comparison(MismatchKind.ROW_COUNT, row, -1);
+    }
+
+    // Ищет в корзине строку эталона, равную текущей строке пользователя, и убирает ее из корзины.
+    // Совпадение хэшей проверяется полным сравнением, поэтому коллизии не влияют на результат.
+    private static boolean removeMatch(List<Integer> bucket, Rows user, TableRows expectedRows) {
+        if (bucket == null) {
+            return false;
+        }
+        int columnCount = user.columnNames().size();
+        for (int i = bucket.size() - 1; i >= 0; i--) {
+            expectedRows.row = bucket.get(i);
+            boolean equal = true;
+            for (int column = 0; column < columnCount && equal; column++) {
+                equal = cellEquals(user, expectedRows, column);
+            }
+            if (equal) {
+                bucket.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Хэш текущей строки, согласованный с cellEquals(): равные строки всегда имеют равные хэши
+    private static long rowHash(Rows rows) {
+        long hash = 0;
+        int columnCount = rows.columnNames().size();
+        for (int column = 0; column < columnCount; column++) {
+            long cellHash;
+            switch (rows.type(column)) {
+                case ResultTable.TYPE_NULL:
+                    cellHash = ResultFingerprint.hashNull();
+                    break;
+                case ResultTable.TYPE_INTEGER:
+                    cellHash = ResultFingerprint.hashLong(rows.getLong(column));
+                    break;
+                case ResultTable.TYPE_FLOAT:
+                    cellHash = ResultFingerprint.hashDouble(rows.getDouble(column));
+                    break;
+                case ResultTable.TYPE_BLOB:
+                    cellHash = ResultFingerprint.hashBlob(rows.getBlob(column));
+                    break;
+                default:
+                    cellHash = ResultFingerprint.hashString(rows.getString(column));
+                    break;
+            }
+            hash = ResultFingerprint.combineCell(hash, cellHash);
+        }
+        return ResultFingerprint.finishRow(hash);
+    }
+
+    private static Comparison compare(Rows user, Rows expected) {
+        if (!user.columnNames().equals(expected.columnNames())) {
+            return new Comparison(MismatchKind.COLUMNS, -1, -1);
+        }
+        int columnCount = user.columnNames().size();
+        int row = 0;
+        while (true) {
+            boolean hasUserRow = user.next();
+            boolean hasExpectedRow = expected.next();
+            if (hasUserRow != hasExpectedRow) {
+                return new Comparison(MismatchKind.ROW_COUNT, row, -1);
+            }
+            if (!hasUserRow) {
+                return Comparison.EQUAL;
+            }
+            for (int column = 0; column < columnCount; column++) {
+                if (!cellEquals(user, expected, column)) {
+                    return new Comparison(MismatchKind.ROW_VALUES, row, column);
+                }
+            }
+            row++;
+        }
+    }
+
+    // То же правило, что и SqlValues.cellEquals(), для текущих строк двух источников
+    private static boolean cellEquals(Rows a, Rows b, int column) {
+        int typeA = a.type(column);
+        int typeB = b.type(column);
+
+        if (typeA == ResultTable.TYPE_NULL || typeB == ResultTable.TYPE_NULL) {
+            return typeA == typeB;
+        }
+        if (SqlValues.isNumeric(typeA) && SqlValues.isNumeric(typeB)) {
+            if (typeA == ResultTable.TYPE_INTEGER && typeB == ResultTable.TYPE_INTEGER) {
+                return a.getLong(column) == b.getLong(column);
+            }
+            return a.getDouble(column) == b.getDouble(column);
+        }
+        if (typeA != typeB) {
+            return false;
+        }
+        if (typeA == ResultTable.TYPE_BLOB) {
+            return Arrays.equals(a.getBlob(column), b.getBlob(column));
+        }
+        return a.getString(column).equals(b.getString(column));
+    }
+
+    /**
+     * Последовательный доступ к строкам результата (курсор или ResultTable).
+     */
+    private interface Rows {
+        List<String> columnNames();
+
+        boolean next();
+
+        int type(int column);
+
+        long getLong(int column);
+
+        double getDouble(int column);
+
+        String getString(int column);
+
+        byte[] getBlob(int column);
+    }
+
+    private static final class CursorRows implements Rows {
+        private final SqlCursor cursor;
+        private final List<String> columnNames;
+
+        CursorRows(SqlCursor cursor) {
+            this.cursor = cursor;
+            this.columnNames = Arrays.asList(cursor.getColumnNames());
+        }
+
+        @Override
+        public List<String> columnNames() {
+            return columnNames;
+        }
+
+        @Override
+        public boolean next() {
+            return cursor.moveToNext();
+        }
+
+        @Override
+        public int type(int column) {
+            return cursor.getType(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            return cursor.getLong(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return cursor.getDouble(column);
+        }
+
+        @Override
+        public String getString(int column) {
+            return cursor.getString(column);
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            return cursor.getBlob(column);
+        }
+    }
+
+    private static final class TableRows implements Rows {
+        private final ResultTable table;
+        // Текущая строка; при поиске пары без учета порядка выставляется напрямую
+        int row = -1;
+
+        TableRows(ResultTable table) {
+            this.table = table;
+        }
+
+        @Override
+        public List<String> columnNames() {
+            return table.getColumnNames();
+        }
+
+        @Override
+        public boolean next() {
+            if (row + 1 >= table.getRowCount()) {
+                return false;
+            }
+            row++;
+            return true;
+        }
+
+        @Override
+        public int type(int column) {
+            return table.getType(row, column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            return table.getLong(row, column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return table.getDouble(row, column);
+        }
+
+        @Override
+        public String getString(int column) {
+            return table.getString(row, column);
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            return table.getBlob(row, column);
+        }
+    }
+}
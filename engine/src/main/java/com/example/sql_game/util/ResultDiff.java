@@ -0,0 +1,379 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.util.SqlExecutor.ExecutionResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Построчная разница между результатом пользователя и эталонным результатом:
+ * лишние строки (есть только у пользователя), недостающие строки (есть только в эталоне)
+ * и строки с измененными ячейками.
+ *
+ * Алгоритм рассчитан на тысячи строк:
+ * 1. Одинаковые строки сопоставляются через мультимножество хэшей строк (ожидаемое время O(n),
+ *    совпадение хэшей подтверждается сравнением ячеек).
+ * 2. Оставшиеся строки обеих сторон сортируются по хэшу ключа (первого столбца) и сливаются:
+ *    строки с одинаковым ключом считаются одной и той же строкой с измененными значениями.
+ *    Остаток после слияния - лишние и недостающие строки. Эта часть стоит O(k log k) для k несовпавших строк.
+ * 3. Если строки совпадают как мультимножество, а порядок важен, отмечается первая строка не на своем месте.
+ */
+public final class ResultDiff {
+
+    /**
+     * Строка пользователя, которой в эталоне соответствует строка с тем же ключом, но другими значениями.
+     */
+    public static final class ChangedRow {
+        public final int userRow;
+        public final int expectedRow;
+        // Индексы столбцов с различающимися значениями (по возрастанию)
+        public final int[] columns;
+
+        ChangedRow(int userRow, int expectedRow, int[] columns) {
+            this.userRow = userRow;
+            this.expectedRow = expectedRow;
+            this.columns = columns;
+        }
+    }
+
+    public final ResultTable userTable;
+    public final ResultTable expectedTable;
+    // false, если заголовки столбцов различаются; тогда строки не сравниваются
+    public final boolean columnsMatch;
+    public final List<String> missingColumns;
+    public final List<String> extraColumns;
+    // Индексы строк пользователя, которых нет в эталоне (по возрастанию)
+    public final int[] extraRows;
+    // Индексы строк эталона, которых нет у пользователя (по возрастанию)
+    public final int[] missingRows;
+    public final List<ChangedRow> changedRows;
+    // Первая строка пользователя не на своем месте (строки совпадают, но порядок важен), иначе -1
+    public final int firstMisplacedRow;
+
+    // Индекс строки пользователя -> изменение (для подсветки в таблице)
+    private final Map<Integer, ChangedRow> changedByUserRow;
+    private final boolean[] extraRowFlags;
+
+    private ResultDiff(ResultTable userTable, ResultTable expectedTable, boolean columnsMatch,
+                       List<String> missingColumns, List<String> extraColumns,
+                       int[] extraRows, int[] missingRows, List<ChangedRow> changedRows, int firstMisplacedRow) {
+        this.userTable = userTable;
+        this.expectedTable = expectedTable;
+        this.columnsMatch = columnsMatch;
+        this.missingColumns = Collections.unmodifiableList(missingColumns);
+        this.extraColumns = Collections.unmodifiableList(extraColumns);
+        this.extraRows = extraRows;
+        this.missingRows = missingRows;
+        this.changedRows = Collections.unmodifiableList(changedRows);
+        this.firstMisplacedRow = firstMisplacedRow;
+
+        this.changedByUserRow = new HashMap<>();
+        for (ChangedRow changed : changedRows) {
+            changedByUserRow.put(changed.userRow, changed);
+        }
+        this.extraRowFlags = new boolean[userTable.getRowCount()];
+        for (int row : extraRows) {
+            extraRowFlags[row] = true;
+        }
+    }
+
+    /**
+     * Вычисляет разницу между успешными SELECT-результатами.
+     * @param ordered true - порядок строк важен (см. TaskModel.GradingMode).
+     * @throws IllegalArgumentException если один из результатов не содержит таблицы.
+     */
+    public static ResultDiff compute(ExecutionResult userResult, ExecutionResult expectedResult, boolean ordered) {
+        if (!userResult.isSuccess || !expectedResult.isSuccess) {
+            throw new IllegalArgumentException("Разница вычисляется только для успешных результатов.");
+        }
+        return compute(userResult.resultTable, expectedResult.resultTable, ordered);
+    }
+
+    public static ResultDiff compute(ResultTable user, ResultTable expected, boolean ordered) {
+        List<String> userColumns = user.getColumnNames();
+        List<String> expectedColumns = expected.getColumnNames();
+        if (!userColumns.equals(expectedColumns)) {
+            List<String> missingColumns = new ArrayList<>(expectedColumns);
+            missingColumns.removeAll(userColumns);
+            List<String> extraColumns = new ArrayList<>(userColumns);
+            extraColumns.removeAll(expectedColumns);
+            return new ResultDiff(user, expected, false, missingColumns, extraColumns,
+                    new int[0], new int[0], Collections.<ChangedRow>emptyList(), -1);
+        }
+
+        int columnCount = userColumns.size();
+        long[] userHashes = rowHashes(user);
+        long[] expectedHashes = rowHashes(expected);
+
+        // 1. Сопоставляем одинаковые строки: хэш -> несопоставленные строки эталона
+        Map<Long, List<Integer>> unmatched = new HashMap<>(expected.getRowCount() * 2);
+        for (int row = 0; row < expected.getRowCount(); row++) {
+            List<Integer> bucket = unmatched.get(expectedHashes[row]);
+            if (bucket == null) {
+                bucket = new ArrayList<>(1);
+                unmatched.put(expectedHashes[row], bucket);
+            }
+            bucket.add(row);
+        }
+        List<Integer> unmatchedUser = new ArrayList<>();
+        for (int row = 0; row < user.getRowCount(); row++) {
+            if (!removeEqualRow(unmatched.get(userHashes[row]), user, row, expected, columnCount)) {
+                unmatchedUser.add(row);
+            }
+        }
+        List<Integer> unmatchedExpected = new ArrayList<>();
+        for (List<Integer> bucket : unmatched.values()) {
+            unmatchedExpected.addAll(bucket);
+        }
+
+        // 2. Слияние несовпавших строк по ключу (первому столбцу). При одном столбце ключ - вся строка,
+        // и измененных строк быть не может: остаток - только лишние и недостающие строки.
+        List<ChangedRow> changedRows = new ArrayList<>();
+        List<Integer> extra = new ArrayList<>();
+        List<Integer> missing = new ArrayList<>();
+        if (columnCount > 1) {
+            mergeByKey(user, unmatchedUser, expected, unmatchedExpected, columnCount, changedRows, extra, missing);
+        } else {
+            extra.addAll(unmatchedUser);
+            missing.addAll(unmatchedExpected);
+        }
+        Collections.sort(changedRows, new Comparator<ChangedRow>() {
+            @Override
+            public int compare(ChangedRow a, ChangedRow b) {
+                return Integer.compare(a.userRow, b.userRow);
+            }
+        });
+
+        // 3. Строки совпали как мультимножество - проверяем порядок
+        int firstMisplacedRow = -1;
+        if (ordered && extra.isEmpty() && missing.isEmpty() && changedRows.isEmpty()) {
+            for (int row = 0; row < user.getRowCount(); row++) {
+                if (userHashes[row] != expectedHashes[row] || !rowEquals(user, row, expected, row, columnCount)) {
+                    firstMisplacedRow = row;
+                    break;
+                }
+            }
+        }
+
+        return new ResultDiff(user, expected, true, Collections.<String>emptyList(), Collections.<String>emptyList(),
+                toSortedArray(extra), toSortedArray(missing), changedRows, firstMisplacedRow);
+    }
+
+    /**
+     * true, если результаты равны с учетом выбранного при вычислении режима.
+     */
+    public boolean isEmpty() {
+        return columnsMatch && extraRows.length == 0 && missingRows.length == 0
+                && changedRows.isEmpty() && firstMisplacedRow < 0;
+    }
+
+    /**
+     * true, если строки пользователя нет в эталоне.
+     */
+    public boolean isExtraRow(int userRow) {
+        return userRow < extraRowFlags.length && extraRowFlags[userRow];
+    }
+
+    /**
+     * true, если значение ячейки пользователя отличается от значения в соответствующей строке эталона.
+     */
+    public boolean isChangedCell(int userRow, int column) {
+        ChangedRow changed = changedByUserRow.get(userRow);
+        return changed != null && Arrays.binarySearch(changed.columns, column) >= 0;
+    }
+
+    /**
+     * Индексы измененных столбцов строки пользователя (по возрастанию) или null, если строка не изменена.
+     */
+    public int[] getChangedColumns(int userRow) {
+        ChangedRow changed = changedByUserRow.get(userRow);
+        return changed != null ? changed.columns : null;
+    }
+
+    /**
+     * Краткое описание разницы для сообщения пользователю.
+     */
+    public String getSummary() {
+        if (!columnsMatch) {
+            StringBuilder summary = new StringBuilder("Столбцы не совпадают с ожидаемыми.");
+            if (!missingColumns.isEmpty()) {
+                summary.append(" Не хватает: ").append(join(missingColumns)).append('.');
+            }
+            if (!extraColumns.isEmpty()) {
+                summary.append(" Лишние: ").append(join(extraColumns)).append('.');
+            }
+            if (missingColumns.isEmpty() && extraColumns.isEmpty()) {
+                summary.append(" Проверьте порядок столбцов.");
+            }
+            return summary.toString();
+        }
+        if (firstMisplacedRow >= 0) {
+            return "Строки верные, но порядок отличается (начиная со строки " + (firstMisplacedRow + 1) + ").";
+        }
+        List<String> parts = new ArrayList<>();
+        if (extraRows.length > 0) {
+            parts.add("лишних строк: " + extraRows.length);
+        }
+        if (missingRows.length > 0) {
+            parts.add("недостающих строк: " + missingRows.length);
+        }
+        if (!changedRows.isEmpty()) {
+            parts.add("строк с другими значениями: " + changedRows.size());
+        }
+        if (parts.isEmpty()) {
+            return "Результат совпадает с ожидаемым.";
+        }
+        String summary = join(parts);
+        return Character.toUpperCase(summary.charAt(0)) + summary.substring(1) + ".";
+    }
+
+    // Сортирует несовпавшие строки обеих сторон по хэшу ключа и сливает их
+    private static void mergeByKey(ResultTable user, List<Integer> userRows, ResultTable expected, List<Integer> expectedRows,
+                                   int columnCount, List<ChangedRow> changedRows, List<Integer> extra, List<Integer> missing) {
+        long[][] userKeys = keyedRows(user, userRows);
+        long[][] expectedKeys = keyedRows(expected, expectedRows);
+
+        int i = 0;
+        int j = 0;
+        while (i < userKeys.length && j < expectedKeys.length) {
+            long userKey = userKeys[i][0];
+            long expectedKey = expectedKeys[j][0];
+            if (userKey < expectedKey) {
+                extra.add((int) userKeys[i++][1]);
+            } else if (userKey > expectedKey) {
+                missing.add((int) expectedKeys[j++][1]);
+            } else {
+                // Группы с одинаковым хэшем ключа: пары образуют строки с действительно равным ключом
+                int userEnd = i;
+                while (userEnd < userKeys.length && userKeys[userEnd][0] == userKey) {
+                    userEnd++;
+                }
+                int expectedEnd = j;
+                while (expectedEnd < expectedKeys.length && expectedKeys[expectedEnd][0] == expectedKey) {
+                    expectedEnd++;
+                }
+                boolean[] pairedExpected = new boolean[expectedEnd - j];
+                for (int u = i; u < userEnd; u++) {
+                    int userRow = (int) userKeys[u][1];
+                    int pair = -1;
+                    for (int e = j; e < expectedEnd && pair < 0; e++) {
+                        if (!pairedExpected[e - j]
+                                && SqlValues.cellEquals(user, userRow, 0, expected, (int) expectedKeys[e][1], 0)) {
+                            pair = e;
+                        }
+                    }
+                    if (pair < 0) {
+                        extra.add(userRow);
+                    } else {
+                        pairedExpected[pair - j] = true;
+                        int expectedRow = (int) expectedKeys[pair][1];
+                        changedRows.add(new ChangedRow(userRow, expectedRow,
+                                changedColumns(user, userRow, expected, expectedRow, columnCount)));
+                    }
+                }
+                for (int e = j; e < expectedEnd; e++) {
+                    if (!pairedExpected[e - j]) {
+                        missing.add((int) expectedKeys[e][1]);
+                    }
+                }
+                i = userEnd;
+                j = expectedEnd;
+            }
+        }
+        while (i < userKeys.length) {
+            extra.add((int) userKeys[i++][1]);
+        }
+        while (j < expectedKeys.length) {
+            missing.add((int) expectedKeys[j++][1]);
+        }
+    }
+
+    // Пары (хэш ключевой ячейки, индекс строки), отсортированные по хэшу, затем по индексу
+    private static long[][] keyedRows(ResultTable table, List<Integer> rows) {
+        long[][] keyed = new long[rows.size()][];
+        for (int i = 0; i < keyed.length; i++) {
+            int row = rows.get(i);
+            keyed[i] = new long[]{ResultFingerprint.cellHash(table, row, 0), row};
+        }
+        Arrays.sort(keyed, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                int byKey = Long.compare(a[0], b[0]);
+                return byKey != 0 ? byKey : Long.compare(a[1], b[1]);
+            }
+        });
+        return keyed;
+    }
+
+    private static int[] changedColumns(ResultTable user, int userRow, ResultTable expected, int expectedRow, int columnCount) {
+        int[] columns = new int[columnCount];
+        int count = 0;
+        for (int column = 0; column < columnCount; column++) {
+            if (!SqlValues.cellEquals(user, userRow, column, expected, expectedRow, column)) {
+                columns[count++] = column;
+            }
+        }
+        return Arrays.copyOf(columns, count);
+    }
+
+    private static boolean removeEqualRow(List<Integer> bucket, ResultTable user, int userRow, ResultTable expected,
+                                          int columnCount) {
+        if (bucket == null) {
+            return false;
+        }
+        for (int i = 0; i < bucket.size(); i++) {
+            if (rowEquals(user, userRow, expected, bucket.get(i), columnCount)) {
+                bucket.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean rowEquals(ResultTable a, int rowA, ResultTable b, int rowB, int columnCount) {
+        for (int column = 0; column < columnCount; column++) {
+            if (!SqlValues.cellEquals(a, rowA, column, b, rowB, column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long[] rowHashes(ResultTable table) {
+        long[] hashes = new long[table.getRowCount()];
+        int columnCount = table.getColumnCount();
+        for (int row = 0; row < hashes.length; row++) {
+            long hash = 0;
+            for (int column = 0; column < columnCount; column++) {
+                hash = ResultFingerprint.combineCell(hash, ResultFingerprint.cellHash(table, row, column));
+            }
+            hashes[row] = ResultFingerprint.finishRow(hash);
+        }
+        return hashes;
+    }
+
+    private static int[] toSortedArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        Arrays.sort(array);
+        return array;
+    }
+
+    private static String join(List<String> values) {
+        StringBuilder joined = new StringBuilder();
+        for (String value : values) {
+            if (joined.length() > 0) {
+                joined.append(", ");
+            }
+            joined.append(value);
+        }
+        return joined.toString();
+    }
+}
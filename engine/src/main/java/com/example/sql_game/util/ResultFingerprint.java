@@ -0,0 +1,369 @@
+package com.example.sql_game.util;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Компактный отпечаток результата запроса: заголовки, число строк и два 64-битных хэша строк -
+ * с учетом порядка (скользящий) и без учета порядка (сумма хэшей строк, то есть хэш мультимножества).
+ *
+ * Хэш согласован с SqlValues.cellEquals(): одинаковые по значению числа (5 и 5.0) дают одинаковый хэш,
+ * а типы NULL, число, строка и BLOB различаются. Поэтому равные результаты всегда имеют равные отпечатки;
+ * совпадение отпечатков при этом не гарантирует равенства (коллизии проверяются полным сравнением).
+ *
+ * Отпечатки эталонных результатов вычисляются заранее (см. FingerprintGenerator) и хранятся
+ * в TaskModel в текстовом виде (encode()/decode()).
+ */
+public final class ResultFingerprint {
+
+    private static final String FORMAT_VERSION = "1";
+    private static final char FIELD_SEPARATOR = '|';
+    private static final char COLUMN_SEPARATOR = '\u001F';
+
+    // Теги типов, чтобы число 1 и строка '1' давали разные хэши
+    private static final long NULL_HASH = 0x2545F4914F6CDD1DL;
+    private static final long NUMBER_TAG = 0x9E3779B97F4A7C15L;
+    private static final long STRING_TAG = 0xC2B2AE3D27D4EB4FL;
+    private static final long BLOB_TAG = 0x165667B19E3779F9L;
+
+    // Числа, до которых long и double представимы точно
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+    private final List<String> columnNames;
+    private final int rowCount;
+    private final long orderedHash;
+    private final long unorderedHash;
+    // Хэш установочного скрипта и эталонного запроса, по которым вычислен отпечаток (null, если не задан)
+    private final String sourceHash;
+
+    private ResultFingerprint(List<String> columnNames, int rowCount, long orderedHash, long unorderedHash, String sourceHash) {
+        this.columnNames = Collections.unmodifiableList(new ArrayList<>(columnNames));
+        this.rowCount = rowCount;
+        this.orderedHash = orderedHash;
+        this.unorderedHash = unorderedHash;
+        this.sourceHash = sourceHash;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public long getOrderedHash() {
+        return orderedHash;
+    }
+
+    public long getUnorderedHash() {
+        return unorderedHash;
+    }
+
+    /**
+     * Сравнивает отпечатки.
+     * @param ordered true - порядок строк важен, false - результаты сравниваются как мультимножества строк.
+     * @return false, если результаты заведомо различаются; true - результаты, вероятно, равны.
+     */
+    public boolean matches(ResultFingerprint other, boolean ordered) {
+        if (rowCount != other.rowCount || !columnNames.equals(other.columnNames)) {
+            return false;
+        }
+        return ordered ? orderedHash == other.orderedHash : unorderedHash == other.unorderedHash;
+    }
+
+    /**
+     * Текстовое представление для хранения вместе с содержимым урока.
+     */
+    public String encode() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(FORMAT_VERSION).append(FIELD_SEPARATOR)
+                .append(sourceHash != null ? sourceHash : "").append(FIELD_SEPARATOR)
+                .append(rowCount).append(FIELD_SEPARATOR)
+                .append(Long.toHexString(orderedHash)).append(FIELD_SEPARATOR)
+                .append(Long.toHexString(unorderedHash)).append(FIELD_SEPARATOR);
+        for (int i = 0; i < columnNames.size(); i++) {
+            if (i > 0) {
+                builder.append(COLUMN_SEPARATOR);
+            }
+            builder.append(columnNames.get(i));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Разбирает отпечаток, сохраненный encode().
+     * @return Отпечаток или null, если строка пуста или имеет неизвестный формат.
+     */
+    public static ResultFingerprint decode(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return null;
+        }
+        String[] fields = encoded.split("\\" + FIELD_SEPARATOR, 6);
+        if (fields.length != 6 || !FORMAT_VERSION.equals(fields[0])) {
+            return null;
+        }
+        try {
+            int rowCount = Integer.parseInt(fields[2]);
+            long orderedHash = new BigInteger(fields[3], 16).longValue();
+            long unorderedHash = new BigInteger(fields[4], 16).longValue();
+            List<String> columns = fields[5].isEmpty()
+                    ? Collections.<String>emptyList()
+                    : Arrays.asList(fields[5].split(String.valueOf(COLUMN_SEPARATOR), -1));
+            return new ResultFingerprint(columns, rowCount, orderedHash, unorderedHash,
+                    fields[1].isEmpty() ? null : fields[1]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Разбирает отпечаток эталона задания и проверяет, что он вычислен для тех же скрипта и запроса.
+     * @return Отпечаток или null, если его нет или он устарел (содержимое урока изменилось после генерации).
+     */
+    public static ResultFingerprint decodeFor(String encoded, String setupSql, String expectedSql) {
+        ResultFingerprint fingerprint = decode(encoded);
+        if (fingerprint == null || !sourceHashOf(setupSql, expectedSql).equals(fingerprint.sourceHash)) {
+            return null;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Хэш пары (установочный скрипт, эталонный запрос), к которой привязан отпечаток.
+     */
+    public static String sourceHashOf(String setupSql, String expectedSql) {
+        String source = (setupSql != null ? setupSql : "") + '\u0000' + (expectedSql != null ? expectedSql : "");
+        return SetupTemplateCache.hashOf(source).substring(0, 16);
+    }
+
+    /**
+     * Вычисляет отпечаток уже полученной таблицы.
+     */
+    public static ResultFingerprint of(ResultTable table) {
+        Builder builder = new Builder(table.getColumnNames());
+        int columnCount = table.getColumnCount();
+        for (int row = 0; row < table.getRowCount(); row++) {
+            for (int column = 0; column < columnCount; column++) {
+                switch (table.getType(row, column)) {
+                    case ResultTable.TYPE_NULL:
+                        builder.appendNull();
+                        break;
+                    case ResultTable.TYPE_INTEGER:
+                        builder.appendLong(table.getLong(row, column));
+                        break;
+                    case ResultTable.TYPE_FLOAT:
+                        builder.appendDouble(table.getDouble(row, column));
+                        break;
+                    case ResultTable.TYPE_BLOB:
+                        builder.appendBlob(table.getBlob(row, column));
+                        break;
+                    default:
+                        builder.appendString(table.getString(row, column));
+                        break;
+                }
+            }
+            builder.endRow();
+        }
+        return builder.build(null);
+    }
+
+    /**
+     * Вычисляет отпечаток по мере чтения курсора, не сохраняя строки.
+     * @param sourceHash Хэш источника (см. sourceHashOf()) или null.
+     */
+    public static ResultFingerprint fromCursor(SqlCursor cursor, String sourceHash) {
+        int columnCount = cursor.getColumnCount();
+        Builder builder = new Builder(Arrays.asList(cursor.getColumnNames()));
+        while (cursor.moveToNext()) {
+            for (int column = 0; column < columnCount; column++) {
+                switch (cursor.getType(column)) {
+                    case ResultTable.TYPE_NULL:
+                        builder.appendNull();
+                        break;
+                    case ResultTable.TYPE_INTEGER:
+                        builder.appendLong(cursor.getLong(column));
+                        break;
+                    case ResultTable.TYPE_FLOAT:
+                        builder.appendDouble(cursor.getDouble(column));
+                        break;
+                    case ResultTable.TYPE_BLOB:
+                        builder.appendBlob(cursor.getBlob(column));
+                        break;
+                    default:
+                        builder.appendString(cursor.getString(column));
+                        break;
+                }
+            }
+            builder.endRow();
+        }
+        return builder.build(sourceHash);
+    }
+
+    /**
+     * Потоковое вычисление отпечатка: значения добавляются по ячейкам слева направо, строка завершается endRow().
+     */
+    public static final class Builder {
+        private final List<String> columnNames;
+        private int rowCount = 0;
+        private long rowHash = 0;
+        private long orderedHash = 0;
+        private long unorderedHash = 0;
+
+        public Builder(List<String> columnNames) {
+            this.columnNames = columnNames;
+        }
+
+        public void appendNull() {
+            appendCell(NULL_HASH);
+        }
+
+        public void appendLong(long value) {
+            appendCell(hashLong(value));
+        }
+
+        public void appendDouble(double value) {
+            appendCell(hashDouble(value));
+        }
+
+        public void appendString(String value) {
+            appendCell(hashString(value));
+        }
+
+        public void appendBlob(byte[] value) {
+            appendCell(hashBlob(value));
+        }
+
+        public void endRow() {
+            long finishedRow = finishRow(rowHash);
+            orderedHash = orderedHash * 0x100000001B3L + finishedRow;
+            unorderedHash += multisetTerm(finishedRow);
+            rowHash = 0;
+            rowCount++;
+        }
+
+        public ResultFingerprint build(String sourceHash) {
+            return new ResultFingerprint(columnNames, rowCount, mix(orderedHash ^ rowCount), unorderedHash, sourceHash);
+        }
+
+        private void appendCell(long cellHash) {
+            rowHash = combineCell(rowHash, cellHash);
+        }
+    }
+
+    // --- Хэши ячеек и строк (используются также ResultComparator для сравнения без учета порядка) ---
+
+    static long hashNull() {
+        return NULL_HASH;
+    }
+
+    // hashLong(x) всегда равен hashDouble((double) x): cellEquals() сравнивает INTEGER с REAL как double,
+    // а целые больше 2^53 при этом округляются (2^53 + 1 равно 2^53 + 0.0), в том числе до самого 2^53
+    static long hashLong(long value) {
+        if (value >= -MAX_EXACT_DOUBLE && value <= MAX_EXACT_DOUBLE) {
+            return NUMBER_TAG ^ mix(value);
+        }
+        return hashDouble((double) value);
+    }
+
+    static long hashDouble(double value) {
+        if (value == Math.rint(value) && Math.abs(value) <= MAX_EXACT_DOUBLE) {
+            // Целое значение REAL (например, 5.0) равно INTEGER 5
+            return NUMBER_TAG ^ mix((long) value);
+        }
+        return NUMBER_TAG ^ mix(Double.doubleToLongBits(value));
+    }
+
+    static long hashString(String value) {
+        if (value == null) {
+            return NULL_HASH;
+        }
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+        }
+        return STRING_TAG ^ mix(hash);
+    }
+
+    static long hashBlob(byte[] value) {
+        if (value == null) {
+            return NULL_HASH;
+        }
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : value) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return BLOB_TAG ^ mix(hash);
+    }
+
+    /**
+     * Хэш ячейки уже полученной таблицы.
+     */
+    static long cellHash(ResultTable table, int row, int column) {
+        switch (table.getType(row, column)) {
+            case ResultTable.TYPE_NULL:
+                return NULL_HASH;
+            case ResultTable.TYPE_INTEGER:
+                return hashLong(table.getLong(row, column));
+            case ResultTable.TYPE_FLOAT:
+                return hashDouble(table.getDouble(row, column));
+            case ResultTable.TYPE_BLOB:
+                return hashBlob(table.getBlob(row, column));
+            default:
+                return hashString(table.getString(row, column));
+        }
+    }
+
+    /**
+     * Хэш ячейки текущей строки курсора.
+     */
+    static long cellHash(SqlCursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case ResultTable.TYPE_NULL:
+                return NULL_HASH;
+            case ResultTable.TYPE_INTEGER:
+                return hashLong(cursor.getLong(column));
+            case ResultTable.TYPE_FLOAT:
+                return hashDouble(cursor.getDouble(column));
+            case ResultTable.TYPE_BLOB:
+                return hashBlob(cursor.getBlob(column));
+            default:
+                return hashString(cursor.getString(column));
+        }
+    }
+
+    /**
+     * Добавляет хэш очередной ячейки (слева направо) к хэшу строки.
+     */
+    static long combineCell(long rowHash, long cellHash) {
+        return rowHash * 0x9E3779B97F4A7C15L + cellHash;
+    }
+
+    /**
+     * Финальный хэш строки после добавления всех ячеек.
+     */
+    static long finishRow(long rowHash) {
+        return mix(rowHash);
+    }
+
+    /**
+     * Вклад строки в хэш мультимножества строк (unorderedHash - сумма вкладов всех строк).
+     * Хэш мультимножества можно обновлять по одной строке: вычесть вклад удаленной, прибавить вклад новой.
+     */
+    static long multisetTerm(long finishedRow) {
+        return mix(finishedRow ^ 0x5851F42D4C957F2DL);
+    }
+
+    // Финальное перемешивание MurmurHash3 (fmix64)
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
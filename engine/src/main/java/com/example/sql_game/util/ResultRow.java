@@ -0,0 +1,80 @@
+package com.example.sql_game.util;
+
+import java.util.AbstractList;
+
+/**
+ * Представление одной строки ResultTable только для чтения.
+ * Как List<String> возвращает текст для отображения (NULL показывается как "NULL"),
+ * а типизированные геттеры читают значения напрямую из таблицы.
+ */
+public final class ResultRow extends AbstractList<String> {
+
+    private final ResultTable table;
+    private final int row;
+
+    ResultRow(ResultTable table, int row) {
+        this.table = table;
+        this.row = row;
+    }
+
+    /**
+     * Индекс строки в таблице.
+     */
+    public int getIndex() {
+        return row;
+    }
+
+    @Override
+    public String get(int column) {
+        String value = table.getString(row, column);
+        return value != null ? value : "NULL";
+    }
+
+    @Override
+    public int size() {
+        return table.getColumnCount();
+    }
+
+    public int getType(int column) {
+        return table.getType(row, column);
+    }
+
+    public boolean isNull(int column) {
+        return table.isNull(row, column);
+    }
+
+    public long getLong(int column) {
+        return table.getLong(row, column);
+    }
+
+    public double getDouble(int column) {
+        return table.getDouble(row, column);
+    }
+
+    /**
+     * Текст ячейки или null для NULL (в отличие от get(), который возвращает "NULL").
+     */
+    public String getString(int column) {
+        return table.getString(row, column);
+    }
+
+    public byte[] getBlob(int column) {
+        return table.getBlob(row, column);
+    }
+
+    /**
+     * Сравнивает значения двух строк с учетом типов.
+     */
+    public boolean contentEquals(ResultRow other) {
+        int columnCount = size();
+        if (columnCount != other.size()) {
+            return false;
+        }
+        for (int column = 0; column < columnCount; column++) {
+            if (!SqlValues.cellEquals(table, row, column, other.table, other.row, column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.sql_game.util;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Табличный результат SELECT-запроса с сохранением типов SQLite.
+ * Доступ к ячейкам идет по индексу строки и столбца, без копирования данных.
+ * Коды типов совпадают с android.database.Cursor.FIELD_TYPE_*.
+ */
+public abstract class ResultTable {
+
+    public static final int TYPE_NULL = 0;
+    public static final int TYPE_INTEGER = 1;
+    public static final int TYPE_FLOAT = 2;
+    public static final int TYPE_STRING = 3;
+    public static final int TYPE_BLOB = 4;
+
+    /**
+     * Заголовки столбцов (неизменяемый список).
+     */
+    public abstract List<String> getColumnNames();
+
+    public int getColumnCount() {
+        return getColumnNames().size();
+    }
+
+    public abstract int getRowCount();
+
+    /**
+     * Тип значения ячейки (TYPE_*).
+     */
+    public abstract int getType(int row, int column);
+
+    public boolean isNull(int row, int column) {
+        return getType(row, column) == TYPE_NULL;
+    }
+
+    public abstract long getLong(int row, int column);
+
+    public abstract double getDouble(int row, int column);
+
+    /**
+     * Текстовое представление ячейки в том виде, в каком его вернул бы SQLite, или null для NULL.
+     */
+    public abstract String getString(int row, int column);
+
+    public abstract byte[] getBlob(int row, int column);
+
+    /**
+     * Приблизительный объем памяти, занимаемый результатом (для кэшей).
+     */
+    public abstract long getEstimatedBytes();
+
+    /**
+     * Возвращает представление строки только для чтения.
+     */
+    public ResultRow getRow(int row) {
+        return new ResultRow(this, row);
+    }
+
+    /**
+     * Представление всех строк в виде List<List<String>> без копирования данных.
+     */
+    public List<List<String>> asRows() {
+        return new AbstractList<List<String>>() {
+            @Override
+            public List<String> get(int index) {
+                return getRow(index);
+            }
+
+            @Override
+            public int size() {
+                return getRowCount();
+            }
+        };
+    }
+
+    /**
+     * Сравнивает заголовки и значения с учетом типов (см. SqlValues.cellEquals()).
+     * Порядок строк имеет значение.
+     */
+    public boolean contentEquals(ResultTable other) {
+        if (!getColumnNames().equals(other.getColumnNames()) || getRowCount() != other.getRowCount()) {
+            return false;
+        }
+        for (int row = 0; row < getRowCount(); row++) {
+            if (!getRow(row).contentEquals(other.getRow(row))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
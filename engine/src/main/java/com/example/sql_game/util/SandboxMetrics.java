@@ -0,0 +1,299 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.util.SqlExecutor.ExecutionResult;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Реестр метрик песочницы: задержки операций (настройка, запрос пользователя, эталонный запрос, проверка),
+ * число строк и объем материализованных результатов, попадания в кэши.
+ *
+ * Запись не использует блокировок и не выделяет память: все значения хранятся в AtomicLongArray,
+ * операции и счетчики адресуются порядковыми номерами enum. Поэтому метрики можно не отключать
+ * в релизных сборках. Задержки собираются в гистограммы с логарифмическими корзинами
+ * (корзина i - до 2^i мкс), по которым snapshot() оценивает перцентили.
+ */
+public final class SandboxMetrics {
+
+    /**
+     * Операции, для которых собираются задержки.
+     */
+    public enum Operation {
+        SETUP,
+        USER_QUERY,
+        EXPECTED_QUERY,
+        GRADING
+    }
+
+    /**
+     * Счетчики событий кэшей и прерываний.
+     */
+    public enum Counter {
+        TEMPLATE_HIT,
+        TEMPLATE_MISS,
+        EXPECTED_RESULT_HIT,
+        EXPECTED_RESULT_MISS,
+        STATEMENT_HIT,
+        STATEMENT_MISS,
+        // Повторный запрос пользователя, результат которого взят из кэша результатов
+        RESULT_HIT,
+        RESULT_MISS,
+        // Проверка по отпечатку эталона: ответ принят к полному сравнению / отклонен без эталонного запроса
+        FINGERPRINT_MATCHED,
+        FINGERPRINT_REJECTED,
+        QUERY_CANCELLED
+    }
+
+    // Корзина 0 - быстрее 1 мкс, корзина 31 - от 2^30 мкс (около 18 минут) и дольше
+    static final int BUCKET_COUNT = 32;
+
+    // Поля статистики операции в operationStats
+    private static final int STAT_COUNT = 0;
+    private static final int STAT_FAILURES = 1;
+    private static final int STAT_TOTAL_NANOS = 2;
+    private static final int STAT_MAX_NANOS = 3;
+    private static final int STAT_ROWS = 4;
+    private static final int STAT_BYTES = 5;
+    private static final int STAT_FIELDS = 6;
+
+    // values() каждый раз копирует массив, поэтому он сохраняется один раз
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final Counter[] COUNTERS = Counter.values();
+
+    private static final SandboxMetrics GLOBAL = new SandboxMetrics();
+
+    private final AtomicLongArray histograms = new AtomicLongArray(OPERATIONS.length * BUCKET_COUNT);
+    private final AtomicLongArray operationStats = new AtomicLongArray(OPERATIONS.length * STAT_FIELDS);
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTERS.length);
+    private volatile boolean isEnabled = true;
+
+    /**
+     * Общий реестр приложения (используется SqlExecutor по умолчанию).
+     */
+    public static SandboxMetrics global() {
+        return GLOBAL;
+    }
+
+    public void setEnabled(boolean enabled) {
+        isEnabled = enabled;
+    }
+
+    /**
+     * Начало замера: передайте возвращенное значение в record().
+     */
+    public long start() {
+        return isEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Записывает завершение операции.
+     * @param startNanos Значение start(), полученное перед операцией.
+     * @param success    false - операция завершилась ошибкой или была прервана.
+     * @param rows       Число строк результата.
+     * @param bytes      Приблизительный объем материализованного результата.
+     */
+    public void record(Operation operation, long startNanos, boolean success, int rows, long bytes) {
+        if (!isEnabled || startNanos == 0) {
+            return;
+        }
+        long nanos = Math.max(0, System.nanoTime() - startNanos);
+        int ordinal = operation.ordinal();
+        histograms.incrementAndGet(ordinal * BUCKET_COUNT + bucketOf(nanos));
+
+        int base = ordinal * STAT_FIELDS;
+        operationStats.incrementAndGet(base + STAT_COUNT);
+        if (!success) {
+            operationStats.incrementAndGet(base + STAT_FAILURES);
+        }
+        operationStats.addAndGet(base + STAT_TOTAL_NANOS, nanos);
+        operationStats.addAndGet(base + STAT_ROWS, rows);
+        operationStats.addAndGet(base + STAT_BYTES, bytes);
+        long max;
+        while (nanos > (max = operationStats.get(base + STAT_MAX_NANOS))
+                && !operationStats.compareAndSet(base + STAT_MAX_NANOS, max, nanos)) {
+            // Другой поток обновил максимум, повторяем сравнение
+        }
+    }
+
+    /**
+     * Записывает завершение операции, вернувшей ExecutionResult (строки и объем берутся из результата).
+     */
+    public void record(Operation operation, long startNanos, ExecutionResult result) {
+        if (result.isCancelled) {
+            increment(Counter.QUERY_CANCELLED);
+        }
+        record(operation, startNanos, result.isSuccess,
+                result.resultTable.getRowCount(), result.resultTable.getEstimatedBytes());
+    }
+
+    public void increment(Counter counter) {
+        if (isEnabled) {
+            counters.incrementAndGet(counter.ordinal());
+        }
+    }
+
+    /**
+     * Обнуляет все метрики.
+     */
+    public void reset() {
+        for (int i = 0; i < histograms.length(); i++) {
+            histograms.set(i, 0);
+        }
+        for (int i = 0; i < operationStats.length(); i++) {
+            operationStats.set(i, 0);
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    /**
+     * Копия текущих значений. Значения читаются без блокировки, поэтому при одновременной записи
+     * разные поля снимка могут отличаться на одну-две последние операции.
+     */
+    public Snapshot snapshot() {
+        OperationStats[] operations = new OperationStats[OPERATIONS.length];
+        for (int ordinal = 0; ordinal < OPERATIONS.length; ordinal++) {
+            long[] buckets = new long[BUCKET_COUNT];
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                buckets[bucket] = histograms.get(ordinal * BUCKET_COUNT + bucket);
+            }
+            int base = ordinal * STAT_FIELDS;
+            operations[ordinal] = new OperationStats(OPERATIONS[ordinal],
+                    operationStats.get(base + STAT_COUNT), operationStats.get(base + STAT_FAILURES),
+                    operationStats.get(base + STAT_TOTAL_NANOS), operationStats.get(base + STAT_MAX_NANOS),
+                    operationStats.get(base + STAT_ROWS), operationStats.get(base + STAT_BYTES), buckets);
+        }
+        long[] counterValues = new long[COUNTERS.length];
+        for (int i = 0; i < COUNTERS.length; i++) {
+            counterValues[i] = counters.get(i);
+        }
+        return new Snapshot(operations, counterValues);
+    }
+
+    /**
+     * Текстовый отчет по текущим значениям (см. Snapshot.toString()).
+     */
+    public String dump() {
+        return snapshot().toString();
+    }
+
+    // Номер корзины: число значащих бит в длительности в микросекундах
+    private static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * Статистика одной операции в снимке.
+     */
+    public static final class OperationStats {
+        public final Operation operation;
+        public final long count;
+        public final long failures;
+        public final long totalNanos;
+        public final long maxNanos;
+        public final long rows;
+        public final long bytes;
+        private final long[] buckets;
+
+        OperationStats(Operation operation, long count, long failures, long totalNanos, long maxNanos,
+                       long rows, long bytes, long[] buckets) {
+            this.operation = operation;
+            this.count = count;
+            this.failures = failures;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.buckets = buckets;
+        }
+
+        public double meanMillis() {
+            return count == 0 ? 0 : totalNanos / 1e6 / count;
+        }
+
+        /**
+         * Оценка перцентиля задержки по гистограмме: верхняя граница корзины, в которую он попадает.
+         * @param percentile Значение от 0 до 100.
+         */
+        public double percentileMillis(double percentile) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int bucket = 0; bucket < buckets.length; bucket++) {
+                seen += buckets[bucket];
+                if (seen >= Math.max(rank, 1)) {
+                    // Граница не больше максимума: верхняя корзина не должна завышать оценку
+                    return Math.min((1L << bucket) / 1000.0, maxNanos / 1e6);
+                }
+            }
+            return maxNanos / 1e6;
+        }
+    }
+
+    /**
+     * Снимок метрик на момент вызова snapshot().
+     */
+    public static final class Snapshot {
+        private final OperationStats[] operations;
+        private final long[] counters;
+
+        Snapshot(OperationStats[] operations, long[] counters) {
+            this.operations = operations;
+            this.counters = counters;
+        }
+
+        public OperationStats get(Operation operation) {
+            return operations[operation.ordinal()];
+        }
+
+        public long get(Counter counter) {
+            return counters[counter.ordinal()];
+        }
+
+        /**
+         * Доля попаданий (от 0 до 1) или -1, если обращений не было.
+         */
+        public double hitRate(Counter hits, Counter misses) {
+            long total = get(hits) + get(misses);
+            return total == 0 ? -1 : (double) get(hits) / total;
+        }
+
+        /**
+         * Отчет: строка на операцию (число, ошибки, p50/p95/p99/максимум в мс, строки, объем)
+         * и доли попаданий в кэши.
+         */
+        @Override
+        public String toString() {
+            StringBuilder dump = new StringBuilder();
+            for (OperationStats stats : operations) {
+                dump.append(String.format(Locale.US, "%-14s n=%d err=%d p50=%.1f p95=%.1f p99=%.1f max=%.1f ms rows=%d kb=%d%n",
+                        stats.operation, stats.count, stats.failures, stats.percentileMillis(50),
+                        stats.percentileMillis(95), stats.percentileMillis(99), stats.maxNanos / 1e6,
+                        stats.rows, stats.bytes / 1024));
+            }
+            appendHitRate(dump, "templates", Counter.TEMPLATE_HIT, Counter.TEMPLATE_MISS);
+            appendHitRate(dump, "expected", Counter.EXPECTED_RESULT_HIT, Counter.EXPECTED_RESULT_MISS);
+            appendHitRate(dump, "statements", Counter.STATEMENT_HIT, Counter.STATEMENT_MISS);
+            appendHitRate(dump, "results", Counter.RESULT_HIT, Counter.RESULT_MISS);
+            appendHitRate(dump, "fingerprint rejects", Counter.FINGERPRINT_REJECTED, Counter.FINGERPRINT_MATCHED);
+            dump.append("cancelled=").append(get(Counter.QUERY_CANCELLED));
+            return dump.toString();
+        }
+
+        private void appendHitRate(StringBuilder dump, String name, Counter hits, Counter misses) {
+            double rate = hitRate(hits, misses);
+            dump.append(name).append('=')
+                    .append(rate < 0 ? "-" : String.format(Locale.US, "%.0f%%", rate * 100))
+                    .append(" (").append(get(hits)).append('/').append(get(hits) + get(misses)).append(")\n");
+        }
+    }
+}
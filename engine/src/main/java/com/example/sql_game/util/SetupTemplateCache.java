@@ -0,0 +1,151 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.util.SqlExecutor.ExecutionResult;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU-кэш "шаблонов" баз данных для SqlExecutor.
+ * Шаблон - это нетронутая копия базы после выполнения установочного скрипта в отдельном файле;
+ * к песочнице он подключается (ATTACH) только на время копирования. Ключ - хэш установочного скрипта,
+ * поэтому задания с одинаковым скриптом (например, весь урок 3) используют один шаблон.
+ * Вытеснение выполняется по суммарному размеру в байтах.
+ */
+final class SetupTemplateCache {
+
+    /**
+     * Один закэшированный шаблон.
+     */
+    static final class Template {
+        final String key;
+        final String schemaName;
+        // Файл базы шаблона (задается при создании шаблона)
+        File file;
+        // Размер страниц шаблонной БД (page_count * page_size)
+        long databaseBytes;
+        // Приблизительный размер закэшированных результатов SELECT *
+        long cachedResultBytes;
+        // Исходные данные таблиц (SELECT * FROM <таблица>) на момент создания шаблона
+        final Map<String, ExecutionResult> initialTables = new HashMap<>();
+
+        Template(String key, long databaseBytes) {
+            this.key = key;
+            this.schemaName = "tpl_" + key.substring(0, 12);
+            this.databaseBytes = databaseBytes;
+        }
+
+        long sizeBytes() {
+            return databaseBytes + cachedResultBytes;
+        }
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long maxBytes;
+    private final int maxEntries;
+    private long totalBytes = 0;
+
+    // accessOrder = true: итерация идет от самого давно использованного к самому свежему
+    private final LinkedHashMap<String, Template> templates = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param maxBytes   Максимальный суммарный размер шаблонов.
+     * @param maxEntries Максимальное число шаблонов.
+     */
+    SetupTemplateCache(long maxBytes, int maxEntries) {
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Возвращает шаблон по ключу и отмечает его как недавно использованный.
+     */
+    Template get(String key) {
+        return templates.get(key);
+    }
+
+    /**
+     * Добавляет шаблон в кэш.
+     * @return Шаблоны, вытесненные из кэша (их файлы нужно удалить).
+     */
+    List<Template> put(Template template) {
+        Template previous = templates.put(template.key, template);
+        if (previous != null) {
+            totalBytes -= previous.sizeBytes();
+        }
+        totalBytes += template.sizeBytes();
+        return evict(template);
+    }
+
+    /**
+     * Сохраняет исходные данные таблицы в шаблоне и учитывает их размер.
+     * @return Шаблоны, вытесненные из-за увеличения размера.
+     */
+    List<Template> putInitialTable(Template template, String tableName, ExecutionResult result) {
+        long resultBytes = result.resultTable.getEstimatedBytes();
+        template.initialTables.put(tableName, result);
+        template.cachedResultBytes += resultBytes;
+        if (templates.get(template.key) == template) {
+            totalBytes += resultBytes;
+        }
+        return evict(template);
+    }
+
+    /**
+     * Очищает кэш.
+     * @return Все шаблоны, которые находились в кэше.
+     */
+    List<Template> clear() {
+        List<Template> removed = new ArrayList<>(templates.values());
+        templates.clear();
+        totalBytes = 0;
+        return removed;
+    }
+
+    /**
+     * Вытесняет самые давно использованные шаблоны, пока кэш не уложится в лимиты.
+     * Шаблон keep (текущий) никогда не вытесняется.
+     */
+    private List<Template> evict(Template keep) {
+        List<Template> evicted = new ArrayList<>();
+        Iterator<Template> iterator = templates.values().iterator();
+        while ((totalBytes > maxBytes || templates.size() > maxEntries) && iterator.hasNext()) {
+            Template eldest = iterator.next();
+            if (eldest == keep) {
+                continue;
+            }
+            iterator.remove();
+            totalBytes -= eldest.sizeBytes();
+            evicted.add(eldest);
+        }
+        return evicted;
+    }
+
+    /**
+     * Вычисляет ключ кэша (SHA-1 в hex) для установочного скрипта.
+     */
+    static String hashOf(String setupSql) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(setupSql.getBytes(UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 гарантированно присутствует на всех платформах Java/Android
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.example.sql_game.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Результат с ограниченным объемом памяти: первые строки хранятся в памяти (SqlCursor.readRows()),
+ * остальные записываются во временный файл и читаются через отображение в память (MappedByteBuffer).
+ *
+ * Формат файла - строки подряд, ячейка = байт типа (TYPE_*) и значение:
+ * INTEGER - zigzag varint, FLOAT - 8 байт, TEXT и BLOB - длина varint и байты (текст в UTF-8).
+ * Строки сгруппированы в страницы по PAGE_ROWS; в памяти хранится только смещение каждой страницы.
+ * Страница при первом обращении декодируется в ColumnarResultTable, последние PAGE_CACHE_SIZE страниц
+ * кэшируются, поэтому при прокрутке и последовательном чтении каждая страница декодируется один раз.
+ *
+ * Файл удаляется сразу после отображения: отображение остается действительным, пока таблица достижима,
+ * и временные файлы не накапливаются, даже если процесс будет завершен.
+ */
+public final class SpilledResultTable extends ResultTable {
+
+    private static final Logger LOG = Logger.getLogger(SpilledResultTable.class.getName());
+
+    static final int PAGE_ROWS = 256;
+    private static final int PAGE_CACHE_SIZE = 8;
+
+    private static final int INITIAL_PAGE_OFFSETS = 16;
+
+    private final ResultTable head;
+    private final int rowCount;
+    private final MappedByteBuffer spill;
+    private final long[] pageOffsets;
+    // Декодированные страницы в порядке обращения (номер страницы -> строки страницы)
+    private final Map<Integer, ColumnarResultTable> pageCache =
+            new LinkedHashMap<Integer, ColumnarResultTable>(PAGE_CACHE_SIZE * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, ColumnarResultTable> eldest) {
+                    return size() > PAGE_CACHE_SIZE;
+                }
+            };
+
+    private SpilledResultTable(ResultTable head, int rowCount, MappedByteBuffer spill, long[] pageOffsets) {
+        this.head = head;
+        this.rowCount = rowCount;
+        this.spill = spill;
+        this.pageOffsets = pageOffsets;
+    }
+
+    /**
+     * Записывает в файл оставшиеся строки курсора: результат состоит из строк head, за которыми следуют
+     * текущая и все следующие строки курсора.
+     * @param head           Строки, прочитанные в память (SqlCursor.readRows()).
+     * @param cursor         Курсор, стоящий на первой строке, не поместившейся в память.
+     * @param directory      Каталог для временного файла.
+     * @param maxSpillBytes  Максимальный размер файла (не больше Integer.MAX_VALUE - ограничение отображения).
+     * @return Таблица или null, если размер файла превысил maxSpillBytes.
+     */
+    public static SpilledResultTable fromCursor(ResultTable head, SqlCursor cursor, File directory, long maxSpillBytes)
+            throws IOException {
+        int columnCount = cursor.getColumnCount();
+        File file = File.createTempFile("result", ".spill", directory);
+        try {
+            long[] pageOffsets = new long[INITIAL_PAGE_OFFSETS];
+            int spilledRows = 0;
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                do {
+                    if (spilledRows % PAGE_ROWS == 0) {
+                        int page = spilledRows / PAGE_ROWS;
+                        if (page == pageOffsets.length) {
+                            pageOffsets = Arrays.copyOf(pageOffsets, page * 2);
+                        }
+                        pageOffsets[page] = out.size();
+                    }
+                    writeRow(cursor, columnCount, out);
+                    spilledRows++;
+                    // size() - int, поэтому проверка выполняется до переполнения счетчика
+                    if (out.size() < 0 || out.size() > Math.min(maxSpillBytes, Integer.MAX_VALUE)) {
+                        return null;
+                    }
+                } while (cursor.moveToNext());
+            } finally {
+                out.close();
+            }
+
+            MappedByteBuffer spill;
+            try (RandomAccessFile mapped = new RandomAccessFile(file, "r")) {
+                spill = mapped.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, mapped.length());
+            }
+            int pageCount = (spilledRows + PAGE_ROWS - 1) / PAGE_ROWS;
+            LOG.fine("Spilled " + spilledRows + " rows (" + spill.capacity() + " bytes, " + pageCount + " pages)");
+            return new SpilledResultTable(head, head.getRowCount() + spilledRows, spill,
+                    Arrays.copyOf(pageOffsets, pageCount));
+        } finally {
+            if (!file.delete()) {
+                // Открытый файл удаляется не на всех платформах
+                LOG.fine("Spill file is deleted on exit: " + file);
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Число строк, записанных в файл.
+     */
+    public int getSpilledRowCount() {
+        return rowCount - head.getRowCount();
+    }
+
+    @Override
+    public List<String> getColumnNames() {
+        return head.getColumnNames();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return head.getColumnCount();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getType(int row, int column) {
+        int headRows = head.getRowCount();
+        return row < headRows ? head.getType(row, column) : page(row).getType(pageRow(row), column);
+    }
+
+    @Override
+    public boolean isNull(int row, int column) {
+        int headRows = head.getRowCount();
+        return row < headRows ? head.isNull(row, column) : page(row).isNull(pageRow(row), column);
+    }
+
+    @Override
+    public long getLong(int row, int column) {
+        int headRows = head.getRowCount();
+        return row < headRows ? head.getLong(row, column) : page(row).getLong(pageRow(row), column);
+    }
+
+    @Override
+    public double getDouble(int row, int column) {
+        int headRows = head.getRowCount();
+        return row < headRows ? head.getDouble(row, column) : page(row).getDouble(pageRow(row), column);
+    }
+
+    @Override
+    public String getString(int row, int column) {
+        int headRows = head.getRowCount();
+        return row < headRows ? head.getString(row, column) : page(row).getString(pageRow(row), column);
+    }
+
+    @Override
+    public byte[] getBlob(int row, int column) {
+        int headRows = head.getRowCount();
+        return row < headRows ? head.getBlob(row, column) : page(row).getBlob(pageRow(row), column);
+    }
+
+    /**
+     * Объем в куче: строки в памяти, индекс страниц и декодированные страницы (файл не учитывается).
+     */
+    @Override
+    public long getEstimatedBytes() {
+        long bytes = head.getEstimatedBytes() + 64 + 8L * pageOffsets.length;
+        synchronized (pageCache) {
+            for (ColumnarResultTable page : pageCache.values()) {
+                bytes += page.getEstimatedBytes();
+            }
+        }
+        return bytes;
+    }
+
+    private int pageRow(int row) {
+        return (row - head.getRowCount()) % PAGE_ROWS;
+    }
+
+    // Страница файла, содержащая строку row (row >= числа строк в памяти)
+    private ColumnarResultTable page(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + ", row count " + rowCount);
+        }
+        int page = (row - head.getRowCount()) / PAGE_ROWS;
+        // Таблицу читают адаптер в главном потоке и проверка в потоке песочницы
+        synchronized (pageCache) {
+            ColumnarResultTable cached = pageCache.get(page);
+            if (cached == null) {
+                cached = decodePage(page);
+                pageCache.put(page, cached);
+            }
+            return cached;
+        }
+    }
+
+    private ColumnarResultTable decodePage(int page) {
+        int rows = Math.min(PAGE_ROWS, getSpilledRowCount() - page * PAGE_ROWS);
+        int columnCount = head.getColumnCount();
+        ColumnarResultTable.Builder builder = new ColumnarResultTable.Builder(head.getColumnNames(), rows);
+        // Копия буфера со своей позицией: общий буфер не изменяется
+        ByteBuffer in = spill.duplicate();
+        in.position((int) pageOffsets[page]);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columnCount; column++) {
+                int type = in.get();
+                switch (type) {
+                    case TYPE_NULL:
+                        builder.appendNull(column);
+                        break;
+                    case TYPE_INTEGER:
+                        long zigzag = readVarLong(in);
+                        builder.appendLong(column, (zigzag >>> 1) ^ -(zigzag & 1));
+                        break;
+                    case TYPE_FLOAT:
+                        builder.appendDouble(column, in.getDouble());
+                        break;
+                    case TYPE_BLOB:
+                        builder.appendBlob(column, readBytes(in));
+                        break;
+                    default:
+                        builder.appendString(column, new String(readBytes(in), StandardCharsets.UTF_8));
+                        break;
+                }
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    private static void writeRow(SqlCursor cursor, int columnCount, DataOutputStream out) throws IOException {
+        for (int column = 0; column < columnCount; column++) {
+            int type = cursor.getType(column);
+            switch (type) {
+                case TYPE_NULL:
+                    out.writeByte(TYPE_NULL);
+                    break;
+                case TYPE_INTEGER:
+                    long value = cursor.getLong(column);
+                    out.writeByte(TYPE_INTEGER);
+                    writeVarLong(out, (value << 1) ^ (value >> 63));
+                    break;
+                case TYPE_FLOAT:
+                    out.writeByte(TYPE_FLOAT);
+                    out.writeDouble(cursor.getDouble(column));
+                    break;
+                case TYPE_BLOB:
+                    out.writeByte(TYPE_BLOB);
+                    writeBytes(out, cursor.getBlob(column));
+                    break;
+                default:
+                    String text = cursor.getString(column);
+                    if (text == null) {
+                        out.writeByte(TYPE_NULL);
+                    } else {
+                        out.writeByte(TYPE_STRING);
+                        writeBytes(out, text.getBytes(StandardCharsets.UTF_8));
+                    }
+                    break;
+            }
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(ByteBuffer in) {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.get(bytes);
+        return bytes;
+    }
+
+    // 7 бит на байт, старший бит - признак продолжения
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
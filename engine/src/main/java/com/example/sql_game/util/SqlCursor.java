@@ -0,0 +1,47 @@
+package com.example.sql_game.util;
+
+/**
+ * Однонаправленный курсор по строкам результата запроса SqlEngine.
+ * Курсор стоит перед первой строкой; значения читаются из текущей строки с сохранением типов SQLite.
+ */
+public interface SqlCursor {
+
+    String[] getColumnNames();
+
+    int getColumnCount();
+
+    /**
+     * Переходит к следующей строке.
+     * @return false, если строк больше нет.
+     */
+    boolean moveToNext();
+
+    /**
+     * Тип значения ячейки текущей строки (ResultTable.TYPE_*).
+     */
+    int getType(int column);
+
+    long getLong(int column);
+
+    double getDouble(int column);
+
+    /**
+     * Текстовое представление ячейки в том виде, в каком его вернул бы SQLite, или null для NULL.
+     */
+    String getString(int column);
+
+    byte[] getBlob(int column);
+
+    /**
+     * Читает в таблицу до maxRows строк, следующих за текущей. Курсор остается на последней прочитанной
+     * строке, поэтому moveToNext() после вызова показывает, остались ли еще строки.
+     * Драйвер может вернуть таблицу, которая читает значения прямо из своих буферов строк
+     * (AndroidSqlEngine - из CursorWindow); по умолчанию значения копируются в ColumnarResultTable.
+     * @param maxRows Максимальное число строк или 0 без ограничения.
+     */
+    default ResultTable readRows(int maxRows) {
+        return ColumnarResultTable.readRows(this, maxRows);
+    }
+
+    void close();
+}
@@ -0,0 +1,84 @@
+package com.example.sql_game.util;
+
+/**
+ * Соединение с базой SQLite, на котором работает песочница SqlExecutor.
+ * Отделяет логику песочницы (шаблоны, журнал отмены, проверка ответов) от драйвера SQLite:
+ * - AndroidSqlEngine (модуль app) использует android.database.sqlite;
+ * - JdbcSqlEngine использует встроенный SQLite через JDBC, поэтому задания можно настраивать
+ *   и проверять на обычной JVM (тесты, консольные утилиты, бенчмарки) без эмулятора.
+ *
+ * Ошибки SQLite передаются непроверяемыми исключениями, текст которых начинается с сообщения SQLite
+ * (например, "no such table: t"); выражение, прерванное через cancel(), завершается QueryCancelledException.
+ * Соединение используется из одного потока; из других потоков можно вызывать только cancel().
+ */
+public interface SqlEngine {
+
+    /**
+     * Открывает новые соединения с пустой базой в памяти.
+     */
+    interface Factory {
+        SqlEngine openInMemory();
+    }
+
+    /**
+     * Выполняет одно SQL-выражение без результата.
+     */
+    default void execSQL(String sql) {
+        execSQL(sql, false);
+    }
+
+    /**
+     * Выполняет одно SQL-выражение без результата.
+     * @param cancellable true - выражение можно прервать вызовом cancel().
+     */
+    void execSQL(String sql, boolean cancellable);
+
+    /**
+     * Выполняет запрос. Строки читаются по мере движения курсора; курсор нужно закрыть.
+     */
+    default SqlCursor rawQuery(String sql) {
+        return rawQuery(sql, false);
+    }
+
+    /**
+     * Выполняет запрос.
+     * @param cancellable true - чтение строк можно прервать вызовом cancel(), пока курсор не закрыт.
+     */
+    SqlCursor rawQuery(String sql, boolean cancellable);
+
+    /**
+     * Возвращает значение первого столбца первой строки запроса как число.
+     */
+    long longForQuery(String sql);
+
+    /**
+     * Компилирует выражение с параметрами для многократного выполнения; выражение нужно закрыть.
+     */
+    SqlStatement compileStatement(String sql);
+
+    /**
+     * true - соединение само хранит подготовленные выражения rawQuery по точному тексту SQL
+     * (кэш SQLiteConnection в Android), и повторный запрос с тем же текстом не компилируется заново.
+     */
+    default boolean cachesQueryStatements() {
+        return false;
+    }
+
+    /**
+     * Начинает транзакцию. Транзакции могут быть вложенными: изменения фиксируются при завершении
+     * внешней транзакции, только если все уровни отмечены setTransactionSuccessful().
+     */
+    void beginTransaction();
+
+    void setTransactionSuccessful();
+
+    void endTransaction();
+
+    /**
+     * Прерывает выполняющееся прерываемое выражение (можно вызывать из любого потока).
+     * Если такого выражения нет, ничего не делает.
+     */
+    void cancel();
+
+    void close();
+}
@@ -0,0 +1,1347 @@
+package com.example.sql_game.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Класс, использующий In-Memory SQLite для реального выполнения и проверки SQL-запросов.
+ * База данных создается в памяти (In-Memory) при вызове executeSetup().
+ * Драйвер SQLite задается фабрикой SqlEngine: на устройстве - AndroidSqlEngine,
+ * на обычной JVM - JdbcSqlEngine; результаты выполнения от драйвера не зависят.
+ */
+public class SqlExecutor {
+
+    private static final Logger LOG = Logger.getLogger(SqlExecutor.class.getName());
+
+    // Лимиты кэша шаблонов (файлы шаблонов во временном каталоге)
+    private static final long MAX_TEMPLATE_CACHE_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_TEMPLATES = 6;
+
+    // Ограничения по умолчанию для запросов пользователя (см. executeLimitedQuery())
+    public static final long DEFAULT_QUERY_TIMEOUT_MS = 3000;
+    public static final int DEFAULT_MAX_RESULT_ROWS = 5000;
+    // Предел временного файла результата, если включена выгрузка строк на диск (см. setSpillDirectory())
+    public static final long DEFAULT_MAX_SPILL_BYTES = 64L * 1024 * 1024;
+
+    private static final int INITIAL_PAGE_CAPACITY = 64;
+
+    // Сброс по журналу выполняет по выражению на измененную строку; при большем числе записей
+    // быстрее скопировать таблицы из шаблона заново
+    private static final long MAX_UNDO_REPLAY_FOR_RESET = 1000;
+
+    // Префикс служебных TEMP-объектов песочницы (журналы UndoJournal и ChangeCapture)
+    private static final String SANDBOX_OBJECT_PREFIX = "sandbox_";
+
+    // Сколько состояний после эталонных изменяющих команд хранится для проверки по состоянию
+    private static final int MAX_EXPECTED_STATES = 16;
+
+    // Общий поток-сторож, отменяющий запросы по истечении времени
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "SqlExecutor-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Pattern CREATE_OBJECT_PATTERN = Pattern.compile(
+            "^(\\s*CREATE\\s+(?:UNIQUE\\s+)?(?:TABLE|INDEX|VIEW|TRIGGER)\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?)",
+            Pattern.CASE_INSENSITIVE);
+
+    // Драйвер, открывающий базы в памяти
+    private final SqlEngine.Factory engineFactory;
+    // База данных, создаваемая в памяти.
+    private SqlEngine db;
+
+    // Кэш шаблонов (нетронутых копий базы после установочного скрипта) в отдельных файлах
+    private final SetupTemplateCache templateCache = new SetupTemplateCache(MAX_TEMPLATE_CACHE_BYTES, MAX_TEMPLATES);
+    // Метрики задержек и кэшей
+    private final SandboxMetrics metrics;
+    // Кэш подготовленных выражений текущей базы
+    private final StatementCache statementCache;
+    // Шаблон, из которого построена текущая песочница
+    private SetupTemplateCache.Template currentTemplate;
+    // true, пока после настройки не выполнялось ни одной изменяющей команды
+    private boolean isSandboxPristine = false;
+    // Хэш установочного скрипта текущей песочницы (null, если песочница не настроена)
+    private String currentSetupKey;
+    // Установочный скрипт текущей песочницы (для сброса, если журнал отмены недоступен)
+    private String currentSetupSql;
+    // Журнал отмены изменяющих команд (шаг журнала = версия песочницы после команды)
+    private final UndoJournal undoJournal = new UndoJournal();
+    // Журнал измененных строк для обновления показанных таблиц (см. readTableChanges())
+    private final ChangeCapture changeCapture = new ChangeCapture();
+    // Хэши содержимого таблиц относительно состояния после настройки (для проверки по состоянию)
+    private final StateHashes stateHashes = new StateHashes();
+    // Вторая песочница, в которой выполняются эталонные изменяющие команды (создается при первой проверке по состоянию)
+    private SqlExecutor referenceSandbox;
+    // Ключ состояния (expectedStateKey()), в котором сейчас находится вторая песочница, или null
+    private String referenceStateKey;
+    // Хэши состояний после эталонных команд по ключу expectedStateKey(), в порядке обращения
+    private final LinkedHashMap<String, Map<String, Long>> expectedStates =
+            new LinkedHashMap<String, Map<String, Long>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<String, Long>> eldest) {
+                    return size() > MAX_EXPECTED_STATES;
+                }
+            };
+    // Версия содержимого песочницы: 0 сразу после настройки, новое значение после каждой изменяющей команды
+    private long sandboxVersion = 0;
+    // Монотонный счетчик изменяющих команд (не сбрасывается, чтобы версии не повторялись)
+    private long mutationCounter = 0;
+    // Кэш результатов эталонных запросов
+    private final ExpectedResultMemo expectedResultMemo = new ExpectedResultMemo();
+    // Кэш результатов повторяемых запросов пользователя
+    private final QueryResultCache queryResultCache = new QueryResultCache();
+    // База, в которой выполняется запрос с ограничениями (null, если такого запроса нет)
+    private volatile SqlEngine activeLimitedQuery;
+    // Каталог для строк результата сверх лимита (null - такой результат прерывается)
+    private File spillDirectory;
+    // Каталог файлов шаблонов (null - java.io.tmpdir)
+    private File templateDirectory;
+
+    /**
+     * @param engineFactory Драйвер SQLite (AndroidSqlEngine.FACTORY, JdbcSqlEngine.FACTORY).
+     */
+    public SqlExecutor(SqlEngine.Factory engineFactory) {
+        this(engineFactory, SandboxMetrics.global());
+    }
+
+    /**
+     * @param metrics Реестр, в который записываются метрики этой песочницы.
+     */
+    public SqlExecutor(SqlEngine.Factory engineFactory, SandboxMetrics metrics) {
+        this.engineFactory = engineFactory;
+        this.metrics = metrics;
+        this.statementCache = new StatementCache(metrics);
+    }
+
+    /**
+     * Класс для хранения результата выполнения запроса.
+     * Поля: успех, сообщение об ошибке, заголовки и данные.
+     * Данные хранятся в колоночном виде (resultTable); resultData - представление тех же данных
+     * в виде списка строк без копирования.
+     * isCancelled отмечает запрос, прерванный по времени, по числу строк или вызовом cancelCurrentQuery();
+     * такой результат не считается успешным, а errorMessage содержит причину.
+     * dmlDelta - что изменила успешная команда INSERT/UPDATE/DELETE (null для остальных результатов
+     * и если журнал изменений недоступен).
+     */
+    public static class ExecutionResult {
+        public final boolean isSuccess;
+        public final boolean isCancelled;
+        public final String errorMessage;
+        public final ResultTable resultTable;
+        public final List<String> resultColumns;
+        public final List<List<String>> resultData;
+        public final DmlDelta dmlDelta;
+
+        // Конструктор для успешного SELECT запроса
+        public ExecutionResult(ResultTable table) {
+            this.isSuccess = true;
+            this.isCancelled = false;
+            this.errorMessage = null;
+            this.resultTable = table;
+            this.resultColumns = table.getColumnNames();
+            this.resultData = table.asRows();
+            this.dmlDelta = null;
+        }
+
+        // Конструктор для ошибок
+        public ExecutionResult(String error) {
+            this.isSuccess = false;
+            this.isCancelled = false;
+            this.errorMessage = error;
+            this.resultTable = ColumnarResultTable.EMPTY;
+            this.resultColumns = Collections.emptyList();
+            this.resultData = Collections.emptyList();
+            this.dmlDelta = null;
+        }
+
+        // Конструктор для не-SELECT команд (INSERT, UPDATE, DELETE)
+        public ExecutionResult(String message, boolean isDml) {
+            this(message, (DmlDelta) null);
+        }
+
+        // Конструктор для изменяющей команды с описанием ее изменений
+        public ExecutionResult(String message, DmlDelta dmlDelta) {
+            this.isSuccess = true;
+            this.isCancelled = false;
+            this.errorMessage = message;
+            this.resultTable = ColumnarResultTable.EMPTY;
+            this.resultColumns = Collections.emptyList();
+            this.resultData = Collections.emptyList();
+            this.dmlDelta = dmlDelta;
+        }
+
+        // Конструктор для прерванных запросов
+        private ExecutionResult(boolean isCancelled, String reason) {
+            this.isSuccess = false;
+            this.isCancelled = isCancelled;
+            this.errorMessage = reason;
+            this.resultTable = ColumnarResultTable.EMPTY;
+            this.resultColumns = Collections.emptyList();
+            this.resultData = Collections.emptyList();
+            this.dmlDelta = null;
+        }
+
+        /**
+         * Результат запроса, прерванного по времени, по числу строк или по запросу пользователя.
+         */
+        public static ExecutionResult cancelled(String reason) {
+            return new ExecutionResult(true, reason);
+        }
+    }
+
+    /**
+     * Создает (при необходимости) In-Memory базу данных и приводит ее к состоянию после установочного скрипта.
+     * Первый запуск скрипта сохраняется как шаблон (см. SetupTemplateCache), а повторные
+     * запросы с тем же скриптом восстанавливают базу копированием из шаблона без разбора SQL.
+     * @param setupSql SQL-скрипт (CREATE TABLE, INSERT и т.д.).
+     * @return ExecutionResult с сообщением об успехе или ошибке.
+     */
+    public ExecutionResult executeSetup(String setupSql) {
+        long start = metrics.start();
+        ExecutionResult result = setup(setupSql);
+        metrics.record(SandboxMetrics.Operation.SETUP, start, result);
+        return result;
+    }
+
+    private ExecutionResult setup(String setupSql) {
+        String templateKey = SetupTemplateCache.hashOf(setupSql);
+
+        // 1. Тот же скрипт и база не изменялась (или все изменения отменены) - ничего делать не нужно
+        if (db != null && currentTemplate != null && currentTemplate.key.equals(templateKey) && isSandboxPristine) {
+            LOG.fine("Setup skipped: sandbox already matches template " + currentTemplate.schemaName);
+            metrics.increment(SandboxMetrics.Counter.TEMPLATE_HIT);
+            return new ExecutionResult("База данных успешно настроена.", true);
+        }
+
+        try {
+            // 2. Открываем базу данных в памяти, если она еще не создана.
+            // Соединение живет между заданиями: шаблоны копируются в него без повторного открытия базы.
+            if (db == null) {
+                db = engineFactory.openInMemory();
+                LOG.fine("In-Memory database created/opened.");
+            }
+
+            // Схема будет пересоздана, старые подготовленные выражения и результаты больше не годятся
+            statementCache.invalidate();
+            queryResultCache.clear();
+
+            currentTemplate = null;
+            currentSetupKey = null;
+            currentSetupSql = null;
+            undoJournal.uninstall(db);
+            changeCapture.uninstall(db);
+            SetupTemplateCache.Template template = templateCache.get(templateKey);
+            if (template != null) {
+                // 3а. Быстрый путь: копируем таблицы из нетронутого шаблона
+                restoreFromTemplate(template);
+                metrics.increment(SandboxMetrics.Counter.TEMPLATE_HIT);
+                LOG.fine("Sandbox restored from template " + template.schemaName);
+            } else {
+                metrics.increment(SandboxMetrics.Counter.TEMPLATE_MISS);
+                // 3б. Медленный путь: выполняем скрипт и сохраняем результат как шаблон
+                dropSchemaObjects("main");
+                dropSchemaObjects("temp");
+                runSetupScript(setupSql);
+                template = createTemplate(templateKey);
+            }
+
+            // Состояние после настройки - база для отмены команд и сброса задания
+            undoJournal.install(db);
+            changeCapture.install(db);
+            stateHashes.reset(changeCapture.position(db));
+
+            currentTemplate = template;
+            currentSetupKey = templateKey;
+            currentSetupSql = setupSql;
+            isSandboxPristine = true;
+            sandboxVersion = 0;
+            return new ExecutionResult("База данных успешно настроена.", true);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error during setup execution", e);
+            closeDatabase(); // Убедиться, что база данных закрыта при ошибке
+            return new ExecutionResult("Ошибка настройки базы данных: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Выполняет установочный скрипт в основной схеме (main) одной транзакцией.
+     * Скрипт разбирается по ходу выполнения (SqlScriptTokenizer), а INSERT ... VALUES с литералами
+     * выполняются через скомпилированные выражения с параметрами (см. BatchInsert):
+     * одинаковые INSERT-ы скрипта компилируются один раз.
+     */
+    private void runSetupScript(String setupSql) {
+        Map<String, SqlStatement> insertStatements = new HashMap<>();
+        int statementCount = 0;
+        int batchedRows = 0;
+        db.beginTransaction();
+        try {
+            SqlScriptTokenizer statements = new SqlScriptTokenizer(setupSql);
+            while (statements.hasNext()) {
+                String statement = statements.next();
+                statementCount++;
+
+                BatchInsert insert = BatchInsert.parse(statement);
+                if (insert == null) {
+                    db.execSQL(statement);
+                    continue;
+                }
+
+                SqlStatement compiled = insertStatements.get(insert.compiledSql);
+                if (compiled == null) {
+                    compiled = db.compileStatement(insert.compiledSql);
+                    insertStatements.put(insert.compiledSql, compiled);
+                }
+                insert.execute(compiled);
+                batchedRows += insert.rows.size();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            for (SqlStatement statement : insertStatements.values()) {
+                statement.close();
+            }
+        }
+        LOG.fine("Setup script executed: " + statementCount + " statements, " + batchedRows +
+                " rows inserted via " + insertStatements.size() + " compiled INSERT statements.");
+    }
+
+    /**
+     * Копирует текущее содержимое main в новый файл шаблона.
+     * Шаблон подключается (ATTACH) к соединению песочницы только на время копирования и сразу отключается:
+     * иначе после DROP TABLE t имя t в запросах пользователя разрешалось бы в таблицу шаблона,
+     * и запрос мог бы прочитать или испортить шаблон. Поэтому шаблоны хранятся в файлах, а не в памяти:
+     * база ':memory:' исчезает при DETACH.
+     * @return Созданный шаблон или null, если шаблон создать не удалось (песочница при этом остается рабочей).
+     */
+    private SetupTemplateCache.Template createTemplate(String templateKey) {
+        SetupTemplateCache.Template template = new SetupTemplateCache.Template(templateKey, 0);
+        try {
+            template.file = File.createTempFile("sql_tpl_", ".db", templateDirectory);
+            template.file.deleteOnExit();
+        } catch (IOException | SecurityException e) {
+            LOG.log(Level.WARNING, "Could not create template file, template cache disabled for this setup", e);
+            return null;
+        }
+
+        try {
+            attachTemplate(template);
+            try {
+                // Файл шаблона пишется один раз и не переживает процесс: синхронизация с диском не нужна
+                db.execSQL("PRAGMA " + quoteIdentifier(template.schemaName) + ".synchronous = OFF");
+                copySchema("main", template.schemaName);
+                template.databaseBytes = db.longForQuery("PRAGMA " + quoteIdentifier(template.schemaName) + ".page_count")
+                        * db.longForQuery("PRAGMA " + quoteIdentifier(template.schemaName) + ".page_size");
+            } finally {
+                detachTemplate(template);
+            }
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Could not fill template " + template.schemaName, e);
+            deleteTemplate(template);
+            return null;
+        }
+
+        deleteTemplates(templateCache.put(template));
+        LOG.fine("Template " + template.schemaName + " created, " + template.databaseBytes + " bytes.");
+        return template;
+    }
+
+    /**
+     * Очищает main и заполняет ее копией шаблона. Шаблон подключен только на время копирования.
+     */
+    private void restoreFromTemplate(SetupTemplateCache.Template template) {
+        dropSchemaObjects("main");
+        dropSchemaObjects("temp");
+        // ATTACH нельзя выполнять внутри транзакции
+        attachTemplate(template);
+        try {
+            copySchema(template.schemaName, "main");
+        } finally {
+            detachTemplate(template);
+        }
+    }
+
+    /**
+     * Копирует все объекты схемы fromSchema в toSchema одной транзакцией.
+     * Порядок: таблицы, данные, индексы, затем представления и триггеры
+     * (триггеры создаются последними, чтобы они не срабатывали при копировании данных).
+     */
+    private void copySchema(String fromSchema, String toSchema) {
+        List<String[]> objects = new ArrayList<>();
+        SqlCursor cursor = db.rawQuery("SELECT type, name, sql FROM " + quoteIdentifier(fromSchema) + ".sqlite_master" +
+                " WHERE sql IS NOT NULL AND name NOT LIKE 'sqlite_%'" +
+                " ORDER BY CASE type WHEN 'table' THEN 0 WHEN 'index' THEN 1 ELSE 2 END, rowid");
+        try {
+            while (cursor.moveToNext()) {
+                objects.add(new String[]{cursor.getString(0), cursor.getString(1), cursor.getString(2)});
+            }
+        } finally {
+            cursor.close();
+        }
+
+        db.beginTransaction();
+        try {
+            for (String[] object : objects) {
+                if ("table".equals(object[0])) {
+                    db.execSQL(qualifyCreateStatement(object[2], toSchema));
+                }
+            }
+            for (String[] object : objects) {
+                if ("table".equals(object[0])) {
+                    db.execSQL("INSERT INTO " + quoteIdentifier(toSchema) + "." + quoteIdentifier(object[1]) +
+                            " SELECT * FROM " + quoteIdentifier(fromSchema) + "." + quoteIdentifier(object[1]));
+                }
+            }
+            for (String[] object : objects) {
+                if (!"table".equals(object[0])) {
+                    db.execSQL(qualifyCreateStatement(object[2], toSchema));
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Удаляет все таблицы и представления схемы (индексы и триггеры удаляются вместе с таблицами).
+     */
+    private void dropSchemaObjects(String schema) {
+        String masterTable = "temp".equals(schema) ? "sqlite_temp_master" : quoteIdentifier(schema) + ".sqlite_master";
+        List<String> views = new ArrayList<>();
+        List<String> tables = new ArrayList<>();
+        SqlCursor cursor = db.rawQuery("SELECT type, name FROM " + masterTable +
+                " WHERE type IN ('table', 'view') AND name NOT LIKE 'sqlite_%'");
+        try {
+            while (cursor.moveToNext()) {
+                ("view".equals(cursor.getString(0)) ? views : tables).add(cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (String view : views) {
+            db.execSQL("DROP VIEW IF EXISTS " + quoteIdentifier(schema) + "." + quoteIdentifier(view));
+        }
+        for (String table : tables) {
+            db.execSQL("DROP TABLE IF EXISTS " + quoteIdentifier(schema) + "." + quoteIdentifier(table));
+        }
+    }
+
+    /**
+     * Добавляет имя схемы к имени объекта в CREATE-выражении из sqlite_master.
+     * SQLite хранит эти выражения без имени схемы, поэтому подставляем его сразу после CREATE ... TABLE/INDEX/VIEW/TRIGGER.
+     */
+    private static String qualifyCreateStatement(String createSql, String schema) {
+        Matcher matcher = CREATE_OBJECT_PATTERN.matcher(createSql);
+        if (!matcher.find()) {
+            return createSql;
+        }
+        return matcher.group(1) + quoteIdentifier(schema) + "." + createSql.substring(matcher.end());
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    private void attachTemplate(SetupTemplateCache.Template template) {
+        db.execSQL("ATTACH DATABASE '" + template.file.getPath().replace("'", "''") + "' AS "
+                + quoteIdentifier(template.schemaName));
+    }
+
+    private void detachTemplate(SetupTemplateCache.Template template) {
+        try {
+            db.execSQL("DETACH DATABASE " + quoteIdentifier(template.schemaName));
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Could not detach template " + template.schemaName, e);
+        }
+    }
+
+    private static void deleteTemplates(List<SetupTemplateCache.Template> templates) {
+        for (SetupTemplateCache.Template template : templates) {
+            deleteTemplate(template);
+        }
+    }
+
+    private static void deleteTemplate(SetupTemplateCache.Template template) {
+        if (template.file != null && !template.file.delete() && template.file.exists()) {
+            LOG.warning("Could not delete template file " + template.file);
+        } else {
+            LOG.fine("Template " + template.schemaName + " deleted.");
+        }
+    }
+
+    /**
+     * Возвращает исходные данные таблицы (SELECT * FROM tableName).
+     * Пока песочница не изменялась после настройки, результат берется из кэша шаблона.
+     * @param tableName Имя таблицы.
+     */
+    public ExecutionResult queryInitialTable(String tableName) {
+        SetupTemplateCache.Template template = currentTemplate;
+        if (template != null && isSandboxPristine) {
+            ExecutionResult cached = template.initialTables.get(tableName);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        ExecutionResult result = executeQuery("SELECT * FROM " + tableName + ";");
+        if (result.isSuccess && template != null && isSandboxPristine) {
+            deleteTemplates(templateCache.putInitialTable(template, tableName, result));
+        }
+        return result;
+    }
+
+    /**
+     * Число строк таблицы (для постраничного просмотра).
+     */
+    public long countTableRows(String tableName) {
+        requireDatabase();
+        return db.longForQuery("SELECT COUNT(*) FROM " + quoteIdentifier(tableName));
+    }
+
+    /**
+     * Страница строк таблицы по ключу: до pageSize строк с rowid больше afterRowid в порядке rowid.
+     * Поиск по ключу идет по B-дереву таблицы, поэтому стоимость страницы не зависит от ее номера,
+     * в отличие от OFFSET. Таблицы WITHOUT ROWID и представления не поддерживаются (SQLite вернет ошибку).
+     */
+    public TablePage queryTablePage(String tableName, long afterRowid, int pageSize) {
+        return readTablePage("SELECT rowid, * FROM " + quoteIdentifier(tableName) + " WHERE rowid > " + afterRowid
+                + " ORDER BY rowid LIMIT " + pageSize, afterRowid, null);
+    }
+
+    /**
+     * Страница строк таблицы по номеру первой строки (в порядке rowid). Используется, когда ключ
+     * предыдущей страницы неизвестен: для первой страницы или при переходе через несколько страниц.
+     */
+    public TablePage queryTablePageAt(String tableName, int firstRow, int pageSize) {
+        return readTablePage("SELECT rowid, * FROM " + quoteIdentifier(tableName)
+                + " ORDER BY rowid LIMIT " + pageSize + " OFFSET " + firstRow, Long.MIN_VALUE, null);
+    }
+
+    // Описание изменений команды не должно помешать ее выполнению: при ошибке команда возвращается без него
+    private DmlDelta readDelta(long changeStart) {
+        try {
+            return changeCapture.readDelta(db, changeStart);
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Could not read DML delta", e);
+            return null;
+        }
+    }
+
+    // Первый столбец запроса - rowid, в страницу попадают остальные столбцы.
+    // rowRows (если задан) получает номер строки страницы для каждого rowid.
+    private TablePage readTablePage(String sql, long afterRowid, Map<Long, Integer> rowRows) {
+        requireDatabase();
+        SqlCursor cursor = db.rawQuery(sql);
+        try {
+            String[] cursorColumns = cursor.getColumnNames();
+            ColumnarResultTable.Builder builder = new ColumnarResultTable.Builder(
+                    Arrays.asList(cursorColumns).subList(1, cursorColumns.length), INITIAL_PAGE_CAPACITY);
+            long lastRowid = afterRowid;
+            while (cursor.moveToNext()) {
+                lastRowid = cursor.getLong(0);
+                if (rowRows != null) {
+                    rowRows.put(lastRowid, builder.getRowCount());
+                }
+                for (int column = 1; column < cursorColumns.length; column++) {
+                    builder.appendFromCursor(cursor, column, column - 1);
+                }
+                builder.endRow();
+            }
+            return new TablePage(builder.build(), lastRowid, sandboxVersion);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Позиция журнала изменений строк: с нее readTableChanges() вернет последующие изменения.
+     */
+    public long getChangePosition() {
+        requireDatabase();
+        return changeCapture.position(db);
+    }
+
+    /**
+     * Изменения строк таблицы после позиции журнала position (изменяющие команды, отмена и сброс по журналу),
+     * чтобы показанную таблицу можно было обновить без перечитывания. Номера строк считаются в порядке rowid,
+     * как в queryTablePage(). Если журнал не покрывает position или изменено больше maxRows строк,
+     * возвращается TableChanges с isComplete == false.
+     */
+    public TableChanges readTableChanges(String tableName, long position, int maxRows) {
+        requireDatabase();
+        long changePosition = changeCapture.position(db);
+        if (!changeCapture.covers(position)) {
+            return TableChanges.incomplete(changePosition, sandboxVersion);
+        }
+        TreeMap<Long, Boolean> changed = changeCapture.changesSince(db, tableName, position, maxRows);
+        if (changed == null) {
+            return TableChanges.incomplete(changePosition, sandboxVersion);
+        }
+        String table = quoteIdentifier(tableName);
+
+        // Текущие значения измененных строк; строк, которых нет, больше нет в таблице
+        Map<Long, Integer> currentRows = new HashMap<>();
+        ResultTable rows = ColumnarResultTable.EMPTY;
+        if (!changed.isEmpty()) {
+            StringBuilder sql = new StringBuilder("SELECT rowid, * FROM ").append(table).append(" WHERE rowid IN (");
+            for (Long rowid : changed.keySet()) {
+                sql.append(rowid).append(',');
+            }
+            sql.setLength(sql.length() - 1);
+            TablePage page = readTablePage(sql.append(") ORDER BY rowid").toString(), Long.MIN_VALUE, currentRows);
+            rows = page.rows;
+        }
+
+        int[] kinds = new int[changed.size()];
+        long[] rowids = new long[changed.size()];
+        int[] valueRows = new int[changed.size()];
+        int count = 0;
+        for (Map.Entry<Long, Boolean> entry : changed.entrySet()) {
+            long rowid = entry.getKey();
+            Integer valueRow = currentRows.get(rowid);
+            if (!entry.getValue() && valueRow == null) {
+                // Строка вставлена и удалена после position
+                continue;
+            }
+            kinds[count] = !entry.getValue() ? TableChanges.ROW_INSERTED
+                    : valueRow == null ? TableChanges.ROW_DELETED : TableChanges.ROW_UPDATED;
+            rowids[count] = rowid;
+            valueRows[count] = valueRow != null ? valueRow : -1;
+            count++;
+        }
+        int[] positions = countRowsBefore(table, rowids, count);
+        int rowCount = (int) Math.min(Integer.MAX_VALUE, countTableRows(tableName));
+        return new TableChanges(changePosition, sandboxVersion, rowCount, Arrays.copyOf(kinds, count),
+                Arrays.copyOf(rowids, count), Arrays.copyOf(positions, count), rows, Arrays.copyOf(valueRows, count));
+    }
+
+    /**
+     * Номер строки (число строк с меньшим rowid) для каждого из первых count rowid по возрастанию.
+     * Считается одним запросом: строки таблицы группируются по отрезкам между соседними rowid
+     * (оконные функции в SQLite на устройствах с API 24 недоступны), и длины отрезков суммируются.
+     */
+    private int[] countRowsBefore(String table, long[] rowids, int count) {
+        int[] positions = new int[count];
+        if (count == 0) {
+            return positions;
+        }
+        StringBuilder segments = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            segments.append(i == 0 ? "(" : ", (").append(i).append(", ")
+                    .append(i == 0 ? Long.MIN_VALUE : rowids[i - 1]).append(", ").append(rowids[i]).append(')');
+        }
+        // column1 - номер отрезка, [column2, column3) - границы rowid
+        SqlCursor cursor = db.rawQuery("SELECT s.column1, COUNT(t.rowid) FROM (VALUES " + segments + ") AS s"
+                + " LEFT JOIN " + table + " AS t ON t.rowid >= s.column2 AND t.rowid < s.column3"
+                + " GROUP BY s.column1");
+        try {
+            while (cursor.moveToNext()) {
+                positions[(int) cursor.getLong(0)] = (int) cursor.getLong(1);
+            }
+        } finally {
+            cursor.close();
+        }
+        for (int i = 1; i < count; i++) {
+            positions[i] += positions[i - 1];
+        }
+        return positions;
+    }
+
+    private void requireDatabase() {
+        if (db == null) {
+            throw new IllegalStateException("База данных не инициализирована. Выполните настройку.");
+        }
+    }
+
+    /**
+     * Выполняет произвольный SQL-запрос (SELECT, INSERT, UPDATE, DELETE, и т.д.) без ограничений.
+     * Используется для доверенных запросов (эталонные ответы заданий, исходные таблицы).
+     * @param sql Запрос пользователя.
+     * @return ExecutionResult с данными или сообщением об ошибке.
+     */
+    public ExecutionResult executeQuery(String sql) {
+        return execute(sql, 0, 0);
+    }
+
+    /**
+     * Выполняет запрос пользователя с ограничениями по умолчанию
+     * (DEFAULT_QUERY_TIMEOUT_MS и DEFAULT_MAX_RESULT_ROWS).
+     */
+    public ExecutionResult executeLimitedQuery(String sql) {
+        return executeLimitedQuery(sql, DEFAULT_QUERY_TIMEOUT_MS, DEFAULT_MAX_RESULT_ROWS);
+    }
+
+    /**
+     * Выполняет запрос с ограничением по времени и по числу строк результата.
+     * При превышении любого из ограничений запрос прерывается, изменения откатываются,
+     * и возвращается ExecutionResult.cancelled(). Песочница после этого остается рабочей.
+     * Если задан каталог выгрузки (setSpillDirectory()), строки сверх maxRows не прерывают запрос,
+     * а записываются во временный файл (SpilledResultTable) до DEFAULT_MAX_SPILL_BYTES.
+     * @param timeoutMillis Максимальное время выполнения в миллисекундах.
+     * @param maxRows       Максимальное число строк в результате SELECT (или в памяти, если выгрузка включена).
+     */
+    public ExecutionResult executeLimitedQuery(String sql, long timeoutMillis, int maxRows) {
+        long start = metrics.start();
+        // Повторный SELECT, пока песочница не изменялась, берется из кэша результатов
+        String resultKey = db != null && sql.trim().toUpperCase().startsWith("SELECT") ? QueryResultCache.keyOf(sql) : null;
+        if (resultKey != null) {
+            // Лимит строк меняет результат (прерывание или выгрузка на диск), поэтому входит в ключ
+            resultKey = maxRows + (spillDirectory != null ? "+" : "") + " " + resultKey;
+            ExecutionResult cached = lookupCachedResult(resultKey, sql);
+            if (cached != null) {
+                metrics.increment(SandboxMetrics.Counter.RESULT_HIT);
+                metrics.record(SandboxMetrics.Operation.USER_QUERY, start, cached);
+                return cached;
+            }
+            metrics.increment(SandboxMetrics.Counter.RESULT_MISS);
+        }
+        ExecutionResult result = execute(sql, timeoutMillis, maxRows);
+        if (resultKey != null && result.isSuccess) {
+            queryResultCache.put(resultKey, StatementCache.normalize(sql), result);
+        }
+        metrics.record(SandboxMetrics.Operation.USER_QUERY, start, result);
+        return result;
+    }
+
+    /**
+     * Сохраненный результат запроса или null. Кэш сбрасывается, если после сохранения изменились
+     * данные (total_changes()) или схема (schema_version) песочницы.
+     */
+    private ExecutionResult lookupCachedResult(String resultKey, String sql) {
+        queryResultCache.validate(db.longForQuery("SELECT total_changes()"),
+                db.longForQuery("PRAGMA main.schema_version"));
+        ExecutionResult cached = queryResultCache.get(resultKey);
+        String cacheKey = StatementCache.normalize(sql);
+        if (cached == null || cacheKey.equals(queryResultCache.getSql(resultKey))) {
+            return cached;
+        }
+        // Текст отличается пробелами или регистром, а SQLite берет имена столбцов из текста выражений.
+        // Имена известны уже после подготовки выражения, сам запрос при этом не выполняется.
+        SqlCursor cursor = null;
+        try {
+            cursor = db.rawQuery(statementCache.prepareQuery(db, cacheKey));
+            return Arrays.asList(cursor.getColumnNames()).equals(cached.resultColumns) ? cached : null;
+        } catch (RuntimeException e) {
+            LOG.log(Level.FINE, "Could not prepare cached query: " + sql, e);
+            return null;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Включает выгрузку больших результатов запросов с ограничениями на диск.
+     * @param directory Каталог для временных файлов (на устройстве - Context.getCacheDir()) или null,
+     *                  чтобы прерывать запросы с результатом больше лимита строк.
+     */
+    public void setSpillDirectory(File directory) {
+        this.spillDirectory = directory;
+    }
+
+    /**
+     * Каталог файлов шаблонов (см. executeSetup()); на устройстве - Context.getCacheDir().
+     * @param directory Каталог или null - системный временный каталог (java.io.tmpdir).
+     */
+    public void setTemplateDirectory(File directory) {
+        this.templateDirectory = directory;
+    }
+
+    /**
+     * Прерывает выполняющийся запрос с ограничениями (можно вызывать из любого потока).
+     */
+    public void cancelCurrentQuery() {
+        SqlEngine engine = activeLimitedQuery;
+        if (engine != null) {
+            engine.cancel();
+        }
+    }
+
+    /**
+     * @param timeoutMillis Ограничение по времени или 0, если запрос выполняется без ограничений.
+     * @param maxRows       Ограничение числа строк или 0.
+     */
+    private ExecutionResult execute(String sql, long timeoutMillis, int maxRows) {
+        if (db == null) {
+            return new ExecutionResult("База данных не инициализирована. Выполните настройку.");
+        }
+
+        // Журналы песочницы не должны меняться в обход их триггеров: иначе сброс и проверка по состоянию
+        // опирались бы на испорченные записи
+        if (referencesSandboxObjects(sql)) {
+            return new ExecutionResult("Служебные таблицы и триггеры песочницы (" + SANDBOX_OBJECT_PREFIX
+                    + "*) недоступны для запросов.");
+        }
+
+        String normalizedSql = sql.trim().toUpperCase();
+        String cacheKey = StatementCache.normalize(sql);
+        SqlCursor cursor = null;
+
+        // Запрос с ограничениями выполняется прерываемым, и сторож прервет его по таймауту
+        final SqlEngine engine = db;
+        boolean isLimited = timeoutMillis > 0;
+        ScheduledFuture<?> watchdog = null;
+        if (isLimited) {
+            activeLimitedQuery = engine;
+            watchdog = WATCHDOG.schedule(() -> engine.cancel(), timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        try {
+            // 1. Проверка на SELECT запрос
+            if (normalizedSql.startsWith("SELECT")) {
+                // Если это SELECT, используем rawQuery и читаем курсор.
+                // Канонический текст запроса позволяет повторно использовать подготовленное выражение.
+                cursor = db.rawQuery(statementCache.prepareQuery(db, cacheKey), isLimited);
+                // Заголовки и данные за один проход, с сохранением типов SQLite
+                // (на устройстве таблица читает значения прямо из окон курсора, без копирования)
+                ResultTable table = cursor.readRows(maxRows);
+                if (maxRows > 0 && cursor.moveToNext()) {
+                    if (spillDirectory != null) {
+                        return readSpilled(table, cursor, maxRows, sql);
+                    }
+                    LOG.warning("Row limit exceeded (> " + maxRows + ") for: " + sql);
+                    return ExecutionResult.cancelled("Результат содержит больше " + maxRows +
+                            " строк. Уточните условие WHERE или добавьте LIMIT.");
+                }
+                return new ExecutionResult(table);
+            }
+
+            // 2. Обработка DML/DDL команд (INSERT, UPDATE, DELETE, CREATE, DROP)
+            else {
+                // Любая команда, кроме SELECT, может изменить данные песочницы. Новая версия присваивается
+                // только после выполнения: неудачная команда данных не меняет, и кэши остаются действительными.
+                long version = ++mutationCounter;
+
+                boolean isDml = isDmlStatement(normalizedSql);
+                // Прерванное DML-выражение SQLite откатывает вместе с транзакцией, и последующий ROLLBACK
+                // завершился бы ошибкой. Одиночное выражение и так атомарно, поэтому для DML
+                // с ограничениями явная транзакция не открывается.
+                boolean useTransaction = !(isDml && isLimited);
+                long schemaVersion = isDml ? 0 : db.longForQuery("PRAGMA main.schema_version");
+                // Журналы живут в схеме temp; ее изменение командой пользователя (TEMP-триггер, TEMP-таблица)
+                // журнал отмены не учитывает
+                long tempSchemaVersion = db.longForQuery("PRAGMA temp.schema_version");
+                // Изменения этой команды - записи журнала изменений после текущей позиции
+                long changeStart = isDml ? changeCapture.position(db) : 0;
+                DmlDelta delta = null;
+                if (useTransaction) {
+                    db.beginTransaction();
+                }
+                try {
+                    // Записи журнала отмены этой команды получают номер шага, равный новой версии песочницы.
+                    // В транзакции номер шага и изменения фиксируются вместе; одиночное DML без транзакции
+                    // атомарно само по себе, и при его прерывании записи журнала откатываются вместе с ним.
+                    undoJournal.beginStep(db, version);
+                    if (!useTransaction) {
+                        // DML с ограничениями выполняется прерываемым выражением
+                        db.execSQL(cacheKey, true);
+                    } else if (isDml) {
+                        // DML не меняет схему, поэтому скомпилированное выражение берется из кэша
+                        statementCache.acquireStatement(db, cacheKey).execute();
+                    } else {
+                        // Используем execSQL для всех остальных команд
+                        db.execSQL(sql);
+                    }
+                    isSandboxPristine = false;
+                    sandboxVersion = version;
+                    if (isDml) {
+                        delta = readDelta(changeStart);
+                    }
+                    if (useTransaction) {
+                        db.setTransactionSuccessful();
+                    }
+                    boolean isTempSchemaChanged = tempSchemaVersion != db.longForQuery("PRAGMA temp.schema_version");
+                    if (isTempSchemaChanged
+                            || !isDml && schemaVersion != db.longForQuery("PRAGMA main.schema_version")) {
+                        // Изменения схемы журнал не фиксирует: дальше отмена возможна только полной настройкой
+                        undoJournal.uninstall(db);
+                        // Триггеры журнала изменений ставятся на новую схему; показанные таблицы перечитываются
+                        changeCapture.install(db);
+                        if (isTempSchemaChanged) {
+                            // Записи журнала изменений до переустановки могли быть неполными
+                            stateHashes.invalidate();
+                        }
+                    }
+                    if (changeCapture.needsTrim(db)) {
+                        // Хэши состояния учитывают записи журнала до его очистки
+                        stateHashes.update(db, changeCapture);
+                        changeCapture.trim(db);
+                    }
+
+                    // Определяем тип команды для сообщения
+                    String commandType;
+                    if (normalizedSql.startsWith("INSERT")) { commandType = "INSERT"; }
+                    else if (normalizedSql.startsWith("UPDATE")) { commandType = "UPDATE"; }
+                    else if (normalizedSql.startsWith("DELETE")) { commandType = "DELETE"; }
+                    else if (normalizedSql.startsWith("CREATE")) { commandType = "CREATE"; }
+                    else { commandType = "Команда"; }
+
+                    return new ExecutionResult(commandType + " выполнена успешно.", delta);
+
+                } finally {
+                    if (useTransaction) {
+                        db.endTransaction();
+                    }
+                    if (!isDml) {
+                        // CREATE/DROP/ALTER и прочие команды могли изменить схему
+                        statementCache.invalidate();
+                    }
+                }
+            }
+        } catch (QueryCancelledException e) {
+            // Прерванное выражение уже откачено SQLite, соединение остается рабочим
+            if (watchdog != null && watchdog.isDone()) {
+                LOG.warning("Query timed out after " + timeoutMillis + " ms: " + sql);
+                return ExecutionResult.cancelled("Запрос выполнялся дольше " + timeoutMillis +
+                        " мс и был прерван. Проверьте условия соединения таблиц.");
+            }
+            LOG.fine("Query cancelled: " + sql);
+            return ExecutionResult.cancelled("Запрос отменен.");
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "SQL Execution Error for: " + sql, e);
+            String errorMsg = e.getMessage() != null ? e.getMessage() : "Неизвестная ошибка выполнения.";
+            // Приводим ошибку к более дружелюбному виду
+            if (errorMsg.contains("no such table")) {
+                errorMsg = "Не найдена указанная таблица. Проверьте имена таблиц.";
+            } else if (errorMsg.contains("near ")) {
+                errorMsg = "Синтаксическая ошибка: " + errorMsg.substring(errorMsg.indexOf("near "));
+            }
+            return new ExecutionResult("Ошибка выполнения SQL: " + errorMsg);
+        } finally {
+            if (cursor != null) cursor.close();
+            if (watchdog != null) {
+                watchdog.cancel(false);
+                activeLimitedQuery = null;
+            }
+        }
+    }
+
+    /**
+     * Дочитывает результат запроса, выгружая строки сверх maxRows во временный файл.
+     * @param head   Первые maxRows строк.
+     * @param cursor Курсор, стоящий на первой строке, не поместившейся в память.
+     */
+    private ExecutionResult readSpilled(ResultTable head, SqlCursor cursor, int maxRows, String sql) {
+        ResultTable table;
+        try {
+            table = SpilledResultTable.fromCursor(head, cursor, spillDirectory, DEFAULT_MAX_SPILL_BYTES);
+        } catch (IOException e) {
+            // Без файла большой результат обрабатывается так же, как при отключенной выгрузке
+            LOG.log(Level.WARNING, "Failed to spill result for: " + sql, e);
+            return ExecutionResult.cancelled("Результат содержит больше " + maxRows +
+                    " строк. Уточните условие WHERE или добавьте LIMIT.");
+        }
+        if (table == null) {
+            LOG.warning("Spill limit exceeded (> " + DEFAULT_MAX_SPILL_BYTES + " bytes) for: " + sql);
+            return ExecutionResult.cancelled("Результат занимает больше " + DEFAULT_MAX_SPILL_BYTES / (1024 * 1024) +
+                    " МБ. Уточните условие WHERE или добавьте LIMIT.");
+        }
+        return new ExecutionResult(table);
+    }
+
+    private static boolean referencesSandboxObjects(String sql) {
+        for (String name : SqlScriptTokenizer.identifiers(sql)) {
+            if (name.toLowerCase(Locale.ROOT).startsWith(SANDBOX_OBJECT_PREFIX)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDmlStatement(String upperCaseSql) {
+        return upperCaseSql.startsWith("INSERT") || upperCaseSql.startsWith("UPDATE")
+                || upperCaseSql.startsWith("DELETE") || upperCaseSql.startsWith("REPLACE");
+    }
+
+    /**
+     * Выполняет эталонный запрос задания. Пока песочница не изменялась командами пользователя,
+     * результат берется из кэша (ключ - ID задания, установочный скрипт и версия песочницы),
+     * поэтому каждая попытка проверки стоит одного выполнения запроса вместо двух.
+     * @param taskId      ID задания.
+     * @param expectedSql Эталонный запрос задания.
+     */
+    public ExecutionResult executeExpectedQuery(int taskId, String expectedSql) {
+        String setupKey = currentSetupKey;
+        if (setupKey == null) {
+            return executeQuery(expectedSql);
+        }
+
+        ExecutionResult cached = expectedResultMemo.get(taskId, setupKey, sandboxVersion, expectedSql);
+        if (cached != null) {
+            metrics.increment(SandboxMetrics.Counter.EXPECTED_RESULT_HIT);
+            return cached;
+        }
+        metrics.increment(SandboxMetrics.Counter.EXPECTED_RESULT_MISS);
+        long version = sandboxVersion;
+        long start = metrics.start();
+        ExecutionResult result = executeQuery(expectedSql);
+        metrics.record(SandboxMetrics.Operation.EXPECTED_QUERY, start, result);
+        // Эталон мог оказаться изменяющей командой - тогда версия уже другая, и кэшировать нечего
+        if (result.isSuccess && version == sandboxVersion) {
+            expectedResultMemo.put(taskId, setupKey, version, expectedSql, result);
+        }
+        return result;
+    }
+
+    /**
+     * Вычисляет отпечаток результата SELECT-запроса по мере чтения курсора, не сохраняя строки.
+     * @param sourceHash Хэш источника для сохранения в отпечатке (см. ResultFingerprint.sourceHashOf()) или null.
+     * @throws RuntimeException если запрос не удалось выполнить (ошибка SQLite, см. SqlEngine).
+     */
+    public ResultFingerprint fingerprintQuery(String sql, String sourceHash) {
+        if (db == null) {
+            throw new IllegalStateException("База данных не инициализирована. Выполните настройку.");
+        }
+        SqlCursor cursor = db.rawQuery(statementCache.prepareQuery(db, StatementCache.normalize(sql)));
+        try {
+            return ResultFingerprint.fromCursor(cursor, sourceHash);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * true, если есть изменяющая команда, которую можно отменить через undoLastStatement().
+     */
+    public boolean canUndo() {
+        return db != null && undoJournal.isAvailable() && undoJournal.lastStep(db) > 0;
+    }
+
+    /**
+     * Отменяет последнюю изменяющую команду пользователя (INSERT/UPDATE/DELETE).
+     * Песочница возвращается к версии предыдущей команды, поэтому кэш эталонов и отпечатки
+     * снова применимы, если отменены все команды.
+     */
+    public ExecutionResult undoLastStatement() {
+        if (db == null) {
+            return new ExecutionResult("База данных не инициализирована. Выполните настройку.");
+        }
+        if (!undoJournal.isAvailable()) {
+            return new ExecutionResult("Отмена недоступна после изменения структуры таблиц. Сбросьте данные задания.");
+        }
+        if (undoJournal.lastStep(db) == 0) {
+            return new ExecutionResult("Нет команд для отмены.", true);
+        }
+        try {
+            restoreVersion(undoJournal.undoLastStep(db));
+            return new ExecutionResult("Последняя команда отменена.", true);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Undo failed", e);
+            return new ExecutionResult("Не удалось отменить команду: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Возвращает данные задания к состоянию сразу после настройки.
+     * Если журнал отмены ведется, все команды откатываются по журналу (без повторного выполнения скрипта),
+     * иначе (или если изменено слишком много строк) песочница настраивается заново (из шаблона, см. executeSetup()).
+     */
+    public ExecutionResult resetSandbox() {
+        if (db == null || currentSetupSql == null) {
+            return new ExecutionResult("База данных не инициализирована. Выполните настройку.");
+        }
+        if (isSandboxPristine) {
+            return new ExecutionResult("Данные задания не изменялись.", true);
+        }
+        if (undoJournal.isAvailable()
+                && (currentTemplate == null || undoJournal.size(db) <= MAX_UNDO_REPLAY_FOR_RESET)) {
+            try {
+                undoJournal.undoAll(db);
+                restoreVersion(0);
+                return new ExecutionResult("Данные задания восстановлены.", true);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Undo journal replay failed, falling back to setup", e);
+            }
+        }
+        ExecutionResult setupResult = executeSetup(currentSetupSql);
+        return setupResult.isSuccess ? new ExecutionResult("Данные задания восстановлены.", true) : setupResult;
+    }
+
+    // Песочница после отмены совпадает с состоянием на версии version (0 - сразу после настройки)
+    private void restoreVersion(long version) {
+        sandboxVersion = version;
+        isSandboxPristine = version == 0;
+    }
+
+    /**
+     * Сравнивает результаты двух SELECT-запросов, читая их курсоры синхронно (см. ResultComparator):
+     * строки не копируются, а чтение останавливается на первом расхождении.
+     * Используется для проверки без показа результата пользователю; запросы выполняются без ограничений.
+     * @throws RuntimeException если один из запросов не удалось выполнить (ошибка SQLite, см. SqlEngine).
+     */
+    public ResultComparator.Comparison compareQueries(String userSql, String expectedSql) {
+        return compareQueries(userSql, expectedSql, true);
+    }
+
+    /**
+     * То же, что compareQueries(userSql, expectedSql), с выбором режима.
+     * Без учета порядка эталон читается в память целиком (для поиска пар по хэшам),
+     * а строки пользователя по-прежнему читаются потоком до первой строки без пары.
+     * @param ordered true - порядок строк важен, false - результаты сравниваются как мультимножества строк.
+     */
+    public ResultComparator.Comparison compareQueries(String userSql, String expectedSql, boolean ordered) {
+        if (db == null) {
+            throw new IllegalStateException("База данных не инициализирована. Выполните настройку.");
+        }
+        SqlCursor userCursor = db.rawQuery(statementCache.prepareQuery(db, StatementCache.normalize(userSql)));
+        try {
+            SqlCursor expectedCursor = db.rawQuery(statementCache.prepareQuery(db, StatementCache.normalize(expectedSql)));
+            try {
+                return ordered
+                        ? ResultComparator.compare(userCursor, expectedCursor)
+                        : ResultComparator.compareUnordered(userCursor, expectedCursor.readRows(0));
+            } finally {
+                expectedCursor.close();
+            }
+        } finally {
+            userCursor.close();
+        }
+    }
+
+    /**
+     * Сравнивает состояние песочницы с состоянием, в которое эталонная изменяющая команда (или несколько команд
+     * через ';') переводит только что настроенную песочницу. Для заданий на INSERT/UPDATE/DELETE,
+     * где проверяется не вывод команды, а получившиеся данные.
+     *
+     * Эталон выполняется во второй песочнице с тем же установочным скриптом (настраивается из своего шаблона),
+     * а сравниваются хэши содержимого таблиц (StateHashes), которые обе песочницы обновляют по журналу изменений.
+     * Хэши эталонного состояния запоминаются, поэтому повторная проверка стоит обновления хэшей по строкам,
+     * измененным с прошлой проверки, и сравнения по числу таблиц - без чтения таблиц целиком.
+     * Если хэши неизвестны (изменялась схема, есть таблицы WITHOUT ROWID), сравниваются схемы
+     * и содержимое всех таблиц без учета порядка строк.
+     */
+    public StateComparison compareState(String expectedSql) {
+        requireDatabase();
+        if (currentSetupSql == null) {
+            return StateComparison.failed("База данных не инициализирована. Выполните настройку.");
+        }
+        String stateKey = expectedStateKey(expectedSql);
+        Map<String, Long> expected = expectedStates.get(stateKey);
+        if (expected == null) {
+            String error = prepareReference(stateKey, expectedSql);
+            if (error != null) {
+                return StateComparison.failed(error);
+            }
+            expected = referenceSandbox.readStateHashes();
+            if (expected != null) {
+                expectedStates.put(stateKey, expected);
+            }
+        }
+
+        Map<String, Long> actual = readStateHashes();
+        if (expected != null && actual != null) {
+            TreeSet<String> tables = new TreeSet<>(actual.keySet());
+            tables.addAll(expected.keySet());
+            List<String> mismatched = new ArrayList<>();
+            for (String table : tables) {
+                if (!Objects.equals(actual.get(table), expected.get(table))) {
+                    mismatched.add(table);
+                }
+            }
+            return new StateComparison(mismatched, true);
+        }
+
+        String error = prepareReference(stateKey, expectedSql);
+        if (error != null) {
+            return StateComparison.failed(error);
+        }
+        return new StateComparison(compareTables(referenceSandbox.db), false);
+    }
+
+    /**
+     * Выполняет SELECT-запрос во второй песочнице, приведенной в состояние после эталонной изменяющей команды
+     * (см. compareState()), например, чтобы показать, какими должны были стать строки таблицы.
+     */
+    public ExecutionResult queryExpectedState(String expectedSql, String sql) {
+        requireDatabase();
+        if (currentSetupSql == null) {
+            return new ExecutionResult("База данных не инициализирована. Выполните настройку.");
+        }
+        String error = prepareReference(expectedStateKey(expectedSql), expectedSql);
+        return error != null ? new ExecutionResult(error) : referenceSandbox.executeQuery(sql);
+    }
+
+    private String expectedStateKey(String expectedSql) {
+        return currentSetupKey + '\u0000' + StatementCache.normalize(expectedSql);
+    }
+
+    private Map<String, Long> readStateHashes() {
+        return stateHashes.read(db, changeCapture);
+    }
+
+    /**
+     * Приводит вторую песочницу в состояние после эталонной команды, если она еще не в нем.
+     * @return Сообщение об ошибке или null.
+     */
+    private String prepareReference(String stateKey, String expectedSql) {
+        if (stateKey.equals(referenceStateKey)) {
+            return null;
+        }
+        if (referenceSandbox == null) {
+            referenceSandbox = new SqlExecutor(engineFactory, metrics);
+        }
+        referenceStateKey = null;
+        // Та же настройка откатывается по журналу отмены, другая - копируется из шаблона второй песочницы
+        ExecutionResult ready = currentSetupKey.equals(referenceSandbox.currentSetupKey)
+                ? referenceSandbox.resetSandbox()
+                : referenceSandbox.executeSetup(currentSetupSql);
+        if (!ready.isSuccess) {
+            return ready.errorMessage;
+        }
+        for (String statement : SqlScriptTokenizer.split(expectedSql)) {
+            ExecutionResult result = referenceSandbox.executeQuery(statement);
+            if (!result.isSuccess) {
+                return result.errorMessage;
+            }
+        }
+        referenceStateKey = stateKey;
+        return null;
+    }
+
+    /**
+     * Сравнивает таблицы main этой песочницы и песочницы reference целиком: текст CREATE и строки
+     * без учета порядка. @return Имена расходящихся таблиц по алфавиту.
+     */
+    private List<String> compareTables(SqlEngine reference) {
+        Map<String, String> schema = readTableSchema(db);
+        Map<String, String> expectedSchema = readTableSchema(reference);
+        TreeSet<String> tables = new TreeSet<>(schema.keySet());
+        tables.addAll(expectedSchema.keySet());
+        List<String> mismatched = new ArrayList<>();
+        for (String table : tables) {
+            if (!Objects.equals(schema.get(table), expectedSchema.get(table))) {
+                mismatched.add(table);
+                continue;
+            }
+            String select = "SELECT * FROM main." + quoteIdentifier(table);
+            SqlCursor expectedCursor = reference.rawQuery(select);
+            ResultTable expectedRows;
+            try {
+                expectedRows = expectedCursor.readRows(0);
+            } finally {
+                expectedCursor.close();
+            }
+            SqlCursor cursor = db.rawQuery(select);
+            try {
+                if (!ResultComparator.compareUnordered(cursor, expectedRows).isEqual()) {
+                    mismatched.add(table);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return mismatched;
+    }
+
+    private static Map<String, String> readTableSchema(SqlEngine engine) {
+        Map<String, String> schema = new HashMap<>();
+        SqlCursor cursor = engine.rawQuery("SELECT name, sql FROM main.sqlite_master" +
+                " WHERE type = 'table' AND name NOT LIKE 'sqlite_%'");
+        try {
+            while (cursor.moveToNext()) {
+                schema.put(cursor.getString(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return schema;
+    }
+
+    /**
+     * true, если песочница настроена скриптом setupSql и с тех пор не изменялась.
+     * Только в этом состоянии применимы предвычисленные отпечатки эталонных результатов.
+     */
+    public boolean isPristineFor(String setupSql) {
+        return isSandboxPristine && currentSetupKey != null && setupSql != null
+                && currentSetupKey.equals(SetupTemplateCache.hashOf(setupSql));
+    }
+
+    /**
+     * Версия содержимого песочницы: меняется после каждой изменяющей команды и сбрасывается в 0 при настройке.
+     */
+    public long getSandboxVersion() {
+        return sandboxVersion;
+    }
+
+    /**
+     * Реестр, в который песочница записывает метрики.
+     */
+    public SandboxMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Количество эталонных запросов, результат которых взят из кэша.
+     */
+    public long getExpectedResultHitCount() {
+        return expectedResultMemo.getHitCount();
+    }
+
+    /**
+     * Количество эталонных запросов, которые пришлось выполнить.
+     */
+    public long getExpectedResultMissCount() {
+        return expectedResultMemo.getMissCount();
+    }
+
+    /**
+     * Количество повторных использований подготовленных выражений с момента создания SqlExecutor.
+     */
+    public long getStatementCacheHitCount() {
+        return statementCache.getHitCount();
+    }
+
+    /**
+     * Количество выражений, которые пришлось подготавливать заново.
+     */
+    public long getStatementCacheMissCount() {
+        return statementCache.getMissCount();
+    }
+
+    /**
+     * Закрывает In-Memory базу данных, если она открыта, и удаляет файлы шаблонов.
+     */
+    public void closeDatabase() {
+        statementCache.invalidate();
+        deleteTemplates(templateCache.clear());
+        currentTemplate = null;
+        currentSetupKey = null;
+        currentSetupSql = null;
+        isSandboxPristine = false;
+        expectedResultMemo.clear();
+        queryResultCache.clear();
+        changeCapture.detach();
+        stateHashes.invalidate();
+        expectedStates.clear();
+        if (referenceSandbox != null) {
+            referenceSandbox.closeDatabase();
+            referenceSandbox = null;
+            referenceStateKey = null;
+        }
+        if (db != null) {
+            db.close();
+            LOG.fine("In-Memory database closed.");
+        }
+        db = null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,288 @@
+package com.example.sql_game.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * Однопроходный разбор SQL-скрипта на отдельные выражения.
+ * В отличие от split(";") точка с запятой не считается разделителем внутри:
+ * - строковых литералов ('...', с экранированием ''),
+ * - идентификаторов в кавычках ("...", `...`, [...]),
+ * - комментариев (-- до конца строки и блочных),
+ * - тела триггера CREATE TRIGGER ... BEGIN ... END (с учетом вложенных CASE ... END).
+ * Выражения выдаются по одному через next(), без предварительного разбиения всего скрипта.
+ */
+public final class SqlScriptTokenizer implements Iterator<String> {
+
+    private final CharSequence script;
+    private final int length;
+    private int position = 0;
+    private String nextStatement;
+
+    public SqlScriptTokenizer(CharSequence script) {
+        this.script = script;
+        this.length = script.length();
+    }
+
+    /**
+     * Разбирает скрипт целиком (удобно для небольших скриптов и отладки).
+     */
+    public static List<String> split(CharSequence script) {
+        List<String> statements = new ArrayList<>();
+        SqlScriptTokenizer tokenizer = new SqlScriptTokenizer(script);
+        while (tokenizer.hasNext()) {
+            statements.add(tokenizer.next());
+        }
+        return statements;
+    }
+
+    /**
+     * Возвращает слова выражения вне скобок (то есть не из подзапросов, списков аргументов и OVER (...))
+     * в верхнем регистре. Литералы, идентификаторы в кавычках и комментарии пропускаются так же,
+     * как при разборе скрипта, поэтому 'order by' в строке или [order] не считаются словами.
+     */
+    public static List<String> topLevelWords(CharSequence statement) {
+        return new SqlScriptTokenizer(statement).readTopLevelWords();
+    }
+
+    /**
+     * Возвращает имена выражения: слова вне литералов и комментариев и идентификаторы в кавычках
+     * ("...", `...`, [...]) без кавычек, на любой глубине скобок. Ключевые слова тоже входят в список.
+     */
+    public static List<String> identifiers(CharSequence statement) {
+        return new SqlScriptTokenizer(statement).readIdentifiers();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextStatement == null) {
+            nextStatement = readStatement();
+        }
+        return nextStatement != null;
+    }
+
+    /**
+     * @return Следующее непустое выражение без завершающей точки с запятой и внешних пробелов.
+     */
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String statement = nextStatement;
+        nextStatement = null;
+        return statement;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Читает одно выражение, начиная с текущей позиции.
+     * @return Текст выражения или null, если до конца скрипта остались только пробелы и комментарии.
+     */
+    private String readStatement() {
+        while (position < length) {
+            int start = -1;
+            int end = -1;
+
+            // Состояние для определения тела триггера
+            int wordIndex = 0;          // номер слова в выражении
+            boolean isTrigger = false;  // выражение - CREATE [TEMP] TRIGGER
+            int blockDepth = 0;         // глубина BEGIN/CASE ... END внутри триггера
+
+            while (position < length) {
+                char c = script.charAt(position);
+
+                if (c == ';' && blockDepth == 0) {
+                    position++;
+                    break;
+                }
+
+                if (Character.isWhitespace(c)) {
+                    position++;
+                    continue;
+                }
+
+                if (c == '-' && peek(1) == '-') {
+                    skipLineComment();
+                    continue;
+                }
+                if (c == '/' && peek(1) == '*') {
+                    skipBlockComment();
+                    continue;
+                }
+
+                if (start < 0) {
+                    start = position;
+                }
+
+                if (c == '\'' || c == '"' || c == '`') {
+                    skipQuoted(c);
+                } else if (c == '[') {
+                    skipQuoted(']');
+                } else if (isWordStart(c)) {
+                    int wordStart = position;
+                    while (position < length && isWordPart(script.charAt(position))) {
+                        position++;
+                    }
+                    int wordLength = position - wordStart;
+
+                    if (wordIndex == 0) {
+                        isTrigger = false;
+                        if (!matches(wordStart, wordLength, "CREATE")) {
+                            wordIndex = -1; // дальше слова не анализируем
+                        }
+                    } else if (wordIndex > 0 && !isTrigger) {
+                        if (matches(wordStart, wordLength, "TRIGGER")) {
+                            isTrigger = true;
+                        } else if (!matches(wordStart, wordLength, "TEMP") && !matches(wordStart, wordLength, "TEMPORARY")) {
+                            wordIndex = -1; // CREATE TABLE/INDEX/VIEW: разделители обычные
+                        }
+                    } else if (isTrigger) {
+                        if (matches(wordStart, wordLength, "BEGIN") || matches(wordStart, wordLength, "CASE")) {
+                            blockDepth++;
+                        } else if (matches(wordStart, wordLength, "END") && blockDepth > 0) {
+                            blockDepth--;
+                        }
+                    }
+                    if (wordIndex >= 0) {
+                        wordIndex++;
+                    }
+                } else {
+                    position++;
+                }
+                end = position;
+            }
+
+            if (start >= 0) {
+                return script.subSequence(start, end).toString();
+            }
+        }
+        return null;
+    }
+
+    private List<String> readTopLevelWords() {
+        List<String> words = new ArrayList<>();
+        int depth = 0;
+        while (position < length) {
+            char c = script.charAt(position);
+            if (c == '-' && peek(1) == '-') {
+                skipLineComment();
+            } else if (c == '/' && peek(1) == '*') {
+                skipBlockComment();
+            } else if (c == '\'' || c == '"' || c == '`') {
+                skipQuoted(c);
+            } else if (c == '[') {
+                skipQuoted(']');
+            } else if (isWordStart(c)) {
+                int wordStart = position;
+                while (position < length && isWordPart(script.charAt(position))) {
+                    position++;
+                }
+                if (depth == 0) {
+                    words.add(script.subSequence(wordStart, position).toString().toUpperCase(Locale.ROOT));
+                }
+            } else {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                }
+                position++;
+            }
+        }
+        return words;
+    }
+
+    private List<String> readIdentifiers() {
+        List<String> names = new ArrayList<>();
+        while (position < length) {
+            char c = script.charAt(position);
+            if (c == '-' && peek(1) == '-') {
+                skipLineComment();
+            } else if (c == '/' && peek(1) == '*') {
+                skipBlockComment();
+            } else if (c == '\'') {
+                skipQuoted(c);
+            } else if (c == '"' || c == '`' || c == '[') {
+                char closing = c == '[' ? ']' : c;
+                int nameStart = position + 1;
+                skipQuoted(closing);
+                int nameEnd = Math.max(nameStart, position - 1);
+                String name = script.subSequence(nameStart, nameEnd).toString();
+                names.add(closing == ']' ? name : name.replace(String.valueOf(closing) + closing, String.valueOf(closing)));
+            } else if (isWordStart(c)) {
+                int wordStart = position;
+                while (position < length && isWordPart(script.charAt(position))) {
+                    position++;
+                }
+                names.add(script.subSequence(wordStart, position).toString());
+            } else {
+                position++;
+            }
+        }
+        return names;
+    }
+
+    private char peek(int offset) {
+        int index = position + offset;
+        return index < length ? script.charAt(index) : '\0';
+    }
+
+    private void skipLineComment() {
+        while (position < length && script.charAt(position) != '\n') {
+            position++;
+        }
+    }
+
+    private void skipBlockComment() {
+        position += 2;
+        while (position < length && !(script.charAt(position) == '*' && peek(1) == '/')) {
+            position++;
+        }
+        position = Math.min(position + 2, length);
+    }
+
+    /**
+     * Пропускает литерал или идентификатор в кавычках; удвоенная закрывающая кавычка считается экранированной.
+     */
+    private void skipQuoted(char closing) {
+        position++;
+        while (position < length) {
+            char c = script.charAt(position++);
+            if (c == closing) {
+                if (closing != ']' && position < length && script.charAt(position) == closing) {
+                    position++;
+                    continue;
+                }
+                return;
+            }
+        }
+    }
+
+    private boolean matches(int start, int wordLength, String keyword) {
+        if (wordLength != keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < wordLength; i++) {
+            if (Character.toUpperCase(script.charAt(start + i)) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWordStart(char c) {
+        return Character.isLetter(c) || c == '_';
+    }
+
+    private static boolean isWordPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.sql_game.util;
+
+/**
+ * Скомпилированное выражение SqlEngine с параметрами (индексы параметров начинаются с 1).
+ */
+public interface SqlStatement {
+
+    void bindNull(int index);
+
+    void bindLong(int index, long value);
+
+    void bindDouble(int index, double value);
+
+    void bindString(int index, String value);
+
+    void bindBlob(int index, byte[] value);
+
+    void clearBindings();
+
+    /**
+     * Выполняет выражение с текущими параметрами.
+     * @return Количество строк, измененных выражением.
+     */
+    int execute();
+
+    void close();
+}
@@ -0,0 +1,90 @@
+package com.example.sql_game.util;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Вспомогательные методы для работы со значениями SQLite в ResultTable:
+ * текстовое представление и сравнение с учетом типов.
+ */
+public final class SqlValues {
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private SqlValues() {
+    }
+
+    /**
+     * Форматирует REAL так же, как SQLite при приведении к тексту ("%!.15g"):
+     * 15 значащих цифр, без хвостовых нулей, но всегда с дробной частью (78750.0).
+     */
+    public static String formatReal(double value) {
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "Inf" : "-Inf";
+        }
+        // Быстрый путь для целых значений (AVG, SUM по целым столбцам)
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value) + ".0";
+        }
+
+        String formatted = String.format(Locale.ROOT, "%.15g", value);
+        int exponentStart = formatted.indexOf('e');
+        String mantissa = exponentStart >= 0 ? formatted.substring(0, exponentStart) : formatted;
+        String exponent = exponentStart >= 0 ? formatted.substring(exponentStart) : "";
+
+        if (mantissa.indexOf('.') >= 0) {
+            int end = mantissa.length();
+            while (mantissa.charAt(end - 1) == '0') {
+                end--;
+            }
+            mantissa = mantissa.substring(0, end);
+            if (mantissa.endsWith(".")) {
+                mantissa += "0";
+            }
+        }
+        return mantissa + exponent;
+    }
+
+    /**
+     * Текстовое представление BLOB в виде SQL-литерала X'...'.
+     */
+    public static String formatBlob(byte[] blob) {
+        StringBuilder builder = new StringBuilder(blob.length * 2 + 3);
+        builder.append("X'");
+        for (byte b : blob) {
+            builder.append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+        }
+        return builder.append('\'').toString();
+    }
+
+    /**
+     * Сравнивает две ячейки с учетом типов:
+     * NULL равен только NULL, числа сравниваются по значению (5 = 5.0, как в SQLite),
+     * строки и BLOB - по содержимому, значения разных классов (число и строка) не равны.
+     */
+    public static boolean cellEquals(ResultTable a, int rowA, int columnA, ResultTable b, int rowB, int columnB) {
+        int typeA = a.getType(rowA, columnA);
+        int typeB = b.getType(rowB, columnB);
+
+        if (typeA == ResultTable.TYPE_NULL || typeB == ResultTable.TYPE_NULL) {
+            return typeA == typeB;
+        }
+        if (isNumeric(typeA) && isNumeric(typeB)) {
+            if (typeA == ResultTable.TYPE_INTEGER && typeB == ResultTable.TYPE_INTEGER) {
+                return a.getLong(rowA, columnA) == b.getLong(rowB, columnB);
+            }
+            return a.getDouble(rowA, columnA) == b.getDouble(rowB, columnB);
+        }
+        if (typeA != typeB) {
+            return false;
+        }
+        if (typeA == ResultTable.TYPE_BLOB) {
+            return Arrays.equals(a.getBlob(rowA, columnA), b.getBlob(rowB, columnB));
+        }
+        return a.getString(rowA, columnA).equals(b.getString(rowB, columnB));
+    }
+
+    static boolean isNumeric(int type) {
+        return type == ResultTable.TYPE_INTEGER || type == ResultTable.TYPE_FLOAT;
+    }
+}
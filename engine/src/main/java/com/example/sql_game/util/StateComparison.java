@@ -0,0 +1,50 @@
+package com.example.sql_game.util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Итог сравнения состояния песочницы с состоянием после эталонной изменяющей команды
+ * (см. SqlExecutor.compareState()).
+ */
+public final class StateComparison {
+
+    // Ошибка настройки эталонной песочницы или эталонной команды; null, если сравнение выполнено
+    public final String errorMessage;
+    // Таблицы, содержимое или структура которых расходится с эталоном, по алфавиту
+    public final List<String> mismatchedTables;
+    // true - сравнивались хэши содержимого таблиц, false - таблицы сравнивались целиком
+    public final boolean isByHashes;
+
+    StateComparison(List<String> mismatchedTables, boolean isByHashes) {
+        this.errorMessage = null;
+        this.mismatchedTables = Collections.unmodifiableList(mismatchedTables);
+        this.isByHashes = isByHashes;
+    }
+
+    private StateComparison(String errorMessage) {
+        this.errorMessage = errorMessage;
+        this.mismatchedTables = Collections.emptyList();
+        this.isByHashes = false;
+    }
+
+    static StateComparison failed(String errorMessage) {
+        return new StateComparison(errorMessage);
+    }
+
+    public boolean isSuccess() {
+        return errorMessage == null;
+    }
+
+    public boolean isEqual() {
+        return isSuccess() && mismatchedTables.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        if (!isSuccess()) {
+            return "ошибка эталона: " + errorMessage;
+        }
+        return isEqual() ? "равны" : "расходятся таблицы " + mismatchedTables;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.sql_game.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Хэши содержимого таблиц песочницы относительно состояния сразу после настройки, для проверки
+ * заданий на изменение данных по состоянию базы (SqlExecutor.compareState()).
+ *
+ * Хэш таблицы - хэш мультимножества ее строк без rowid (сумма ResultFingerprint.multisetTerm() по строкам),
+ * поэтому его можно обновлять по одной строке. Хранится разность с хэшем таблицы после настройки:
+ * у двух песочниц с одним установочным скриптом содержимое совпадает (с точностью до коллизий 64-битного хэша),
+ * если совпадают разности. Таблицы после настройки не хэшируются вовсе.
+ *
+ * SQLite на устройстве не позволяет вызывать из триггеров свои функции, поэтому хэши считаются не в триггерах,
+ * а по строкам, которые триггеры ChangeCapture записали в журнал изменений: update() учитывает записи,
+ * появившиеся с прошлого вызова. Если журнал переустановлен (изменение схемы) или не покрывает какую-то
+ * таблицу, хэши становятся неизвестны до следующей настройки.
+ */
+final class StateHashes {
+
+    // Имя таблицы -> хэш ее строк минус хэш строк после настройки
+    private final Map<String, Long> tableHashes = new HashMap<>();
+    // Позиция журнала изменений, до которой записи уже учтены
+    private long position = 0;
+    private boolean isKnown = false;
+
+    /**
+     * Песочница только что настроена: все разности нулевые.
+     * @param position Позиция журнала изменений сразу после его установки.
+     */
+    void reset(long position) {
+        tableHashes.clear();
+        this.position = position;
+        isKnown = true;
+    }
+
+    void invalidate() {
+        tableHashes.clear();
+        isKnown = false;
+    }
+
+    /**
+     * Учитывает записи журнала изменений после прошлого вызова. Вызывается и перед очисткой журнала (trim()),
+     * иначе записи будут потеряны.
+     */
+    void update(SqlEngine db, ChangeCapture capture) {
+        if (!isKnown) {
+            return;
+        }
+        if (!capture.coversAllTables() || !capture.covers(position)) {
+            invalidate();
+            return;
+        }
+        long current = capture.position(db);
+        if (current > position) {
+            capture.foldStateHashes(db, position, tableHashes);
+            position = current;
+        }
+    }
+
+    /**
+     * @return Ненулевые разности хэшей по именам таблиц (таблицы, содержимое которых отличается
+     *         от состояния после настройки) или null, если хэши неизвестны.
+     */
+    Map<String, Long> read(SqlEngine db, ChangeCapture capture) {
+        update(db, capture);
+        if (!isKnown) {
+            return null;
+        }
+        Map<String, Long> hashes = new TreeMap<>();
+        for (Map.Entry<String, Long> entry : tableHashes.entrySet()) {
+            if (entry.getValue() != 0) {
+                hashes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return hashes;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.sql_game.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ограниченный LRU-кэш скомпилированных выражений для одной базы данных SqlExecutor.
+ *
+ * DML-команды компилируются здесь и хранятся как SqlStatement. Запросы (rawQuery) кэш не компилирует:
+ * в Android их подготовленные выражения хранит кэш соединения (SQLiteConnection), ключом которого
+ * является точный текст SQL, а JdbcSqlEngine компилирует запрос при каждом вызове. Поэтому кэш:
+ * 1. задает размер кэша соединения (MAX_SIZE, см. AndroidSqlEngine);
+ * 2. приводит SQL к каноническому виду, чтобы повторные попытки попадали в кэш соединения;
+ * 3. хранит скомпилированные выражения (SqlStatement) для DML-команд;
+ * 4. считает попадания и промахи только там, где выражения действительно переиспользуются:
+ *    для DML-команд и для запросов на соединении с кэшем (SqlEngine.cachesQueryStatements());
+ * 5. при изменении схемы меняет "поколение" ключей, чтобы старые выражения,
+ *    подготовленные для прежней схемы, больше никогда не использовались.
+ */
+final class StatementCache {
+
+    // Размер кэша соединения и кэша DML-команд. Android допускает не больше 100 выражений
+    // (SQLiteDatabase.MAX_SQL_CACHE_SIZE); песочнице хватает меньшего, а каждое выражение занимает память.
+    static final int MAX_SIZE = 32;
+
+    private final LinkedHashMap<String, SqlStatement> statements =
+            new LinkedHashMap<String, SqlStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SqlStatement> eldest) {
+                    if (size() > MAX_SIZE) {
+                        eldest.getValue().close();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    // Зеркало кэша соединения для запросов: ключи в порядке последнего использования.
+    // Заполняется, только если соединение кэширует запросы (SqlEngine.cachesQueryStatements())
+    private final LinkedHashMap<String, Boolean> preparedKeys =
+            new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_SIZE;
+                }
+            };
+
+    // Поколение схемы. Входит в текст выражения, поэтому после смены схемы ключи не совпадают со старыми.
+    private int schemaGeneration = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private final SandboxMetrics metrics;
+
+    StatementCache(SandboxMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Приводит SQL к ключу кэша: убирает пробелы по краям и завершающие точки с запятой.
+     * Пробелы внутри запроса не трогаются: SQLite берет имена столбцов результата
+     * из исходного текста выражений (например, "AVG( Зарплата )").
+     */
+    static String normalize(String sql) {
+        int start = 0;
+        int end = sql.length();
+        while (end > 0 && (Character.isWhitespace(sql.charAt(end - 1)) || sql.charAt(end - 1) == ';')) {
+            end--;
+        }
+        while (start < end && Character.isWhitespace(sql.charAt(start))) {
+            start++;
+        }
+        return sql.substring(start, end);
+    }
+
+    /**
+     * Возвращает текст SELECT-запроса для rawQuery. Попадание/промах учитывается, только если
+     * соединение хранит подготовленные запросы; иначе запрос компилируется заново и счетчики не меняются.
+     * @param key Нормализованный SQL (см. normalize()).
+     */
+    String prepareQuery(SqlEngine db, String key) {
+        if (db.cachesQueryStatements()) {
+            recordLookup(preparedKeys.put(key, Boolean.TRUE) != null);
+        }
+        return withGeneration(key);
+    }
+
+    /**
+     * Возвращает скомпилированное выражение для DML-команды, компилируя его при промахе.
+     * @param key Нормализованный SQL (см. normalize()).
+     */
+    SqlStatement acquireStatement(SqlEngine db, String key) {
+        SqlStatement statement = statements.get(key);
+        recordLookup(statement != null);
+        if (statement == null) {
+            statement = db.compileStatement(withGeneration(key));
+            statements.put(key, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Сбрасывает кэш. Вызывается после изменения схемы (DDL, настройка) и при закрытии базы.
+     */
+    void invalidate() {
+        for (SqlStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+        preparedKeys.clear();
+        schemaGeneration++;
+    }
+
+    long getHitCount() {
+        return hitCount;
+    }
+
+    long getMissCount() {
+        return missCount;
+    }
+
+    private void recordLookup(boolean isHit) {
+        if (isHit) {
+            hitCount++;
+            metrics.increment(SandboxMetrics.Counter.STATEMENT_HIT);
+        } else {
+            missCount++;
+            metrics.increment(SandboxMetrics.Counter.STATEMENT_MISS);
+        }
+    }
+
+    // Комментарий в конце не влияет на выполнение и имена столбцов, но делает текст уникальным для поколения
+    private String withGeneration(String key) {
+        return key + "\n/* g" + schemaGeneration + " */";
+    }
+}
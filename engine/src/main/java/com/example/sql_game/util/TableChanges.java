@@ -0,0 +1,73 @@
+package com.example.sql_game.util;
+
+/**
+ * Изменения строк таблицы после позиции журнала изменений (см. SqlExecutor.readTableChanges()).
+ *
+ * Изменения упорядочены по rowid, а position[i] - номер строки в порядке rowid с учетом уже примененных
+ * изменений 0..i-1: если применять их по порядку к списку строк, прочитанному на исходной позиции,
+ * получится список строк на позиции changePosition.
+ * Если isComplete == false, изменения неизвестны (журнал переустановлен или изменено слишком много строк)
+ * и таблицу нужно перечитать целиком.
+ */
+public final class TableChanges {
+
+    public static final int ROW_INSERTED = 0;
+    public static final int ROW_UPDATED = 1;
+    public static final int ROW_DELETED = 2;
+
+    public final boolean isComplete;
+    // Позиция журнала, на которой прочитаны изменения (исходная позиция для следующего чтения)
+    public final long changePosition;
+    // Версия песочницы, в которой прочитаны изменения (см. SqlExecutor.getSandboxVersion())
+    public final long sandboxVersion;
+    // Число строк таблицы после изменений
+    public final int rowCount;
+    // Вид изменения (ROW_*), rowid и номер строки для каждого изменения
+    public final int[] kinds;
+    public final long[] rowids;
+    public final int[] positions;
+    // Новые значения вставленных и измененных строк (без столбца rowid)
+    private final ResultTable rows;
+    // Строка rows для каждого изменения (-1 для удаленных)
+    private final int[] valueRows;
+
+    TableChanges(long changePosition, long sandboxVersion, int rowCount, int[] kinds, long[] rowids, int[] positions,
+                 ResultTable rows, int[] valueRows) {
+        this.isComplete = true;
+        this.changePosition = changePosition;
+        this.sandboxVersion = sandboxVersion;
+        this.rowCount = rowCount;
+        this.kinds = kinds;
+        this.rowids = rowids;
+        this.positions = positions;
+        this.rows = rows;
+        this.valueRows = valueRows;
+    }
+
+    private TableChanges(long changePosition, long sandboxVersion) {
+        this.isComplete = false;
+        this.changePosition = changePosition;
+        this.sandboxVersion = sandboxVersion;
+        this.rowCount = 0;
+        this.kinds = new int[0];
+        this.rowids = new long[0];
+        this.positions = new int[0];
+        this.rows = ColumnarResultTable.EMPTY;
+        this.valueRows = new int[0];
+    }
+
+    static TableChanges incomplete(long changePosition, long sandboxVersion) {
+        return new TableChanges(changePosition, sandboxVersion);
+    }
+
+    public int size() {
+        return kinds.length;
+    }
+
+    /**
+     * Новые значения строки изменения или null для удаленной строки.
+     */
+    public ResultRow getRow(int change) {
+        return valueRows[change] >= 0 ? rows.getRow(valueRows[change]) : null;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.sql_game.util;
+
+/**
+ * Страница строк таблицы, прочитанная в порядке rowid (см. SqlExecutor.queryTablePage()).
+ */
+public final class TablePage {
+    // Строки страницы (без столбца rowid)
+    public final ResultTable rows;
+    // rowid последней строки страницы: ключ, после которого начинается следующая страница
+    public final long lastRowid;
+    // Версия песочницы, в которой прочитана страница (см. SqlExecutor.getSandboxVersion())
+    public final long sandboxVersion;
+
+    TablePage(ResultTable rows, long lastRowid, long sandboxVersion) {
+        this.rows = rows;
+        this.lastRowid = lastRowid;
+        this.sandboxVersion = sandboxVersion;
+    }
+}
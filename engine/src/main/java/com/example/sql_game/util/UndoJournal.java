@@ -0,0 +1,250 @@
+package com.example.sql_game.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Журнал отмены изменений песочницы по методике undo/redo из документации SQLite.
+ * На каждую таблицу main ставятся временные (TEMP) триггеры AFTER INSERT/UPDATE/DELETE, которые записывают
+ * в temp.sandbox_undo_log обратное SQL-выражение для каждой измененной строки. Записи помечаются номером шага -
+ * версией песочницы изменяющей команды (см. SqlExecutor), поэтому каждую команду можно отменить отдельно,
+ * а весь стек шагов - откатить к состоянию сразу после настройки.
+ *
+ * Это замена стека SAVEPOINT: на Android выражения ROLLBACK ... перехватываются SQLiteSession
+ * (до API 29 даже ROLLBACK TO считается завершением управляемой транзакции), а ATTACH шаблонов
+ * нельзя выполнять внутри открытой транзакции. Журнал же пишется в той же транзакции, что и сама
+ * команда, и откатывается вместе с ней, если команда прервана.
+ *
+ * Триггеры не фиксируют изменения схемы (CREATE/DROP/ALTER), а повторное выполнение обратных выражений
+ * заново запускало бы пользовательские триггеры. Поэтому для схем с триггерами или таблицами WITHOUT ROWID
+ * журнал не ведется, а после изменения схемы он отключается до следующей настройки (isAvailable() == false).
+ */
+final class UndoJournal {
+
+    private static final Logger LOG = Logger.getLogger(UndoJournal.class.getName());
+
+    private static final String LOG_TABLE = "sandbox_undo_log";
+    private static final String STATE_TABLE = "sandbox_undo_state";
+    private static final String TRIGGER_PREFIX = "sandbox_undo_";
+
+    private boolean isAvailable = false;
+
+    /**
+     * Ставит журнал на текущую схему main (вызывается сразу после настройки песочницы).
+     * Состояние на момент вызова становится базовым: к нему возвращает undoAll().
+     */
+    void install(SqlEngine db) {
+        uninstall(db);
+        try {
+            createJournal(db);
+        } catch (RuntimeException e) {
+            // Без журнала песочница остается рабочей: сброс выполняется повторной настройкой
+            LOG.log(Level.WARNING, "Could not install undo journal", e);
+            uninstall(db);
+        }
+    }
+
+    private void createJournal(SqlEngine db) {
+        List<String[]> tables = new ArrayList<>();
+        SqlCursor cursor = db.rawQuery("SELECT type, name, sql FROM main.sqlite_master" +
+                " WHERE type IN ('table', 'trigger') AND name NOT LIKE 'sqlite_%'");
+        try {
+            while (cursor.moveToNext()) {
+                String type = cursor.getString(0);
+                String sql = cursor.getString(2);
+                if ("trigger".equals(type) || sql == null || sql.toUpperCase().contains("WITHOUT ROWID")
+                        || sql.toUpperCase().startsWith("CREATE VIRTUAL")) {
+                    LOG.fine("Undo journal disabled: unsupported schema object " + cursor.getString(1));
+                    return;
+                }
+                tables.add(new String[]{cursor.getString(1)});
+            }
+        } finally {
+            cursor.close();
+        }
+
+        db.beginTransaction();
+        try {
+            db.execSQL("CREATE TEMP TABLE " + LOG_TABLE + " (seq INTEGER PRIMARY KEY, step INTEGER NOT NULL, sql TEXT NOT NULL)");
+            db.execSQL("CREATE TEMP TABLE " + STATE_TABLE + " (step INTEGER NOT NULL, active INTEGER NOT NULL)");
+            db.execSQL("INSERT INTO temp." + STATE_TABLE + " VALUES (0, 1)");
+            for (String[] table : tables) {
+                createTriggers(db, table[0], columnsOf(db, table[0]));
+            }
+            db.setTransactionSuccessful();
+            isAvailable = true;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Снимает триггеры и удаляет журнал (после изменения схемы отмена по журналу невозможна).
+     */
+    void uninstall(SqlEngine db) {
+        isAvailable = false;
+        List<String> triggers = new ArrayList<>();
+        SqlCursor cursor = db.rawQuery("SELECT name FROM sqlite_temp_master WHERE type = 'trigger' AND name LIKE '"
+                + TRIGGER_PREFIX + "%'");
+        try {
+            while (cursor.moveToNext()) {
+                triggers.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        for (String trigger : triggers) {
+            db.execSQL("DROP TRIGGER IF EXISTS temp." + quoteIdentifier(trigger));
+        }
+        db.execSQL("DROP TABLE IF EXISTS temp." + LOG_TABLE);
+        db.execSQL("DROP TABLE IF EXISTS temp." + STATE_TABLE);
+    }
+
+    /**
+     * Журнал ведется, и все изменения с момента install() можно отменить.
+     */
+    boolean isAvailable() {
+        return isAvailable;
+    }
+
+    /**
+     * Задает номер шага для записей следующей команды. Вызывается в транзакции команды
+     * (или перед одиночным выражением, которое SQLite выполняет атомарно).
+     */
+    void beginStep(SqlEngine db, long step) {
+        if (isAvailable) {
+            db.execSQL("UPDATE temp." + STATE_TABLE + " SET step = " + step);
+        }
+    }
+
+    /**
+     * Номер последнего шага с записями в журнале (0, если изменений нет).
+     */
+    long lastStep(SqlEngine db) {
+        if (!isAvailable) {
+            return 0;
+        }
+        return db.longForQuery("SELECT IFNULL(MAX(step), 0) FROM temp." + LOG_TABLE);
+    }
+
+    /**
+     * Количество записей журнала (обратных выражений, которые выполнит undoAll()).
+     */
+    long size(SqlEngine db) {
+        if (!isAvailable) {
+            return 0;
+        }
+        return db.longForQuery("SELECT COUNT(*) FROM temp." + LOG_TABLE);
+    }
+
+    /**
+     * Отменяет последний шаг, изменивший данные (шаги без записей, например неудачные команды, пропускаются).
+     * @return Номер шага, ставший последним после отмены (0 - песочница вернулась к базовому состоянию).
+     */
+    long undoLastStep(SqlEngine db) {
+        long step = lastStep(db);
+        if (step > 0) {
+            replay(db, "step = " + step);
+        }
+        return lastStep(db);
+    }
+
+    /**
+     * Отменяет все шаги и возвращает песочницу к состоянию после настройки.
+     */
+    void undoAll(SqlEngine db) {
+        replay(db, "1");
+    }
+
+    // Выполняет обратные выражения выбранных записей в обратном порядке одной транзакцией
+    private void replay(SqlEngine db, String condition) {
+        List<String> statements = new ArrayList<>();
+        SqlCursor cursor = db.rawQuery("SELECT sql FROM temp." + LOG_TABLE + " WHERE " + condition + " ORDER BY seq DESC");
+        try {
+            while (cursor.moveToNext()) {
+                statements.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        db.beginTransaction();
+        try {
+            // Обратные выражения сами не журналируются
+            db.execSQL("UPDATE temp." + STATE_TABLE + " SET active = 0");
+            for (String statement : statements) {
+                db.execSQL(statement);
+            }
+            db.execSQL("DELETE FROM temp." + LOG_TABLE + " WHERE " + condition);
+            db.execSQL("UPDATE temp." + STATE_TABLE + " SET active = 1");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        LOG.fine("Undo replayed " + statements.size() + " statements.");
+    }
+
+    private static List<String> columnsOf(SqlEngine db, String table) {
+        List<String> columns = new ArrayList<>();
+        SqlCursor cursor = db.rawQuery("PRAGMA main.table_info(" + quoteIdentifier(table) + ")");
+        try {
+            // Столбцы table_info: cid, name, type, notnull, dflt_value, pk
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return columns;
+    }
+
+    private static void createTriggers(SqlEngine db, String table, List<String> columns) {
+        String target = quoteIdentifier(table);
+        String quotedTarget = sqlLiteral(target);
+        String when = " WHEN (SELECT active FROM temp." + STATE_TABLE + ") = 1";
+        // Внутри триггера имя таблицы в INSERT нельзя уточнять схемой; TEMP-триггер находит temp-таблицу первой
+        String logInsert = "INSERT INTO " + LOG_TABLE + " (step, sql) VALUES ((SELECT step FROM temp." + STATE_TABLE + "), ";
+
+        // INSERT отменяется удалением строки
+        db.execSQL("CREATE TEMP TRIGGER " + quoteIdentifier(TRIGGER_PREFIX + table + "_insert") +
+                " AFTER INSERT ON main." + target + when + " BEGIN " + logInsert +
+                "'DELETE FROM ' || " + quotedTarget + " || ' WHERE rowid = ' || new.rowid); END");
+
+        // UPDATE отменяется восстановлением старых значений (и rowid) строки
+        StringBuilder restore = new StringBuilder("'UPDATE ' || " + quotedTarget + " || ' SET rowid = ' || old.rowid");
+        for (String column : columns) {
+            restore.append(" || ', ").append(sqlLiteralBody(quoteIdentifier(column))).append(" = ' || quote(old.")
+                    .append(quoteIdentifier(column)).append(')');
+        }
+        restore.append(" || ' WHERE rowid = ' || new.rowid");
+        db.execSQL("CREATE TEMP TRIGGER " + quoteIdentifier(TRIGGER_PREFIX + table + "_update") +
+                " AFTER UPDATE ON main." + target + when + " BEGIN " + logInsert + restore + "); END");
+
+        // DELETE отменяется вставкой строки с прежним rowid
+        StringBuilder reinsert = new StringBuilder("'INSERT INTO ' || " + quotedTarget + " || ' (rowid");
+        for (String column : columns) {
+            reinsert.append(", ").append(sqlLiteralBody(quoteIdentifier(column)));
+        }
+        reinsert.append(") VALUES (' || old.rowid");
+        for (String column : columns) {
+            reinsert.append(" || ', ' || quote(old.").append(quoteIdentifier(column)).append(')');
+        }
+        reinsert.append(" || ')'");
+        db.execSQL("CREATE TEMP TRIGGER " + quoteIdentifier(TRIGGER_PREFIX + table + "_delete") +
+                " AFTER DELETE ON main." + target + when + " BEGIN " + logInsert + reinsert + "); END");
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String sqlLiteral(String text) {
+        return "'" + sqlLiteralBody(text) + "'";
+    }
+
+    private static String sqlLiteralBody(String text) {
+        return text.replace("'", "''");
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.data.model.TaskModel;
+import com.example.sql_game.util.SqlExecutor.ExecutionResult;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Проверка ответа на случайных вариантах данных задания (см. DataVariants).
+ * Запрос может совпасть с эталоном на маленьких исходных данных случайно (например, WHERE Id IN (3, 5)
+ * вместо условия); на вариантах с перемешанными значениями такой ответ расходится с эталоном.
+ *
+ * Каждый вариант проверяется в своей песочнице SqlExecutor, песочницы работают параллельно на небольшом
+ * пуле потоков. Вся проверка укладывается в бюджет времени: варианты, не успевшие проверяться, прерываются
+ * и не учитываются (ответ не отклоняется из-за медленного устройства). Ответ отклоняется, если хотя бы
+ * на одном варианте результат расходится с эталоном; проверка останавливается на первом таком варианте.
+ * Если не проверен ни один вариант, итог не подтверждает ответ (Result.isInconclusive()): вердикт по исходным
+ * данным сохраняется, но отмечается в результате.
+ * Скрипты вариантов и шаблоны песочниц кэшируются, поэтому повторная проверка задания стоит
+ * восстановления данных из шаблона и выполнения двух запросов на вариант.
+ */
+public final class VariantGrader {
+
+    private static final Logger LOG = Logger.getLogger(VariantGrader.class.getName());
+
+    public static final int DEFAULT_VARIANT_COUNT = 3;
+    public static final long DEFAULT_BUDGET_MS = 1500;
+
+    // Сколько наборов вариантов (по установочным скриптам) хранится
+    private static final int MAX_CACHED_SCRIPTS = 8;
+
+    /**
+     * Итог проверки на вариантах.
+     */
+    public static final class Result {
+        public final int variantCount;
+        // Варианты, на которых запрос пользователя и эталон выполнены и сравнены
+        public final int checkedCount;
+        // Номер первого варианта (с 1), на котором результат расходится с эталоном, или -1
+        public final int failedVariant;
+        // Часть вариантов не уложилась в бюджет времени и не проверялась
+        public final boolean isTimedOut;
+
+        Result(int variantCount, int checkedCount, int failedVariant, boolean isTimedOut) {
+            this.variantCount = variantCount;
+            this.checkedCount = checkedCount;
+            this.failedVariant = failedVariant;
+            this.isTimedOut = isTimedOut;
+        }
+
+        /**
+         * Ни на одном варианте расхождения не найдено (в том числе если ни один вариант не проверен).
+         */
+        public boolean isPassed() {
+            return failedVariant < 0;
+        }
+
+        /**
+         * Ни один вариант не проверен (бюджет исчерпан раньше или варианты не построены):
+         * проверка ничего не подтверждает, остается вердикт по исходным данным.
+         */
+        public boolean isInconclusive() {
+            return checkedCount == 0 && variantCount > 0;
+        }
+
+        @Override
+        public String toString() {
+            if (!isPassed()) {
+                return "расхождение на варианте " + failedVariant;
+            }
+            return (isInconclusive() ? "не проверено ни одного варианта из " + variantCount
+                    : "проверено вариантов: " + checkedCount + " из " + variantCount)
+                    + (isTimedOut ? " (бюджет исчерпан)" : "");
+        }
+    }
+
+    private final SqlEngine.Factory engineFactory;
+    private final int variantCount;
+    private final long budgetMillis;
+    private final SqlExecutor[] sandboxes;
+    private final ExecutorService pool;
+    // Скрипты вариантов по хэшу установочного скрипта, в порядке обращения
+    private final LinkedHashMap<String, List<String>> variantScripts =
+            new LinkedHashMap<String, List<String>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+                    return size() > MAX_CACHED_SCRIPTS;
+                }
+            };
+
+    public VariantGrader(SqlEngine.Factory engineFactory) {
+        this(engineFactory, DEFAULT_VARIANT_COUNT, DEFAULT_BUDGET_MS);
+    }
+
+    /**
+     * @param variantCount Число вариантов данных (и песочниц).
+     * @param budgetMillis Время на всю проверку, включая построение вариантов при первой проверке задания.
+     */
+    public VariantGrader(SqlEngine.Factory engineFactory, int variantCount, long budgetMillis) {
+        this.engineFactory = engineFactory;
+        this.variantCount = variantCount;
+        this.budgetMillis = budgetMillis;
+        this.sandboxes = new SqlExecutor[variantCount];
+        for (int i = 0; i < variantCount; i++) {
+            sandboxes[i] = new SqlExecutor(engineFactory, SandboxMetrics.global());
+        }
+        // Один поток остается потоку песочницы пользователя и интерфейсу
+        int threadCount = Math.max(1, Math.min(variantCount, Runtime.getRuntime().availableProcessors() - 1));
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "SqlVariant-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Проверяет успешный на исходных данных запрос пользователя на вариантах данных задания.
+     * Блокирует вызывающий поток не дольше бюджета времени (плюс время на прерывание запросов).
+     * Результаты сравниваются стратегией задания (GradingStrategies.forTask()); в режиме STATE сравниваются
+     * данные после команды.
+     */
+    public Result check(TaskModel task, String userSql) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        List<String> scripts;
+        try {
+            scripts = scriptsFor(task.getDatabaseSetupSql());
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Could not build data variants for task " + task.getTaskId(), e);
+            return new Result(variantCount, 0, -1, false);
+        }
+
+        ExecutorCompletionService<Boolean> completion = new ExecutorCompletionService<>(pool);
+        List<Future<Boolean>> futures = new ArrayList<>(variantCount);
+        Map<Future<Boolean>, Integer> variants = new LinkedHashMap<>();
+        for (int i = 0; i < variantCount; i++) {
+            final SqlExecutor sandbox = sandboxes[i];
+            final String script = scripts.get(i);
+            Future<Boolean> future = completion.submit(() -> checkVariant(sandbox, script, task, userSql, deadline));
+            futures.add(future);
+            variants.put(future, i + 1);
+        }
+
+        int checkedCount = 0;
+        int failedVariant = -1;
+        boolean isTimedOut = false;
+        try {
+            for (int done = 0; done < variantCount && failedVariant < 0; done++) {
+                long remaining = deadline - System.nanoTime();
+                Future<Boolean> future = remaining > 0 ? completion.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if (future == null) {
+                    isTimedOut = true;
+                    break;
+                }
+                Boolean matched = resultOf(future);
+                if (matched == null) {
+                    continue;
+                }
+                checkedCount++;
+                if (!matched) {
+                    failedVariant = variants.get(future);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            isTimedOut = true;
+        } finally {
+            // Оставшиеся варианты больше не нужны: снимаем с очереди и прерываем выполняющиеся запросы
+            for (int i = 0; i < variantCount; i++) {
+                if (!futures.get(i).isDone()) {
+                    futures.get(i).cancel(false);
+                    sandboxes[i].cancelCurrentQuery();
+                }
+            }
+        }
+        Result result = new Result(variantCount, checkedCount, failedVariant, isTimedOut);
+        if (result.isInconclusive()) {
+            LOG.info("Variant check of task " + task.getTaskId() + " is inconclusive: " + result);
+        }
+        return result;
+    }
+
+    /**
+     * Останавливает пул: ожидающие проверки снимаются, выполняющиеся запросы прерываются.
+     * Базы песочниц закрываются в фоне, когда песочницы освободятся, поэтому вызов не блокируется.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+        for (SqlExecutor sandbox : sandboxes) {
+            sandbox.cancelCurrentQuery();
+        }
+        Thread closer = new Thread(() -> {
+            for (SqlExecutor sandbox : sandboxes) {
+                synchronized (sandbox) {
+                    sandbox.closeDatabase();
+                }
+            }
+        }, "SqlVariant-close");
+        closer.setDaemon(true);
+        closer.start();
+    }
+
+    private synchronized List<String> scriptsFor(String setupSql) {
+        String key = SetupTemplateCache.hashOf(setupSql);
+        List<String> scripts = variantScripts.get(key);
+        if (scripts == null) {
+            scripts = DataVariants.generate(engineFactory, setupSql, variantCount);
+            variantScripts.put(key, scripts);
+        }
+        return scripts;
+    }
+
+    /**
+     * @return true - результаты совпали, false - расходятся, null - вариант не проверен
+     *         (не хватило времени, эталон на варианте не выполнился).
+     */
+    private static Boolean checkVariant(SqlExecutor sandbox, String script, TaskModel task, String userSql,
+                                        long deadline) {
+        // Песочница принадлежит одной проверке: следующая ждет, пока прерванная предыдущая освободит ее
+        synchronized (sandbox) {
+            if (!sandbox.executeSetup(script).isSuccess) {
+                return null;
+            }
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                return null;
+            }
+            ExecutionResult user = sandbox.executeLimitedQuery(userSql, remainingMillis,
+                    SqlExecutor.DEFAULT_MAX_RESULT_ROWS);
+            if (user.isCancelled) {
+                return null;
+            }
+            // Ошибка запроса пользователя на варианте (на исходных данных он выполнился) - расхождение,
+            // если только эталон на этом варианте тоже не выполняется
+            if (task.getGradingMode() == TaskModel.GradingMode.STATE) {
+                StateComparison state = sandbox.compareState(task.getExpectedResult());
+                return state.isSuccess() ? user.isSuccess && state.isEqual() : null;
+            }
+            ExecutionResult expected = sandbox.executeExpectedQuery(task.getTaskId(), task.getExpectedResult());
+            if (!expected.isSuccess) {
+                return null;
+            }
+            return user.isSuccess
+                    && GradingStrategies.forTask(task).compare(user.resultTable, expected.resultTable).isEqual();
+        }
+    }
+
+    private static Boolean resultOf(Future<Boolean> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException | CancellationException e) {
+            LOG.log(Level.WARNING, "Variant check failed", e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
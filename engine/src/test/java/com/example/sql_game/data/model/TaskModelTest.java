@@ -0,0 +1,48 @@
+package com.example.sql_game.data.model;
+
+import com.example.sql_game.data.model.TaskModel.GradingMode;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TaskModelTest {
+
+    @Test
+    public void topLevelOrderByMeansOrdered() {
+        assertEquals(GradingMode.ORDERED, GradingMode.forExpectedQuery("SELECT * FROM t ORDER BY id"));
+        assertEquals(GradingMode.ORDERED, GradingMode.forExpectedQuery("select * from t order\n  by id desc"));
+        assertEquals(GradingMode.ORDERED, GradingMode.forExpectedQuery("SELECT * FROM t ORDER /* по id */ BY id"));
+    }
+
+    @Test
+    public void orderByInSubqueryOrWindowIsIgnored() {
+        assertEquals(GradingMode.UNORDERED,
+                GradingMode.forExpectedQuery("SELECT * FROM (SELECT * FROM t ORDER BY id LIMIT 3)"));
+        assertEquals(GradingMode.UNORDERED,
+                GradingMode.forExpectedQuery("SELECT id, ROW_NUMBER() OVER (ORDER BY id) FROM t"));
+    }
+
+    @Test
+    public void orderByInLiteralsAndCommentsIsIgnored() {
+        assertEquals(GradingMode.UNORDERED, GradingMode.forExpectedQuery("SELECT 'ORDER BY' FROM t"));
+        assertEquals(GradingMode.UNORDERED, GradingMode.forExpectedQuery("SELECT * FROM t -- ORDER BY id"));
+        assertEquals(GradingMode.UNORDERED, GradingMode.forExpectedQuery("SELECT * FROM t /* ORDER BY id */"));
+        assertEquals(GradingMode.UNORDERED,
+                GradingMode.forExpectedQuery("SELECT * FROM t /* ( */ WHERE id > 1 /* ) */"));
+    }
+
+    @Test
+    public void orderByInQuotedIdentifiersIsIgnored() {
+        assertEquals(GradingMode.UNORDERED, GradingMode.forExpectedQuery("SELECT [order by] FROM t"));
+        assertEquals(GradingMode.UNORDERED, GradingMode.forExpectedQuery("SELECT `order by` FROM t"));
+        assertEquals(GradingMode.UNORDERED, GradingMode.forExpectedQuery("SELECT \"order by\" FROM t"));
+        assertEquals(GradingMode.ORDERED, GradingMode.forExpectedQuery("SELECT [(] FROM t ORDER BY 1"));
+    }
+
+    @Test
+    public void dataChangesAreGradedByState() {
+        assertEquals(GradingMode.STATE, GradingMode.forExpectedQuery("DELETE FROM t WHERE id = 1"));
+        assertEquals(GradingMode.STATE, GradingMode.forExpectedQuery("update t set v = 1"));
+    }
+}
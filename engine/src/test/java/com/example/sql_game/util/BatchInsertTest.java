@@ -0,0 +1,54 @@
+package com.example.sql_game.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchInsertTest {
+
+    @Test
+    public void literalsBecomeParameters() {
+        BatchInsert insert = BatchInsert.parse(
+                "INSERT INTO t (a, b, c, d) VALUES (1, -2.5, 'it''s; ok', NULL), (+3, 1e3, X'0aFF', 'x')");
+
+        assertEquals("INSERT INTO t (a, b, c, d) VALUES (?, ?, ?, ?)", insert.compiledSql);
+        assertEquals(2, insert.rows.size());
+        assertArrayEquals(new Object[]{1L, -2.5, "it's; ok", null}, insert.rows.get(0));
+        assertEquals(3L, insert.rows.get(1)[0]);
+        assertEquals(1000.0, insert.rows.get(1)[1]);
+        assertArrayEquals(new byte[]{0x0a, (byte) 0xff}, (byte[]) insert.rows.get(1)[2]);
+    }
+
+    @Test
+    public void expressionsAreExecutedAsIs() {
+        assertNull(BatchInsert.parse("INSERT INTO t VALUES (abs(-1))"));
+        assertNull(BatchInsert.parse("INSERT INTO t SELECT * FROM u"));
+        assertNull(BatchInsert.parse("INSERT INTO t VALUES (1, 2), (3)"));
+        assertNull(BatchInsert.parse("UPDATE t SET a = 1"));
+    }
+
+    @Test
+    public void setupScriptInsertsSameRowsAsSqlite() {
+        SqlExecutor executor = new SqlExecutor(JdbcSqlEngine.FACTORY);
+        try {
+            assertTrue(executor.executeSetup("CREATE TABLE t (a, b);"
+                    + " INSERT INTO t VALUES (1, 'x;y'), (9223372036854775807, -0.5), (NULL, X'00');"
+                    + " INSERT INTO t VALUES (2, 'z');").isSuccess);
+
+            ResultTable rows = executor.executeQuery(
+                    "SELECT typeof(a), a, typeof(b), quote(b) FROM t ORDER BY rowid").resultTable;
+            assertEquals(4, rows.getRowCount());
+            assertEquals("x;y", executor.executeQuery("SELECT b FROM t WHERE a = 1").resultTable.getString(0, 0));
+            assertEquals(9223372036854775807L, rows.getLong(1, 1));
+            assertEquals("real", rows.getString(1, 2));
+            assertEquals("null", rows.getString(2, 0));
+            assertEquals("X'00'", rows.getString(2, 3));
+            assertEquals(2L, rows.getLong(3, 1));
+        } finally {
+            executor.closeDatabase();
+        }
+    }
+}
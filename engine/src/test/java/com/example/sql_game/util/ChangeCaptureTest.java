@@ -0,0 +1,98 @@
+package com.example.sql_game.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Изменения строк, прочитанные из журнала ChangeCapture: DmlDelta команды и TableChanges для обновления таблиц.
+ */
+public class ChangeCaptureTest {
+
+    private SqlExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new SqlExecutor(JdbcSqlEngine.FACTORY);
+        assertTrue(executor.executeSetup("CREATE TABLE t (id INTEGER PRIMARY KEY, v TEXT, n INTEGER);"
+                + " CREATE TABLE log (msg TEXT);"
+                + " CREATE TRIGGER t_update AFTER UPDATE ON t BEGIN INSERT INTO log VALUES (old.v); END;"
+                + " INSERT INTO t VALUES (1, 'a', 10), (2, 'b', 20), (3, 'c', 30);").isSuccess);
+    }
+
+    @After
+    public void tearDown() {
+        executor.closeDatabase();
+    }
+
+    @Test
+    public void deltaListsChangedRowsAndColumns() {
+        DmlDelta delta = executor.executeQuery("UPDATE t SET n = n + 1 WHERE id >= 2").dmlDelta;
+
+        DmlDelta.TableDelta table = delta.tables.get(0);
+        assertEquals(2, table.updatedCount);
+        assertEquals(0, table.insertedCount);
+        assertEquals("t", table.tableName);
+        assertEquals(2, table.changedCellCount);
+        assertEquals(20L, table.oldRows.getLong(0, 2));
+        assertEquals(21L, table.newRows.getLong(0, 2));
+        assertArrayEquals(new int[]{2}, table.changedColumns[0]);
+        assertFalse(table.isTruncated());
+    }
+
+    @Test
+    public void deltaIncludesTriggerChanges() {
+        DmlDelta delta = executor.executeQuery("UPDATE t SET v = 'x' WHERE id = 1").dmlDelta;
+
+        assertEquals(2, delta.tables.size());
+        assertEquals("log", delta.tables.get(1).tableName);
+        assertEquals(1, delta.tables.get(1).insertedCount);
+        assertEquals("a", delta.tables.get(1).insertedRows.getString(0, 0));
+    }
+
+    @Test
+    public void insertAndDeleteAreCounted() {
+        DmlDelta inserted = executor.executeQuery("INSERT INTO t (v, n) VALUES ('d', 40), ('e', 50)").dmlDelta;
+        DmlDelta deleted = executor.executeQuery("DELETE FROM t WHERE n < 25").dmlDelta;
+
+        assertEquals(2, inserted.getInsertedCount());
+        assertEquals(2, deleted.getDeletedCount());
+        assertEquals("a", deleted.tables.get(0).deletedRows.getString(0, 1));
+    }
+
+    @Test
+    public void tableChangesSincePosition() {
+        long position = executor.getChangePosition();
+        executor.executeQuery("DELETE FROM t WHERE id = 1");
+        executor.executeQuery("UPDATE t SET n = 0 WHERE id = 3");
+
+        TableChanges changes = executor.readTableChanges("t", position, 100);
+
+        assertTrue(changes.isComplete);
+        assertEquals(2, changes.rowCount);
+        assertArrayEquals(new long[]{1, 3}, changes.rowids);
+        assertArrayEquals(new int[]{TableChanges.ROW_DELETED, TableChanges.ROW_UPDATED}, changes.kinds);
+    }
+
+    @Test
+    public void positionsCountCurrentRowsBeforeEachChange() {
+        long position = executor.getChangePosition();
+        executor.executeQuery("INSERT INTO t VALUES (0, 'z', 0), (10, 'k', 100)");
+        executor.executeQuery("DELETE FROM t WHERE id = 2");
+        executor.executeQuery("UPDATE t SET n = 0 WHERE id = 3");
+
+        TableChanges changes = executor.readTableChanges("t", position, 100);
+
+        assertEquals(4, changes.rowCount);
+        assertArrayEquals(new long[]{0, 2, 3, 10}, changes.rowids);
+        assertArrayEquals(new int[]{0, 2, 2, 3}, changes.positions);
+        assertArrayEquals(new int[]{TableChanges.ROW_INSERTED, TableChanges.ROW_DELETED, TableChanges.ROW_UPDATED,
+                TableChanges.ROW_INSERTED}, changes.kinds);
+        assertEquals("k", changes.getRow(3).getString(1));
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.util.SqlExecutor.ExecutionResult;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExpectedResultMemoTest {
+
+    @Test
+    public void memoIsKeyedByTaskSetupVersionAndSql() {
+        ExpectedResultMemo memo = new ExpectedResultMemo();
+        ExecutionResult result = tableResult();
+        memo.put(7, "setup", 0, "SELECT 1", result);
+
+        assertSame(result, memo.get(7, "setup", 0, "SELECT 1"));
+        assertNull(memo.get(7, "setup", 1, "SELECT 1"));
+        assertNull(memo.get(7, "other", 0, "SELECT 1"));
+        assertNull(memo.get(8, "setup", 0, "SELECT 1"));
+        // Совпавший ID другого задания с другим эталоном
+        assertNull(memo.get(7, "setup", 0, "SELECT 2"));
+    }
+
+    @Test
+    public void failedCommandKeepsSandboxVersion() {
+        String setup = "CREATE TABLE t (a INTEGER PRIMARY KEY); INSERT INTO t VALUES (1), (2);";
+        SqlExecutor executor = new SqlExecutor(JdbcSqlEngine.FACTORY);
+        try {
+            assertTrue(executor.executeSetup(setup).isSuccess);
+            ExecutionResult expected = executor.executeExpectedQuery(1, "SELECT count(*) FROM t");
+
+            assertFalse(executor.executeQuery("INSERT INTO t VALUES (1)").isSuccess);
+            assertFalse(executor.executeQuery("DROP TABLE missing").isSuccess);
+
+            assertSame(expected, executor.executeExpectedQuery(1, "SELECT count(*) FROM t"));
+            assertTrue(executor.isPristineFor(setup));
+        } finally {
+            executor.closeDatabase();
+        }
+    }
+
+    private static ExecutionResult tableResult() {
+        ColumnarResultTable.Builder builder =
+                new ColumnarResultTable.Builder(Collections.singletonList("a"), 1);
+        builder.appendLong(0, 1);
+        builder.endRow();
+        return new ExecutionResult(builder.build());
+    }
+}
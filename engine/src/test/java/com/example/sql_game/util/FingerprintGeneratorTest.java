@@ -0,0 +1,28 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.data.repository.LessonRepository;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+
+public class FingerprintGeneratorTest {
+
+    // Путь относительно каталога модуля engine (рабочий каталог тестов Gradle)
+    private static final String CHECKED_IN_SOURCE =
+            "src/main/java/com/example/sql_game/data/repository/LessonFingerprints.java";
+
+    @Test
+    public void checkedInFingerprintsMatchLessons() throws IOException {
+        String checkedIn = new String(Files.readAllBytes(Paths.get(CHECKED_IN_SOURCE)), StandardCharsets.UTF_8);
+
+        assertEquals("LessonFingerprints.java is stale, run ./gradlew :engine:generateLessonFingerprints",
+                checkedIn, FingerprintGenerator.generateSource(
+                        LessonRepository.getInstance().getAllLessons(), JdbcSqlEngine.FACTORY));
+    }
+}
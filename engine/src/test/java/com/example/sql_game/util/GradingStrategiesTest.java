@@ -0,0 +1,81 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.data.model.TaskModel;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GradingStrategiesTest {
+
+    @Test
+    public void forTaskReusesSharedStrategies() {
+        TaskModel task = task(TaskModel.ComparisonStrategy.FINGERPRINT, TaskModel.GradingMode.UNORDERED);
+
+        assertSame(GradingStrategies.forTask(task), GradingStrategies.forTask(task));
+        assertSame(GradingStrategies.FINGERPRINT_UNORDERED, GradingStrategies.forTask(task));
+        assertSame(GradingStrategies.EXACT_ORDERED,
+                GradingStrategies.forTask(task(TaskModel.ComparisonStrategy.EXACT, TaskModel.GradingMode.ORDERED)));
+    }
+
+    @Test
+    public void fingerprintStrategyComparesRepeatedExpectedTable() {
+        GradingStrategy strategy = GradingStrategies.fingerprint(false);
+        ResultTable expected = table(new long[]{1, 2, 3}, new double[]{1.5, 2.5, 3.5});
+
+        assertTrue(strategy.compare(table(new long[]{3, 1, 2}, new double[]{3.5, 1.5, 2.5}), expected).isEqual());
+        assertFalse(strategy.compare(table(new long[]{3, 1, 2}, new double[]{3.5, 1.5, 9}), expected).isEqual());
+        // Другой объект эталона с другим содержимым не берет запомненный отпечаток
+        ResultTable otherExpected = table(new long[]{3, 1, 2}, new double[]{3.5, 1.5, 9});
+        assertTrue(strategy.compare(table(new long[]{3, 1, 2}, new double[]{3.5, 1.5, 9}), otherExpected).isEqual());
+    }
+
+    @Test
+    public void orderedFingerprintRejectsOtherOrder() {
+        ResultTable expected = table(new long[]{1, 2}, new double[]{1, 2});
+
+        assertFalse(GradingStrategies.fingerprint(true).compare(table(new long[]{2, 1}, new double[]{2, 1}), expected)
+                .isEqual());
+        assertTrue(GradingStrategies.fingerprint(false).compare(table(new long[]{2, 1}, new double[]{2, 1}), expected)
+                .isEqual());
+    }
+
+    @Test
+    public void numericTolerantAcceptsRoundingErrors() {
+        TaskModel task = task(TaskModel.ComparisonStrategy.NUMERIC_TOLERANT, TaskModel.GradingMode.UNORDERED);
+        GradingStrategy strategy = GradingStrategies.forTask(task);
+        ResultTable expected = table(new long[]{1, 2}, new double[]{0.3, 0.7});
+
+        assertFalse(strategy.allowsFingerprintRejection());
+        assertTrue(strategy.compare(table(new long[]{2, 1}, new double[]{0.7, 0.1 + 0.2}), expected).isEqual());
+        assertFalse(strategy.compare(table(new long[]{2, 1}, new double[]{0.7, 0.31}), expected).isEqual());
+        assertFalse(GradingStrategies.exact(false)
+                .compare(table(new long[]{2, 1}, new double[]{0.7, 0.1 + 0.2}), expected).isEqual());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeToleranceIsRejected() {
+        GradingStrategies.numericTolerant(true, -1);
+    }
+
+    private static TaskModel task(TaskModel.ComparisonStrategy strategy, TaskModel.GradingMode mode) {
+        TaskModel task = new TaskModel();
+        task.setComparisonStrategy(strategy);
+        task.setGradingMode(mode);
+        return task;
+    }
+
+    private static ResultTable table(long[] ids, double[] values) {
+        ColumnarResultTable.Builder builder = new ColumnarResultTable.Builder(Arrays.asList("id", "value"), ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            builder.appendLong(0, ids[i]);
+            builder.appendDouble(1, values[i]);
+            builder.endRow();
+        }
+        return builder.build();
+    }
+}
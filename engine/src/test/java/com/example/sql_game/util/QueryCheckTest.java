@@ -0,0 +1,62 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.data.model.TaskModel;
+import com.example.sql_game.util.SqlExecutor.ExecutionResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QueryCheckTest {
+
+    private static final String SETUP_SQL = "CREATE TABLE t (n INTEGER); INSERT INTO t VALUES (1), (2);";
+
+    private SqlExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new SqlExecutor(JdbcSqlEngine.FACTORY);
+        assertTrue(executor.executeSetup(SETUP_SQL).isSuccess);
+    }
+
+    @After
+    public void tearDown() {
+        executor.closeDatabase();
+    }
+
+    @Test
+    public void resultTaskGradesQueriesThatReturnRows() {
+        TaskModel task = task("SELECT n FROM t ORDER BY n");
+
+        ExecutionResult select = executor.executeLimitedQuery("select n from t order by n");
+        assertTrue(QueryCheck.shouldGrade(task, select));
+        assertTrue(QueryCheck.grade(executor, task, select, false).isCorrect);
+
+        ExecutionResult delete = executor.executeLimitedQuery("DELETE FROM t");
+        assertFalse(QueryCheck.shouldGrade(task, delete));
+        assertFalse(QueryCheck.grade(executor, task, delete, true).isChecked);
+    }
+
+    @Test
+    public void stateTaskGradesOnlyDataChanges() {
+        TaskModel task = task("DELETE FROM t WHERE n = 1");
+
+        ExecutionResult select = executor.executeLimitedQuery("SELECT n FROM t");
+        assertFalse(QueryCheck.shouldGrade(task, select));
+        assertFalse(QueryCheck.grade(executor, task, select, true).isChecked);
+
+        assertFalse(QueryCheck.shouldGrade(task, executor.executeLimitedQuery("DELETE FROM missing")));
+
+        ExecutionResult delete = executor.executeLimitedQuery("DELETE FROM t WHERE n < 2");
+        assertTrue(QueryCheck.shouldGrade(task, delete));
+        assertTrue(QueryCheck.grade(executor, task, delete, true).isCorrect);
+    }
+
+    private static TaskModel task(String expectedSql) {
+        return new TaskModel(1, TaskModel.TaskType.PRACTICE, "", null, null, expectedSql, SETUP_SQL, "t", null, 0,
+                null);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.util.SqlExecutor.ExecutionResult;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Ключи кэша результатов и условия, при которых сохраненные результаты перестают использоваться.
+ */
+public class QueryResultCacheTest {
+
+    @Test
+    public void resultKeyIgnoresFormattingButNotLiterals() {
+        assertEquals(QueryResultCache.keyOf("select  *\nfrom t -- все строки\n;"),
+                QueryResultCache.keyOf("SELECT * /* x */ FROM T"));
+        assertNotEquals(QueryResultCache.keyOf("SELECT * FROM t WHERE v = 'a'"),
+                QueryResultCache.keyOf("SELECT * FROM t WHERE v = 'A'"));
+        assertNotEquals(QueryResultCache.keyOf("SELECT \"v\" FROM t"), QueryResultCache.keyOf("SELECT \"V\" FROM t"));
+        assertNotEquals(QueryResultCache.keyOf("SELECT [v] FROM t"), QueryResultCache.keyOf("SELECT [V] FROM t"));
+    }
+
+    @Test
+    public void volatileQueriesAreNotCached() {
+        assertNull(QueryResultCache.keyOf("SELECT random()"));
+        assertNull(QueryResultCache.keyOf("SELECT * FROM t WHERE d < date('now')"));
+        assertNull(QueryResultCache.keyOf("SELECT CURRENT_TIMESTAMP"));
+    }
+
+    @Test
+    public void resultCacheIsClearedWhenSandboxChanges() {
+        QueryResultCache cache = new QueryResultCache();
+        cache.validate(5, 1);
+        cache.put("K", "k", tableResult());
+
+        cache.validate(5, 1);
+        assertNotNull(cache.get("K"));
+        cache.validate(6, 1);
+        assertNull(cache.get("K"));
+
+        cache.put("K", "k", tableResult());
+        cache.validate(6, 2);
+        assertNull(cache.get("K"));
+        assertNull(cache.get("missing"));
+    }
+
+    @Test
+    public void sandboxDoesNotServeStaleResults() {
+        SandboxMetrics metrics = new SandboxMetrics();
+        SqlExecutor executor = new SqlExecutor(JdbcSqlEngine.FACTORY, metrics);
+        try {
+            assertTrue(executor.executeSetup("CREATE TABLE t (a); INSERT INTO t VALUES (1), (2);").isSuccess);
+            // Кэш результатов используется для запросов пользователя (executeLimitedQuery())
+            assertEquals(2, executor.executeLimitedQuery("SELECT * FROM t").resultTable.getRowCount());
+            assertEquals(2, executor.executeLimitedQuery("select *  from t").resultTable.getRowCount());
+            assertEquals(1, metrics.snapshot().get(SandboxMetrics.Counter.RESULT_HIT));
+
+            executor.executeLimitedQuery("DELETE FROM t WHERE a = 1");
+            assertEquals(1, executor.executeLimitedQuery("SELECT * FROM t").resultTable.getRowCount());
+            assertEquals(1, metrics.snapshot().get(SandboxMetrics.Counter.RESULT_HIT));
+
+            ExecutionResult expectedBefore = executor.executeExpectedQuery(1, "SELECT count(*) FROM t");
+            assertSame(expectedBefore, executor.executeExpectedQuery(1, "SELECT count(*) FROM t"));
+            executor.executeQuery("INSERT INTO t VALUES (3)");
+            assertEquals(2, executor.executeExpectedQuery(1, "SELECT count(*) FROM t").resultTable.getLong(0, 0));
+
+            executor.executeLimitedQuery("ALTER TABLE t ADD COLUMN b");
+            assertEquals(2, executor.executeLimitedQuery("SELECT * FROM t").resultTable.getColumnCount());
+        } finally {
+            executor.closeDatabase();
+        }
+    }
+
+    private static ExecutionResult tableResult() {
+        ColumnarResultTable.Builder builder =
+                new ColumnarResultTable.Builder(Collections.singletonList("a"), 1);
+        builder.appendLong(0, 1);
+        builder.endRow();
+        return new ExecutionResult(builder.build());
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.sql_game.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResultComparatorTest {
+
+    @Test
+    public void orderedComparisonReportsFirstDifference() {
+        ResultTable expected = table(new Object[][]{{1L, "a"}, {2L, "b"}, {3L, "c"}});
+
+        assertTrue(ResultComparator.compare(table(new Object[][]{{1L, "a"}, {2L, "b"}, {3L, "c"}}), expected, true)
+                .isEqual());
+        ResultComparator.Comparison comparison =
+                ResultComparator.compare(table(new Object[][]{{1L, "a"}, {2L, "x"}, {3L, "c"}}), expected, true);
+        assertEquals(ResultComparator.MismatchKind.ROW_VALUES, comparison.kind);
+        assertEquals(1, comparison.rowIndex);
+        assertEquals(1, comparison.columnIndex);
+    }
+
+    @Test
+    public void unorderedComparisonIsMultisetEquality() {
+        ResultTable expected = table(new Object[][]{{1L, "a"}, {1L, "a"}, {2L, "b"}});
+
+        assertTrue(ResultComparator.compare(table(new Object[][]{{2L, "b"}, {1L, "a"}, {1L, "a"}}), expected, false)
+                .isEqual());
+        assertFalse(ResultComparator.compare(table(new Object[][]{{2L, "b"}, {1L, "a"}, {2L, "b"}}), expected, false)
+                .isEqual());
+        assertFalse(ResultComparator.compare(table(new Object[][]{{2L, "b"}, {1L, "a"}, {1L, "a"}}), expected, true)
+                .isEqual());
+    }
+
+    @Test
+    public void numbersCompareByValueButNotWithStrings() {
+        ResultTable expected = table(new Object[][]{{5L, null}});
+
+        assertTrue(ResultComparator.compare(table(new Object[][]{{5.0, null}}), expected, true).isEqual());
+        assertFalse(ResultComparator.compare(table(new Object[][]{{"5", null}}), expected, true).isEqual());
+        assertFalse(ResultComparator.compare(table(new Object[][]{{5L, "null"}}), expected, true).isEqual());
+    }
+
+    @Test
+    public void rowCountAndColumnsAreChecked() {
+        ResultTable expected = table(new Object[][]{{1L, "a"}, {2L, "b"}});
+
+        assertEquals(ResultComparator.MismatchKind.ROW_COUNT,
+                ResultComparator.compare(table(new Object[][]{{1L, "a"}}), expected, true).kind);
+        ColumnarResultTable.Builder renamed = new ColumnarResultTable.Builder(Arrays.asList("id", "other"), 2);
+        assertEquals(ResultComparator.MismatchKind.COLUMNS,
+                ResultComparator.compare(renamed.build(), expected, false).kind);
+    }
+
+    @Test
+    public void diffFindsExtraMissingAndChangedRows() {
+        ResultTable expected = table(new Object[][]{{1L, "a"}, {2L, "b"}, {3L, "c"}});
+        ResultTable user = table(new Object[][]{{3L, "c"}, {2L, "x"}, {4L, "d"}});
+
+        ResultDiff diff = ResultDiff.compute(user, expected, false);
+
+        assertFalse(diff.isEmpty());
+        assertTrue(diff.isExtraRow(2));
+        assertEquals(1, diff.missingRows.length);
+        assertEquals(0, diff.missingRows[0]);
+        assertEquals(1, diff.changedRows.size());
+        assertTrue(diff.isChangedCell(1, 1));
+        assertFalse(diff.isChangedCell(1, 0));
+        assertEquals(-1, diff.firstMisplacedRow);
+    }
+
+    @Test
+    public void diffReportsMisplacedRowOnlyWhenOrdered() {
+        ResultTable expected = table(new Object[][]{{1L, "a"}, {2L, "b"}});
+        ResultTable user = table(new Object[][]{{2L, "b"}, {1L, "a"}});
+
+        assertTrue(ResultDiff.compute(user, expected, false).isEmpty());
+        ResultDiff ordered = ResultDiff.compute(user, expected, true);
+        assertFalse(ordered.isEmpty());
+        assertEquals(0, ordered.firstMisplacedRow);
+    }
+
+    // Таблица (id, name) из строк; значения - Long, Double, String или null
+    private static ResultTable table(Object[][] rows) {
+        ColumnarResultTable.Builder builder = new ColumnarResultTable.Builder(Arrays.asList("id", "name"), rows.length);
+        for (Object[] row : rows) {
+            for (int column = 0; column < row.length; column++) {
+                Object value = row[column];
+                if (value == null) {
+                    builder.appendNull(column);
+                } else if (value instanceof Long) {
+                    builder.appendLong(column, (Long) value);
+                } else if (value instanceof Double) {
+                    builder.appendDouble(column, (Double) value);
+                } else {
+                    builder.appendString(column, (String) value);
+                }
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.sql_game.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Равные по SqlValues.cellEquals() результаты должны иметь равные отпечатки.
+ */
+public class ResultFingerprintTest {
+
+    private SqlExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new SqlExecutor(JdbcSqlEngine.FACTORY);
+        assertTrue(executor.executeSetup("CREATE TABLE t (x);").isSuccess);
+    }
+
+    @After
+    public void tearDown() {
+        executor.closeDatabase();
+    }
+
+    @Test
+    public void integerEqualsRealWithSameValue() {
+        assertEqualWithEqualFingerprints("SELECT 5", "SELECT 5.0");
+        assertEqualWithEqualFingerprints("SELECT 0", "SELECT -0.0");
+    }
+
+    @Test
+    public void largeIntegerEqualsRoundedReal() {
+        // 2^53 + 1 как double округляется до 2^53
+        assertEqualWithEqualFingerprints("SELECT 9007199254740993", "SELECT 9007199254740992.0");
+        assertEqualWithEqualFingerprints("SELECT -9007199254740993", "SELECT -9007199254740992.0");
+        assertEqualWithEqualFingerprints("SELECT 9223372036854775807", "SELECT 9.223372036854775807e18");
+        assertEqualWithEqualFingerprints("SELECT -9223372036854775808", "SELECT -9.223372036854775808e18");
+    }
+
+    @Test
+    public void numberDiffersFromString() {
+        ResultTable number = query("SELECT 1");
+        ResultTable string = query("SELECT '1'");
+
+        assertFalse(SqlValues.cellEquals(number, 0, 0, string, 0, 0));
+        assertFalse(ResultFingerprint.of(number).matches(ResultFingerprint.of(string), true));
+    }
+
+    @Test
+    public void unorderedFingerprintIgnoresRowOrder() {
+        ResultFingerprint ascending = ResultFingerprint.of(query("SELECT 1 AS n UNION ALL SELECT 2"));
+        ResultFingerprint descending = ResultFingerprint.of(query("SELECT 2 AS n UNION ALL SELECT 1"));
+
+        assertTrue(ascending.matches(descending, false));
+        assertFalse(ascending.matches(descending, true));
+    }
+
+    @Test
+    public void encodeDecodeRoundTrip() {
+        ResultFingerprint fingerprint = ResultFingerprint.of(query("SELECT 1 AS a, 'x' AS b, NULL AS c"));
+        ResultFingerprint decoded = ResultFingerprint.decode(fingerprint.encode());
+
+        assertTrue(fingerprint.matches(decoded, true));
+        assertEquals(fingerprint.getColumnNames(), decoded.getColumnNames());
+    }
+
+    private void assertEqualWithEqualFingerprints(String sqlA, String sqlB) {
+        ResultTable a = query(sqlA + " AS v");
+        ResultTable b = query(sqlB + " AS v");
+
+        assertTrue(sqlA + " = " + sqlB, SqlValues.cellEquals(a, 0, 0, b, 0, 0));
+        assertTrue(sqlA + " ~ " + sqlB, ResultFingerprint.of(a).matches(ResultFingerprint.of(b), true));
+        assertTrue(sqlA + " ~ " + sqlB, ResultComparator.compare(a, b, false).isEqual());
+    }
+
+    private ResultTable query(String sql) {
+        SqlExecutor.ExecutionResult result = executor.executeQuery(sql);
+        assertTrue(result.errorMessage, result.isSuccess);
+        return result.resultTable;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.sql_game.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Шаблоны установочного скрипта (SetupTemplateCache) не должны быть видны запросам пользователя:
+ * после DROP TABLE запрос не может прочитать или изменить таблицу шаблона.
+ */
+public class SqlExecutorTemplateTest {
+
+    private static final String SETUP =
+            "CREATE TABLE t (id INTEGER PRIMARY KEY, v TEXT); INSERT INTO t VALUES (1, 'a'), (2, 'b');";
+
+    private SqlExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new SqlExecutor(JdbcSqlEngine.FACTORY);
+        assertTrue(executor.executeSetup(SETUP).isSuccess);
+    }
+
+    @After
+    public void tearDown() {
+        executor.closeDatabase();
+    }
+
+    @Test
+    public void droppedTableDoesNotResolveToTemplate() {
+        assertTrue(executor.executeQuery("DROP TABLE t").isSuccess);
+
+        assertFalse(executor.executeQuery("SELECT * FROM t").isSuccess);
+        assertFalse(executor.executeQuery("DELETE FROM t").isSuccess);
+        // Подключены только main и temp
+        assertEquals(2, executor.executeQuery("SELECT name FROM pragma_database_list").resultTable.getRowCount());
+    }
+
+    @Test
+    public void resetAfterDropAndDmlRestoresSetupData() {
+        executor.executeQuery("DROP TABLE t");
+        executor.executeQuery("DELETE FROM t");
+
+        assertTrue(executor.resetSandbox().isSuccess);
+        assertEquals(2, executor.executeQuery("SELECT * FROM t").resultTable.getRowCount());
+    }
+
+    @Test
+    public void setupAfterDropAndDmlRestoresSetupData() {
+        executor.executeQuery("DROP TABLE t");
+        executor.executeQuery("DELETE FROM t");
+
+        assertTrue(executor.executeSetup(SETUP).isSuccess);
+        assertEquals(2, executor.executeQuery("SELECT * FROM t").resultTable.getRowCount());
+    }
+
+    @Test
+    public void templateSurvivesChangesOfOtherTask() {
+        executor.executeQuery("DELETE FROM t");
+        assertTrue(executor.executeSetup("CREATE TABLE u (x INTEGER);").isSuccess);
+        executor.executeQuery("CREATE TABLE t (id INTEGER)");
+
+        assertTrue(executor.executeSetup(SETUP).isSuccess);
+        assertEquals(2, executor.executeQuery("SELECT * FROM t").resultTable.getRowCount());
+        assertFalse(executor.executeQuery("SELECT * FROM u").isSuccess);
+    }
+
+    @Test
+    public void templateKeyDependsOnScriptText() {
+        assertEquals(SetupTemplateCache.hashOf("CREATE TABLE t (a);"), SetupTemplateCache.hashOf("CREATE TABLE t (a);"));
+        assertNotEquals(SetupTemplateCache.hashOf("CREATE TABLE t (a);"), SetupTemplateCache.hashOf("CREATE TABLE t (b);"));
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.sql_game.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class SqlScriptTokenizerTest {
+
+    @Test
+    public void splitsOnSemicolons() {
+        assertEquals(Arrays.asList("CREATE TABLE t (a)", "INSERT INTO t VALUES (1)"),
+                SqlScriptTokenizer.split("  CREATE TABLE t (a);\n\nINSERT INTO t VALUES (1);;  "));
+    }
+
+    @Test
+    public void semicolonInStringLiteralIsNotSeparator() {
+        assertEquals(Arrays.asList("INSERT INTO t VALUES ('a;b', 'it''s; fine')", "SELECT 1"),
+                SqlScriptTokenizer.split("INSERT INTO t VALUES ('a;b', 'it''s; fine'); SELECT 1"));
+    }
+
+    @Test
+    public void semicolonInQuotedIdentifiersIsNotSeparator() {
+        assertEquals(Collections.singletonList("SELECT \"a;b\", `c;d`, [e;f] FROM t"),
+                SqlScriptTokenizer.split("SELECT \"a;b\", `c;d`, [e;f] FROM t;"));
+    }
+
+    @Test
+    public void commentsAreSkipped() {
+        assertEquals(Arrays.asList("SELECT 1", "SELECT 2"),
+                SqlScriptTokenizer.split("-- первая; строка\nSELECT 1; /* ; */ SELECT 2; -- конец;"));
+    }
+
+    @Test
+    public void triggerBodyIsOneStatement() {
+        String trigger = "CREATE TRIGGER log_insert AFTER INSERT ON t BEGIN"
+                + " INSERT INTO log VALUES (CASE WHEN new.a > 0 THEN 'plus' ELSE 'minus' END);"
+                + " UPDATE t SET a = a; END";
+
+        assertEquals(Arrays.asList(trigger, "SELECT 1"), SqlScriptTokenizer.split(trigger + "; SELECT 1"));
+    }
+
+    @Test
+    public void topLevelWordsSkipParenthesesLiteralsAndComments() {
+        assertEquals(Arrays.asList("SELECT", "A", "FROM", "T", "ORDER", "BY", "B"),
+                SqlScriptTokenizer.topLevelWords(
+                        "select a /* (x */, 'from (' from t -- )\n order by b, (select max(c) from u)"));
+    }
+
+    @Test
+    public void identifiersIncludeQuotedNamesButNotLiterals() {
+        assertEquals(Arrays.asList("DELETE", "FROM", "temp", "a\"b", "WHERE", "x", "in", "SELECT", "c", "FROM", "d", "AND"),
+                SqlScriptTokenizer.identifiers(
+                        "DELETE FROM temp.\"a\"\"b\" WHERE x in (SELECT [c] FROM `d`) -- e\n AND 'f' /* g */"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.sql_game.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Проверка изменяющих команд по состоянию таблиц (SqlExecutor.compareState(), StateHashes).
+ */
+public class StateHashesTest {
+
+    private static final String SETUP = "CREATE TABLE t (id INTEGER PRIMARY KEY, v TEXT, n INTEGER);"
+            + " CREATE TABLE u (x INTEGER);"
+            + " INSERT INTO t VALUES (1, 'a', 10), (2, 'b', 20), (3, 'c', 30); INSERT INTO u VALUES (1);";
+    private static final String EXPECTED = "UPDATE t SET n = n * 2 WHERE n > 15";
+
+    private SqlExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new SqlExecutor(JdbcSqlEngine.FACTORY);
+        assertTrue(executor.executeSetup(SETUP).isSuccess);
+    }
+
+    @After
+    public void tearDown() {
+        executor.closeDatabase();
+    }
+
+    @Test
+    public void differentCommandWithSameEffectIsEqual() {
+        executor.executeQuery("UPDATE t SET n = 40 WHERE id = 2");
+        executor.executeQuery("UPDATE t SET n = 60 WHERE id = 3");
+
+        StateComparison state = executor.compareState(EXPECTED);
+
+        assertTrue(state.isEqual());
+        assertTrue(state.isByHashes);
+    }
+
+    @Test
+    public void mismatchedTablesAreReported() {
+        executor.executeQuery("UPDATE t SET n = n * 2");
+        executor.executeQuery("DELETE FROM u");
+
+        StateComparison state = executor.compareState(EXPECTED);
+
+        assertTrue(state.isSuccess());
+        assertEquals(Arrays.asList("t", "u"), state.mismatchedTables);
+    }
+
+    @Test
+    public void hashesFollowUndoAndRepeatedChecks() {
+        executor.executeQuery("UPDATE t SET n = n * 2");
+        assertFalse(executor.compareState(EXPECTED).isEqual());
+
+        assertTrue(executor.undoLastStatement().isSuccess);
+        executor.executeQuery(EXPECTED);
+        assertTrue(executor.compareState(EXPECTED).isEqual());
+
+        // Удаление и повторная вставка той же строки дают то же состояние
+        executor.executeQuery("DELETE FROM u");
+        executor.executeQuery("INSERT INTO u VALUES (1)");
+        assertTrue(executor.compareState(EXPECTED).isEqual());
+    }
+
+    @Test
+    public void schemaChangeFallsBackToFullComparison() {
+        executor.executeQuery(EXPECTED);
+        executor.executeQuery("CREATE TABLE extra (a)");
+
+        StateComparison state = executor.compareState(EXPECTED);
+
+        assertFalse(state.isByHashes);
+        assertEquals(Collections.singletonList("extra"), state.mismatchedTables);
+    }
+
+    @Test
+    public void changeLogIsNotWritableByUserSql() {
+        executor.executeQuery("UPDATE t SET n = 0 WHERE id = 1");
+
+        assertFalse(executor.executeQuery("DELETE FROM temp.sandbox_change_log").isSuccess);
+        assertFalse(executor.executeQuery("UPDATE [sandbox_change_old_t] SET c2 = 10").isSuccess);
+        assertEquals(Collections.singletonList("t"), executor.compareState(EXPECTED).mismatchedTables);
+    }
+
+    @Test
+    public void tempSchemaChangeFallsBackToFullComparison() {
+        executor.executeQuery(EXPECTED);
+        executor.executeQuery("CREATE TEMP TABLE scratch (a)");
+
+        StateComparison state = executor.compareState(EXPECTED);
+
+        assertFalse(state.isByHashes);
+        assertTrue(state.isEqual());
+    }
+
+    @Test
+    public void failingExpectedCommandIsNotAMismatch() {
+        StateComparison state = executor.compareState("UPDATE missing SET a = 1");
+
+        assertFalse(state.isSuccess());
+        assertFalse(state.isEqual());
+    }
+}
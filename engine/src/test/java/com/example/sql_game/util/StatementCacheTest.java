@@ -0,0 +1,74 @@
+package com.example.sql_game.util;
+
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class StatementCacheTest {
+
+    @Test
+    public void keyKeepsInnerWhitespace() {
+        assertEquals("SELECT AVG( n ) FROM t", StatementCache.normalize("  SELECT AVG( n ) FROM t ;; \n"));
+    }
+
+    @Test
+    public void queriesAreNotCountedWhenEngineCompilesEachTime() {
+        SandboxMetrics metrics = new SandboxMetrics();
+        StatementCache cache = new StatementCache(metrics);
+        JdbcSqlEngine db = JdbcSqlEngine.openInMemory();
+        try {
+            cache.prepareQuery(db, "SELECT 1");
+            cache.prepareQuery(db, "SELECT 1");
+
+            assertEquals(0, cache.getHitCount());
+            assertEquals(0, cache.getMissCount());
+            assertEquals(0, metrics.snapshot().get(SandboxMetrics.Counter.STATEMENT_HIT));
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void queriesAreCountedWhenEngineCachesThem() {
+        StatementCache cache = new StatementCache(new SandboxMetrics());
+        SqlEngine db = (SqlEngine) Proxy.newProxyInstance(SqlEngine.class.getClassLoader(),
+                new Class<?>[]{SqlEngine.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("cachesQueryStatements")) {
+                        return true;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+
+        String first = cache.prepareQuery(db, "SELECT 1");
+        assertEquals(first, cache.prepareQuery(db, "SELECT 1"));
+        cache.invalidate();
+        cache.prepareQuery(db, "SELECT 1");
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void dmlStatementsAreReusedUntilInvalidated() {
+        StatementCache cache = new StatementCache(new SandboxMetrics());
+        JdbcSqlEngine db = JdbcSqlEngine.openInMemory();
+        try {
+            db.execSQL("CREATE TABLE t (n INTEGER)");
+            SqlStatement statement = cache.acquireStatement(db, "INSERT INTO t VALUES (1)");
+            assertSame(statement, cache.acquireStatement(db, "INSERT INTO t VALUES (1)"));
+            statement.execute();
+            cache.invalidate();
+            cache.acquireStatement(db, "INSERT INTO t VALUES (1)").execute();
+
+            assertEquals(1, cache.getHitCount());
+            assertEquals(2, cache.getMissCount());
+            assertEquals(2, db.longForQuery("SELECT COUNT(*) FROM t"));
+            cache.invalidate();
+        } finally {
+            db.close();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.sql_game.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Отмена команд по журналу (UndoJournal). Журнал ставит на таблицы свои временные триггеры; для схем
+ * с пользовательскими триггерами он не ведется, и сброс выполняется повторной настройкой из шаблона.
+ */
+public class UndoJournalTest {
+
+    private static final String SETUP = "CREATE TABLE t (id INTEGER PRIMARY KEY, v TEXT);"
+            + " CREATE TABLE log (msg TEXT);"
+            + " INSERT INTO t VALUES (1, 'a'), (2, 'b'); INSERT INTO log VALUES ('+a'), ('+b');";
+
+    private static final String SETUP_WITH_TRIGGERS = "CREATE TABLE t (id INTEGER PRIMARY KEY, v TEXT);"
+            + " CREATE TABLE log (msg TEXT);"
+            + " CREATE TRIGGER t_insert AFTER INSERT ON t BEGIN INSERT INTO log VALUES ('+' || new.v); END;"
+            + " CREATE TRIGGER t_delete AFTER DELETE ON t BEGIN INSERT INTO log VALUES ('-' || old.v); END;"
+            + " INSERT INTO t VALUES (1, 'a'), (2, 'b');";
+
+    private SqlExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new SqlExecutor(JdbcSqlEngine.FACTORY);
+    }
+
+    @After
+    public void tearDown() {
+        executor.closeDatabase();
+    }
+
+    @Test
+    public void undoRevertsStatementsOneByOne() {
+        assertTrue(executor.executeSetup(SETUP).isSuccess);
+        assertFalse(executor.canUndo());
+
+        assertTrue(executor.executeQuery("INSERT INTO t VALUES (3, 'c')").isSuccess);
+        assertTrue(executor.executeQuery("DELETE FROM log WHERE msg = '+a'").isSuccess);
+        assertTrue(executor.executeQuery("DELETE FROM t WHERE id = 1").isSuccess);
+        assertEquals("+b", logContents());
+
+        assertTrue(executor.undoLastStatement().isSuccess);
+        assertEquals(3, count("t"));
+        assertTrue(executor.undoLastStatement().isSuccess);
+        assertEquals("+a|+b", logContents());
+        assertTrue(executor.undoLastStatement().isSuccess);
+        assertEquals(2, count("t"));
+        assertFalse(executor.canUndo());
+        assertTrue(executor.isPristineFor(SETUP));
+    }
+
+    @Test
+    public void updateIsRestoredWithOldValues() {
+        assertTrue(executor.executeSetup(SETUP).isSuccess);
+        executor.executeQuery("UPDATE t SET v = v || '!'");
+        executor.executeQuery("UPDATE t SET v = NULL WHERE id = 2");
+
+        assertTrue(executor.resetSandbox().isSuccess);
+        assertEquals("a|b", executor.executeQuery("SELECT group_concat(v, '|') FROM (SELECT v FROM t ORDER BY id)")
+                .resultTable.getString(0, 0));
+        assertTrue(executor.isPristineFor(SETUP));
+    }
+
+    @Test
+    public void userTriggersDisableJournalButResetRestoresTriggerChanges() {
+        assertTrue(executor.executeSetup(SETUP_WITH_TRIGGERS).isSuccess);
+        assertEquals("+a|+b", logContents());
+
+        assertTrue(executor.executeQuery("INSERT INTO t VALUES (3, 'c')").isSuccess);
+        assertTrue(executor.executeQuery("DELETE FROM t WHERE id = 1").isSuccess);
+        assertEquals("+a|+b|+c|-a", logContents());
+        assertFalse(executor.canUndo());
+        assertFalse(executor.undoLastStatement().isSuccess);
+
+        assertTrue(executor.resetSandbox().isSuccess);
+        assertEquals("+a|+b", logContents());
+        assertEquals(2, count("t"));
+        // Пользовательские триггеры восстановлены вместе с таблицами
+        assertTrue(executor.executeQuery("INSERT INTO t VALUES (4, 'd')").isSuccess);
+        assertEquals("+a|+b|+d", logContents());
+    }
+
+    @Test
+    public void schemaChangeDisablesUndoButResetStillWorks() {
+        assertTrue(executor.executeSetup(SETUP).isSuccess);
+        executor.executeQuery("DELETE FROM t");
+        executor.executeQuery("ALTER TABLE t ADD COLUMN extra");
+
+        assertFalse(executor.undoLastStatement().isSuccess);
+        assertTrue(executor.resetSandbox().isSuccess);
+        assertEquals(2, count("t"));
+        assertFalse(executor.executeQuery("SELECT extra FROM t").isSuccess);
+    }
+
+    @Test
+    public void journalObjectsCannotBeChangedByUserSql() {
+        assertTrue(executor.executeSetup(SETUP).isSuccess);
+
+        assertFalse(executor.executeQuery("DROP TRIGGER sandbox_undo_t_delete").isSuccess);
+        assertFalse(executor.executeQuery("DELETE FROM temp.\"SANDBOX_UNDO_LOG\"").isSuccess);
+        assertTrue(executor.executeQuery("DELETE FROM t").isSuccess);
+
+        assertTrue(executor.resetSandbox().isSuccess);
+        assertTrue(executor.isPristineFor(SETUP));
+        assertEquals(2, count("t"));
+    }
+
+    @Test
+    public void tempSchemaChangeDisablesUndoAndResetUsesSetup() {
+        assertTrue(executor.executeSetup(SETUP).isSuccess);
+        // TEMP-триггер пользователя сработал бы и при отмене по журналу
+        assertTrue(executor.executeQuery("CREATE TEMP TRIGGER t_log AFTER INSERT ON t"
+                + " BEGIN INSERT INTO log VALUES ('+' || new.v); END").isSuccess);
+        assertTrue(executor.executeQuery("DELETE FROM t").isSuccess);
+        assertFalse(executor.canUndo());
+
+        assertTrue(executor.resetSandbox().isSuccess);
+        assertEquals(2, count("t"));
+        assertEquals("+a|+b", logContents());
+        // Триггер пользователя удален вместе со схемой temp
+        assertTrue(executor.executeQuery("INSERT INTO t VALUES (3, 'c')").isSuccess);
+        assertEquals("+a|+b", logContents());
+    }
+
+    private String logContents() {
+        return executor.executeQuery("SELECT group_concat(msg, '|') FROM (SELECT msg FROM log ORDER BY rowid)")
+                .resultTable.getString(0, 0);
+    }
+
+    private long count(String table) {
+        return executor.executeQuery("SELECT count(*) FROM " + table).resultTable.getLong(0, 0);
+    }
+}
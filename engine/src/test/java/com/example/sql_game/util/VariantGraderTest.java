@@ -0,0 +1,65 @@
+package com.example.sql_game.util;
+
+import com.example.sql_game.data.model.TaskModel;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VariantGraderTest {
+
+    private VariantGrader grader;
+
+    @After
+    public void tearDown() {
+        if (grader != null) {
+            grader.shutdown();
+        }
+    }
+
+    @Test
+    public void exhaustedBudgetIsInconclusive() {
+        grader = new VariantGrader(JdbcSqlEngine.FACTORY, 3, 0);
+
+        VariantGrader.Result result = grader.check(task(), "SELECT id FROM t WHERE v > 20");
+
+        assertEquals(0, result.checkedCount);
+        assertTrue(result.isTimedOut);
+        assertTrue(result.isInconclusive());
+        // Вердикт по исходным данным не меняется
+        assertTrue(result.isPassed());
+    }
+
+    @Test
+    public void correctAnswerIsConfirmed() {
+        grader = new VariantGrader(JdbcSqlEngine.FACTORY, 3, 30000);
+
+        VariantGrader.Result result = grader.check(task(), "SELECT id FROM t WHERE v > 20");
+
+        assertTrue(result.isPassed());
+        assertFalse(result.isInconclusive());
+        assertEquals(3, result.checkedCount);
+    }
+
+    @Test
+    public void hardCodedAnswerFailsOnVariant() {
+        grader = new VariantGrader(JdbcSqlEngine.FACTORY, 3, 30000);
+
+        VariantGrader.Result result = grader.check(task(), "SELECT id FROM t WHERE id IN (3, 4)");
+
+        assertFalse(result.isPassed());
+        assertFalse(result.isInconclusive());
+    }
+
+    private static TaskModel task() {
+        TaskModel task = new TaskModel();
+        task.setTaskId(1);
+        task.setDatabaseSetupSql("CREATE TABLE t (id INTEGER PRIMARY KEY, v INTEGER);"
+                + " INSERT INTO t VALUES (1, 10), (2, 20), (3, 30), (4, 40);");
+        task.setExpectedResult("SELECT id FROM t WHERE v > 20");
+        return task;
+    }
+}
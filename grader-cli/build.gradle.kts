@@ -0,0 +1,26 @@
+// Файл модуля 'grader-cli': пакетная проверка сохраненных ответов (JSONL) на обычной JVM.
+// Запуск: ./gradlew :grader-cli:run --args="--threads 8 submissions.jsonl" > results.jsonl
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    implementation(project(":engine"))
+    // Песочницы утилиты работают через JdbcSqlEngine
+    runtimeOnly("org.xerial:sqlite-jdbc:3.45.1.0")
+
+    testImplementation("junit:junit:4.13.2")
+}
+
+application {
+    mainClass.set("com.example.sql_game.batch.BatchGrader")
+}
+
+tasks.named<JavaExec>("run") {
+    standardInput = System.`in`
+}
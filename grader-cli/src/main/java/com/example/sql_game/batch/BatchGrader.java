@@ -0,0 +1,293 @@
+package com.example.sql_game.batch;
+
+import com.example.sql_game.batch.SubmissionGrader.Status;
+import com.example.sql_game.data.model.LessonModel;
+import com.example.sql_game.data.model.TaskModel;
+import com.example.sql_game.data.repository.LessonRepository;
+import com.example.sql_game.util.JdbcSqlEngine;
+import com.example.sql_game.util.SandboxMetrics;
+import com.example.sql_game.util.SqlExecutor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Пакетная проверка сохраненных ответов на обычной JVM (без эмулятора).
+ *
+ * Вход - JSONL, по одному ответу в строке: {"userId": "u1", "taskId": 12, "query": "SELECT ..."}.
+ * Задания берутся из LessonRepository. Каждый ответ проверяется так же, как в приложении (SubmissionGrader).
+ *
+ * Ответы проверяются параллельно в ForkJoinPool; у каждого потока пула своя песочница SqlExecutor
+ * (JdbcSqlEngine), поэтому шаблоны баз (SetupTemplateCache) и кэши эталонов используются повторно
+ * для всех ответов потока. Читатель входа ждет, если непроверенных ответов слишком много,
+ * так что память не зависит от размера входа. Если проверка ответа завершилась исключением,
+ * песочница потока закрывается (ее состояние неизвестно), а следующий ответ потока получит новую.
+ *
+ * Выход - JSONL: строка "result" на каждый ответ в порядке завершения проверки (номер строки входа - "line"),
+ * затем строки "taskStats" по заданиям и итоговая строка "summary".
+ */
+public final class BatchGrader {
+
+    private static final Logger LOG = Logger.getLogger(BatchGrader.class.getName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Логгер песочницы: без --verbose ошибки запросов пользователей не выводятся (они есть в результатах).
+    // Ссылка хранится, иначе LogManager может забыть настроенный уровень
+    private static final Logger SANDBOX_LOG = Logger.getLogger("com.example.sql_game.util");
+
+    // Ответов на поток пула, которые могут ждать проверки одновременно
+    private static final int MAX_PENDING_PER_THREAD = 4;
+
+    private final Map<Integer, TaskModel> tasks = new HashMap<>();
+    private final int threadCount;
+    private final long timeoutMillis;
+    private final SandboxMetrics metrics = new SandboxMetrics();
+    // Песочницы всех потоков пула, чтобы закрыть их по окончании
+    private final Queue<SqlExecutor> sandboxes = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<SqlExecutor> threadSandbox = new ThreadLocal<>();
+    private final Map<Integer, TaskStats> taskStats = new ConcurrentHashMap<>();
+    private final long[] statusCounts = new long[Status.values().length];
+
+    /**
+     * @param threadCount   Число потоков (и песочниц).
+     * @param timeoutMillis Ограничение времени запроса пользователя.
+     */
+    public BatchGrader(Iterable<LessonModel> lessons, int threadCount, long timeoutMillis) {
+        for (LessonModel lesson : lessons) {
+            for (TaskModel task : lesson.getTasks()) {
+                tasks.put(task.getTaskId(), task);
+            }
+        }
+        this.threadCount = threadCount;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Проверяет все ответы из in и пишет результаты в out. Возвращается, когда проверены все ответы.
+     */
+    public void run(BufferedReader in, final Writer out) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        Semaphore pending = new Semaphore(threadCount * MAX_PENDING_PER_THREAD);
+        final AtomicLong writeErrors = new AtomicLong();
+        long lineNumber = 0;
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                pending.acquire();
+                final long number = lineNumber;
+                final String submission = line;
+                pool.execute(() -> {
+                    try {
+                        String result;
+                        try {
+                            result = grade(number, submission);
+                        } catch (RuntimeException e) {
+                            LOG.log(Level.SEVERE, "Could not grade line " + number, e);
+                            discardThreadSandbox();
+                            result = finish(new JsonLines.ObjectWriter().put("type", "result").put("line", number),
+                                    null, Status.INVALID, "Внутренняя ошибка проверки: " + e, System.nanoTime());
+                        }
+                        synchronized (out) {
+                            out.write(result);
+                            out.write('\n');
+                        }
+                    } catch (IOException e) {
+                        writeErrors.incrementAndGet();
+                        LOG.log(Level.SEVERE, "Could not write result for line " + number, e);
+                    } finally {
+                        pending.release();
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            pool.shutdownNow();
+            for (SqlExecutor sandbox : sandboxes) {
+                sandbox.closeDatabase();
+            }
+        }
+        if (writeErrors.get() > 0) {
+            throw new IOException("Could not write " + writeErrors.get() + " results");
+        }
+
+        for (TaskStats stats : new TreeMap<>(taskStats).values()) {
+            out.write(stats.toJson());
+            out.write('\n');
+        }
+        long wallNanos = System.nanoTime() - start;
+        long total = 0;
+        JsonLines.ObjectWriter summary = new JsonLines.ObjectWriter().put("type", "summary");
+        synchronized (statusCounts) {
+            for (Status status : Status.values()) {
+                total += statusCounts[status.ordinal()];
+            }
+            summary.put("submissions", total);
+            for (Status status : Status.values()) {
+                summary.put(status.jsonName(), statusCounts[status.ordinal()]);
+            }
+        }
+        SandboxMetrics.Snapshot snapshot = metrics.snapshot();
+        out.write(summary.put("threads", threadCount)
+                .put("wallMs", wallNanos / 1e6)
+                .put("perSecond", wallNanos > 0 ? total * 1e9 / wallNanos : 0)
+                .put("templateHits", snapshot.get(SandboxMetrics.Counter.TEMPLATE_HIT))
+                .put("templateMisses", snapshot.get(SandboxMetrics.Counter.TEMPLATE_MISS))
+                .toString());
+        out.write('\n');
+        out.flush();
+    }
+
+    /**
+     * Проверяет один ответ в песочнице текущего потока.
+     * @return Строка результата JSONL.
+     */
+    private String grade(long lineNumber, String line) {
+        long start = System.nanoTime();
+        JsonLines.ObjectWriter result = new JsonLines.ObjectWriter()
+                .put("type", "result")
+                .put("line", lineNumber);
+        Map<String, Object> submission;
+        try {
+            submission = JsonLines.parseObject(line);
+        } catch (IllegalArgumentException e) {
+            return finish(result, null, Status.INVALID, "Некорректная строка: " + e.getMessage(), start);
+        }
+        Object userId = submission.get("userId");
+        Object taskId = submission.get("taskId");
+        Object query = submission.get("query");
+        result.put("userId", userId != null ? userId.toString() : null);
+        if (!(taskId instanceof Long) || !(query instanceof String)) {
+            return finish(result, null, Status.INVALID, "Ожидаются целый taskId и строковый query", start);
+        }
+        TaskModel task = tasks.get(((Long) taskId).intValue());
+        result.put("taskId", (Long) taskId);
+        if (task == null) {
+            return finish(result, null, Status.INVALID, "Задание не найдено", start);
+        }
+        SubmissionGrader.Outcome outcome = SubmissionGrader.grade(threadSandbox(), task, (String) query,
+                timeoutMillis);
+        return finish(result, task, outcome.status, outcome.message, start);
+    }
+
+    /**
+     * Песочница текущего потока пула; создается при первом ответе потока.
+     */
+    private SqlExecutor threadSandbox() {
+        SqlExecutor sandbox = threadSandbox.get();
+        if (sandbox == null) {
+            sandbox = new SqlExecutor(JdbcSqlEngine.FACTORY, metrics);
+            sandboxes.add(sandbox);
+            threadSandbox.set(sandbox);
+        }
+        return sandbox;
+    }
+
+    /**
+     * Закрывает песочницу текущего потока после сбоя проверки.
+     */
+    private void discardThreadSandbox() {
+        SqlExecutor sandbox = threadSandbox.get();
+        if (sandbox == null) {
+            return;
+        }
+        threadSandbox.remove();
+        sandboxes.remove(sandbox);
+        try {
+            sandbox.closeDatabase();
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Could not close failed sandbox", e);
+        }
+    }
+
+    private String finish(JsonLines.ObjectWriter result, TaskModel task, Status status, String message, long start) {
+        long nanos = System.nanoTime() - start;
+        if (task != null) {
+            TaskStats stats = taskStats.get(task.getTaskId());
+            if (stats == null) {
+                TaskStats created = new TaskStats(task.getTaskId());
+                stats = taskStats.putIfAbsent(task.getTaskId(), created);
+                if (stats == null) {
+                    stats = created;
+                }
+            }
+            stats.record(status, nanos);
+        }
+        synchronized (statusCounts) {
+            statusCounts[status.ordinal()]++;
+        }
+        result.put("status", status.jsonName());
+        if (message != null) {
+            result.put("message", message);
+        }
+        return result.put("ms", nanos / 1e6).toString();
+    }
+
+    /**
+     * BatchGrader [--threads N] [--timeout-ms MS] [--verbose] [submissions.jsonl]
+     * Без файла ответы читаются из стандартного ввода; результаты пишутся в стандартный вывод.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        long timeoutMillis = SqlExecutor.DEFAULT_QUERY_TIMEOUT_MS;
+        String inputPath = null;
+        boolean verbose = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--threads") && i + 1 < args.length) {
+                    threadCount = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--timeout-ms") && i + 1 < args.length) {
+                    timeoutMillis = Long.parseLong(args[++i]);
+                } else if (args[i].equals("--verbose")) {
+                    verbose = true;
+                } else if (!args[i].startsWith("--") && inputPath == null) {
+                    inputPath = args[i];
+                } else {
+                    throw new IllegalArgumentException("Unknown argument: " + args[i]);
+                }
+            }
+            if (threadCount < 1 || timeoutMillis < 1) {
+                throw new IllegalArgumentException("--threads and --timeout-ms must be positive");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: BatchGrader [--threads N] [--timeout-ms MS] [--verbose] [submissions.jsonl]");
+            System.exit(2);
+            return;
+        }
+
+        if (!verbose) {
+            SANDBOX_LOG.setLevel(Level.OFF);
+        }
+        InputStream input = inputPath != null ? new FileInputStream(inputPath) : System.in;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(input, UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(System.out, UTF_8))) {
+            new BatchGrader(LessonRepository.getInstance().getAllLessons(), threadCount, timeoutMillis).run(in, out);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.example.sql_game.batch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Минимальный разбор и запись JSON для формата JSONL (один объект в строке), чтобы утилиты
+ * (пакетная проверка, сервер проверки) не зависели от JSON-библиотек. Значения при разборе: String, Long, Double, Boolean, null,
+ * Map (объект) и List (массив).
+ */
+public final class JsonLines {
+
+    private JsonLines() {
+    }
+
+    /**
+     * Разбирает строку с одним JSON-объектом.
+     * @throws IllegalArgumentException если строка не является JSON-объектом.
+     */
+    public static Map<String, Object> parseObject(String line) {
+        Parser parser = new Parser(line);
+        parser.skipWhitespace();
+        if (parser.peek() != '{') {
+            throw parser.error("expected object");
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> object = (Map<String, Object>) parser.value();
+        parser.skipWhitespace();
+        if (parser.position < line.length()) {
+            throw parser.error("unexpected trailing characters");
+        }
+        return object;
+    }
+
+    /**
+     * Построитель одной выходной строки JSONL; поля записываются в порядке добавления.
+     */
+    public static final class ObjectWriter {
+        private final StringBuilder json = new StringBuilder(128).append('{');
+
+        public ObjectWriter put(String name, String value) {
+            name(name);
+            if (value == null) {
+                json.append("null");
+            } else {
+                appendString(json, value);
+            }
+            return this;
+        }
+
+        public ObjectWriter put(String name, long value) {
+            name(name).append(value);
+            return this;
+        }
+
+        public ObjectWriter put(String name, double value) {
+            // NaN и бесконечность в JSON не представимы
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                name(name).append("null");
+            } else {
+                name(name).append(value);
+            }
+            return this;
+        }
+
+        public ObjectWriter put(String name, boolean value) {
+            name(name).append(value);
+            return this;
+        }
+
+        private StringBuilder name(String name) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            appendString(json, name);
+            return json.append(':');
+        }
+
+        @Override
+        public String toString() {
+            return json.toString() + '}';
+        }
+    }
+
+    public static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    // U+2028/U+2029 некоторые читатели считают концом строки, а строка JSONL должна быть одна
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private static final class Parser {
+        private final String text;
+        int position = 0;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        char peek() {
+            return position < text.length() ? text.charAt(position) : '\0';
+        }
+
+        void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid JSON at " + position + ": " + message);
+        }
+
+        Object value() {
+            skipWhitespace();
+            char c = peek();
+            switch (c) {
+                case '{':
+                    return object();
+                case '[':
+                    return array();
+                case '"':
+                    return string();
+                case 't':
+                    return literal("true", Boolean.TRUE);
+                case 'f':
+                    return literal("false", Boolean.FALSE);
+                case 'n':
+                    return literal("null", null);
+                default:
+                    if (c == '-' || (c >= '0' && c <= '9')) {
+                        return number();
+                    }
+                    throw error("unexpected character");
+            }
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            position++;
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') {
+                    throw error("expected field name");
+                }
+                String name = string();
+                skipWhitespace();
+                expect(':');
+                object.put(name, value());
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                } else {
+                    expect('}');
+                    return object;
+                }
+            }
+        }
+
+        private List<Object> array() {
+            List<Object> array = new ArrayList<>();
+            position++;
+            skipWhitespace();
+            if (peek() == ']') {
+                position++;
+                return array;
+            }
+            while (true) {
+                array.add(value());
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                } else {
+                    expect(']');
+                    return array;
+                }
+            }
+        }
+
+        private String string() {
+            position++;
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (position >= text.length()) {
+                    throw error("unterminated string");
+                }
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    throw error("unterminated escape");
+                }
+                char escape = text.charAt(position++);
+                switch (escape) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("bad unicode escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("bad unicode escape");
+                        }
+                        position += 4;
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        value.append(escape);
+                        break;
+                    default:
+                        throw error("bad escape");
+                }
+            }
+        }
+
+        private Object number() {
+            int start = position;
+            boolean isInteger = true;
+            while (position < text.length()) {
+                char c = text.charAt(position);
+                if (c == '.' || c == 'e' || c == 'E') {
+                    isInteger = false;
+                } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                    break;
+                }
+                position++;
+            }
+            String number = text.substring(start, position);
+            try {
+                return isInteger ? (Object) Long.parseLong(number) : (Object) Double.parseDouble(number);
+            } catch (NumberFormatException e) {
+                throw error("bad number " + number);
+            }
+        }
+
+        private Object literal(String literal, Object value) {
+            if (!text.startsWith(literal, position)) {
+                throw error("unexpected literal");
+            }
+            position += literal.length();
+            return value;
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw error("expected '" + c + "'");
+            }
+            position++;
+        }
+    }
+}
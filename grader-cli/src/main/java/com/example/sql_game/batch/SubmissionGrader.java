@@ -0,0 +1,102 @@
+package com.example.sql_game.batch;
+
+import com.example.sql_game.data.model.TaskModel;
+import com.example.sql_game.util.QueryCheck;
+import com.example.sql_game.util.SqlExecutor;
+import com.example.sql_game.util.SqlExecutor.ExecutionResult;
+
+/**
+ * Проверка одного ответа вне приложения - так же, как в приложении (LessonPlayActivity): песочница
+ * настраивается скриптом задания, запрос пользователя выполняется с ограничениями, результат проверяет
+ * QueryCheck (без построчной разницы), который и решает, подлежит ли ответ проверке (QueryCheck.shouldGrade()). Используется пакетной проверкой и сервером проверки.
+ */
+public final class SubmissionGrader {
+
+    /**
+     * Итог проверки одного ответа.
+     */
+    public enum Status {
+        CORRECT,
+        INCORRECT,
+        // Запрос выполнен, но не сравнивался (например, SELECT в задании на изменение данных)
+        NOT_CHECKED,
+        // Запрос пользователя завершился ошибкой SQLite или прерван по времени/числу строк
+        QUERY_ERROR,
+        // Ответ не разобран, задание не найдено или не проверяется
+        INVALID;
+
+        /**
+         * Имя для JSON: correct, notChecked, queryError и т.д.
+         */
+        public String jsonName() {
+            String name = name().toLowerCase();
+            int underscore = name.indexOf('_');
+            return underscore < 0
+                    ? name
+                    : name.substring(0, underscore) + Character.toUpperCase(name.charAt(underscore + 1))
+                    + name.substring(underscore + 2);
+        }
+    }
+
+    /**
+     * Итог и пояснение (причина ошибки или расхождения; null для верного ответа).
+     */
+    public static final class Outcome {
+        public final Status status;
+        public final String message;
+
+        Outcome(Status status, String message) {
+            this.status = status;
+            this.message = message;
+        }
+    }
+
+    private SubmissionGrader() {
+    }
+
+    /**
+     * Проверяются только практические задания с установочным скриптом и эталоном.
+     */
+    public static boolean isGradable(TaskModel task) {
+        return task.getType() == TaskModel.TaskType.PRACTICE && task.getDatabaseSetupSql() != null
+                && task.getExpectedResult() != null;
+    }
+
+    /**
+     * Проверяет ответ в песочнице. Песочница после предыдущего ответа восстанавливается из шаблона
+     * (или не трогается, если не изменялась); после проверки она содержит изменения ответа.
+     * @param timeoutMillis Ограничение времени запроса пользователя.
+     */
+    public static Outcome grade(SqlExecutor sandbox, TaskModel task, String query, long timeoutMillis) {
+        if (!isGradable(task)) {
+            return new Outcome(Status.INVALID, "Задание не проверяется (теория или нет эталона)");
+        }
+        ExecutionResult setupResult = sandbox.executeSetup(task.getDatabaseSetupSql());
+        if (!setupResult.isSuccess) {
+            return new Outcome(Status.INVALID, "Ошибка настройки задания: " + setupResult.errorMessage);
+        }
+        ExecutionResult userResult = sandbox.executeLimitedQuery(query, timeoutMillis,
+                SqlExecutor.DEFAULT_MAX_RESULT_ROWS);
+        if (!userResult.isSuccess) {
+            return new Outcome(Status.QUERY_ERROR, userResult.errorMessage);
+        }
+        QueryCheck check = QueryCheck.grade(sandbox, task, userResult, false);
+        if (!check.isChecked) {
+            return new Outcome(Status.NOT_CHECKED, null);
+        }
+        if (check.isCorrect) {
+            return new Outcome(Status.CORRECT, null);
+        }
+        String reason;
+        if (check.stateComparison != null) {
+            reason = check.stateComparison.toString();
+        } else if (check.comparison != null) {
+            reason = check.comparison.toString();
+        } else if (check.expectedResult != null && !check.expectedResult.isSuccess) {
+            reason = "Ошибка эталонного запроса: " + check.expectedResult.errorMessage;
+        } else {
+            reason = "отпечаток результата не совпадает с эталоном";
+        }
+        return new Outcome(Status.INCORRECT, reason);
+    }
+}
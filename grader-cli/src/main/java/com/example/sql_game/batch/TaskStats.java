@@ -0,0 +1,43 @@
+package com.example.sql_game.batch;
+
+/**
+ * Счетчики проверок одного задания. Обновляются из потоков пула, поэтому методы синхронизированы.
+ */
+final class TaskStats {
+
+    private final int taskId;
+    private final long[] statusCounts = new long[SubmissionGrader.Status.values().length];
+    private long submissionCount;
+    // Суммарное и максимальное время проверки одного ответа (настройка песочницы, запрос, сравнение)
+    private long totalNanos;
+    private long maxNanos;
+
+    TaskStats(int taskId) {
+        this.taskId = taskId;
+    }
+
+    synchronized void record(SubmissionGrader.Status status, long nanos) {
+        statusCounts[status.ordinal()]++;
+        submissionCount++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    /**
+     * Строка статистики: число ответов по итогам проверки, среднее и максимальное время
+     * и пропускная способность одной песочницы (ответов в секунду времени проверки).
+     */
+    synchronized String toJson() {
+        JsonLines.ObjectWriter json = new JsonLines.ObjectWriter()
+                .put("type", "taskStats")
+                .put("taskId", taskId)
+                .put("submissions", submissionCount);
+        for (SubmissionGrader.Status status : SubmissionGrader.Status.values()) {
+            json.put(status.jsonName(), statusCounts[status.ordinal()]);
+        }
+        return json.put("avgMs", submissionCount > 0 ? totalNanos / 1e6 / submissionCount : 0)
+                .put("maxMs", maxNanos / 1e6)
+                .put("perSecond", totalNanos > 0 ? submissionCount * 1e9 / totalNanos : 0)
+                .toString();
+    }
+}
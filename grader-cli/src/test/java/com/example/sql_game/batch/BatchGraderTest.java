@@ -0,0 +1,58 @@
+package com.example.sql_game.batch;
+
+import com.example.sql_game.data.model.LessonModel;
+import com.example.sql_game.data.model.TaskModel;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchGraderTest {
+
+    private static final String SETUP_SQL = "CREATE TABLE t (n INTEGER); INSERT INTO t VALUES (1), (2);";
+
+    @Test
+    public void failedGradingWritesResultAndReplacesSandbox() throws Exception {
+        TaskModel task = new TaskModel(1, TaskModel.TaskType.PRACTICE, "", null, null,
+                "SELECT n FROM t ORDER BY n", SETUP_SQL, "t", null, 0, null);
+        // Падает внутри проверки, когда песочница уже настроена для задания
+        TaskModel broken = new TaskModel(2, TaskModel.TaskType.PRACTICE, "", null, null,
+                "SELECT n FROM t ORDER BY n", SETUP_SQL, "t", null, 0, null) {
+            @Override
+            public GradingMode getGradingMode() {
+                throw new IllegalStateException("broken task");
+            }
+        };
+        LessonModel lesson = new LessonModel("1", "", "", 0, Arrays.asList(task, broken), null, null, null);
+        String input = "{\"userId\": \"u\", \"taskId\": 1, \"query\": \"DELETE FROM t\"}\n"
+                + "{\"userId\": \"u\", \"taskId\": 2, \"query\": \"SELECT n FROM t ORDER BY n\"}\n"
+                + "{\"userId\": \"u\", \"taskId\": 1, \"query\": \"SELECT n FROM t ORDER BY n\"}\n";
+        StringWriter out = new StringWriter();
+
+        new BatchGrader(Arrays.asList(lesson), 1, 1000).run(new BufferedReader(new StringReader(input)), out);
+
+        Map<Long, Map<String, Object>> results = new TreeMap<>();
+        Map<String, Object> summary = null;
+        for (String line : out.toString().split("\n")) {
+            Map<String, Object> object = JsonLines.parseObject(line);
+            if ("result".equals(object.get("type"))) {
+                results.put((Long) object.get("line"), object);
+            } else if ("summary".equals(object.get("type"))) {
+                summary = object;
+            }
+        }
+        assertEquals(3, results.size());
+        assertEquals("invalid", results.get(2L).get("status"));
+        assertTrue(results.get(2L).get("message").toString().contains("broken task"));
+        assertEquals("correct", results.get(3L).get("status"));
+        assertEquals(3L, summary.get("submissions"));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.sql_game.batch;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JsonLinesTest {
+
+    @Test
+    public void parsesScalarsArraysAndNestedObjects() {
+        Map<String, Object> object = JsonLines.parseObject(
+                " {\"id\": 42, \"score\": -1.5e2, \"ok\": true, \"no\": false, \"none\": null,"
+                        + " \"list\": [1, \"a\", []], \"nested\": {\"k\": \"v\"}} ");
+
+        assertEquals(42L, object.get("id"));
+        assertEquals(-150.0, object.get("score"));
+        assertEquals(true, object.get("ok"));
+        assertEquals(false, object.get("no"));
+        assertTrue(object.containsKey("none"));
+        assertNull(object.get("none"));
+        assertEquals(Arrays.asList(1L, "a", Arrays.asList()), object.get("list"));
+        assertEquals("v", ((Map<?, ?>) object.get("nested")).get("k"));
+    }
+
+    @Test
+    public void decodesEscapes() {
+        Map<String, Object> object = JsonLines.parseObject(
+                "{\"sql\": \"SELECT 'a;b'\\nFROM \\\"t\\\" -- \\u041f\\u0440\\u0438\\u0432\\u0435\\u0442\\t\\\\/\\/\"}");
+
+        assertEquals("SELECT 'a;b'\nFROM \"t\" -- Привет\t\\//", object.get("sql"));
+    }
+
+    @Test
+    public void writerOutputParsesBack() {
+        String line = new JsonLines.ObjectWriter()
+                .put("query", "SELECT \"x\"\r\n \u0001")
+                .put("rows", 3)
+                .put("ms", 1.25)
+                .put("nan", Double.NaN)
+                .put("passed", true)
+                .put("error", (String) null)
+                .toString();
+
+        assertTrue(line.indexOf('\n') < 0 && line.indexOf(' ') < 0);
+        Map<String, Object> object = JsonLines.parseObject(line);
+        assertEquals("SELECT \"x\"\r\n \u0001", object.get("query"));
+        assertEquals(3L, object.get("rows"));
+        assertEquals(1.25, object.get("ms"));
+        assertNull(object.get("nan"));
+        assertEquals(true, object.get("passed"));
+        assertNull(object.get("error"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonObject() {
+        JsonLines.parseObject("[1, 2]");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTrailingCharacters() {
+        JsonLines.parseObject("{\"a\": 1} x");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnterminatedString() {
+        JsonLines.parseObject("{\"a\": \"b}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBadNumber() {
+        JsonLines.parseObject("{\"a\": 1-2}");
+    }
+}
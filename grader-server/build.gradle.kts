@@ -0,0 +1,29 @@
+// Файл модуля 'grader-server': необязательный локальный HTTP-сервер проверки ответов на обычной JVM.
+// Запуск сервера: ./gradlew :grader-server:run --args="--port 8088"
+// Нагрузочная проверка через localhost: ./gradlew :grader-server:loadTest --args="--requests 20000 --concurrency 1000"
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    implementation(project(":engine"))
+    // Проверка одного ответа и JSON - общие с пакетной проверкой
+    implementation(project(":grader-cli"))
+    runtimeOnly("org.xerial:sqlite-jdbc:3.45.1.0")
+}
+
+application {
+    mainClass.set("com.example.sql_game.server.GradingServer")
+}
+
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Runs GradingLoadTest against an in-process server on localhost."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("com.example.sql_game.server.GradingLoadTest")
+}
@@ -0,0 +1,212 @@
+package com.example.sql_game.server;
+
+import com.example.sql_game.batch.JsonLines;
+import com.example.sql_game.batch.SubmissionGrader;
+import com.example.sql_game.data.model.LessonModel;
+import com.example.sql_game.data.model.TaskModel;
+import com.example.sql_game.data.repository.LessonRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочная проверка GradingServer только через localhost. Без --port запускает сервер в этом же процессе
+ * на свободном порту. Клиенты отправляют ответы заданий из LessonRepository: эталонный запрос (должен быть
+ * принят), заведомо неверный запрос и запрос с синтаксической ошибкой, от --users разных пользователей.
+ *
+ * Печатает пропускную способность, задержки (p50/p90/p99/max), число ответов по HTTP-кодам
+ * и число неверных вердиктов (эталонный запрос не принят или неверный принят) - их быть не должно.
+ */
+public final class GradingLoadTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private GradingLoadTest() {
+    }
+
+    /**
+     * GradingLoadTest [--port N] [--requests N] [--concurrency N] [--users N] [--queue N]
+     * --queue - очередь сервера, запускаемого в процессе: с малой очередью видно обратное давление (503).
+     */
+    public static void main(String[] args) throws Exception {
+        int port = -1;
+        int requestCount = 5000;
+        int concurrency = 200;
+        int userCount = 500;
+        int queueCapacity = new GradingServer.Options().queueCapacity;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            int value = Integer.parseInt(args[i + 1]);
+            switch (args[i]) {
+                case "--port":
+                    port = value;
+                    break;
+                case "--requests":
+                    requestCount = value;
+                    break;
+                case "--concurrency":
+                    concurrency = value;
+                    break;
+                case "--users":
+                    userCount = value;
+                    break;
+                case "--queue":
+                    queueCapacity = value;
+                    break;
+                default:
+                    System.err.println("Usage: GradingLoadTest [--port N] [--requests N] [--concurrency N] [--users N] [--queue N]");
+                    System.exit(2);
+                    return;
+            }
+        }
+
+        List<LessonModel> lessons = LessonRepository.getInstance().getAllLessons();
+        GradingServer server = null;
+        if (port < 0) {
+            GradingServer.Options options = new GradingServer.Options();
+            options.port = 0;
+            options.queueCapacity = queueCapacity;
+            GradingServer.setSandboxLogging(false);
+            server = new GradingServer(lessons, options);
+            server.start();
+            port = server.getPort();
+        }
+        try {
+            run(new URL("http://127.0.0.1:" + port + "/grade"), gradableTasks(lessons), requestCount, concurrency,
+                    userCount);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    private static List<TaskModel> gradableTasks(List<LessonModel> lessons) {
+        List<TaskModel> tasks = new ArrayList<>();
+        for (LessonModel lesson : lessons) {
+            for (TaskModel task : lesson.getTasks()) {
+                if (SubmissionGrader.isGradable(task)) {
+                    tasks.add(task);
+                }
+            }
+        }
+        return tasks;
+    }
+
+    private static void run(final URL url, final List<TaskModel> tasks, int requestCount, int concurrency,
+                            final int userCount) throws InterruptedException {
+        final long[] latencies = new long[requestCount];
+        final Map<Integer, AtomicInteger> codes = new TreeMap<>();
+        final AtomicLong wrongVerdicts = new AtomicLong();
+        final AtomicLong clientErrors = new AtomicLong();
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(concurrency);
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+
+        long start = System.nanoTime();
+        for (int c = 0; c < concurrency; c++) {
+            clients.execute(() -> {
+                try {
+                    int i;
+                    while ((i = next.getAndIncrement()) < latencies.length) {
+                        TaskModel task = tasks.get(i % tasks.size());
+                        // 0 - эталон, 1 - неверный ответ, 2 - синтаксическая ошибка
+                        int kind = (i / tasks.size()) % 3;
+                        String query = kind == 0 ? task.getExpectedResult() : kind == 1 ? "SELECT 1" : "SELEC 1";
+                        String body = new JsonLines.ObjectWriter()
+                                .put("userId", "user-" + (i % userCount))
+                                .put("taskId", task.getTaskId())
+                                .put("query", query)
+                                .toString();
+                        long requestStart = System.nanoTime();
+                        try {
+                            Object[] response = post(url, body);
+                            latencies[i] = System.nanoTime() - requestStart;
+                            int code = (Integer) response[0];
+                            synchronized (codes) {
+                                AtomicInteger count = codes.get(code);
+                                if (count == null) {
+                                    count = new AtomicInteger();
+                                    codes.put(code, count);
+                                }
+                                count.incrementAndGet();
+                            }
+                            if (code == 200) {
+                                Object status = JsonLines.parseObject((String) response[1]).get("status");
+                                boolean isCorrect = SubmissionGrader.Status.CORRECT.jsonName().equals(status);
+                                if (isCorrect != (kind == 0)) {
+                                    wrongVerdicts.incrementAndGet();
+                                }
+                            }
+                        } catch (IOException e) {
+                            latencies[i] = System.nanoTime() - requestStart;
+                            clientErrors.incrementAndGet();
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long wallNanos = System.nanoTime() - start;
+        clients.shutdown();
+
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.println("requests: " + requestCount + ", concurrency: " + concurrency + ", users: " + userCount);
+        System.out.printf("wall: %.1f ms, throughput: %.1f req/s%n", wallNanos / 1e6,
+                requestCount * 1e9 / wallNanos);
+        System.out.printf("latency ms: p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n", percentile(sorted, 0.50),
+                percentile(sorted, 0.90), percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6);
+        System.out.println("HTTP codes: " + codes + ", client errors: " + clientErrors.get());
+        System.out.println("wrong verdicts: " + wrongVerdicts.get());
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    // {HTTP-код, тело ответа}
+    private static Object[] post(URL url, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        byte[] bytes = body.getBytes(UTF_8);
+        connection.setFixedLengthStreamingMode(bytes.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(bytes);
+        }
+        int code = connection.getResponseCode();
+        InputStream in = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        if (in != null) {
+            try {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    response.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return new Object[] {code, new String(response.toByteArray(), UTF_8)};
+    }
+}
@@ -0,0 +1,380 @@
+package com.example.sql_game.server;
+
+import com.example.sql_game.batch.JsonLines;
+import com.example.sql_game.batch.SubmissionGrader;
+import com.example.sql_game.data.model.LessonModel;
+import com.example.sql_game.data.model.TaskModel;
+import com.example.sql_game.data.repository.LessonRepository;
+import com.example.sql_game.util.SandboxMetrics;
+import com.example.sql_game.util.SqlExecutor;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Локальный HTTP-сервер проверки ответов: позволяет передать проверку со слабого устройства на компьютер
+ * в той же сети или на той же машине. Слушает только loopback-адрес.
+ *
+ * POST /grade {"userId": "u1", "taskId": 12, "query": "SELECT ..."} -> {"status": "correct", "message": ..., "ms": ...};
+ * GET /stats - счетчики сервера. Ответ проверяется так же, как в приложении (SubmissionGrader).
+ *
+ * Потоки HTTP только разбирают запрос и ставят проверку в ограниченную очередь пула проверки, а ответ
+ * отправляет поток пула. Поэтому тысячи одновременных запросов не требуют тысяч потоков: они ждут
+ * в очереди, а при полной очереди сервер сразу отвечает 503 с Retry-After (обратное давление).
+ * Ответы одного пользователя проверяются по одному (StripedLocks): если предыдущий ответ пользователя
+ * еще проверяется, сервер сразу отвечает 429 с Retry-After, не занимая поток проверки ожиданием. Песочницы берутся из ограниченных пулов
+ * заранее настроенных песочниц по заданиям (SandboxPool); если все песочницы задания заняты дольше
+ * sandboxWaitMillis, сервер отвечает 503.
+ */
+public final class GradingServer {
+
+    private static final Logger LOG = Logger.getLogger(GradingServer.class.getName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Логгер песочницы: без --verbose ошибки запросов пользователей не выводятся (они есть в ответах).
+    // Ссылка хранится, иначе LogManager может забыть настроенный уровень
+    private static final Logger SANDBOX_LOG = Logger.getLogger("com.example.sql_game.util");
+
+    // Тело запроса больше этого размера отклоняется (413)
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    /**
+     * Параметры сервера. Значения по умолчанию рассчитаны на обычный компьютер.
+     */
+    public static final class Options {
+        // 0 - свободный порт (см. getPort())
+        public int port = 8088;
+        // Потоки проверки: по числу ядер, так как проверка почти не ждет ввода-вывода
+        public int gradingThreads = Runtime.getRuntime().availableProcessors();
+        // Проверки, ожидающие свободного потока; сверх этого - 503
+        public int queueCapacity = 4096;
+        public int sandboxesPerTask = Math.max(2, Runtime.getRuntime().availableProcessors());
+        // Песочниц каждого задания, создаваемых при запуске
+        public int prewarmedPerTask = 1;
+        // Блокировку держат только выполняющиеся проверки, поэтому при 4096 полосах
+        // разные пользователи почти никогда не получают 429 друг из-за друга
+        public int userLockStripes = 4096;
+        public long sandboxWaitMillis = 5000;
+        public long queryTimeoutMillis = SqlExecutor.DEFAULT_QUERY_TIMEOUT_MS;
+        // Очередь непринятых соединений ОС
+        public int backlog = 4096;
+    }
+
+    private final Map<Integer, TaskModel> tasks = new HashMap<>();
+    private final Options options;
+    private final SandboxMetrics metrics = new SandboxMetrics();
+    private final Map<Integer, SandboxPool> sandboxPools = new ConcurrentHashMap<>();
+    private final StripedLocks userLocks;
+    private final ThreadPoolExecutor gradingPool;
+    private final ExecutorService httpPool;
+    private HttpServer server;
+
+    private final AtomicLong gradedCount = new AtomicLong();
+    private final AtomicLong queueRejectedCount = new AtomicLong();
+    private final AtomicLong userRejectedCount = new AtomicLong();
+    private final AtomicLong sandboxRejectedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    public GradingServer(Iterable<LessonModel> lessons, Options options) {
+        for (LessonModel lesson : lessons) {
+            for (TaskModel task : lesson.getTasks()) {
+                tasks.put(task.getTaskId(), task);
+            }
+        }
+        this.options = options;
+        this.userLocks = new StripedLocks(options.userLockStripes);
+        this.gradingPool = new ThreadPoolExecutor(options.gradingThreads, options.gradingThreads, 0,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(options.queueCapacity),
+                namedThreads("Grading"), new ThreadPoolExecutor.AbortPolicy());
+        // Разбор запросов быстрый, поэтому HTTP-потоков немного
+        this.httpPool = Executors.newFixedThreadPool(2, namedThreads("GradingHttp"));
+    }
+
+    /**
+     * Создает песочницы заданий и начинает принимать запросы.
+     */
+    public synchronized void start() throws IOException {
+        for (TaskModel task : tasks.values()) {
+            if (SubmissionGrader.isGradable(task)) {
+                poolFor(task).prewarm(options.prewarmedPerTask);
+            }
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.port),
+                options.backlog);
+        server.createContext("/grade", this::handleGrade);
+        server.createContext("/stats", this::handleStats);
+        server.setExecutor(httpPool);
+        server.start();
+        LOG.info("Grading server listening on " + server.getAddress());
+    }
+
+    public synchronized int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Перестает принимать запросы, дожидается начатых проверок (не дольше нескольких секунд)
+     * и закрывает песочницы.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        gradingPool.shutdown();
+        try {
+            gradingPool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        httpPool.shutdownNow();
+        for (SandboxPool pool : sandboxPools.values()) {
+            pool.close();
+        }
+    }
+
+    private void handleGrade(final HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, error("Ожидается POST"));
+            return;
+        }
+        byte[] body = readBody(exchange.getRequestBody());
+        if (body == null) {
+            respond(exchange, 413, error("Запрос больше " + MAX_BODY_BYTES + " байт"));
+            return;
+        }
+        Map<String, Object> submission;
+        try {
+            submission = JsonLines.parseObject(new String(body, UTF_8));
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, error("Некорректный JSON: " + e.getMessage()));
+            return;
+        }
+        final Object userId = submission.get("userId");
+        Object taskId = submission.get("taskId");
+        final Object query = submission.get("query");
+        if (!(userId instanceof String) || !(taskId instanceof Long) || !(query instanceof String)) {
+            respond(exchange, 400, error("Ожидаются строковый userId, целый taskId и строковый query"));
+            return;
+        }
+        final TaskModel task = tasks.get(((Long) taskId).intValue());
+        if (task == null || !SubmissionGrader.isGradable(task)) {
+            respond(exchange, 404, error("Задание не найдено или не проверяется"));
+            return;
+        }
+
+        final long start = System.nanoTime();
+        try {
+            gradingPool.execute(() -> grade(exchange, (String) userId, task, (String) query, start));
+        } catch (RejectedExecutionException e) {
+            queueRejectedCount.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, error("Сервер перегружен, повторите позже"));
+        }
+    }
+
+    // Выполняется в потоке пула проверки
+    private void grade(HttpExchange exchange, String userId, TaskModel task, String query, long start) {
+        SandboxPool pool = poolFor(task);
+        SqlExecutor sandbox = null;
+        SubmissionGrader.Outcome outcome;
+        ReentrantLock userLock = userLocks.lockFor(userId);
+        try {
+            if (!userLock.tryLock()) {
+                userRejectedCount.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respondQuietly(exchange, 429, error("Предыдущий ответ пользователя еще проверяется"));
+                return;
+            }
+            try {
+                sandbox = pool.acquire(options.sandboxWaitMillis);
+                if (sandbox == null) {
+                    sandboxRejectedCount.incrementAndGet();
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    respondQuietly(exchange, 503, error("Нет свободной песочницы задания, повторите позже"));
+                    return;
+                }
+                outcome = SubmissionGrader.grade(sandbox, task, query, options.queryTimeoutMillis);
+            } finally {
+                userLock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respondQuietly(exchange, 503, error("Сервер останавливается"));
+            return;
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "Grading failed for task " + task.getTaskId(), e);
+            failedCount.incrementAndGet();
+            if (sandbox != null) {
+                pool.discard(sandbox);
+            }
+            respondQuietly(exchange, 500, error("Внутренняя ошибка проверки"));
+            return;
+        }
+
+        gradedCount.incrementAndGet();
+        JsonLines.ObjectWriter json = new JsonLines.ObjectWriter()
+                .put("status", outcome.status.jsonName());
+        if (outcome.message != null) {
+            json.put("message", outcome.message);
+        }
+        respondQuietly(exchange, 200, json.put("ms", (System.nanoTime() - start) / 1e6).toString());
+        // Песочница восстанавливается уже после ответа
+        pool.release(sandbox);
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        int sandboxCount = 0;
+        for (SandboxPool pool : sandboxPools.values()) {
+            sandboxCount += pool.getSandboxCount();
+        }
+        SandboxMetrics.Snapshot snapshot = metrics.snapshot();
+        respond(exchange, 200, new JsonLines.ObjectWriter()
+                .put("graded", gradedCount.get())
+                .put("rejectedQueueFull", queueRejectedCount.get())
+                .put("rejectedUserBusy", userRejectedCount.get())
+                .put("rejectedNoSandbox", sandboxRejectedCount.get())
+                .put("failed", failedCount.get())
+                .put("activeGradings", gradingPool.getActiveCount())
+                .put("queued", gradingPool.getQueue().size())
+                .put("sandboxes", sandboxCount)
+                .put("templateHits", snapshot.get(SandboxMetrics.Counter.TEMPLATE_HIT))
+                .put("templateMisses", snapshot.get(SandboxMetrics.Counter.TEMPLATE_MISS))
+                .toString());
+    }
+
+    private SandboxPool poolFor(TaskModel task) {
+        SandboxPool pool = sandboxPools.get(task.getTaskId());
+        if (pool == null) {
+            SandboxPool created = new SandboxPool(task, options.sandboxesPerTask, metrics);
+            pool = sandboxPools.putIfAbsent(task.getTaskId(), created);
+            if (pool == null) {
+                pool = created;
+            }
+        }
+        return pool;
+    }
+
+    // null, если тело больше MAX_BODY_BYTES
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            if (body.size() > MAX_BODY_BYTES) {
+                return null;
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private static String error(String message) {
+        return new JsonLines.ObjectWriter().put("error", message).toString();
+    }
+
+    private static void respond(HttpExchange exchange, int code, String json) throws IOException {
+        byte[] bytes = json.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // Клиент мог уже закрыть соединение: это не ошибка сервера
+    private static void respondQuietly(HttpExchange exchange, int code, String json) {
+        try {
+            respond(exchange, code, json);
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Could not send response", e);
+            exchange.close();
+        }
+    }
+
+    /**
+     * Включает или отключает журнал песочниц (в нем каждая ошибка запроса пользователя).
+     */
+    static void setSandboxLogging(boolean enabled) {
+        SANDBOX_LOG.setLevel(enabled ? null : Level.OFF);
+    }
+
+    private static ThreadFactory namedThreads(final String prefix) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * GradingServer [--port N] [--threads N] [--queue N] [--sandboxes-per-task N] [--verbose]
+     */
+    public static void main(String[] args) throws IOException {
+        Options options = new Options();
+        boolean verbose = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--verbose")) {
+                    verbose = true;
+                    continue;
+                }
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                switch (args[i]) {
+                    case "--port":
+                        options.port = Integer.parseInt(value);
+                        break;
+                    case "--threads":
+                        options.gradingThreads = Integer.parseInt(value);
+                        break;
+                    case "--queue":
+                        options.queueCapacity = Integer.parseInt(value);
+                        break;
+                    case "--sandboxes-per-task":
+                        options.sandboxesPerTask = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown argument: " + args[i]);
+                }
+                i++;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: GradingServer [--port N] [--threads N] [--queue N] [--sandboxes-per-task N] [--verbose]");
+            System.exit(2);
+            return;
+        }
+
+        setSandboxLogging(verbose);
+        final GradingServer server = new GradingServer(LessonRepository.getInstance().getAllLessons(), options);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "GradingServer-stop"));
+        System.out.println("Listening on http://127.0.0.1:" + server.getPort() + "/grade");
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.sql_game.server;
+
+import com.example.sql_game.data.model.TaskModel;
+import com.example.sql_game.util.JdbcSqlEngine;
+import com.example.sql_game.util.SandboxMetrics;
+import com.example.sql_game.util.SqlExecutor;
+import com.example.sql_game.util.SqlExecutor.ExecutionResult;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ограниченный пул песочниц одного задания. Песочницы создаются по мере нужды (не больше maxSandboxes)
+ * и сразу настраиваются скриптом задания, а после проверки возвращаются в пул уже восстановленными
+ * (SqlExecutor.resetSandbox()), поэтому следующая проверка начинается без настройки.
+ */
+final class SandboxPool {
+
+    private static final Logger LOG = Logger.getLogger(SandboxPool.class.getName());
+
+    private final TaskModel task;
+    private final int maxSandboxes;
+    private final SandboxMetrics metrics;
+    private final BlockingQueue<SqlExecutor> idle;
+    private final AtomicInteger sandboxCount = new AtomicInteger();
+    private volatile boolean isClosed = false;
+
+    SandboxPool(TaskModel task, int maxSandboxes, SandboxMetrics metrics) {
+        this.task = task;
+        this.maxSandboxes = maxSandboxes;
+        this.metrics = metrics;
+        this.idle = new ArrayBlockingQueue<>(maxSandboxes);
+    }
+
+    /**
+     * Создает и настраивает до count песочниц заранее.
+     */
+    void prewarm(int count) {
+        for (int i = 0; i < count && reserve(); i++) {
+            idle.offer(create());
+        }
+    }
+
+    /**
+     * Берет свободную песочницу, при необходимости создает новую.
+     * @return Песочница или null, если все заняты дольше timeoutMillis.
+     */
+    SqlExecutor acquire(long timeoutMillis) throws InterruptedException {
+        SqlExecutor sandbox = idle.poll();
+        if (sandbox != null) {
+            return sandbox;
+        }
+        if (reserve()) {
+            return create();
+        }
+        return idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Восстанавливает песочницу после проверки и возвращает ее в пул.
+     * Вызывается после отправки ответа, чтобы восстановление не входило во время ответа.
+     * Запрос пользователя не может изменить шаблон настройки (он не подключен к соединению во время запроса),
+     * поэтому восстановленная песочница не несет изменений предыдущего ответа.
+     */
+    void release(SqlExecutor sandbox) {
+        ExecutionResult reset;
+        try {
+            reset = sandbox.resetSandbox();
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Reset failed for task " + task.getTaskId(), e);
+            discard(sandbox);
+            return;
+        }
+        if (!reset.isSuccess || isClosed || !idle.offer(sandbox)) {
+            discard(sandbox);
+        }
+    }
+
+    /**
+     * Закрывает песочницу, состояние которой неизвестно (например, после исключения при проверке).
+     */
+    void discard(SqlExecutor sandbox) {
+        try {
+            sandbox.closeDatabase();
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Could not close sandbox of task " + task.getTaskId(), e);
+        } finally {
+            sandboxCount.decrementAndGet();
+        }
+    }
+
+    int getSandboxCount() {
+        return sandboxCount.get();
+    }
+
+    void close() {
+        isClosed = true;
+        SqlExecutor sandbox;
+        while ((sandbox = idle.poll()) != null) {
+            discard(sandbox);
+        }
+    }
+
+    private boolean reserve() {
+        while (true) {
+            int count = sandboxCount.get();
+            if (count >= maxSandboxes) {
+                return false;
+            }
+            if (sandboxCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Место под песочницу уже зарезервировано reserve() и освобождается, если песочницу создать не удалось.
+    // Песочница с неудачной настройкой возвращается: проверка ответа настроит ее снова и сообщит ошибку настройки
+    private SqlExecutor create() {
+        SqlExecutor sandbox = null;
+        try {
+            sandbox = new SqlExecutor(JdbcSqlEngine.FACTORY, metrics);
+            ExecutionResult setup = sandbox.executeSetup(task.getDatabaseSetupSql());
+            if (!setup.isSuccess) {
+                LOG.warning("Setup failed for task " + task.getTaskId() + ": " + setup.errorMessage);
+            }
+            return sandbox;
+        } catch (RuntimeException | Error e) {
+            if (sandbox != null) {
+                sandbox.closeDatabase();
+            }
+            sandboxCount.decrementAndGet();
+            throw e;
+        }
+    }
+}
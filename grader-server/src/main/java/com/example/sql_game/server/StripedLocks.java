@@ -0,0 +1,27 @@
+package com.example.sql_game.server;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Фиксированный набор блокировок, между которыми распределяются пользователи по хэшу userId.
+ * Ответы одного пользователя проверяются по одному, а память не растет с числом пользователей;
+ * разные пользователи изредка делят блокировку, и тогда один из них получает 429 и повторяет запрос.
+ */
+final class StripedLocks {
+
+    private final ReentrantLock[] locks;
+
+    StripedLocks(int stripeCount) {
+        locks = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            // Блокировки берутся только через tryLock(), поэтому очередь ожидания не нужна
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    ReentrantLock lockFor(String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return locks[(hash & Integer.MAX_VALUE) % locks.length];
+    }
+}
@@ -20,6 +20,9 @@ pluginManagement {
 
         // Плагин Firebase (Google Services)
         id("com.google.gms.google-services") version "4.4.1" apply false
+
+        // JMH-замеры модуля benchmarks
+        id("me.champeau.jmh") version "0.7.2" apply false
     }
 }
 dependencyResolutionManagement {
@@ -31,4 +34,8 @@ dependencyResolutionManagement {
 }
 
 rootProject.name = "SQL_Game"
-include(":app")
\ No newline at end of file
+include(":app")
+include(":engine")
+include(":benchmarks")
+include(":grader-cli")
+include(":grader-server")